@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.filebuffers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.IFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.filebuffers.manipulation.GenericFileBufferOperationRunner;
+import org.eclipse.core.filebuffers.manipulation.IFileBufferOperation;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+
+/**
+ * Tests the batch operations of the file buffer manager and the parallel
+ * {@link GenericFileBufferOperationRunner}.
+ *
+ * @since 3.7
+ */
+public class FileBufferBatchOperations {
+
+	private static final int FILES= 20;
+
+	/**
+	 * Appends a text to the document of each file buffer and records the threads it runs in.
+	 */
+	private static final class AppendOperation implements IFileBufferOperation {
+		final Set<Thread> fThreads= Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+		@Override
+		public String getOperationName() {
+			return "append"; //$NON-NLS-1$
+		}
+
+		@Override
+		public void run(IFileBuffer fileBuffer, IProgressMonitor monitor) throws CoreException {
+			fThreads.add(Thread.currentThread());
+			IDocument document= ((ITextFileBuffer) fileBuffer).getDocument();
+			try {
+				document.replace(document.getLength(), 0, "appendix"); //$NON-NLS-1$
+			} catch (BadLocationException x) {
+				fail();
+			}
+		}
+	}
+
+	private ITextFileBufferManager fManager;
+	private IFile[] fFiles;
+	private IPath[] fPaths;
+
+	@Before
+	public void setUp() throws Exception {
+		fManager= FileBuffers.getTextFileBufferManager();
+		ResourceHelper.createProject("project"); //$NON-NLS-1$
+		IFolder folder= ResourceHelper.createFolder("project/folder/"); //$NON-NLS-1$
+		fFiles= new IFile[FILES];
+		fPaths= new IPath[FILES];
+		for (int i= 0; i < FILES; i++) {
+			fFiles[i]= ResourceHelper.createFile(folder, "file" + i, "content " + i); //$NON-NLS-1$ //$NON-NLS-2$
+			fPaths[i]= fFiles[i].getFullPath();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (IPath path : fPaths)
+			assertNull(fManager.getTextFileBuffer(path, LocationKind.IFILE));
+		ResourceHelper.deleteProject("project"); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testConnectAllFails() throws Exception {
+		// a directory cannot be read into a document
+		IFolder directory= ResourceHelper.createFolder("project/directory/"); //$NON-NLS-1$
+		IPath[] locations= new IPath[FILES + 1];
+		for (int i= 0; i < FILES; i++)
+			locations[i < FILES / 2 ? i : i + 1]= fFiles[i].getLocation();
+		locations[FILES / 2]= directory.getLocation();
+
+		try {
+			fManager.connectAll(locations, LocationKind.LOCATION, null);
+			fail();
+		} catch (CoreException x) {
+			// expected
+		}
+		// the files that have been connected are disconnected again
+		for (IPath location : locations)
+			assertNull(fManager.getTextFileBuffer(location, LocationKind.LOCATION));
+	}
+
+	@Test
+	public void testConnectAllCanceled() throws Exception {
+		IProgressMonitor monitor= new NullProgressMonitor();
+		monitor.setCanceled(true);
+		try {
+			fManager.connectAll(fPaths, LocationKind.IFILE, monitor);
+			fail();
+		} catch (OperationCanceledException x) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testConnectAllCanceledWhileRunning() throws Exception {
+		// cancels as soon as the first file has been connected
+		IProgressMonitor monitor= new NullProgressMonitor() {
+			@Override
+			public void worked(int work) {
+				setCanceled(true);
+			}
+		};
+		try {
+			fManager.connectAll(fPaths, LocationKind.IFILE, monitor);
+			fail();
+		} catch (OperationCanceledException x) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParallelOperationRunner() throws Exception {
+		GenericFileBufferOperationRunner runner= new GenericFileBufferOperationRunner(fManager, null);
+		runner.setParallel(true);
+		runner.execute(fPaths, new AppendOperation(), null);
+		assertAppended();
+	}
+
+	@Test
+	public void testParallelOperationRunnerInWorkspaceOperation() throws Exception {
+		final GenericFileBufferOperationRunner runner= new GenericFileBufferOperationRunner(fManager, null);
+		runner.setParallel(true);
+		// the calling thread holds no scheduling rule, the workspace lock is released while the runnable runs
+		IWorkspaceRunnable runnable= new IWorkspaceRunnable() {
+			@Override
+			public void run(IProgressMonitor monitor) throws CoreException {
+				runner.execute(fPaths, new AppendOperation(), monitor);
+			}
+		};
+		ResourcesPlugin.getWorkspace().run(runnable, null, IWorkspace.AVOID_UPDATE, null);
+		assertAppended();
+	}
+
+	@Test
+	public void testParallelOperationRunnerInJob() throws Exception {
+		final GenericFileBufferOperationRunner runner= new GenericFileBufferOperationRunner(fManager, null);
+		runner.setParallel(true);
+		final AppendOperation operation= new AppendOperation();
+		Job job= new Job("runner") { //$NON-NLS-1$
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					runner.execute(fPaths, operation, monitor);
+				} catch (CoreException x) {
+					return x.getStatus();
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.schedule();
+		job.join();
+		assertTrue(job.getResult().isOK());
+		assertAppended();
+		// the worker thread of the job holds no rule, so the operation spreads across threads
+		assertTrue(operation.fThreads.size() > 1);
+	}
+
+	@Test
+	public void testParallelOperationRunnerWithConflictingRule() throws Exception {
+		GenericFileBufferOperationRunner runner= new GenericFileBufferOperationRunner(fManager, null);
+		runner.setParallel(true);
+		AppendOperation operation= new AppendOperation();
+		ISchedulingRule rule= fFiles[0].getProject();
+		Job.getJobManager().beginRule(rule, null);
+		try {
+			runner.execute(fPaths, operation, null);
+		} finally {
+			Job.getJobManager().endRule(rule);
+		}
+		assertAppended();
+		// workers that need the rules of the files would wait for the rule of the caller
+		assertEquals(Collections.singleton(Thread.currentThread()), operation.fThreads);
+	}
+
+	private void assertAppended() throws Exception {
+		for (int i= 0; i < FILES; i++) {
+			try (InputStreamReader reader= new InputStreamReader(fFiles[i].getContents(), fFiles[i].getCharset())) {
+				assertEquals("content " + i + "appendix", FileTool.read(reader).toString()); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+}
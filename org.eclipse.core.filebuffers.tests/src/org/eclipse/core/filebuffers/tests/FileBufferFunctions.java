@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,15 +11,20 @@
  *******************************************************************************/
 package org.eclipse.core.filebuffers.tests;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.After;
 import org.junit.Before;
@@ -29,6 +34,7 @@ import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
 import org.eclipse.core.filesystem.IFileStore;
 
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 
@@ -36,10 +42,12 @@ import org.eclipse.core.resources.IProject;
 
 import org.eclipse.core.filebuffers.FileBuffers;
 import org.eclipse.core.filebuffers.IFileBuffer;
+import org.eclipse.core.filebuffers.IFileBufferStatusCodes;
 import org.eclipse.core.filebuffers.ITextFileBuffer;
 import org.eclipse.core.filebuffers.ITextFileBufferManager;
 import org.eclipse.core.filebuffers.LocationKind;
 
+import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.source.IAnnotationModel;
@@ -272,6 +280,46 @@ public abstract class FileBufferFunctions {
 		}
 	}
 
+	/*
+	 * Test commit with an encoding that is not a Unicode encoding.
+	 */
+	@Test
+	public void testCommitEncoding() throws Exception {
+		fManager.connect(fPath, LocationKind.NORMALIZE, null);
+		try {
+			ITextFileBuffer fileBuffer= fManager.getTextFileBuffer(fPath, LocationKind.NORMALIZE);
+			fileBuffer.setEncoding("ISO-8859-1");
+			IDocument document= fileBuffer.getDocument();
+			StringBuilder content= new StringBuilder();
+			while (content.length() < 20000)
+				content.append("line \u00e4\u00f6\u00fc\u00df\n");
+			document.set(content.toString());
+			fileBuffer.commit(null, true);
+			assertArrayEquals(content.toString().getBytes(StandardCharsets.ISO_8859_1), getContents(fileBuffer.getFileStore()));
+
+			// a character that cannot be encoded
+			document.replace(document.getLength(), 0, "\u4e00");
+			try {
+				fileBuffer.commit(null, true);
+				fail();
+			} catch (CoreException x) {
+				assertEquals(IFileBufferStatusCodes.CHARSET_MAPPING_FAILED, x.getStatus().getCode());
+			}
+			assertArrayEquals(content.toString().getBytes(StandardCharsets.ISO_8859_1), getContents(fileBuffer.getFileStore()));
+			assertTrue(fileBuffer.isDirty());
+		} finally {
+			fManager.disconnect(fPath, LocationKind.NORMALIZE, null);
+		}
+	}
+
+	private static byte[] getContents(IFileStore fileStore) throws Exception {
+		ByteArrayOutputStream out= new ByteArrayOutputStream();
+		try (InputStream in= fileStore.openInputStream(EFS.NONE, null)) {
+			FileTool.transferData(in, out);
+		}
+		return out.toByteArray();
+	}
+
 	/*
 	 * Test validateState.
 	 */
@@ -1234,16 +1282,64 @@ public abstract class FileBufferFunctions {
 
 	@Test
 	public void testGetBufferForDocument() throws Exception {
+		IDocument document;
 		fManager.connect(fPath, LocationKind.NORMALIZE, null);
 		try {
 			ITextFileBuffer buffer= fManager.getTextFileBuffer(fPath, LocationKind.NORMALIZE);
 			assertNotNull(buffer);
-			IDocument document= buffer.getDocument();
+			document= buffer.getDocument();
 			assertNotNull(document);
 			assertSame(buffer, fManager.getTextFileBuffer(document));
+			assertNull(fManager.getTextFileBuffer(new Document(document.get())));
 		} finally {
 			fManager.disconnect(fPath, LocationKind.NORMALIZE, null);
 		}
+		assertNull(fManager.getTextFileBuffer(document));
+	}
+
+	@Test
+	public void testGetFileStoreBufferForDocument() throws Exception {
+		IFileStore fileStore= EFS.getNullFileSystem().getStore(new Path("/dev/null"));
+		assertNotNull(fileStore);
+		IDocument document;
+		fManager.connectFileStore(fileStore, null);
+		try {
+			fManager.connectFileStore(fileStore, null);
+			ITextFileBuffer buffer= fManager.getFileStoreTextFileBuffer(fileStore);
+			document= buffer.getDocument();
+			assertSame(buffer, fManager.getTextFileBuffer(document));
+			fManager.disconnectFileStore(fileStore, null);
+			assertSame(buffer, fManager.getTextFileBuffer(document));
+		} finally {
+			fManager.disconnectFileStore(fileStore, null);
+		}
+		assertNull(fManager.getTextFileBuffer(document));
+	}
+
+	/*
+	 * Tests connectAll, commitAll and disconnectAll.
+	 */
+	@Test
+	public void testBatchOperations() throws Exception {
+		IPath[] locations= new IPath[] { fPath, fPath };
+		fManager.connectAll(locations, LocationKind.NORMALIZE, null);
+		try {
+			ITextFileBuffer fileBuffer= fManager.getTextFileBuffer(fPath, LocationKind.NORMALIZE);
+			assertNotNull(fileBuffer);
+			// set dirty bit
+			IDocument document= fileBuffer.getDocument();
+			document.replace(document.getLength(), 0, "appendix");
+			String originalContent= document.get();
+			// commit
+			fManager.commitAll(new IFileBuffer[] { fileBuffer }, null, true);
+			// check assertions
+			assertEquals(originalContent, document.get());
+			assertFalse(fileBuffer.isDirty());
+			assertTrue(fileBuffer.isSynchronized());
+		} finally {
+			fManager.disconnectAll(locations, LocationKind.NORMALIZE, null);
+		}
+		assertNull(fManager.getTextFileBuffer(fPath, LocationKind.NORMALIZE));
 	}
 
 	/*
@@ -1285,4 +1381,20 @@ public abstract class FileBufferFunctions {
 		}
 	}
 
+	/*
+	 * Tests that there is no file buffer for a null location, e.g. the location of a resource
+	 * that has none.
+	 */
+	@Test
+	public void testGetFileBufferForNullLocation() throws Exception {
+		fManager.connect(fPath, LocationKind.NORMALIZE, null);
+		try {
+			assertNull(fManager.getFileBuffer(null, LocationKind.LOCATION));
+			assertNull(fManager.getFileBuffer(null, LocationKind.IFILE));
+			assertNull(fManager.getTextFileBuffer(null, LocationKind.LOCATION));
+		} finally {
+			fManager.disconnect(fPath, LocationKind.NORMALIZE, null);
+		}
+	}
+
 }
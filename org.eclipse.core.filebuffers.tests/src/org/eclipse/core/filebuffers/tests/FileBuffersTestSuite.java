@@ -36,7 +36,8 @@ import org.junit.runners.Suite.SuiteClasses;
 		FileStoreFileBuffersForNonExistingExternalFiles.class,
 		FileStoreFileBuffersForNonExistingWorkspaceFiles.class,
 		TextFileManagerDocCreationTests.class,
-		ResourceTextFileManagerDocCreationTests.class
+		ResourceTextFileManagerDocCreationTests.class,
+		FileBufferBatchOperations.class
 })
 public class FileBuffersTestSuite {
 	// see @SuiteClasses
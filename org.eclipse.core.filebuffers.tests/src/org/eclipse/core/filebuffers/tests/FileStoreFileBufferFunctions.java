@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2015 IBM Corporation and others.
+ * Copyright (c) 2007, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,14 +10,19 @@
  *******************************************************************************/
 package org.eclipse.core.filebuffers.tests;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.After;
 import org.junit.Before;
@@ -28,12 +33,14 @@ import org.eclipse.core.filesystem.IFileInfo;
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.filesystem.URIUtil;
 
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 
 import org.eclipse.core.resources.IProject;
 
 import org.eclipse.core.filebuffers.FileBuffers;
 import org.eclipse.core.filebuffers.IFileBuffer;
+import org.eclipse.core.filebuffers.IFileBufferStatusCodes;
 import org.eclipse.core.filebuffers.ITextFileBuffer;
 import org.eclipse.core.filebuffers.ITextFileBufferManager;
 
@@ -267,6 +274,46 @@ public abstract class FileStoreFileBufferFunctions {
 		}
 	}
 
+	/*
+	 * Test commit with an encoding that is not a Unicode encoding.
+	 */
+	@Test
+	public void testCommitEncoding() throws Exception {
+		fManager.connectFileStore(fFileStore, null);
+		try {
+			ITextFileBuffer fileBuffer= fManager.getFileStoreTextFileBuffer(fFileStore);
+			fileBuffer.setEncoding("ISO-8859-1");
+			IDocument document= fileBuffer.getDocument();
+			StringBuilder content= new StringBuilder();
+			while (content.length() < 20000)
+				content.append("line \u00e4\u00f6\u00fc\u00df\n");
+			document.set(content.toString());
+			fileBuffer.commit(null, true);
+			assertArrayEquals(content.toString().getBytes(StandardCharsets.ISO_8859_1), getContents(fileBuffer.getFileStore()));
+
+			// a character that cannot be encoded
+			document.replace(document.getLength(), 0, "\u4e00");
+			try {
+				fileBuffer.commit(null, true);
+				fail();
+			} catch (CoreException x) {
+				assertEquals(IFileBufferStatusCodes.CHARSET_MAPPING_FAILED, x.getStatus().getCode());
+			}
+			assertArrayEquals(content.toString().getBytes(StandardCharsets.ISO_8859_1), getContents(fileBuffer.getFileStore()));
+			assertTrue(fileBuffer.isDirty());
+		} finally {
+			fManager.disconnectFileStore(fFileStore, null);
+		}
+	}
+
+	private static byte[] getContents(IFileStore fileStore) throws Exception {
+		ByteArrayOutputStream out= new ByteArrayOutputStream();
+		try (InputStream in= fileStore.openInputStream(EFS.NONE, null)) {
+			FileTool.transferData(in, out);
+		}
+		return out.toByteArray();
+	}
+
 	/*
 	 * Test validateState.
 	 */
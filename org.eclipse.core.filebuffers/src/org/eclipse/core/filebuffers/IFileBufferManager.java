@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 
 
 /**
@@ -155,6 +156,44 @@ public interface IFileBufferManager {
 	 */
 	void disconnectFileStore(IFileStore fileStore, IProgressMonitor monitor) throws CoreException;
 
+	/**
+	 * Connects the files at the given locations to this manager. The files are connected
+	 * concurrently on a bounded number of threads, unless the calling thread holds a scheduling
+	 * rule or notifies resource change listeners. If a file cannot be connected or the monitor is
+	 * canceled, the files that have been connected by this call are disconnected again.
+	 * <p>
+	 * This is equivalent to calling {@link #connect(IPath, LocationKind, IProgressMonitor)} for
+	 * each location, but faster for many files.
+	 * </p>
+	 *
+	 * @param locations the locations of the files to be connected
+	 * @param locationKind the kind of the given locations
+	 * @param monitor the progress monitor, or <code>null</code> if progress reporting is not desired
+	 * @throws CoreException if one of the files could not successfully be connected
+	 * @throws OperationCanceledException if the monitor has been canceled
+	 * @since 3.7
+	 */
+	void connectAll(IPath[] locations, LocationKind locationKind, IProgressMonitor monitor) throws CoreException;
+
+	/**
+	 * Disconnects the files at the given locations from this manager. The files are disconnected
+	 * concurrently on a bounded number of threads, unless the calling thread holds a scheduling
+	 * rule or notifies resource change listeners. All files are disconnected even if some of them
+	 * fail.
+	 * <p>
+	 * This is equivalent to calling {@link #disconnect(IPath, LocationKind, IProgressMonitor)} for
+	 * each location, but faster for many files.
+	 * </p>
+	 *
+	 * @param locations the locations of the files to be disconnected
+	 * @param locationKind the kind of the given locations
+	 * @param monitor the progress monitor, or <code>null</code> if progress reporting is not desired
+	 * @throws CoreException if one of the files could not successfully be disconnected
+	 * @throws OperationCanceledException if the monitor has been canceled
+	 * @since 3.7
+	 */
+	void disconnectAll(IPath[] locations, LocationKind locationKind, IProgressMonitor monitor) throws CoreException;
+
 	/**
 	 * Returns the file buffer managed for the given location or <code>null</code>
 	 * if there is no such file buffer.
@@ -325,4 +364,27 @@ public interface IFileBufferManager {
 	 * @since 3.1
 	 */
 	void validateState(IFileBuffer[] fileBuffers, IProgressMonitor monitor, Object computationContext) throws CoreException;
+
+	/**
+	 * Commits the given file buffers. The file buffers are committed concurrently on a bounded
+	 * number of threads, each of which holds the {@link IFileBuffer#computeCommitRule() commit
+	 * rule} of the file buffer it commits, so file buffers whose rules conflict are committed one
+	 * after the other. If the calling thread holds a scheduling rule that conflicts with one of
+	 * the commit rules or notifies resource change listeners, the file buffers are committed in
+	 * the calling thread. All file buffers are committed even if some of them fail.
+	 * <p>
+	 * In case of a single file buffer, {@link IFileBuffer#commit(IProgressMonitor, boolean)}
+	 * should be used.
+	 * </p>
+	 *
+	 * @param fileBuffers the file buffers to commit
+	 * @param monitor the progress monitor, or <code>null</code> if progress reporting is not
+	 *            desired
+	 * @param overwrite indicates whether the underlying files should be overwritten if they are
+	 *            not synchronized with the file system
+	 * @throws CoreException if one of the file buffers could not be committed
+	 * @throws OperationCanceledException if the monitor has been canceled
+	 * @since 3.7
+	 */
+	void commitAll(IFileBuffer[] fileBuffers, IProgressMonitor monitor, boolean overwrite) throws CoreException;
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2015 IBM Corporation and others.
+ * Copyright (c) 2007, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,7 +11,9 @@
 package org.eclipse.core.filebuffers.manipulation;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 
+import org.eclipse.core.internal.filebuffers.BatchRunner;
 import org.eclipse.core.internal.filebuffers.FileBuffersPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -62,6 +64,12 @@ public class GenericFileBufferOperationRunner {
 	private transient boolean fIsCompleted;
 	/** The exception thrown during the computation in the UI thread. */
 	private transient Throwable fThrowable;
+	/**
+	 * Tells whether the file buffers are processed in parallel.
+	 *
+	 * @since 3.7
+	 */
+	private boolean fParallel;
 
 
 	/**
@@ -75,6 +83,27 @@ public class GenericFileBufferOperationRunner {
 		fValidationContext= validationContext;
 	}
 
+	/**
+	 * Sets whether this runner processes the file buffers in parallel. If enabled, the files are
+	 * connected, committed and disconnected concurrently on a bounded number of threads, and the
+	 * operation is performed concurrently for the file buffers that do not request the
+	 * synchronization context. Each operation and commit holds the commit rule of its file buffer,
+	 * so file buffers whose rules conflict are processed one after the other. The operation must
+	 * therefore be safe to run for several file buffers at the same time.
+	 * <p>
+	 * The file buffers are processed in parallel only if
+	 * {@link #execute(IPath[], IFileBufferOperation, IProgressMonitor)} is called without holding
+	 * a scheduling rule and not while notifying resource change listeners. Parallel commits are
+	 * not batched into a single workspace operation. The default is <code>false</code>.
+	 * </p>
+	 *
+	 * @param parallel <code>true</code> to process the file buffers in parallel
+	 * @since 3.7
+	 */
+	public void setParallel(boolean parallel) {
+		fParallel= parallel;
+	}
+
 	/**
 	 * Executes the given operation for all file buffers specified by the given locations.
 	 *
@@ -98,7 +127,10 @@ public class GenericFileBufferOperationRunner {
 			}
 
 			IFileBuffer[] unsynchronizedFileBuffers= findUnsynchronizedFileBuffers(fileBuffers);
-			performOperation(unsynchronizedFileBuffers, operation, subMonitor.split(size * 40));
+			if (isParallel())
+				performOperationInParallel(unsynchronizedFileBuffers, operation, subMonitor.split(size * 40));
+			else
+				performOperation(unsynchronizedFileBuffers, operation, subMonitor.split(size * 40));
 
 			final IFileBuffer[] synchronizedFileBuffers= findSynchronizedFileBuffers(fileBuffers);
 			fIsCompleted= false;
@@ -142,7 +174,10 @@ public class GenericFileBufferOperationRunner {
 				throw new CoreException(new Status(IStatus.ERROR, FileBuffersPlugin.PLUGIN_ID, IFileBufferStatusCodes.CONTENT_CHANGE_FAILED, fThrowable.getLocalizedMessage(), fThrowable));
 			}
 
-			commit(fileBuffers2Save, subMonitor.split(size * 80));
+			if (isParallel())
+				fFileBufferManager.commitAll(fileBuffers2Save, subMonitor.split(size * 80), true);
+			else
+				commit(fileBuffers2Save, subMonitor.split(size * 80));
 
 		} finally {
 			releaseFileBuffers(locations, subMonitor.split(size * 10));
@@ -154,10 +189,13 @@ public class GenericFileBufferOperationRunner {
 		ISchedulingRule rule= fileBuffer.computeCommitRule();
 		IJobManager manager= Job.getJobManager();
 		manager.beginRule(rule, subMonitor.split(1));
-		String name= fileBuffer.getLocation().lastSegment();
-		subMonitor.setTaskName(name);
-		operation.run(fileBuffer, subMonitor.split(99));
-		manager.endRule(rule);
+		try {
+			String name= fileBuffer.getLocation().lastSegment();
+			subMonitor.setTaskName(name);
+			operation.run(fileBuffer, subMonitor.split(99));
+		} finally {
+			manager.endRule(rule);
+		}
 	}
 
 	private void performOperation(IFileBuffer[] fileBuffers, IFileBufferOperation operation, IProgressMonitor progressMonitor) throws CoreException, OperationCanceledException {
@@ -167,6 +205,23 @@ public class GenericFileBufferOperationRunner {
 		}
 	}
 
+	private void performOperationInParallel(IFileBuffer[] fileBuffers, IFileBufferOperation operation, IProgressMonitor progressMonitor) throws CoreException, OperationCanceledException {
+		CoreException exception= BatchRunner.run(fileBuffers.length, (index, taskMonitor) -> performOperation(fileBuffers[index], operation, taskMonitor), new BitSet(fileBuffers.length), progressMonitor);
+		if (exception != null)
+			throw exception;
+	}
+
+	/**
+	 * Returns whether the file buffers are processed in parallel.
+	 *
+	 * @return <code>true</code> if parallel processing is enabled and tasks may
+	 *         {@linkplain BatchRunner#canRunInParallel() run in parallel}
+	 * @since 3.7
+	 */
+	private boolean isParallel() {
+		return fParallel && BatchRunner.canRunInParallel();
+	}
+
 	private void executeInContext(Runnable runnable) {
 		ITextFileBufferManager fileBufferManager= FileBuffers.getTextFileBufferManager();
 		fileBufferManager.execute(runnable);
@@ -193,6 +248,15 @@ public class GenericFileBufferOperationRunner {
 	private IFileBuffer[] createFileBuffers(IPath[] locations, IProgressMonitor progressMonitor) throws CoreException {
 
 		SubMonitor subMonitor= SubMonitor.convert(progressMonitor, FileBuffersMessages.FileBufferOperationRunner_task_connecting, locations.length);
+		if (isParallel()) {
+			// undoes its connections itself if it fails
+			fFileBufferManager.connectAll(locations, LocationKind.NORMALIZE, subMonitor);
+			IFileBuffer[] fileBuffers= new ITextFileBuffer[locations.length];
+			for (int i= 0; i < locations.length; i++)
+				fileBuffers[i]= fFileBufferManager.getFileBuffer(locations[i], LocationKind.NORMALIZE);
+			return fileBuffers;
+		}
+
 		try {
 			IFileBuffer[] fileBuffers= new ITextFileBuffer[locations.length];
 			for (int i= 0; i < locations.length; i++) {
@@ -213,6 +277,10 @@ public class GenericFileBufferOperationRunner {
 	private void releaseFileBuffers(IPath[] locations, IProgressMonitor progressMonitor) throws CoreException {
 		SubMonitor subMonitor= SubMonitor.convert(progressMonitor, FileBuffersMessages.FileBufferOperationRunner_task_disconnecting, locations.length);
 		final ITextFileBufferManager fileBufferManager= FileBuffers.getTextFileBufferManager();
+		if (isParallel()) {
+			fileBufferManager.disconnectAll(locations, LocationKind.NORMALIZE, subMonitor);
+			return;
+		}
 		for (IPath location : locations) {
 			fileBufferManager.disconnect(location, LocationKind.NORMALIZE, subMonitor.split(1));
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -66,7 +66,6 @@ public abstract class TextFileBufferOperation implements IFileBufferOperation {
 
 
 	private String fOperationName;
-	private DocumentRewriteSession fDocumentRewriteSession;
 
 	/**
 	 * Creates a new operation with the given name.
@@ -108,7 +107,7 @@ public abstract class TextFileBufferOperation implements IFileBufferOperation {
 		IDocument document= fileBuffer.getDocument();
 		if (document instanceof IDocumentExtension4) {
 			IDocumentExtension4 extension= (IDocumentExtension4) document;
-			fDocumentRewriteSession= extension.startRewriteSession(getDocumentRewriteSessionType());
+			extension.startRewriteSession(getDocumentRewriteSessionType());
 		} else
 			stateData= TextUtilities.removeDocumentPartitioners(document);
 
@@ -119,8 +118,10 @@ public abstract class TextFileBufferOperation implements IFileBufferOperation {
 		IDocument document= fileBuffer.getDocument();
 		if (document instanceof IDocumentExtension4) {
 			IDocumentExtension4 extension= (IDocumentExtension4) document;
-			extension.stopRewriteSession(fDocumentRewriteSession);
-			fDocumentRewriteSession= null;
+			// the session is not kept in a field so that the operation can run for several file buffers concurrently
+			DocumentRewriteSession session= extension.getActiveRewriteSession();
+			if (session != null)
+				extension.stopRewriteSession(session);
 		} else if (stateData != null)
 			TextUtilities.addDocumentPartitioners(document, stateData);
 	}
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.filebuffers;
+
+import java.util.BitSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+
+
+/**
+ * Runs a task for each of many file buffers or locations on a bounded number of threads. The
+ * calling thread reports the progress and watches the progress monitor for cancellation.
+ * <p>
+ * The maximum number of threads can be configured with the
+ * <code>org.eclipse.core.filebuffers.maxThreads</code> system property.
+ * </p>
+ *
+ * @since 3.7
+ */
+public final class BatchRunner {
+
+	/**
+	 * A task run for each index of a batch.
+	 */
+	public interface Task {
+
+		/**
+		 * Runs the task for the given index.
+		 *
+		 * @param index the index
+		 * @param monitor the progress monitor, only to be checked for cancellation
+		 * @throws CoreException if the task fails
+		 */
+		void run(int index, IProgressMonitor monitor) throws CoreException;
+	}
+
+	/** The time in milliseconds after which the monitor is checked for cancellation again. */
+	private static final long CANCELLATION_CHECK_INTERVAL= 100;
+
+	/** The maximum number of threads per batch. */
+	private static final int MAX_THREADS= Math.max(1, Integer.getInteger("org.eclipse.core.filebuffers.maxThreads", //$NON-NLS-1$
+			Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()))).intValue());
+
+	/** Tells whether the workspace is available, <code>org.eclipse.core.resources</code> is optional. */
+	private static final boolean RESOURCES_AVAILABLE= Platform.getBundle("org.eclipse.core.resources") != null; //$NON-NLS-1$
+
+	private BatchRunner() {
+	}
+
+	/**
+	 * Returns whether tasks that may need any scheduling rule can run in parallel. This is not the
+	 * case if the calling thread holds a scheduling rule, since tasks that need a conflicting rule
+	 * would wait for it forever, or if the workspace tree is locked for the calling thread, i.e.
+	 * while it notifies resource change listeners, since tasks that change resources would wait
+	 * for the workspace lock.
+	 *
+	 * @return <code>true</code> if tasks may run in parallel
+	 */
+	public static boolean canRunInParallel() {
+		return Job.getJobManager().currentRule() == null && !isTreeLocked();
+	}
+
+	/**
+	 * Returns whether tasks that need no other scheduling rules than the given one can run in
+	 * parallel. Unlike {@link #canRunInParallel()}, this is also the case if the calling thread
+	 * holds a scheduling rule that does not conflict with the given one.
+	 *
+	 * @param rule the rule that contains the rules the tasks need, or <code>null</code> if they
+	 *            need none
+	 * @return <code>true</code> if tasks may run in parallel
+	 */
+	public static boolean canRunInParallel(ISchedulingRule rule) {
+		if (isTreeLocked())
+			return false;
+		ISchedulingRule current= Job.getJobManager().currentRule();
+		return current == null || rule == null || !current.isConflicting(rule) && !rule.isConflicting(current);
+	}
+
+	private static boolean isTreeLocked() {
+		return RESOURCES_AVAILABLE && ResourcesPlugin.getWorkspace().isTreeLocked();
+	}
+
+	/**
+	 * Runs the given task for the indices from <code>0</code> to <code>count - 1</code>. If tasks
+	 * may not {@link #canRunInParallel() run in parallel}, they are run in the calling thread.
+	 * <p>
+	 * All tasks are run even if some fail. When the monitor is canceled, the tasks that have not
+	 * been started are skipped and the running ones are waited for.
+	 * </p>
+	 *
+	 * @param count the number of tasks
+	 * @param task the task
+	 * @param succeeded the set to which the indices of the tasks that succeeded are added
+	 * @param monitor the progress monitor, or <code>null</code> if progress reporting is not desired
+	 * @return the exception thrown by the first task that failed, or <code>null</code> if all tasks
+	 *         succeeded
+	 * @throws OperationCanceledException if the monitor has been canceled
+	 */
+	public static CoreException run(int count, Task task, BitSet succeeded, IProgressMonitor monitor) throws OperationCanceledException {
+		return run(count, task, canRunInParallel(), succeeded, monitor);
+	}
+
+	/**
+	 * Runs the given task, which needs no other scheduling rules than the given one, for the
+	 * indices from <code>0</code> to <code>count - 1</code>. If tasks may not
+	 * {@link #canRunInParallel(ISchedulingRule) run in parallel}, they are run in the calling
+	 * thread. Otherwise behaves like {@link #run(int, Task, BitSet, IProgressMonitor)}.
+	 *
+	 * @param count the number of tasks
+	 * @param task the task
+	 * @param rule the rule that contains the rules the task needs, or <code>null</code> if it needs
+	 *            none
+	 * @param succeeded the set to which the indices of the tasks that succeeded are added
+	 * @param monitor the progress monitor, or <code>null</code> if progress reporting is not desired
+	 * @return the exception thrown by the first task that failed, or <code>null</code> if all tasks
+	 *         succeeded
+	 * @throws OperationCanceledException if the monitor has been canceled
+	 */
+	public static CoreException run(int count, Task task, ISchedulingRule rule, BitSet succeeded, IProgressMonitor monitor) throws OperationCanceledException {
+		return run(count, task, canRunInParallel(rule), succeeded, monitor);
+	}
+
+	private static CoreException run(int count, Task task, boolean parallel, BitSet succeeded, IProgressMonitor monitor) throws OperationCanceledException {
+		SubMonitor subMonitor= SubMonitor.convert(monitor, count);
+		if (count <= 1 || !parallel)
+			return runSerially(count, task, succeeded, subMonitor);
+
+		ExecutorService executor= Executors.newFixedThreadPool(Math.min(MAX_THREADS, count), new NamedThreadFactory());
+		CompletionService<Integer> completionService= new ExecutorCompletionService<>(executor);
+		IProgressMonitor taskMonitor= new NullProgressMonitor() {
+			private volatile boolean fCanceled;
+
+			@Override
+			public boolean isCanceled() {
+				return fCanceled;
+			}
+
+			@Override
+			public void setCanceled(boolean canceled) {
+				fCanceled= canceled;
+			}
+		};
+		try {
+			for (int i= 0; i < count; i++) {
+				int index= i;
+				completionService.submit(() -> {
+					if (taskMonitor.isCanceled())
+						throw new OperationCanceledException();
+					task.run(index, taskMonitor);
+					return Integer.valueOf(index);
+				});
+			}
+
+			CoreException exception= null;
+			Throwable unexpected= null;
+			int done= 0;
+			while (done < count) {
+				if (subMonitor.isCanceled())
+					taskMonitor.setCanceled(true);
+
+				Future<Integer> future;
+				try {
+					future= completionService.poll(CANCELLATION_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException x) {
+					taskMonitor.setCanceled(true);
+					continue;
+				}
+				if (future == null)
+					continue;
+
+				done++;
+				subMonitor.worked(1);
+				try {
+					succeeded.set(future.get().intValue());
+				} catch (ExecutionException x) {
+					Throwable cause= x.getCause();
+					if (cause instanceof CoreException) {
+						if (exception == null)
+							exception= (CoreException) cause;
+					} else if (!(cause instanceof OperationCanceledException) && unexpected == null) {
+						unexpected= cause;
+					}
+				} catch (InterruptedException x) {
+					// cannot happen, the future is done
+				}
+			}
+
+			if (unexpected instanceof RuntimeException)
+				throw (RuntimeException) unexpected;
+			if (unexpected instanceof Error)
+				throw (Error) unexpected;
+			if (taskMonitor.isCanceled() || subMonitor.isCanceled())
+				throw new OperationCanceledException();
+			return exception;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static CoreException runSerially(int count, Task task, BitSet succeeded, SubMonitor subMonitor) throws OperationCanceledException {
+		CoreException exception= null;
+		for (int i= 0; i < count; i++) {
+			try {
+				task.run(i, subMonitor.split(1));
+				succeeded.set(i);
+			} catch (CoreException x) {
+				if (exception == null)
+					exception= x;
+			}
+		}
+		return exception;
+	}
+
+	/**
+	 * Creates daemon threads named after this runner.
+	 */
+	private static final class NamedThreadFactory implements ThreadFactory {
+		private static final AtomicInteger fgCount= new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread= new Thread(runnable, "File Buffer Batch Worker " + fgCount.getAndIncrement()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
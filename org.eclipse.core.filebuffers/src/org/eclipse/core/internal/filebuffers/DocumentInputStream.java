@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.filebuffers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.jface.text.IDocument;
+
+
+/**
+ * An <code>InputStream</code> that encodes the content of an <code>IDocument</code>. The
+ * content is read through a single {@link DocumentReader}, so the stream content is the
+ * document content when the stream has been opened, even if the document is modified later.
+ * <p>
+ * Malformed input is replaced. Unmappable characters are reported when the stream is opened:
+ * unless the charset is a Unicode charset, which encodes every character, the complete content
+ * is encoded by {@link #open(IDocument, Charset)}, so nothing has been written when the
+ * document cannot be encoded. With a Unicode charset the content is encoded in chunks while the
+ * stream is read, so neither a copy of the document content nor the complete encoded content is
+ * held in memory.
+ * </p>
+ * <p>
+ * Note that {@link #close()} must be called to release any acquired resources.
+ * </p>
+ *
+ * @since 3.7
+ */
+public class DocumentInputStream extends InputStream {
+
+	/** The number of characters that are encoded at once. */
+	private static final int CHUNK_SIZE= 8192;
+
+	/** The reader of the document content, closed once all characters have been read. */
+	private final DocumentReader fReader;
+	private final CharsetEncoder fEncoder;
+	/** The characters that have been read but not encoded, in read mode. */
+	private final CharBuffer fChars= CharBuffer.allocate(CHUNK_SIZE);
+	/** The buffer the encoder writes to. */
+	private final ByteBuffer fBuffer;
+	/** The bytes that have not been read, in read mode. */
+	private ByteBuffer fBytes;
+	/** The remaining encoded chunks if the content has been encoded when opened, or <code>null</code>. */
+	private Iterator<ByteBuffer> fChunks;
+
+	/** Whether all characters have been read from the document. */
+	private boolean fEndOfInput;
+	/** Whether all characters have been encoded. */
+	private boolean fEncoded;
+	/** Whether the encoder has been flushed, after which there are no more bytes. */
+	private boolean fFlushed;
+
+	/**
+	 * Creates a new stream that encodes the given document with the given charset.
+	 *
+	 * @param document the document
+	 * @param charset the charset
+	 */
+	private DocumentInputStream(IDocument document, Charset charset) {
+		fReader= new DocumentReader(document);
+		fEncoder= charset.newEncoder();
+		fEncoder.onMalformedInput(CodingErrorAction.REPLACE);
+		fEncoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+		fBuffer= ByteBuffer.allocate((int) Math.ceil(CHUNK_SIZE * fEncoder.maxBytesPerChar()));
+		fChars.flip();
+		fBuffer.flip();
+		fBytes= fBuffer;
+	}
+
+	/**
+	 * Opens a stream that encodes the current content of the given document with the given
+	 * charset.
+	 *
+	 * @param document the document
+	 * @param charset the charset
+	 * @return the stream
+	 * @throws java.nio.charset.UnmappableCharacterException if a character cannot be encoded
+	 * @throws IOException if the document cannot be read
+	 */
+	public static DocumentInputStream open(IDocument document, Charset charset) throws IOException {
+		DocumentInputStream stream= new DocumentInputStream(document, charset);
+		if (!charset.name().startsWith("UTF-")) { //$NON-NLS-1$
+			try {
+				stream.encodeAll();
+			} catch (IOException | RuntimeException e) {
+				stream.close();
+				throw e;
+			}
+		}
+		return stream;
+	}
+
+	/**
+	 * Encodes the complete content.
+	 *
+	 * @throws IOException if the document cannot be read or a character cannot be encoded
+	 */
+	private void encodeAll() throws IOException {
+		List<ByteBuffer> chunks= new ArrayList<>();
+		while (encode()) {
+			byte[] chunk= new byte[fBuffer.remaining()];
+			fBuffer.get(chunk);
+			chunks.add(ByteBuffer.wrap(chunk));
+		}
+		fChunks= chunks.iterator();
+	}
+
+	/**
+	 * Provides the next bytes.
+	 *
+	 * @return <code>true</code> if there are new bytes, <code>false</code> at the end of the stream
+	 * @throws IOException if the document cannot be read or a character cannot be encoded
+	 */
+	private boolean fill() throws IOException {
+		if (fChunks == null)
+			return encode();
+		if (!fChunks.hasNext())
+			return false;
+		fBytes= fChunks.next();
+		fChunks.remove();
+		return true;
+	}
+
+	/**
+	 * Encodes the next bytes into the buffer.
+	 *
+	 * @return <code>true</code> if there are new bytes, <code>false</code> at the end of the content
+	 * @throws IOException if the document cannot be read or a character cannot be encoded
+	 */
+	private boolean encode() throws IOException {
+		fBuffer.clear();
+		while (!fFlushed && fBuffer.position() == 0) {
+			CoderResult result;
+			if (!fEncoded) {
+				result= fEncoder.encode(fChars, fBuffer, fEndOfInput);
+				if (result.isUnderflow()) {
+					if (fEndOfInput)
+						fEncoded= true;
+					else
+						readChars();
+				}
+			} else {
+				result= fEncoder.flush(fBuffer);
+				if (result.isUnderflow())
+					fFlushed= true;
+			}
+			if (result.isError())
+				result.throwException();
+		}
+		fBuffer.flip();
+		return fBuffer.hasRemaining();
+	}
+
+	/**
+	 * Reads the next characters after the ones that have not been encoded yet.
+	 *
+	 * @throws IOException if the document cannot be read
+	 */
+	private void readChars() throws IOException {
+		fChars.compact();
+		int read= fReader.read(fChars.array(), fChars.position(), fChars.remaining());
+		if (read == -1) {
+			fEndOfInput= true;
+			fReader.close();
+		} else
+			fChars.position(fChars.position() + read);
+		fChars.flip();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fBytes.hasRemaining() && !fill())
+			return -1;
+		return fBytes.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!fBytes.hasRemaining() && !fill())
+			return -1;
+		int n= Math.min(len, fBytes.remaining());
+		fBytes.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return fBytes.remaining();
+	}
+
+	@Override
+	public void close() {
+		fReader.close();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -154,20 +154,34 @@ class DocumentReader extends Reader {
 		fDocumentListener= null;
 	}
 
+	/**
+	 * Reads the characters in chunks. While the document is unchanged, each chunk is fetched
+	 * with one call to {@link IDocument#get(int, int)}; afterwards it is copied from the
+	 * snapshot of the document.
+	 */
 	@Override
 	public int read(char[] cbuf, int off, int len) throws IOException {
-		int i= 0;
-		try {
-			for (; i < len && fOffset < fLength; i++)
-				cbuf[off + i]=  fCharSequence.charAt(fOffset++);
-			if (i > 0)
-				return i;
+		CharSequence sequence= fCharSequence;
+		if (sequence == null)
+			throw new IOException(FileBuffersMessages.DocumentInputStream_error_streamClosed);
 
+		int length= Math.min(len, fLength - fOffset);
+		if (length <= 0)
 			return -1;
-		} catch (NullPointerException x) {
-			throw new IOException(FileBuffersMessages.DocumentInputStream_error_streamClosed);
+
+		try {
+			String chunk;
+			if (sequence instanceof String) {
+				chunk= (String) sequence;
+				chunk.getChars(fOffset, fOffset + length, cbuf, off);
+			} else {
+				chunk= sequence.subSequence(fOffset, fOffset + length).toString();
+				chunk.getChars(0, length, cbuf, off);
+			}
 		} catch (IndexOutOfBoundsException x) {
-			return i-1;
+			return -1;
 		}
+		fOffset+= length;
+		return length;
 	}
 }
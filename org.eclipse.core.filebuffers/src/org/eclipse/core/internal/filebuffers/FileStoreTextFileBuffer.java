@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2014 IBM Corporation and others.
+ * Copyright (c) 2007, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,12 +19,8 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.SequenceInputStream;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CodingErrorAction;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnmappableCharacterException;
 import java.nio.charset.UnsupportedCharsetException;
@@ -52,9 +48,11 @@ import org.eclipse.core.filebuffers.IPersistableAnnotationModel;
 import org.eclipse.core.filebuffers.ITextFileBuffer;
 import org.eclipse.core.filebuffers.LocationKind;
 
+import org.eclipse.jface.text.AbstractDocument;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.MappedFileTextStore;
 import org.eclipse.jface.text.source.IAnnotationModel;
 
 /**
@@ -112,6 +110,11 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 	private String fExplicitEncoding;
 	/** Tells whether the file on disk has a BOM. */
 	private boolean fHasBOM;
+	/**
+	 * The text store of the document if it is backed by the file, <code>null</code> otherwise.
+	 * @since 3.7
+	 */
+	private MappedFileTextStore fMappedTextStore;
 	/** The annotation model of this file buffer */
     private IAnnotationModel fAnnotationModel;
 	/**
@@ -373,6 +376,12 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 			throw new CoreException(new Status(IStatus.WARNING, FileBuffersPlugin.PLUGIN_ID, IResourceStatus.OUT_OF_SYNC_LOCAL, message, null));
 		}
 
+		// the file is about to be overwritten
+		if (fMappedTextStore != null) {
+			fMappedTextStore.detach();
+			fMappedTextStore= null;
+		}
+
 		String encoding= computeEncoding();
 
 		Charset charset;
@@ -388,36 +397,33 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 			throw new CoreException(s);
 		}
 
-		CharsetEncoder encoder= charset.newEncoder();
-		encoder.onMalformedInput(CodingErrorAction.REPLACE);
-		encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
-
-		byte[] bytes;
-		int bytesLength;
+		DocumentInputStream documentStream;
 
 		try {
-			ByteBuffer byteBuffer= encoder.encode(CharBuffer.wrap(fDocument.get()));
-			bytesLength= byteBuffer.limit();
-			if (byteBuffer.hasArray())
-				bytes= byteBuffer.array();
-			else {
-				bytes= new byte[bytesLength];
-				byteBuffer.get(bytes);
-			}
+			documentStream= DocumentInputStream.open(fDocument, charset);
 		} catch (CharacterCodingException ex) {
 			Assert.isTrue(ex instanceof UnmappableCharacterException);
 			String message= NLSUtility.format(FileBuffersMessages.ResourceTextFileBuffer_error_charset_mapping_failed_message_arg, encoding);
 			IStatus s= new Status(IStatus.ERROR, FileBuffersPlugin.PLUGIN_ID, IFileBufferStatusCodes.CHARSET_MAPPING_FAILED, message, null);
 			throw new CoreException(s);
+		} catch (IOException ex) {
+			IStatus s= new Status(IStatus.ERROR, FileBuffersPlugin.PLUGIN_ID, IStatus.OK, ex.getLocalizedMessage(), ex);
+			throw new CoreException(s);
 		}
 
 		IFileInfo fileInfo= fFileStore.fetchInfo();
 		if (fileInfo != null && fileInfo.exists()) {
 
-			if (!overwrite)
-				checkSynchronizationState();
+			if (!overwrite) {
+				try {
+					checkSynchronizationState();
+				} catch (CoreException x) {
+					documentStream.close();
+					throw x;
+				}
+			}
 
-			InputStream stream= new ByteArrayInputStream(bytes, 0, bytesLength);
+			InputStream stream= documentStream;
 
 			/*
 			 * XXX:
@@ -442,7 +448,7 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 		} else {
 			fFileStore.getParent().mkdir(EFS.NONE, null);
 
-			try(OutputStream out= fFileStore.openOutputStream(EFS.NONE, null)) {
+			try(OutputStream out= fFileStore.openOutputStream(EFS.NONE, null); InputStream stream= documentStream) {
 				/*
 				 * XXX:
 				 * This is a workaround for a corresponding bug in Java readers and writer,
@@ -451,7 +457,10 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 				if (fHasBOM && CHARSET_UTF_8.equals(encoding))
 					out.write(IContentDescription.BOM_UTF_8);
 
-				out.write(bytes, 0, bytesLength);
+				byte[] buffer= new byte[8192];
+				int bytesRead;
+				while ((bytesRead= stream.read(buffer)) != -1)
+					out.write(buffer, 0, bytesRead);
 				out.flush();
 				out.close();
 			} catch (IOException x) {
@@ -506,6 +515,18 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 	 * @exception CoreException if the given stream can not be read
 	 */
 	private void setDocumentContent(IDocument document, IFileStore file, String encoding, boolean hasBOM, IProgressMonitor monitor) throws CoreException {
+		IFileInfo info= null;
+		if (document instanceof AbstractDocument) {
+			info= file.fetchInfo();
+			MappedFileTextStore store= fManager.createMappedTextStore(file, info, encoding != null ? encoding : fManager.getDefaultEncoding());
+			if (store != null) {
+				((AbstractDocument)document).setContent(store);
+				if (document == fDocument)
+					fMappedTextStore= store;
+				return;
+			}
+		}
+
 		InputStream contentStream= getFileContents(file);
 		if (contentStream == null)
 			return;
@@ -531,6 +552,17 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 				} while (n < IContentDescription.BOM_UTF_8.length);
 			}
 
+			if (info != null) {
+				int lengthHint= fManager.computeLengthHint(info, encoding);
+				if (lengthHint != -1) {
+					// decode straight into the text store of the document
+					in= new InputStreamReader(contentStream, encoding);
+					AbstractDocument abstractDocument= (AbstractDocument)document;
+					abstractDocument.setContent(in, lengthHint, abstractDocument.getNextModificationStamp());
+					return;
+				}
+			}
+
 			in= new BufferedReader(new InputStreamReader(contentStream, encoding), BUFFER_SIZE);
 			StringBuffer buffer= new StringBuffer(BUFFER_SIZE);
 			char[] readBuffer= new char[READER_CHUNK_SIZE];
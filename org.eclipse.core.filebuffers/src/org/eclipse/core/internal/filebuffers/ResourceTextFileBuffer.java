@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2014 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,16 +17,14 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.SequenceInputStream;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CodingErrorAction;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnmappableCharacterException;
 import java.nio.charset.UnsupportedCharsetException;
 
+import org.eclipse.core.filesystem.IFileInfo;
+
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -46,11 +44,13 @@ import org.eclipse.core.filebuffers.IPersistableAnnotationModel;
 import org.eclipse.core.filebuffers.ITextFileBuffer;
 import org.eclipse.core.filebuffers.manipulation.ContainerCreator;
 
+import org.eclipse.jface.text.AbstractDocument;
 import org.eclipse.jface.text.BadPositionCategoryException;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.MappedFileTextStore;
 import org.eclipse.jface.text.source.IAnnotationModel;
 
 
@@ -128,6 +128,11 @@ public class ResourceTextFileBuffer extends ResourceFileBuffer implements ITextF
 	private String fExplicitEncoding;
 	/** The BOM that needs to get written. */
 	private byte[] fBOM;
+	/**
+	 * The text store of the document if it is backed by the file, <code>null</code> otherwise.
+	 * @since 3.7
+	 */
+	private MappedFileTextStore fMappedTextStore;
 	/**
 	 * Lock for lazy creation of annotation model.
 	 * @since 3.2
@@ -306,6 +311,12 @@ public class ResourceTextFileBuffer extends ResourceFileBuffer implements ITextF
 			throw new CoreException(new Status(IStatus.WARNING, FileBuffersPlugin.PLUGIN_ID, IResourceStatus.OUT_OF_SYNC_LOCAL, message, null));
 		}
 
+		// the file is about to be overwritten
+		if (fMappedTextStore != null) {
+			fMappedTextStore.detach();
+			fMappedTextStore= null;
+		}
+
 		String encoding= computeEncoding();
 
 		if (fBOM == IContentDescription.BOM_UTF_16LE && CHARSET_UTF_16.equals(encoding))
@@ -324,27 +335,18 @@ public class ResourceTextFileBuffer extends ResourceFileBuffer implements ITextF
 			throw new CoreException(s);
 		}
 
-		CharsetEncoder encoder= charset.newEncoder();
-		encoder.onMalformedInput(CodingErrorAction.REPLACE);
-		encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
-
 		InputStream stream;
 
 		try {
-			byte[] bytes;
-			ByteBuffer byteBuffer= encoder.encode(CharBuffer.wrap(fDocument.get()));
-			if (byteBuffer.hasArray())
-				bytes= byteBuffer.array();
-			else {
-				bytes= new byte[byteBuffer.limit()];
-				byteBuffer.get(bytes);
-			}
-			stream= new ByteArrayInputStream(bytes, 0, byteBuffer.limit());
+			stream= DocumentInputStream.open(fDocument, charset);
 		} catch (CharacterCodingException ex) {
 			Assert.isTrue(ex instanceof UnmappableCharacterException);
 			String message= NLSUtility.format(FileBuffersMessages.ResourceTextFileBuffer_error_charset_mapping_failed_message_arg, encoding);
 			IStatus s= new Status(IStatus.ERROR, FileBuffersPlugin.PLUGIN_ID, IFileBufferStatusCodes.CHARSET_MAPPING_FAILED, message, ex);
 			throw new CoreException(s);
+		} catch (IOException ex) {
+			IStatus s= new Status(IStatus.ERROR, FileBuffersPlugin.PLUGIN_ID, IStatus.OK, ex.getLocalizedMessage(), ex);
+			throw new CoreException(s);
 		}
 
 		/*
@@ -498,6 +500,18 @@ public class ResourceTextFileBuffer extends ResourceFileBuffer implements ITextF
 	 * @exception CoreException if the given stream can not be read
 	 */
 	private void setDocumentContent(IDocument document, IFile file, String encoding) throws CoreException {
+		IFileInfo info= null;
+		if (document instanceof AbstractDocument) {
+			info= fFileStore.fetchInfo();
+			MappedFileTextStore store= fManager.createMappedTextStore(fFileStore, info, encoding != null ? encoding : fManager.getDefaultEncoding());
+			if (store != null) {
+				((AbstractDocument)document).setContent(store, fFile.getModificationStamp());
+				if (document == fDocument)
+					fMappedTextStore= store;
+				return;
+			}
+		}
+
 		InputStream contentStream= file.getContents();
 		Reader in= null;
 		try {
@@ -520,6 +534,16 @@ public class ResourceTextFileBuffer extends ResourceFileBuffer implements ITextF
 				} while (n < IContentDescription.BOM_UTF_8.length);
 			}
 
+			if (info != null) {
+				int lengthHint= fManager.computeLengthHint(info, encoding);
+				if (lengthHint != -1) {
+					// decode straight into the text store of the document
+					in= new InputStreamReader(contentStream, encoding);
+					((AbstractDocument)document).setContent(in, lengthHint, fFile.getModificationStamp());
+					return;
+				}
+			}
+
 			in= new BufferedReader(new InputStreamReader(contentStream, encoding), BUFFER_SIZE);
 			StringBuffer buffer= new StringBuffer(BUFFER_SIZE);
 			char[] readBuffer= new char[READER_CHUNK_SIZE];
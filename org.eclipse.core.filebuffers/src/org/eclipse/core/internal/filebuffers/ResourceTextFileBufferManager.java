@@ -11,8 +11,12 @@
  *******************************************************************************/
 package org.eclipse.core.internal.filebuffers;
 
+import java.net.URI;
 import java.util.ArrayList;
 
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -126,7 +130,7 @@ public class ResourceTextFileBufferManager extends TextFileBufferManager {
 		if (documentFromFactory != null)
 			document= documentFromFactory;
 		else
-			document= new SynchronizableDocument();
+			document= createDefaultDocument(getFileStore(file));
 
 		// Set the initial line delimiter
 		if (document instanceof IDocumentExtension4) {
@@ -194,6 +198,24 @@ public class ResourceTextFileBufferManager extends TextFileBufferManager {
 		return runnableResult[0];
 	}
 
+	private IFileStore getFileStore(IFile file) {
+		URI uri= file.getLocationURI();
+		if (uri == null)
+			return null;
+		try {
+			return EFS.getStore(uri);
+		} catch (CoreException x) {
+			return null;
+		}
+	}
+
+	@Override
+	protected IFileStore getFileStore(IPath location, LocationKind locationKind) {
+		if (locationKind == LocationKind.LOCATION)
+			return super.getFileStore(location, locationKind);
+		return FileBuffers.getFileStoreAtLocation(location);
+	}
+
 	private String getLineDelimiterPreference(IFile file) {
 		IScopeContext[] scopeContext;
 		if (file != null && file.getProject() != null) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,15 +10,20 @@
  *******************************************************************************/
 package org.eclipse.core.internal.filebuffers;
 
+import java.io.IOException;
+import java.io.Reader;
+
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.BadPartitioningException;
 import org.eclipse.jface.text.BadPositionCategoryException;
 import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.DocumentRewriteSession;
 import org.eclipse.jface.text.DocumentRewriteSessionType;
+import org.eclipse.jface.text.GapTextStore;
 import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ISynchronizable;
+import org.eclipse.jface.text.ITextStore;
 import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.Position;
 
@@ -35,6 +40,24 @@ public class SynchronizableDocument extends Document implements ISynchronizable
 
 	private Object fLockObject;
 
+	/**
+	 * Creates a new empty document.
+	 */
+	public SynchronizableDocument() {
+		super();
+	}
+
+	/**
+	 * Creates a new empty document that stores its content in the given text store.
+	 *
+	 * @param store the empty text store to use
+	 * @since 3.7
+	 */
+	public SynchronizableDocument(ITextStore store) {
+		super();
+		setTextStore(store);
+	}
+
 	@Override
 	public synchronized void setLockObject(Object lockObject) {
 		fLockObject= lockObject;
@@ -198,6 +221,46 @@ public class SynchronizableDocument extends Document implements ISynchronizable
 		}
 	}
 
+	@Override
+	public void setContent(ITextStore store) {
+		Object lockObject= getLockObject();
+		if (lockObject == null) {
+			super.setContent(store);
+			return;
+		}
+		synchronized (lockObject) {
+			super.setContent(store);
+		}
+	}
+
+	@Override
+	public void setContent(ITextStore store, long modificationStamp) {
+		Object lockObject= getLockObject();
+		if (lockObject == null) {
+			super.setContent(store, modificationStamp);
+			return;
+		}
+		synchronized (lockObject) {
+			super.setContent(store, modificationStamp);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The content is read before the lock object is acquired, only the text store is replaced
+	 * while holding it.
+	 * </p>
+	 *
+	 * @since 3.7
+	 */
+	@Override
+	public void setContent(Reader reader, int lengthHint, long modificationStamp) throws IOException {
+		GapTextStore store= new GapTextStore();
+		store.set(reader, lengthHint);
+		setContent(store, modificationStamp);
+	}
+
 	@Override
 	public void addPosition(String category, Position position) throws BadLocationException, BadPositionCategoryException {
 		Object lockObject= getLockObject();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,14 +11,16 @@
  *******************************************************************************/
 package org.eclipse.core.internal.filebuffers;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -37,6 +39,10 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.content.IContentDescription;
 import org.eclipse.core.runtime.content.IContentType;
 import org.eclipse.core.runtime.content.IContentTypeManager;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
 
 import org.eclipse.core.filebuffers.IAnnotationModelFactory;
 import org.eclipse.core.filebuffers.IDocumentSetupParticipant;
@@ -51,6 +57,8 @@ import org.eclipse.core.filebuffers.LocationKind;
 
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.MappedFileTextStore;
+import org.eclipse.jface.text.PieceTableTextStore;
 import org.eclipse.jface.text.source.IAnnotationModel;
 
 
@@ -68,8 +76,50 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 
 	protected static final IContentType TEXT_CONTENT_TYPE= Platform.getContentTypeManager().getContentType(IContentTypeManager.CT_TEXT);
 
-	private Map<IPath, AbstractFileBuffer> fFilesBuffers= new HashMap<>();
-	private Map<IFileStore, FileStoreFileBuffer> fFileStoreFileBuffers= new HashMap<>();
+	/**
+	 * Files larger than this number of bytes get a document that is backed by a
+	 * {@link PieceTableTextStore}. Can be configured with the
+	 * <code>org.eclipse.core.filebuffers.largeDocumentThreshold</code> system property.
+	 *
+	 * @since 3.7
+	 */
+	protected static final long LARGE_DOCUMENT_THRESHOLD= Long.getLong("org.eclipse.core.filebuffers.largeDocumentThreshold", 16 * 1024 * 1024).longValue(); //$NON-NLS-1$
+
+	/**
+	 * Identifies a document by its identity rather than by {@link Object#equals(Object)}.
+	 *
+	 * @since 3.7
+	 */
+	private static final class DocumentKey {
+		private final IDocument fDocument;
+
+		DocumentKey(IDocument document) {
+			fDocument= document;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof DocumentKey && ((DocumentKey) obj).fDocument == fDocument;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(fDocument);
+		}
+	}
+
+	/*
+	 * The maps are only modified while holding their own lock, which makes connecting and
+	 * disconnecting atomic, but can be read without locking.
+	 */
+	private Map<IPath, AbstractFileBuffer> fFilesBuffers= new ConcurrentHashMap<>();
+	private Map<IFileStore, FileStoreFileBuffer> fFileStoreFileBuffers= new ConcurrentHashMap<>();
+	/**
+	 * The connected text file buffers by their documents.
+	 *
+	 * @since 3.7
+	 */
+	private final Map<DocumentKey, ITextFileBuffer> fDocumentBuffers= new ConcurrentHashMap<>();
 	private List<IFileBufferListener> fFileBufferListeners= new ArrayList<>();
 	protected ExtensionsRegistry fRegistry;
 	private ISynchronizationContext fSynchronizationContext;
@@ -121,6 +171,7 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 			}
 			fileBuffer.connect();
 			fFilesBuffers.put(location, fileBuffer);
+			addDocumentBuffer(fileBuffer);
 		}
 
 		// Do notification outside synchronized block
@@ -156,6 +207,7 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 			}
 			fileBuffer.connect();
 			fFileStoreFileBuffers.put(fileStore, fileBuffer);
+			addDocumentBuffer(fileBuffer);
 		}
 
 		// Do notification outside synchronized block
@@ -197,6 +249,7 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 				return;
 
 			fFilesBuffers.remove(location);
+			removeDocumentBuffer(fileBuffer);
 		}
 
 		// Do notification outside synchronized block
@@ -219,6 +272,7 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 				return;
 
 			fFileStoreFileBuffers.remove(fileStore);
+			removeDocumentBuffer(fileBuffer);
 		}
 
 		// Do notification outside synchronized block
@@ -226,6 +280,74 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 		fileBuffer.dispose();
 	}
 
+	@Override
+	public void connectAll(IPath[] locations, LocationKind locationKind, IProgressMonitor monitor) throws CoreException {
+		BitSet connected= new BitSet(locations.length);
+		CoreException exception;
+		try {
+			exception= BatchRunner.run(locations.length, (index, taskMonitor) -> connect(locations[index], locationKind, taskMonitor), connected, monitor);
+		} catch (RuntimeException x) {
+			// including OperationCanceledException
+			disconnect(locations, connected, locationKind);
+			throw x;
+		}
+		if (exception != null) {
+			disconnect(locations, connected, locationKind);
+			throw exception;
+		}
+	}
+
+	/**
+	 * Disconnects the given locations that have been connected by
+	 * {@link #connectAll(IPath[], LocationKind, IProgressMonitor)} after it failed.
+	 *
+	 * @param locations the locations
+	 * @param connected the indices of the connected locations
+	 * @param locationKind the kind of the locations
+	 * @since 3.7
+	 */
+	private void disconnect(IPath[] locations, BitSet connected, LocationKind locationKind) {
+		for (int i= connected.nextSetBit(0); i >= 0; i= connected.nextSetBit(i + 1)) {
+			try {
+				disconnect(locations[i], locationKind, null);
+			} catch (CoreException x) {
+				FileBuffersPlugin.getDefault().getLog().log(x.getStatus());
+			}
+		}
+	}
+
+	@Override
+	public void disconnectAll(IPath[] locations, LocationKind locationKind, IProgressMonitor monitor) throws CoreException {
+		CoreException exception= BatchRunner.run(locations.length, (index, taskMonitor) -> disconnect(locations[index], locationKind, taskMonitor), new BitSet(locations.length), monitor);
+		if (exception != null)
+			throw exception;
+	}
+
+	@Override
+	public void commitAll(IFileBuffer[] fileBuffers, IProgressMonitor monitor, boolean overwrite) throws CoreException {
+		IJobManager jobManager= Job.getJobManager();
+		ISchedulingRule commitRule= null;
+		for (IFileBuffer fileBuffer : fileBuffers)
+			commitRule= MultiRule.combine(commitRule, fileBuffer.computeCommitRule());
+		boolean isSerial= !BatchRunner.canRunInParallel(commitRule);
+		CoreException exception= BatchRunner.run(fileBuffers.length, (index, taskMonitor) -> {
+			if (isSerial) {
+				// committed serially within the rule of the caller
+				fileBuffers[index].commit(taskMonitor, overwrite);
+				return;
+			}
+			ISchedulingRule rule= fileBuffers[index].computeCommitRule();
+			jobManager.beginRule(rule, taskMonitor);
+			try {
+				fileBuffers[index].commit(taskMonitor, overwrite);
+			} finally {
+				jobManager.endRule(rule);
+			}
+		}, commitRule, new BitSet(fileBuffers.length), monitor);
+		if (exception != null)
+			throw exception;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -329,14 +451,43 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 	}
 
 	private AbstractFileBuffer internalGetFileBuffer(IPath location) {
-		synchronized (fFilesBuffers) {
-			return fFilesBuffers.get(location);
-		}
+		// the concurrent map does not accept null keys
+		if (location == null)
+			return null;
+		return fFilesBuffers.get(location);
 	}
 
 	private FileStoreFileBuffer internalGetFileBuffer(IFileStore fileStore) {
-		synchronized (fFileStoreFileBuffers) {
-			return fFileStoreFileBuffers.get(fileStore);
+		return fFileStoreFileBuffers.get(fileStore);
+	}
+
+	/**
+	 * Adds the given file buffer to the reverse index if it is a text file buffer. Must be called
+	 * while holding the lock of the map the file buffer has been added to.
+	 *
+	 * @param fileBuffer the connected file buffer
+	 * @since 3.7
+	 */
+	private void addDocumentBuffer(AbstractFileBuffer fileBuffer) {
+		if (fileBuffer instanceof ITextFileBuffer) {
+			IDocument document= ((ITextFileBuffer) fileBuffer).getDocument();
+			if (document != null)
+				fDocumentBuffers.put(new DocumentKey(document), (ITextFileBuffer) fileBuffer);
+		}
+	}
+
+	/**
+	 * Removes the given file buffer from the reverse index. Must be called while holding the lock
+	 * of the map the file buffer has been removed from, before the file buffer is disposed.
+	 *
+	 * @param fileBuffer the disconnected file buffer
+	 * @since 3.7
+	 */
+	private void removeDocumentBuffer(AbstractFileBuffer fileBuffer) {
+		if (fileBuffer instanceof ITextFileBuffer) {
+			IDocument document= ((ITextFileBuffer) fileBuffer).getDocument();
+			if (document != null)
+				fDocumentBuffers.remove(new DocumentKey(document), fileBuffer);
 		}
 	}
 
@@ -365,52 +516,20 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 	@Override
 	public ITextFileBuffer getTextFileBuffer(IDocument document) {
 		Assert.isLegal(document != null);
-		Iterator<AbstractFileBuffer> iter;
-		synchronized (fFilesBuffers) {
-			iter= new ArrayList<>(fFilesBuffers.values()).iterator();
-		}
-
-		while (iter.hasNext()) {
-			Object buffer= iter.next();
-			if (buffer instanceof ITextFileBuffer) {
-				ITextFileBuffer textFileBuffer= (ITextFileBuffer)buffer;
-				if (textFileBuffer.getDocument() == document) {
-					if (!((AbstractFileBuffer)textFileBuffer).isDisconnected())
-						return textFileBuffer;
-					return null;
-				}
-			}
-		}
-		synchronized (fFileStoreFileBuffers) {
-			iter= new ArrayList<AbstractFileBuffer>(fFileStoreFileBuffers.values()).iterator();
-		}
-		while (iter.hasNext()) {
-			Object buffer= iter.next();
-			if (buffer instanceof ITextFileBuffer) {
-				ITextFileBuffer textFileBuffer= (ITextFileBuffer)buffer;
-				if (textFileBuffer.getDocument() == document) {
-					if (!((AbstractFileBuffer)textFileBuffer).isDisconnected())
-						return textFileBuffer;
-				}
-			}
-		}
+		ITextFileBuffer textFileBuffer= fDocumentBuffers.get(new DocumentKey(document));
+		if (textFileBuffer != null && !((AbstractFileBuffer)textFileBuffer).isDisconnected())
+			return textFileBuffer;
 		return null;
 	}
 
 	@Override
 	public IFileBuffer[] getFileBuffers() {
-		synchronized (fFilesBuffers) {
-			Collection<AbstractFileBuffer> values= fFilesBuffers.values();
-			return values.toArray(new IFileBuffer[values.size()]);
-		}
+		return fFilesBuffers.values().toArray(new IFileBuffer[0]);
 	}
 
 	@Override
 	public IFileBuffer[] getFileStoreFileBuffers() {
-		synchronized (fFileStoreFileBuffers) {
-			Collection<FileStoreFileBuffer> values= fFileStoreFileBuffers.values();
-			return values.toArray(new IFileBuffer[values.size()]);
-		}
+		return fFileStoreFileBuffers.values().toArray(new IFileBuffer[0]);
 	}
 
 	@Override
@@ -435,6 +554,8 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 		final IDocument document;
 		if (documentFromFactory != null)
 			document= documentFromFactory;
+		else if (location != null)
+			document= createDefaultDocument(getFileStore(location, locationKind));
 		else
 			document= new SynchronizableDocument();
 
@@ -478,6 +599,90 @@ public class TextFileBufferManager implements ITextFileBufferManager {
 		return document;
 	}
 
+	/**
+	 * Creates the document for the given file store that is used when no document factory is
+	 * contributed. Documents for files larger than {@link #LARGE_DOCUMENT_THRESHOLD} are backed
+	 * by a {@link PieceTableTextStore}.
+	 *
+	 * @param fileStore the file store or <code>null</code> if unknown
+	 * @return the created empty document
+	 * @since 3.7
+	 */
+	protected IDocument createDefaultDocument(IFileStore fileStore) {
+		if (fileStore != null && fileStore.fetchInfo().getLength() > LARGE_DOCUMENT_THRESHOLD)
+			return new SynchronizableDocument(new PieceTableTextStore());
+		return new SynchronizableDocument();
+	}
+
+	/**
+	 * Creates a text store that decodes the content of the given file on demand. This is done
+	 * for read-only local files larger than {@link #LARGE_DOCUMENT_THRESHOLD}, such as generated
+	 * files and logs, which then open without copying their content onto the heap.
+	 *
+	 * @param fileStore the file store
+	 * @param info the file info of the given file store
+	 * @param encoding the encoding of the file
+	 * @return the text store or <code>null</code> if the file should be read into memory
+	 * @since 3.7
+	 */
+	MappedFileTextStore createMappedTextStore(IFileStore fileStore, IFileInfo info, String encoding) {
+		if (info.getLength() <= LARGE_DOCUMENT_THRESHOLD || !info.getAttribute(EFS.ATTRIBUTE_READ_ONLY))
+			return null;
+
+		try {
+			File file= fileStore.toLocalFile(EFS.NONE, null);
+			if (file == null)
+				return null;
+			return new MappedFileTextStore(file.toPath(), Charset.forName(encoding));
+		} catch (CoreException ex) {
+			return null;
+		} catch (IOException ex) {
+			return null;
+		} catch (IllegalArgumentException ex) {
+			// illegal or unsupported charset
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the expected number of characters of the given file in the given encoding, which
+	 * is used to read the file directly into the text store of its document. Files larger than
+	 * {@link #LARGE_DOCUMENT_THRESHOLD} are not read that way, since their documents keep the
+	 * {@link PieceTableTextStore} created by {@link #createDefaultDocument(IFileStore)}.
+	 *
+	 * @param info the file info of the file
+	 * @param encoding the encoding of the file
+	 * @return the expected number of characters or <code>-1</code> if the file is too large
+	 * @since 3.7
+	 */
+	int computeLengthHint(IFileInfo info, String encoding) {
+		long length= Math.max(info.getLength(), 0);
+		if (length > LARGE_DOCUMENT_THRESHOLD || length > Integer.MAX_VALUE)
+			return -1;
+		try {
+			return (int) Math.ceil(length * Charset.forName(encoding).newDecoder().maxCharsPerByte());
+		} catch (IllegalArgumentException ex) {
+			// illegal or unsupported charset
+			return (int) length;
+		}
+	}
+
+	/**
+	 * Returns the file store for the given location.
+	 *
+	 * @param location the location
+	 * @param locationKind the kind of the given location
+	 * @return the file store or <code>null</code> if none can be determined
+	 * @since 3.7
+	 */
+	protected IFileStore getFileStore(IPath location, LocationKind locationKind) {
+		try {
+			return EFS.getStore(URIUtil.toURI(location));
+		} catch (CoreException ex) {
+			return null;
+		}
+	}
+
 	/**
 	 * Helper to get rid of deprecation warnings.
 	 *
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.TextViewer;
+import org.eclipse.jface.text.contentassist.CompletionProposal;
+import org.eclipse.jface.text.contentassist.ContentAssistant;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+import org.eclipse.jface.text.contentassist.IContentAssistProcessor;
+import org.eclipse.jface.text.contentassist.IContextInformation;
+import org.eclipse.jface.text.contentassist.IContextInformationValidator;
+
+/**
+ * Tests for asynchronous {@link ContentAssistant}s.
+ *
+ * @since 3.12
+ */
+public class AsyncContentAssistTest {
+
+	private static abstract class Processor implements IContentAssistProcessor {
+		@Override
+		public IContextInformation[] computeContextInformation(ITextViewer viewer, int offset) {
+			return null;
+		}
+
+		@Override
+		public char[] getCompletionProposalAutoActivationCharacters() {
+			return null;
+		}
+
+		@Override
+		public char[] getContextInformationAutoActivationCharacters() {
+			return null;
+		}
+
+		@Override
+		public String getErrorMessage() {
+			return null;
+		}
+
+		@Override
+		public IContextInformationValidator getContextInformationValidator() {
+			return null;
+		}
+	}
+
+	@Test
+	public void testProcessorTimeout() throws InterruptedException {
+		Shell shell= new Shell();
+		try {
+			TextViewer viewer= new TextViewer(shell, SWT.NONE);
+			viewer.setDocument(new Document("foo"));
+
+			IContentAssistProcessor fast= new Processor() {
+				@Override
+				public ICompletionProposal[] computeCompletionProposals(ITextViewer textViewer, int offset) {
+					return new ICompletionProposal[] { new CompletionProposal("fast", offset, 0, 4) };
+				}
+			};
+			CountDownLatch release= new CountDownLatch(1);
+			CountDownLatch finished= new CountDownLatch(1);
+			AtomicBoolean interrupted= new AtomicBoolean();
+			IContentAssistProcessor slow= new Processor() {
+				@Override
+				public ICompletionProposal[] computeCompletionProposals(ITextViewer textViewer, int offset) {
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						interrupted.set(true);
+					}
+					finished.countDown();
+					return new ICompletionProposal[] { new CompletionProposal("slow", offset, 0, 4) };
+				}
+			};
+
+			AtomicInteger executed= new AtomicInteger();
+			Executor executor= command -> {
+				executed.incrementAndGet();
+				new Thread(command).start();
+			};
+
+			ContentAssistant assistant= new ContentAssistant(true);
+			assistant.setAsynchronousExecutor(executor);
+			assistant.setAsynchronousProcessorTimeout(200);
+			assistant.addContentAssistProcessor(fast, IDocument.DEFAULT_CONTENT_TYPE);
+			assistant.addContentAssistProcessor(slow, IDocument.DEFAULT_CONTENT_TYPE);
+			assistant.install(viewer);
+			assertEquals(-1, assistant.getProcessorLatency(slow));
+
+			assistant.showPossibleCompletions();
+			long end= System.currentTimeMillis() + 5000;
+			while (assistant.getProcessorLatency(slow) == -1 && System.currentTimeMillis() < end)
+				Thread.sleep(20);
+			assertEquals(2, executed.get());
+			assertEquals(200, assistant.getProcessorLatency(slow));
+			assertTrue(assistant.getProcessorLatency(fast) < 200);
+
+			// the late processor is not interrupted, its proposals are dropped when it finishes
+			release.countDown();
+			assertTrue(finished.await(5, TimeUnit.SECONDS));
+			assertFalse(interrupted.get());
+			assertEquals(200, assistant.getProcessorLatency(slow));
+
+			Display display= shell.getDisplay();
+			while (display.readAndDispatch()) {
+				// process the proposal updates
+			}
+			assistant.uninstall();
+		} finally {
+			shell.dispose();
+		}
+	}
+
+	@Test
+	public void testProcessorError() throws InterruptedException {
+		Shell shell= new Shell();
+		try {
+			TextViewer viewer= new TextViewer(shell, SWT.NONE);
+			viewer.setDocument(new Document("foo"));
+			shell.open();
+
+			IContentAssistProcessor working= new Processor() {
+				@Override
+				public ICompletionProposal[] computeCompletionProposals(ITextViewer textViewer, int offset) {
+					return new ICompletionProposal[] {
+							new CompletionProposal("first", offset, 0, 5),
+							new CompletionProposal("second", offset, 0, 6) };
+				}
+			};
+			CountDownLatch failed= new CountDownLatch(1);
+			IContentAssistProcessor failing= new Processor() {
+				@Override
+				public ICompletionProposal[] computeCompletionProposals(ITextViewer textViewer, int offset) {
+					failed.countDown();
+					throw new AssertionError("failing processor");
+				}
+			};
+
+			ContentAssistant assistant= new ContentAssistant(true);
+			assistant.setAsynchronousExecutor(command -> new Thread(command).start());
+			assistant.addContentAssistProcessor(working, IDocument.DEFAULT_CONTENT_TYPE);
+			assistant.addContentAssistProcessor(failing, IDocument.DEFAULT_CONTENT_TYPE);
+			assistant.install(viewer);
+			assistant.showPossibleCompletions();
+			assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+			// the failed processor does not keep the popup computing
+			Display display= shell.getDisplay();
+			Table table= null;
+			long end= System.currentTimeMillis() + 5000;
+			while (System.currentTimeMillis() < end) {
+				while (display.readAndDispatch()) {
+					// process the proposal updates
+				}
+				table= findProposalTable(display);
+				if (table != null && table.getItemCount() == 2)
+					break;
+				Thread.sleep(20);
+			}
+			assertNotNull(table);
+			assertEquals(2, table.getItemCount());
+			assistant.uninstall();
+		} finally {
+			shell.dispose();
+		}
+	}
+
+	private static Table findProposalTable(Display display) {
+		for (Shell shell : display.getShells()) {
+			for (Control child : shell.getChildren()) {
+				if (child instanceof Table && !child.isDisposed())
+					return (Table) child;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.TextViewer;
+import org.eclipse.jface.text.contentassist.CompletionProposal;
+import org.eclipse.jface.text.contentassist.ContentAssistant;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+import org.eclipse.jface.text.contentassist.ICompletionProposalExtension2;
+import org.eclipse.jface.text.contentassist.ICompletionProposalExtension8;
+import org.eclipse.jface.text.contentassist.IContentAssistProcessor;
+import org.eclipse.jface.text.contentassist.IContextInformation;
+import org.eclipse.jface.text.contentassist.IContextInformationValidator;
+
+/**
+ * Tests the filtering of proposals that implement {@link ICompletionProposalExtension8}.
+ *
+ * @since 3.12
+ */
+public class CompletionProposalFilterTest {
+
+	/**
+	 * A proposal that is validated by {@link ICompletionProposalExtension2} only.
+	 */
+	private static class Proposal implements ICompletionProposal, ICompletionProposalExtension2 {
+		private final CompletionProposal fProposal;
+		final String fText;
+		private final AtomicInteger fValidations;
+
+		Proposal(String text, AtomicInteger validations) {
+			fProposal= new CompletionProposal(text, 0, 0, text.length());
+			fText= text;
+			fValidations= validations;
+		}
+
+		@Override
+		public boolean validate(IDocument document, int offset, DocumentEvent event) {
+			fValidations.incrementAndGet();
+			try {
+				return fText.toLowerCase().startsWith(document.get(0, offset).toLowerCase());
+			} catch (BadLocationException x) {
+				return false;
+			}
+		}
+
+		@Override
+		public void apply(ITextViewer viewer, char trigger, int stateMask, int offset) {
+			fProposal.apply(viewer.getDocument());
+		}
+
+		@Override
+		public void selected(ITextViewer viewer, boolean smartToggle) {
+		}
+
+		@Override
+		public void unselected(ITextViewer viewer) {
+		}
+
+		@Override
+		public void apply(IDocument document) {
+			fProposal.apply(document);
+		}
+
+		@Override
+		public Point getSelection(IDocument document) {
+			return fProposal.getSelection(document);
+		}
+
+		@Override
+		public String getAdditionalProposalInfo() {
+			return null;
+		}
+
+		@Override
+		public String getDisplayString() {
+			return fText;
+		}
+
+		@Override
+		public Image getImage() {
+			return null;
+		}
+
+		@Override
+		public IContextInformation getContextInformation() {
+			return null;
+		}
+	}
+
+	private static class IndexedProposal extends Proposal implements ICompletionProposalExtension8 {
+
+		IndexedProposal(String text, AtomicInteger validations) {
+			super(text, validations);
+		}
+
+		@Override
+		public int getPrefixFilterStart() {
+			return 0;
+		}
+
+		@Override
+		public String getPrefixFilterText() {
+			return fText;
+		}
+	}
+
+	@Test
+	public void testIndexedFiltering() {
+		AtomicInteger validations= new AtomicInteger();
+		ICompletionProposal[] proposals= new ICompletionProposal[2000];
+		for (int i= 0; i < proposals.length; i++)
+			proposals[i]= new IndexedProposal((i % 2 == 0 ? "Foo" : "bar") + i, validations); //$NON-NLS-1$ //$NON-NLS-2$
+
+		Shell shell= new Shell();
+		try {
+			TextViewer viewer= createViewer(shell);
+			ContentAssistant assistant= createContentAssistant(viewer, proposals);
+			Display display= shell.getDisplay();
+			assistant.showPossibleCompletions();
+			Table table= findProposalTable(display);
+			assertNotNull(table);
+			assertEquals(2000, table.getItemCount());
+
+			type(viewer, display, "f"); //$NON-NLS-1$
+			assertEquals(1000, table.getItemCount());
+			type(viewer, display, "OO1"); //$NON-NLS-1$
+			// Foo10..Foo18, Foo100..Foo198 and Foo1000..Foo1998
+			assertEquals(5 + 50 + 500, table.getItemCount());
+			assertEquals(0, validations.get());
+
+			assistant.uninstall();
+		} finally {
+			shell.dispose();
+		}
+	}
+
+	@Test
+	public void testMixedFiltering() {
+		AtomicInteger indexedValidations= new AtomicInteger();
+		AtomicInteger validations= new AtomicInteger();
+		ICompletionProposal[] proposals= new ICompletionProposal[1010];
+		for (int i= 0; i < 1000; i++)
+			proposals[i]= new IndexedProposal((i % 2 == 0 ? "Foo" : "bar") + i, indexedValidations); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i= 0; i < 10; i++)
+			proposals[1000 + i]= new Proposal((i % 2 == 0 ? "foo" : "baz") + "Other" + i, validations); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		Shell shell= new Shell();
+		try {
+			TextViewer viewer= createViewer(shell);
+			ContentAssistant assistant= createContentAssistant(viewer, proposals);
+			Display display= shell.getDisplay();
+			assistant.showPossibleCompletions();
+			Table table= findProposalTable(display);
+			assertNotNull(table);
+			assertEquals(1010, table.getItemCount());
+
+			type(viewer, display, "f"); //$NON-NLS-1$
+			assertEquals(500 + 5, table.getItemCount());
+			assertEquals(10, validations.get());
+
+			// only the proposals that are still shown are validated again
+			type(viewer, display, "oo"); //$NON-NLS-1$
+			assertEquals(500 + 5, table.getItemCount());
+			assertEquals(10 + 5, validations.get());
+			type(viewer, display, "Other"); //$NON-NLS-1$
+			assertEquals(5, table.getItemCount());
+			assertEquals(10 + 5 + 5, validations.get());
+			assertEquals(0, indexedValidations.get());
+
+			assistant.uninstall();
+		} finally {
+			shell.dispose();
+		}
+	}
+
+	private static TextViewer createViewer(Shell shell) {
+		shell.setSize(400, 200);
+		TextViewer viewer= new TextViewer(shell, SWT.NONE);
+		viewer.getControl().setSize(400, 200);
+		viewer.setDocument(new Document());
+		shell.open();
+		return viewer;
+	}
+
+	private static ContentAssistant createContentAssistant(TextViewer viewer, final ICompletionProposal[] proposals) {
+		IContentAssistProcessor processor= new IContentAssistProcessor() {
+			@Override
+			public ICompletionProposal[] computeCompletionProposals(ITextViewer textViewer, int offset) {
+				return proposals;
+			}
+
+			@Override
+			public IContextInformation[] computeContextInformation(ITextViewer textViewer, int offset) {
+				return null;
+			}
+
+			@Override
+			public char[] getCompletionProposalAutoActivationCharacters() {
+				return null;
+			}
+
+			@Override
+			public char[] getContextInformationAutoActivationCharacters() {
+				return null;
+			}
+
+			@Override
+			public String getErrorMessage() {
+				return null;
+			}
+
+			@Override
+			public IContextInformationValidator getContextInformationValidator() {
+				return null;
+			}
+		};
+
+		ContentAssistant assistant= new ContentAssistant();
+		assistant.addContentAssistProcessor(processor, IDocument.DEFAULT_CONTENT_TYPE);
+		assistant.install(viewer);
+		return assistant;
+	}
+
+	private static void type(TextViewer viewer, Display display, String text) {
+		int offset= viewer.getTextWidget().getCaretOffset();
+		viewer.getTextWidget().replaceTextRange(offset, 0, text);
+		viewer.getTextWidget().setCaretOffset(offset + text.length());
+		while (display.readAndDispatch()) {
+			// process the filtering
+		}
+	}
+
+	private static Table findProposalTable(Display display) {
+		for (Shell shell : display.getShells()) {
+			for (Control child : shell.getChildren()) {
+				if (child instanceof Table)
+					return (Table) child;
+			}
+		}
+		return null;
+	}
+}
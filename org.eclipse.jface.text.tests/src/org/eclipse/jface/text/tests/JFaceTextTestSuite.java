@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,12 +15,15 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 import org.eclipse.jface.text.tests.reconciler.AbstractReconcilerTest;
+import org.eclipse.jface.text.tests.reconciler.SharedExecutorReconcilerTest;
 import org.eclipse.jface.text.tests.rules.DefaultPartitionerTest;
 import org.eclipse.jface.text.tests.rules.DefaultPartitionerZeroLengthTest;
 import org.eclipse.jface.text.tests.rules.FastPartitionerTest;
+import org.eclipse.jface.text.tests.rules.LazyFastPartitionerTest;
 import org.eclipse.jface.text.tests.rules.ScannerColumnTest;
 import org.eclipse.jface.text.tests.rules.WordRuleTest;
 import org.eclipse.jface.text.tests.source.LineNumberRulerColumnTest;
+import org.eclipse.jface.text.tests.source.OverviewRulerTest;
 
 
 /**
@@ -31,9 +34,13 @@ import org.eclipse.jface.text.tests.source.LineNumberRulerColumnTest;
 @RunWith(Suite.class)
 @SuiteClasses({
 		LineNumberRulerColumnTest.class,
+		OverviewRulerTest.class,
 		HTML2TextReaderTest.class,
 		TextHoverPopupTest.class,
 		TextPresentationTest.class,
+		PresentationReconcilerTest.class,
+		AsyncContentAssistTest.class,
+		CompletionProposalFilterTest.class,
 		DefaultUndoManagerTest.class,
 		TextViewerTest.class,
 		TextViewerUndoManagerTest.class,
@@ -41,10 +48,12 @@ import org.eclipse.jface.text.tests.source.LineNumberRulerColumnTest;
 		DefaultPairMatcherTest2.class,
 
 		AbstractReconcilerTest.class,
+		SharedExecutorReconcilerTest.class,
 
 		DefaultPartitionerTest.class,
 		DefaultPartitionerZeroLengthTest.class,
 		FastPartitionerTest.class,
+		LazyFastPartitionerTest.class,
 		ScannerColumnTest.class,
 		WordRuleTest.class
 })
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.TextViewer;
+import org.eclipse.jface.text.presentation.IPresentationRepairer;
+import org.eclipse.jface.text.presentation.PresentationReconciler;
+
+/**
+ * Tests for {@link PresentationReconciler}.
+ *
+ * @since 3.12
+ */
+public class PresentationReconcilerTest {
+
+	@Test
+	public void testRepairViewportFirst() throws InterruptedException {
+		Shell shell= new Shell();
+		try {
+			TextViewer viewer= new TextViewer(shell, SWT.V_SCROLL);
+			viewer.getControl().setSize(400, 200);
+
+			BitSet repaired= new BitSet();
+			PresentationReconciler reconciler= new PresentationReconciler();
+			reconciler.setRepairViewportFirst(true);
+			reconciler.setRepairer(new IPresentationRepairer() {
+				@Override
+				public void setDocument(IDocument document) {
+				}
+
+				@Override
+				public void createPresentation(TextPresentation presentation, ITypedRegion damage) {
+					repaired.set(damage.getOffset(), damage.getOffset() + damage.getLength());
+				}
+			}, IDocument.DEFAULT_CONTENT_TYPE);
+			reconciler.install(viewer);
+
+			StringBuilder text= new StringBuilder();
+			for (int i= 0; i < 20000; i++)
+				text.append("line ").append(i).append('\n');
+			Document document= new Document(text.toString());
+			viewer.setDocument(document);
+
+			// only the visible range has been repaired so far
+			assertTrue(repaired.get(0));
+			assertFalse(repaired.get(document.getLength() - 1));
+
+			// the rest is repaired in slices
+			Display display= shell.getDisplay();
+			long end= System.currentTimeMillis() + 5000;
+			while (repaired.nextClearBit(0) < document.getLength() && System.currentTimeMillis() < end) {
+				if (!display.readAndDispatch())
+					Thread.sleep(10);
+			}
+			assertEquals(document.getLength(), repaired.nextClearBit(0));
+
+			reconciler.uninstall();
+		} finally {
+			shell.dispose();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests.reconciler;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.reconciler.DirtyRegion;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
+import org.eclipse.jface.text.reconciler.MonoReconciler;
+import org.eclipse.jface.text.tests.TestTextViewer;
+
+/**
+ * Runs the {@link AbstractReconcilerTest} with a reconciler that uses the shared executor.
+ *
+ * @since 3.12
+ */
+public class SharedExecutorReconcilerTest extends AbstractReconcilerTest {
+
+	@Override
+	protected boolean isUsingSharedExecutor() {
+		return true;
+	}
+
+	@Test
+	public void testManyReconcilers() throws InterruptedException {
+		int count= 20;
+		CountDownLatch reconciled= new CountDownLatch(count);
+		Set<Thread> threads= Collections.synchronizedSet(new HashSet<Thread>());
+		IReconcilingStrategy strategy= new IReconcilingStrategy() {
+			@Override
+			public void setDocument(IDocument document) {
+			}
+
+			@Override
+			public void reconcile(DirtyRegion dirtyRegion, IRegion subRegion) {
+			}
+
+			@Override
+			public void reconcile(IRegion partition) {
+				threads.add(Thread.currentThread());
+				reconciled.countDown();
+			}
+		};
+
+		MonoReconciler[] reconcilers= new MonoReconciler[count];
+		for (int i= 0; i < count; i++) {
+			reconcilers[i]= new MonoReconciler(strategy, false);
+			reconcilers[i].setDelay(50);
+			reconcilers[i].setUseSharedExecutor(true);
+			ITextViewer viewer= new TestTextViewer();
+			reconcilers[i].install(viewer);
+			Document document= new Document("foo");
+			viewer.setDocument(document);
+			document.set("bar");
+		}
+
+		try {
+			assertTrue("reconcilers did not run in 5 seconds", reconciled.await(5, TimeUnit.SECONDS));
+			assertTrue(threads.size() < count);
+			assertFalse(threads.contains(Thread.currentThread()));
+		} finally {
+			for (int i= 0; i < count; i++)
+				reconcilers[i].uninstall();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.rules.FastPartitioner;
+import org.eclipse.jface.text.rules.IPartitionTokenScanner;
+import org.eclipse.jface.text.rules.IPredicateRule;
+import org.eclipse.jface.text.rules.MultiLineRule;
+import org.eclipse.jface.text.rules.RuleBasedPartitionScanner;
+import org.eclipse.jface.text.rules.Token;
+
+/**
+ * Runs the {@link FastPartitionerTest} with a lazily initialized partitioner and compares lazy
+ * and eager partitioning.
+ *
+ * @since 3.12
+ */
+public class LazyFastPartitionerTest extends FastPartitionerTest {
+
+	@Override
+	protected IDocumentPartitioner createPartitioner(IPartitionTokenScanner scanner) {
+		FastPartitioner partitioner= new FastPartitioner(scanner, new String[] { DEFAULT, COMMENT });
+		partitioner.setLazyInitialization(true);
+		return partitioner;
+	}
+
+	private static IDocumentPartitioner connect(IDocument document, boolean lazy) {
+		IPartitionTokenScanner scanner= new RuleBasedPartitionScanner() {
+			{
+				IPredicateRule[] rules= new IPredicateRule[] { new MultiLineRule("/*", "*/", new Token(COMMENT)) };
+				setPredicateRules(rules);
+			}
+		};
+		FastPartitioner partitioner= new FastPartitioner(scanner, new String[] { DEFAULT, COMMENT });
+		partitioner.setLazyInitialization(lazy);
+		document.setDocumentPartitioner(partitioner);
+		partitioner.connect(document);
+		return partitioner;
+	}
+
+	private static String createText(Random random, int length) {
+		String[] parts= { "/*", "*/", "/", "*", "x", "y ", "\n", "\r\n" };
+		StringBuilder text= new StringBuilder();
+		while (text.length() < length)
+			text.append(parts[random.nextInt(parts.length)]);
+		return text.toString();
+	}
+
+	@Test
+	public void testLazySameAsEager() throws BadLocationException {
+		Random random= new Random(4711);
+		for (int run= 0; run < 200; run++) {
+			String text= createText(random, random.nextInt(300));
+			Document eagerDocument= new Document(text);
+			Document lazyDocument= new Document(text);
+			IDocumentPartitioner eager= connect(eagerDocument, false);
+			IDocumentPartitioner lazy= connect(lazyDocument, true);
+
+			for (int step= 0; step < 20; step++) {
+				int length= eagerDocument.getLength();
+				int offset= random.nextInt(length + 1);
+				switch (random.nextInt(4)) {
+					case 0:
+						assertEqualRegion(eager.getPartition(offset), lazy.getPartition(offset));
+						break;
+					case 1:
+						assertEquals(eager.getContentType(offset), lazy.getContentType(offset));
+						break;
+					case 2:
+						int regionLength= random.nextInt(length - offset + 1);
+						assertEqualRegions(eager.computePartitioning(offset, regionLength), lazy.computePartitioning(offset, regionLength));
+						break;
+					default:
+						int replaceLength= random.nextInt(Math.min(10, length - offset) + 1);
+						String replacement= createText(random, random.nextInt(5));
+						eagerDocument.replace(offset, replaceLength, replacement);
+						lazyDocument.replace(offset, replaceLength, replacement);
+						break;
+				}
+			}
+			assertEqualRegions(eager.computePartitioning(0, eagerDocument.getLength()), lazy.computePartitioning(0, lazyDocument.getLength()));
+			eager.disconnect();
+			lazy.disconnect();
+		}
+	}
+
+	private static void assertEqualRegions(ITypedRegion[] expected, ITypedRegion[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i= 0; i < expected.length; i++)
+			assertEqualRegion(expected[i], actual[i]);
+	}
+
+	private static void assertEqualRegion(ITypedRegion expected, ITypedRegion actual) {
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getOffset(), actual.getOffset());
+		assertEquals(expected.getLength(), actual.getLength());
+	}
+}
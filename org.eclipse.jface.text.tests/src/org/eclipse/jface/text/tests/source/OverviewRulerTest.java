@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.AnnotationModel;
+import org.eclipse.jface.text.source.IAnnotationAccess;
+import org.eclipse.jface.text.source.ISharedTextColors;
+import org.eclipse.jface.text.source.OverviewRuler;
+import org.eclipse.jface.text.source.SourceViewer;
+import org.eclipse.jface.text.source.VerticalRuler;
+
+/**
+ * Tests the rows that the {@link OverviewRuler} paints for the annotations, how they follow
+ * document and annotation changes, and that they agree with the hit-testing of the ruler.
+ */
+public class OverviewRulerTest {
+
+	private static final String TYPE= "org.eclipse.jface.text.tests.overviewRuler"; //$NON-NLS-1$
+	private static final int LINES= 200;
+
+	private static final class AnnotationAccess implements IAnnotationAccess {
+		@Override
+		public Object getType(Annotation annotation) {
+			return annotation.getType();
+		}
+
+		@Override
+		public boolean isMultiLine(Annotation annotation) {
+			return true;
+		}
+
+		@Override
+		public boolean isTemporary(Annotation annotation) {
+			return !annotation.isPersistent();
+		}
+	}
+
+	private static final class SharedTextColors implements ISharedTextColors {
+		private final Map<RGB, Color> fColors= new HashMap<>();
+
+		@Override
+		public Color getColor(RGB rgb) {
+			Color color= fColors.get(rgb);
+			if (color == null) {
+				color= new Color(Display.getCurrent(), rgb);
+				fColors.put(rgb, color);
+			}
+			return color;
+		}
+
+		@Override
+		public void dispose() {
+			for (Color color : fColors.values())
+				color.dispose();
+			fColors.clear();
+		}
+	}
+
+	private Shell fShell;
+	private SharedTextColors fColors;
+	private Color fColor;
+	private Document fDocument;
+	private AnnotationModel fAnnotationModel;
+	private OverviewRuler fRuler;
+
+	@Before
+	public void setUp() {
+		fShell= new Shell();
+		fShell.setLayout(new FillLayout());
+		fShell.setSize(500, 300);
+		fColors= new SharedTextColors();
+		fColor= new Color(fShell.getDisplay(), 255, 0, 0);
+
+		fRuler= new OverviewRuler(new AnnotationAccess(), 12, fColors);
+		fRuler.addAnnotationType(TYPE);
+		fRuler.setAnnotationTypeLayer(TYPE, 0);
+		fRuler.setAnnotationTypeColor(TYPE, fColor);
+		SourceViewer viewer= new SourceViewer(fShell, new VerticalRuler(10), fRuler, true, SWT.V_SCROLL | SWT.H_SCROLL);
+
+		StringBuilder text= new StringBuilder();
+		for (int i= 0; i < LINES; i++)
+			text.append("line ").append(i).append('\n'); //$NON-NLS-1$
+		fDocument= new Document(text.toString());
+		fAnnotationModel= new AnnotationModel();
+		viewer.setDocument(fDocument, fAnnotationModel);
+
+		fShell.open();
+		runEventQueue();
+	}
+
+	@After
+	public void tearDown() {
+		fShell.dispose();
+		fColor.dispose();
+		fColors.dispose();
+	}
+
+	@Test
+	public void testRowMapping() throws Exception {
+		assertTrue(getPaintedRows().isEmpty());
+
+		addAnnotation(100, 1);
+		SortedSet<Integer> rows= getPaintedRows();
+		assertFalse(rows.isEmpty());
+		assertHitAt(rows, 100);
+
+		addAnnotation(20, 1);
+		SortedSet<Integer> bothRows= getPaintedRows();
+		assertTrue(bothRows.containsAll(rows));
+		assertTrue(bothRows.first() < rows.first());
+		assertHitAt(bothRows.headSet(rows.first()), 20);
+	}
+
+	@Test
+	public void testTypingKeepsRows() throws Exception {
+		addAnnotation(100, 2);
+		SortedSet<Integer> rows= getPaintedRows();
+
+		// changes that do not add or remove lines do not move the rows
+		fDocument.replace(fDocument.getLineOffset(10), 0, "typed"); //$NON-NLS-1$
+		fDocument.replace(fDocument.getLineOffset(100) + 2, 0, "typed"); //$NON-NLS-1$
+		fDocument.replace(fDocument.getLineOffset(150), 3, ""); //$NON-NLS-1$
+		assertEquals(rows, getPaintedRows());
+		assertRebuildPaintsSameRows();
+		assertHitAt(rows, 100);
+	}
+
+	@Test
+	public void testLineChangesMoveRows() throws Exception {
+		addAnnotation(100, 1);
+		SortedSet<Integer> rows= getPaintedRows();
+
+		fDocument.replace(fDocument.getLineOffset(10), 0, "a\nb\nc\nd\ne\nf\ng\nh\ni\nj\n"); //$NON-NLS-1$
+		SortedSet<Integer> movedRows= getPaintedRows();
+		assertNotEquals(rows, movedRows);
+		assertRebuildPaintsSameRows();
+		assertHitAt(movedRows, 110);
+
+		// a line delimiter that is replaced by another one keeps the number of lines
+		int offset= fDocument.getLineOffset(100) + fDocument.getLineLength(100) - 1;
+		fDocument.replace(offset, 1, "\r\n"); //$NON-NLS-1$
+		assertEquals(movedRows, getPaintedRows());
+		assertRebuildPaintsSameRows();
+	}
+
+	@Test
+	public void testLineChangesWithManyAnnotations() throws Exception {
+		for (int line= 0; line < LINES; line+= 10)
+			addAnnotation(line, 1 + line % 3);
+		getPaintedRows();
+
+		// the rows behind the changed lines are moved, not recomputed
+		fDocument.replace(fDocument.getLineOffset(55), 0, "a\nb\n"); //$NON-NLS-1$
+		assertRebuildPaintsSameRows();
+
+		// removes lines inside an annotation
+		int offset= fDocument.getLineOffset(30) + 2;
+		fDocument.replace(offset, fDocument.getLineOffset(33) - offset, ""); //$NON-NLS-1$
+		assertRebuildPaintsSameRows();
+
+		// several changes before the ruler is painted
+		fDocument.replace(fDocument.getLineOffset(150), 0, "x\n"); //$NON-NLS-1$
+		fDocument.replace(fDocument.getLineOffset(5), fDocument.getLineLength(5), ""); //$NON-NLS-1$
+		fDocument.replace(fDocument.getLineOffset(100) + 1, 0, "\n\n\n"); //$NON-NLS-1$
+		assertRebuildPaintsSameRows();
+
+		// an empty annotation at the end of the document moves with the removed lines
+		fAnnotationModel.addAnnotation(new Annotation(TYPE, true, null), new Position(fDocument.getLength(), 0));
+		getPaintedRows();
+		int lastLines= fDocument.getLineOffset(fDocument.getNumberOfLines() - 3);
+		fDocument.replace(lastLines, fDocument.getLength() - lastLines, ""); //$NON-NLS-1$
+		assertRebuildPaintsSameRows();
+	}
+
+	@Test
+	public void testChangeInsideAnnotation() throws Exception {
+		addAnnotation(100, 1);
+		getPaintedRows();
+
+		// the annotation now spans two lines
+		fDocument.replace(fDocument.getLineOffset(100) + 2, 0, "\n"); //$NON-NLS-1$
+		assertRebuildPaintsSameRows();
+
+		// join the lines of the annotation and split the next line in one change
+		int offset= fDocument.getLineOffset(100) + 2;
+		fDocument.replace(offset, fDocument.getLineOffset(102) - offset, "x\ny\n"); //$NON-NLS-1$
+		assertRebuildPaintsSameRows();
+		assertHitAt(getPaintedRows(), 100);
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		Annotation annotation= addAnnotation(100, 1);
+		SortedSet<Integer> rows= getPaintedRows();
+		assertFalse(rows.isEmpty());
+
+		fRuler.removeAnnotationType(TYPE);
+		assertTrue(getPaintedRows().isEmpty());
+
+		fRuler.addAnnotationType(TYPE);
+		assertEquals(rows, getPaintedRows());
+
+		fAnnotationModel.removeAnnotation(annotation);
+		assertTrue(getPaintedRows().isEmpty());
+		assertFalse(fRuler.hasAnnotation(middle(rows)));
+
+		annotation= addAnnotation(100, 1);
+		assertEquals(rows, getPaintedRows());
+
+		fAnnotationModel.modifyAnnotationPosition(annotation, new Position(fDocument.getLineOffset(50), 1));
+		SortedSet<Integer> movedRows= getPaintedRows();
+		assertNotEquals(rows, movedRows);
+		assertHitAt(movedRows, 50);
+
+		// the whole content is replaced
+		fDocument.set(fDocument.get() + "last line\n"); //$NON-NLS-1$
+		assertRebuildPaintsSameRows();
+	}
+
+	private Annotation addAnnotation(int line, int numberOfLines) throws BadLocationException {
+		Annotation annotation= new Annotation(TYPE, true, null);
+		int offset= fDocument.getLineOffset(line);
+		int end= fDocument.getLineOffset(line + numberOfLines) - 1;
+		fAnnotationModel.addAnnotation(annotation, new Position(offset, end - offset));
+		return annotation;
+	}
+
+	/**
+	 * Checks the rows against a rebuilt index. Setting the annotation model again discards the
+	 * index of the ruler.
+	 */
+	private void assertRebuildPaintsSameRows() {
+		SortedSet<Integer> rows= getPaintedRows();
+		fRuler.setModel(fRuler.getModel());
+		assertEquals(getPaintedRows(), rows);
+	}
+
+	/**
+	 * Checks that clicking the middle of the given rows hits the annotation on the given line.
+	 */
+	private void assertHitAt(SortedSet<Integer> rows, int line) {
+		int y= middle(rows);
+		assertTrue(fRuler.hasAnnotation(y));
+		assertEquals(line, fRuler.toDocumentLineNumber(y));
+	}
+
+	private static int middle(SortedSet<Integer> rows) {
+		return (rows.first().intValue() + rows.last().intValue()) / 2;
+	}
+
+	/**
+	 * Paints the ruler and returns the rows that contain annotation rectangles.
+	 *
+	 * @return the painted rows
+	 */
+	private SortedSet<Integer> getPaintedRows() {
+		runEventQueue();
+		Control control= fRuler.getControl();
+		Point size= control.getSize();
+		Image image= new Image(control.getDisplay(), size.x, size.y);
+		ImageData data;
+		try {
+			GC gc= new GC(image);
+			try {
+				assertTrue(control.print(gc));
+			} finally {
+				gc.dispose();
+			}
+			data= image.getImageData();
+		} finally {
+			image.dispose();
+		}
+
+		// the left inset of the ruler shows the background
+		SortedSet<Integer> rows= new TreeSet<>();
+		for (int y= 0; y < size.y; y++) {
+			if (data.getPixel(size.x / 2, y) != data.getPixel(0, y))
+				rows.add(Integer.valueOf(y));
+		}
+		return rows;
+	}
+
+	private void runEventQueue() {
+		Display display= fShell.getDisplay();
+		while (display.readAndDispatch()) {
+			// do nothing
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2016 Red Hat Inc. and others.
+ * Copyright (c) 2016, 2017 Red Hat Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,9 +16,14 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -189,7 +194,10 @@ class AsyncCompletionProposalPopup extends CompletionProposalPopup {
 				setProposals(fComputedProposals, false);
 				Set<CompletableFuture<Void>> remaining = Collections.synchronizedSet(new HashSet<>(populateFutures));
 				for (CompletableFuture<Void> populateFuture : populateFutures) {
-					populateFuture.thenRun(() -> {
+					// a processor that failed counts as finished
+					populateFuture.whenComplete((result, x) -> {
+						if (x instanceof CancellationException || x != null && x.getCause() instanceof CancellationException)
+							return; // the popup has been closed
 						remaining.removeIf(CompletableFuture::isDone);
 						computingProposal.setRemaining(remaining.size());
 						if (remaining.isEmpty()) {
@@ -218,7 +226,7 @@ class AsyncCompletionProposalPopup extends CompletionProposalPopup {
 		super.hide();
 		if (fFutures != null) {
 			for (Future<?> future : fFutures) {
-				future.cancel(true);
+				future.cancel(false);
 			}
 		}
 	}
@@ -234,15 +242,70 @@ class AsyncCompletionProposalPopup extends CompletionProposalPopup {
 		if (processors == null) {
 			return Collections.emptyList();
 		}
+		Executor executor= fContentAssistant.getAsynchronousExecutor();
+		long timeout= fContentAssistant.getAsynchronousProcessorTimeout();
 		List<CompletableFuture<List<ICompletionProposal>>> futures = new ArrayList<>(processors.size());
 		for (IContentAssistProcessor processor : processors) {
-			futures.add(CompletableFuture.supplyAsync(() ->
-				Arrays.asList(processor.computeCompletionProposals(fViewer, invocationOffset))
-			));
+			futures.add(computeProposals(processor, invocationOffset, executor, timeout));
 		}
 		return futures;
 	}
 
+	/**
+	 * Computes the proposals of the given processor on the given executor. If the processor does
+	 * not finish within the given time budget, the future completes without proposals. Cancelling
+	 * the future has the same effect. In both cases a computation that has not started yet is not
+	 * run. A running computation is not interrupted, since processors may not expect that, e.g.
+	 * an interrupted thread fails to read files with a ClosedByInterruptException. Its proposals
+	 * are dropped when it finishes. If the processor fails with any exception or error, the
+	 * future completes exceptionally.
+	 *
+	 * @param processor the processor
+	 * @param invocationOffset the offset at which content assist has been invoked
+	 * @param executor the executor to compute the proposals on
+	 * @param timeout the time budget in milliseconds, or <code>0</code> for no limit
+	 * @return the future proposals of the processor
+	 */
+	private CompletableFuture<List<ICompletionProposal>> computeProposals(IContentAssistProcessor processor, int invocationOffset, Executor executor, long timeout) {
+		CompletableFuture<List<ICompletionProposal>> future= new CompletableFuture<>();
+		long start= System.nanoTime();
+		FutureTask<Void> task= new FutureTask<>(() -> {
+			try {
+				ICompletionProposal[] proposals= processor.computeCompletionProposals(fViewer, invocationOffset);
+				List<ICompletionProposal> result= proposals == null ? Collections.<ICompletionProposal> emptyList() : Arrays.asList(proposals);
+				if (future.complete(result))
+					fContentAssistant.recordProcessorLatency(processor, System.nanoTime() - start);
+			} catch (Throwable x) {
+				// the task swallows what is thrown, the future must complete in any case
+				future.completeExceptionally(x);
+				if (x instanceof Error)
+					throw (Error) x;
+			}
+		}, null);
+
+		if (timeout > 0) {
+			ScheduledFuture<?> deadline= ContentAssistExecutor.schedule(() -> {
+				// show what the other processors found rather than waiting for a late one
+				if (future.complete(Collections.<ICompletionProposal> emptyList())) {
+					fContentAssistant.recordProcessorLatency(processor, TimeUnit.MILLISECONDS.toNanos(timeout));
+					task.cancel(false);
+				}
+			}, timeout);
+			future.whenComplete((proposals, x) -> deadline.cancel(false));
+		}
+		future.whenComplete((proposals, x) -> {
+			if (future.isCancelled())
+				task.cancel(false);
+		});
+
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException x) {
+			future.completeExceptionally(x);
+		}
+		return future;
+	}
+
 	private String getTokenContentType(int invocationOffset) throws BadLocationException {
 		if (fContentAssistSubjectControl != null) {
 			IDocument document= fContentAssistSubjectControl.getDocument();
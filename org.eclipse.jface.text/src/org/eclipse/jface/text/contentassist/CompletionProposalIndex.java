@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.contentassist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+
+
+/**
+ * An index over the proposals of a content assist session that implement
+ * {@link ICompletionProposalExtension8}. For each filter start, the folded filter texts of the
+ * proposals are kept sorted, so the proposals whose filter text starts with the typed prefix are
+ * found by a binary search without touching the proposals.
+ * <p>
+ * <strong>Performance:</strong> the index is built in <i>O(n log n)</i>. Finding the <i>k</i>
+ * valid proposals performs in <i>O(g (log n + p) + k)</i> for <i>g</i> distinct filter starts and a
+ * prefix of length <i>p</i>.
+ * </p>
+ * <p>
+ * The index keeps a snapshot of the proposals it has been built for, since the computed
+ * proposals of an asynchronous session are changed while the proposals are computed. Positions
+ * are positions in that snapshot.
+ * </p>
+ *
+ * @since 3.12
+ */
+final class CompletionProposalIndex {
+
+	/**
+	 * The indexed proposals that share a filter start.
+	 */
+	private static final class Group {
+		/** The filter start of the proposals. */
+		final int fStart;
+		/** The folded filter texts, sorted. */
+		final String[] fKeys;
+		/** The positions of the proposals in the order of {@link #fKeys}. */
+		final int[] fPositions;
+
+		Group(int start, String[] keys, int[] positions) {
+			fStart= start;
+			fKeys= keys;
+			fPositions= positions;
+		}
+	}
+
+	/** The list this index has been built for. */
+	private final List<ICompletionProposal> fList;
+	/** The snapshot of the proposals taken when this index has been built. */
+	private final ICompletionProposal[] fProposals;
+	/** The groups of indexed proposals. */
+	private final Group[] fGroups;
+	/** The positions of the proposals that are not indexed. */
+	private final int[] fOthers;
+	/** The positions of the proposals that are not indexed, by proposal. */
+	private final Map<ICompletionProposal, Integer> fOtherPositions;
+
+	private CompletionProposalIndex(List<ICompletionProposal> list, ICompletionProposal[] proposals, Group[] groups, int[] others) {
+		fList= list;
+		fProposals= proposals;
+		fGroups= groups;
+		fOthers= others;
+		fOtherPositions= new IdentityHashMap<>(others.length);
+		for (int position : others)
+			fOtherPositions.put(proposals[position], Integer.valueOf(position));
+	}
+
+	/**
+	 * Builds the index for the given proposals.
+	 *
+	 * @param list the computed proposals, may be <code>null</code>
+	 * @return the index, or <code>null</code> if none of the proposals can be indexed or some
+	 *         proposal can be filtered by none of the proposal extensions
+	 */
+	static CompletionProposalIndex create(List<ICompletionProposal> list) {
+		if (list == null)
+			return null;
+
+		ICompletionProposal[] proposals= list.toArray(new ICompletionProposal[list.size()]);
+		Map<Integer, List<Integer>> groups= new HashMap<>();
+		int[] others= new int[proposals.length];
+		int otherCount= 0;
+		for (int i= 0; i < proposals.length; i++) {
+			ICompletionProposal proposal= proposals[i];
+			if (proposal instanceof ICompletionProposalExtension8) {
+				Integer start= Integer.valueOf(((ICompletionProposalExtension8) proposal).getPrefixFilterStart());
+				groups.computeIfAbsent(start, s -> new ArrayList<>()).add(Integer.valueOf(i));
+			} else if (proposal instanceof ICompletionProposalExtension2 || proposal instanceof ICompletionProposalExtension) {
+				others[otherCount++]= i;
+			} else {
+				return null;
+			}
+		}
+		if (groups.isEmpty())
+			return null;
+
+		List<Group> result= new ArrayList<>(groups.size());
+		for (Map.Entry<Integer, List<Integer>> entry : groups.entrySet()) {
+			List<Integer> positions= entry.getValue();
+			int size= positions.size();
+			String[] keys= new String[size];
+			Integer[] order= new Integer[size];
+			for (int i= 0; i < size; i++) {
+				int position= positions.get(i).intValue();
+				keys[i]= fold(((ICompletionProposalExtension8) proposals[position]).getPrefixFilterText());
+				order[i]= Integer.valueOf(i);
+			}
+			Arrays.sort(order, (a, b) -> keys[a.intValue()].compareTo(keys[b.intValue()]));
+
+			String[] sortedKeys= new String[size];
+			int[] sortedPositions= new int[size];
+			for (int i= 0; i < size; i++) {
+				int index= order[i].intValue();
+				sortedKeys[i]= keys[index];
+				sortedPositions[i]= positions.get(index).intValue();
+			}
+			result.add(new Group(entry.getKey().intValue(), sortedKeys, sortedPositions));
+		}
+		return new CompletionProposalIndex(list, proposals, result.toArray(new Group[result.size()]), Arrays.copyOf(others, otherCount));
+	}
+
+	/**
+	 * Returns whether this index has been built for the given proposals. A list that has been
+	 * changed since by adding or removing proposals is not indexed by this index.
+	 *
+	 * @param list the proposals
+	 * @return <code>true</code> if this index has been built for the given list
+	 */
+	boolean isIndexOf(List<ICompletionProposal> list) {
+		return fList == list && fProposals.length == list.size();
+	}
+
+	/**
+	 * Returns the number of proposals in the snapshot of this index.
+	 *
+	 * @return the number of proposals
+	 */
+	int size() {
+		return fProposals.length;
+	}
+
+	/**
+	 * Returns the proposal at the given position of the snapshot.
+	 *
+	 * @param position the position
+	 * @return the proposal
+	 */
+	ICompletionProposal getProposal(int position) {
+		return fProposals[position];
+	}
+
+	/**
+	 * Returns the proposals at the given positions of the snapshot, in the order of the snapshot.
+	 *
+	 * @param positions the positions
+	 * @return the proposals
+	 */
+	List<ICompletionProposal> getProposals(BitSet positions) {
+		List<ICompletionProposal> proposals= new ArrayList<>(positions.cardinality());
+		for (int i= positions.nextSetBit(0); i >= 0; i= positions.nextSetBit(i + 1))
+			proposals.add(fProposals[i]);
+		return proposals;
+	}
+
+	/**
+	 * Returns the positions of the proposals that are not indexed. These must be validated by the
+	 * means of {@link ICompletionProposalExtension2} or {@link ICompletionProposalExtension}.
+	 *
+	 * @return the positions of the proposals that are not indexed
+	 */
+	int[] getOthers() {
+		return fOthers;
+	}
+
+	/**
+	 * Returns the position of the given proposal if it is one of the proposals that are not
+	 * indexed.
+	 *
+	 * @param proposal the proposal
+	 * @return the position of the proposal, or <code>-1</code> if the proposal is indexed or not
+	 *         in the snapshot
+	 */
+	int getOtherPosition(ICompletionProposal proposal) {
+		Integer position= fOtherPositions.get(proposal);
+		return position != null ? position.intValue() : -1;
+	}
+
+	/**
+	 * Marks the positions of the indexed proposals that are valid at the given offset.
+	 *
+	 * @param document the document
+	 * @param offset the offset
+	 * @param result the set to which to add the positions of the valid proposals
+	 */
+	void findValid(IDocument document, int offset, BitSet result) {
+		for (Group group : fGroups) {
+			if (group.fStart > offset)
+				continue;
+
+			String prefix;
+			try {
+				prefix= fold(document.get(group.fStart, offset - group.fStart));
+			} catch (BadLocationException x) {
+				continue;
+			}
+
+			String[] keys= group.fKeys;
+			int i= Arrays.binarySearch(keys, prefix);
+			if (i < 0)
+				i= -(i + 1);
+			else
+				while (i > 0 && keys[i - 1].equals(prefix))
+					i--;
+			for (; i < keys.length && keys[i].startsWith(prefix); i++)
+				result.set(group.fPositions[i]);
+		}
+	}
+
+	/**
+	 * Folds the case of the given text the same way as {@link String#CASE_INSENSITIVE_ORDER}.
+	 *
+	 * @param text the text
+	 * @return the folded text
+	 */
+	private static String fold(String text) {
+		char[] chars= text.toCharArray();
+		for (int i= 0; i < chars.length; i++)
+			chars[i]= Character.toLowerCase(Character.toUpperCase(chars[i]));
+		return new String(chars);
+	}
+}
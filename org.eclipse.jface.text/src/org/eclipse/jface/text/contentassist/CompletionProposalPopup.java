@@ -17,6 +17,7 @@ package org.eclipse.jface.text.contentassist;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 
@@ -333,6 +334,12 @@ class CompletionProposalPopup implements IContentAssistListener {
 	 * @since 3.1
 	 */
 	private boolean fIsFilteredSubset;
+	/**
+	 * The index of the computed proposals that implement {@link ICompletionProposalExtension8},
+	 * or <code>null</code> if it has not been built or no proposal can be indexed.
+	 * @since 3.12
+	 */
+	private CompletionProposalIndex fProposalIndex;
 	/**
 	 * The filter runnable.
 	 *
@@ -1122,6 +1129,7 @@ class CompletionProposalPopup implements IContentAssistListener {
 
 		fFilteredProposals= null;
 		fComputedProposals= null;
+		fProposalIndex= null;
 
 		fContentAssistant.possibleCompletionsClosed();
 	}
@@ -1492,6 +1500,31 @@ class CompletionProposalPopup implements IContentAssistListener {
 			return fComputedProposals;
 		}
 
+		IDocument document= fContentAssistSubjectControlAdapter.getDocument();
+		boolean isIndexCurrent= fProposalIndex != null && fProposalIndex.isIndexOf(fComputedProposals);
+		if (!isIndexCurrent)
+			fProposalIndex= CompletionProposalIndex.create(fComputedProposals);
+		if (fProposalIndex != null) {
+			// the index finds the valid proposals among all computed ones in their original order
+			fIsFilteredSubset= offset >= fFilterOffset;
+			BitSet valid= new BitSet(fProposalIndex.size());
+			fProposalIndex.findValid(document, offset, valid);
+			if (fIsFilteredSubset && isIndexCurrent && fFilteredProposals != null) {
+				// only the proposals that are not indexed and still shown can stay valid
+				for (ICompletionProposal proposal : fFilteredProposals) {
+					int position= fProposalIndex.getOtherPosition(proposal);
+					if (position >= 0 && isValid(proposal, document, offset, event))
+						valid.set(position);
+				}
+			} else {
+				for (int position : fProposalIndex.getOthers()) {
+					if (isValid(fProposalIndex.getProposal(position), document, offset, event))
+						valid.set(position);
+				}
+			}
+			return fProposalIndex.getProposals(valid);
+		}
+
 		List<ICompletionProposal> proposals;
 		if (offset < fFilterOffset) {
 			proposals= fComputedProposals;
@@ -1506,29 +1539,13 @@ class CompletionProposalPopup implements IContentAssistListener {
 			return null;
 		}
 
-		IDocument document= fContentAssistSubjectControlAdapter.getDocument();
 		int length= proposals.size();
 		List<ICompletionProposal> filtered= new ArrayList<>(length);
 		for (ICompletionProposal proposal : proposals) {
 
-			if (proposal instanceof ICompletionProposalExtension2) {
-
-				ICompletionProposalExtension2 p= (ICompletionProposalExtension2) proposal;
-				try {
-					if (p.validate(document, offset, event))
-						filtered.add(proposal);
-				} catch (RuntimeException e) {
-					// Make sure that poorly behaved completion proposers do not break filtering.
-				}
-			} else if (proposal instanceof ICompletionProposalExtension) {
-
-				ICompletionProposalExtension p= (ICompletionProposalExtension) proposal;
-				try {
-					if (p.isValidFor(document, offset))
-						filtered.add(proposal);
-				} catch (RuntimeException e) {
-					// Make sure that poorly behaved completion proposers do not break filtering.
-				}
+			if (proposal instanceof ICompletionProposalExtension2 || proposal instanceof ICompletionProposalExtension) {
+				if (isValid(proposal, document, offset, event))
+					filtered.add(proposal);
 			} else {
 				// restore original behavior
 				fIsFilteredSubset= false;
@@ -1542,6 +1559,28 @@ class CompletionProposalPopup implements IContentAssistListener {
 		return filtered;
 	}
 
+	/**
+	 * Returns whether the given proposal is still valid at the given offset. The proposal must
+	 * implement {@link ICompletionProposalExtension2} or {@link ICompletionProposalExtension}.
+	 *
+	 * @param proposal the proposal
+	 * @param document the document
+	 * @param offset the offset
+	 * @param event the merged document event
+	 * @return <code>true</code> if the proposal is valid
+	 * @since 3.12
+	 */
+	private static boolean isValid(ICompletionProposal proposal, IDocument document, int offset, DocumentEvent event) {
+		try {
+			if (proposal instanceof ICompletionProposalExtension2)
+				return ((ICompletionProposalExtension2) proposal).validate(document, offset, event);
+			return ((ICompletionProposalExtension) proposal).isValidFor(document, offset);
+		} catch (RuntimeException e) {
+			// Make sure that poorly behaved completion proposers do not break filtering.
+			return false;
+		}
+	}
+
 	/**
 	 * Requests the proposal shell to take focus.
 	 *
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.contentassist;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Provides the executor on which asynchronous content assistants compute their proposals unless
+ * they have been {@link ContentAssistant#setAsynchronousExecutor(java.util.concurrent.Executor)
+ * configured} otherwise, and the timer that enforces the time budgets of the processors.
+ * <p>
+ * The default executor runs the processors on a bounded number of daemon worker threads which
+ * terminate after they have been idle for a while, so a slow processor neither competes with the
+ * common fork-join pool nor makes the number of threads grow. The maximum number of workers can be
+ * configured with the <code>org.eclipse.jface.text.contentassist.maxThreads</code> system
+ * property.
+ * </p>
+ *
+ * @since 3.12
+ */
+final class ContentAssistExecutor {
+
+	/** The time in milliseconds after which an idle worker terminates. */
+	private static final long IDLE_TIMEOUT= 30000;
+
+	/** The maximum number of workers. */
+	private static final int MAX_WORKERS= Math.max(1, Integer.getInteger("org.eclipse.jface.text.contentassist.maxThreads", //$NON-NLS-1$
+			Math.min(4, Runtime.getRuntime().availableProcessors())).intValue());
+
+	private static Executor fgDefault;
+
+	private static ScheduledThreadPoolExecutor fgTimer;
+
+	private ContentAssistExecutor() {
+	}
+
+	/**
+	 * Returns the shared executor for the content assist processors.
+	 *
+	 * @return the shared executor
+	 */
+	static synchronized Executor getDefault() {
+		if (fgDefault == null) {
+			ThreadPoolExecutor executor= new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, IDLE_TIMEOUT, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), createThreadFactory("Content Assist Worker ")); //$NON-NLS-1$
+			executor.allowCoreThreadTimeOut(true);
+			fgDefault= executor;
+		}
+		return fgDefault;
+	}
+
+	/**
+	 * Runs the given action once the given delay has expired. The action must be short as all
+	 * actions share one timer thread.
+	 *
+	 * @param action the action
+	 * @param delay the delay in milliseconds
+	 * @return the future with which the action can be cancelled
+	 */
+	static synchronized ScheduledFuture<?> schedule(Runnable action, long delay) {
+		if (fgTimer == null) {
+			fgTimer= new ScheduledThreadPoolExecutor(1, createThreadFactory("Content Assist Timer ")); //$NON-NLS-1$
+			fgTimer.setKeepAliveTime(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+			fgTimer.allowCoreThreadTimeOut(true);
+			fgTimer.setRemoveOnCancelPolicy(true);
+		}
+		return fgTimer.schedule(action, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private static ThreadFactory createThreadFactory(String name) {
+		AtomicInteger count= new AtomicInteger();
+		return runnable -> {
+			Thread thread= new Thread(runnable, name + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -20,6 +20,9 @@ import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTError;
@@ -901,6 +904,14 @@ public class ContentAssistant implements IContentAssistant, IContentAssistantExt
 	public static final int WIDGET_PRIORITY= 20;
 	private static final int DEFAULT_AUTO_ACTIVATION_DELAY= 500;
 
+	/**
+	 * The default time in milliseconds each processor may take to compute its proposals
+	 * asynchronously, <code>0</code> for no limit.
+	 *
+	 * @since 3.12
+	 */
+	private static final long DEFAULT_ASYNCHRONOUS_PROCESSOR_TIMEOUT= 0;
+
 	private static final String COMPLETION_ERROR_MESSAGE_KEY= "ContentAssistant.error_computing_completion"; //$NON-NLS-1$
 	private static final String CONTEXT_ERROR_MESSAGE_KEY= "ContentAssistant.error_computing_context"; //$NON-NLS-1$
 
@@ -1053,6 +1064,29 @@ public class ContentAssistant implements IContentAssistant, IContentAssistantExt
 	 */
 	private boolean fAsynchronous;
 
+	/**
+	 * The executor on which the processors compute their proposals asynchronously, or
+	 * <code>null</code> for the shared executor.
+	 *
+	 * @since 3.12
+	 */
+	private Executor fAsynchronousExecutor;
+
+	/**
+	 * The time in milliseconds each processor may take to compute its proposals asynchronously,
+	 * or <code>0</code> for no limit.
+	 *
+	 * @since 3.12
+	 */
+	private long fAsynchronousProcessorTimeout= DEFAULT_ASYNCHRONOUS_PROCESSOR_TIMEOUT;
+
+	/**
+	 * The average latencies of the processors in nanoseconds, guarded by itself.
+	 *
+	 * @since 3.12
+	 */
+	private final Map<IContentAssistProcessor, Long> fProcessorLatencies= new WeakHashMap<>();
+
 	/**
 	 * Creates a new content assistant. The content assistant is not automatically activated,
 	 * overlays the completion proposals with context information list if necessary, and shows the
@@ -2690,4 +2724,83 @@ public class ContentAssistant implements IContentAssistant, IContentAssistantExt
 			fProposalPopup.setSorter(fSorter);
 		}
 	}
+
+	/**
+	 * Sets the executor on which the processors compute their proposals if this content assistant
+	 * is asynchronous. By default, a shared executor with a bounded number of threads is used.
+	 *
+	 * @param executor the executor, or <code>null</code> to use the shared executor
+	 * @since 3.12
+	 */
+	public void setAsynchronousExecutor(Executor executor) {
+		fAsynchronousExecutor= executor;
+	}
+
+	/**
+	 * Returns the executor on which the processors compute their proposals asynchronously.
+	 *
+	 * @return the executor
+	 * @since 3.12
+	 */
+	Executor getAsynchronousExecutor() {
+		return fAsynchronousExecutor != null ? fAsynchronousExecutor : ContentAssistExecutor.getDefault();
+	}
+
+	/**
+	 * Sets the time each processor may take to compute its proposals if this content assistant is
+	 * asynchronous. The proposals of a processor that has not finished in time are dropped, and
+	 * the proposals of the other processors are shown. The thread of the late processor is not
+	 * interrupted. By default, there is no limit.
+	 *
+	 * @param timeout the time budget of each processor in milliseconds, or <code>0</code> for no
+	 *            limit
+	 * @since 3.12
+	 */
+	public void setAsynchronousProcessorTimeout(long timeout) {
+		Assert.isLegal(timeout >= 0);
+		fAsynchronousProcessorTimeout= timeout;
+	}
+
+	/**
+	 * Returns the time each processor may take to compute its proposals asynchronously.
+	 *
+	 * @return the time budget of each processor in milliseconds, or <code>0</code> for no limit
+	 * @since 3.12
+	 */
+	long getAsynchronousProcessorTimeout() {
+		return fAsynchronousProcessorTimeout;
+	}
+
+	/**
+	 * Returns the average time the given processor has recently taken to compute its proposals
+	 * asynchronously. A processor that ran out of its time budget counts with the budget. This
+	 * can be used to tune the {@link #setAsynchronousProcessorTimeout(long) time budget}.
+	 *
+	 * @param processor the processor
+	 * @return the average latency in milliseconds, or <code>-1</code> if the processor has not
+	 *         yet computed proposals asynchronously for this content assistant
+	 * @since 3.12
+	 */
+	public long getProcessorLatency(IContentAssistProcessor processor) {
+		Long latency;
+		synchronized (fProcessorLatencies) {
+			latency= fProcessorLatencies.get(processor);
+		}
+		return latency != null ? TimeUnit.NANOSECONDS.toMillis(latency.longValue()) : -1;
+	}
+
+	/**
+	 * Records the time the given processor has taken to compute its proposals asynchronously.
+	 * Recent measurements weigh more than older ones.
+	 *
+	 * @param processor the processor
+	 * @param latency the latency in nanoseconds
+	 * @since 3.12
+	 */
+	void recordProcessorLatency(IContentAssistProcessor processor, long latency) {
+		synchronized (fProcessorLatencies) {
+			Long average= fProcessorLatencies.get(processor);
+			fProcessorLatencies.put(processor, Long.valueOf(average == null ? latency : (3 * average.longValue() + latency) / 4));
+		}
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -72,6 +72,12 @@ import org.eclipse.jface.text.IDocument;
  *				current caret offset.</li>
  *			</ul>
  * </li>
+ * <li>{@link org.eclipse.jface.text.contentassist.ICompletionProposalExtension8} since version 3.12 introducing
+ *		the following function:
+ *			<ul>
+ *				<li>Filter the proposals by a stable prefix without validating each proposal.</li>
+ *			</ul>
+ * </li>
  * </ul>
  * </p>
  * <p>
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.contentassist;
+
+/**
+ * Extends the functionality of {@link org.eclipse.jface.text.contentassist.ICompletionProposal}
+ * with the following function:
+ * <ul>
+ * <li>Filter the proposals by a stable prefix without validating each proposal.</li>
+ * </ul>
+ * <p>
+ * A proposal implementing this interface is valid at an offset if, ignoring case, the document
+ * text between its {@link #getPrefixFilterStart() filter start} and that offset is a prefix of its
+ * {@link #getPrefixFilterText() filter text}. Neither value may change while the proposal is
+ * shown. The proposal popup can then narrow large lists of proposals by means of an index while
+ * the user types, instead of asking every proposal whether it is still
+ * {@link ICompletionProposalExtension2#validate(org.eclipse.jface.text.IDocument, int, org.eclipse.jface.text.DocumentEvent)
+ * valid}; proposals implementing this interface are not validated by other means.
+ * </p>
+ *
+ * @since 3.12
+ */
+public interface ICompletionProposalExtension8 {
+
+	/**
+	 * Returns the document offset at which the text that filters this proposal starts, usually
+	 * the start of the token that is completed.
+	 *
+	 * @return the offset at which the filter text starts
+	 */
+	int getPrefixFilterStart();
+
+	/**
+	 * Returns the text by which this proposal is filtered, usually the text that would be inserted
+	 * at the {@link #getPrefixFilterStart() filter start}.
+	 *
+	 * @return the filter text, not <code>null</code>
+	 */
+	String getPrefixFilterText();
+}
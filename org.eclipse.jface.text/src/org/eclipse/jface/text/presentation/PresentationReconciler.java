@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,11 +11,14 @@
 
 package org.eclipse.jface.text.presentation;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledText;
 
 import org.eclipse.core.runtime.Assert;
 
@@ -37,6 +40,8 @@ import org.eclipse.jface.text.ITextListener;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.ITextViewerExtension5;
 import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.IViewportListener;
+import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextEvent;
 import org.eclipse.jface.text.TextPresentation;
@@ -49,9 +54,10 @@ import org.eclipse.jface.text.TypedPosition;
  * Standard implementation of <code>IPresentationReconciler</code>. This
  * implementation assumes that the tasks performed by its presentation damagers
  * and repairers are lightweight and of low cost. This presentation reconciler
- * runs in the UI thread and always repairs the complete damage caused by a
+ * runs in the UI thread and by default always repairs the complete damage caused by a
  * document change rather than just the portion overlapping with the viewer's
- * viewport.
+ * viewport. See {@link #setRepairViewportFirst(boolean)} for repairing large damage
+ * outside the viewport later.
  * <p>
  * Usually, clients instantiate this class and configure it before using it.
  * </p>
@@ -61,12 +67,29 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 	/** Prefix of the name of the position category for tracking damage regions. */
 	protected final static String TRACKED_PARTITION= "__reconciler_tracked_partition"; //$NON-NLS-1$
 
+	/**
+	 * The minimum length of a damage of which the part outside the viewport is repaired later
+	 * when the visible range is repaired first.
+	 * @since 3.12
+	 */
+	private static final int MIN_DEFERRED_DAMAGE= 10000;
+	/**
+	 * The length of the slices in which deferred damage is repaired. Slices end at line ends.
+	 * @since 3.12
+	 */
+	private static final int SLICE_LENGTH= 4096;
+	/**
+	 * The time in milliseconds that may be spent on repairing deferred damage at once.
+	 * @since 3.12
+	 */
+	private static final long SLICE_BUDGET= 8;
+
 
 	/**
 	 * Internal listener class.
 	 */
 	class InternalListener implements
-			ITextInputListener, IDocumentListener, ITextListener,
+			ITextInputListener, IDocumentListener, ITextListener, IViewportListener,
 			IDocumentPartitioningListener, IDocumentPartitioningListenerExtension, IDocumentPartitioningListenerExtension2 {
 
 		/** Set to <code>true</code> if between a document about to be changed and a changed event. */
@@ -89,6 +112,12 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 					oldDocument.removePositionUpdater(fPositionUpdater);
 					oldDocument.removePositionCategory(fPositionCategory);
 
+					if (fRepairViewportFirst) {
+						fDeferredDamage.clear();
+						oldDocument.removePositionUpdater(fDeferredDamageUpdater);
+						oldDocument.removePositionCategory(fDeferredDamageCategory);
+					}
+
 				} catch (BadPositionCategoryException x) {
 					// should not happened for former input documents;
 				}
@@ -109,6 +138,11 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 				newDocument.addPositionCategory(fPositionCategory);
 				newDocument.addPositionUpdater(fPositionUpdater);
 
+				if (fRepairViewportFirst) {
+					newDocument.addPositionCategory(fDeferredDamageCategory);
+					newDocument.addPositionUpdater(fDeferredDamageUpdater);
+				}
+
 				newDocument.addDocumentPartitioningListener(this);
 				newDocument.addDocumentListener(this);
 				fViewer.addTextListener(this);
@@ -215,6 +249,12 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 			fChangedDocumentPartitions= null;
 		}
 
+		@Override
+		public void viewportChanged(int verticalOffset) {
+			if (fCachedRedrawState)
+				repairVisibleDeferredDamage();
+		}
+
 		/**
 		 * Translates the given text event into the corresponding range of the viewer's document.
 		 *
@@ -262,6 +302,32 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 	 * @since 3.0
 	 */
 	private String fPartitioning;
+	/**
+	 * Tells whether the visible range of large damage is repaired first.
+	 * @since 3.12
+	 */
+	private boolean fRepairViewportFirst= false;
+	/**
+	 * The damage that remains to be repaired, as positions of the
+	 * {@link #fDeferredDamageCategory} category.
+	 * @since 3.12
+	 */
+	private final List<Position> fDeferredDamage= new ArrayList<>();
+	/**
+	 * The name of the position category to track deferred damage.
+	 * @since 3.12
+	 */
+	private String fDeferredDamageCategory;
+	/**
+	 * The position updater for the deferred damage.
+	 * @since 3.12
+	 */
+	private IPositionUpdater fDeferredDamageUpdater;
+	/**
+	 * Tells whether repairing the deferred damage has been scheduled.
+	 * @since 3.12
+	 */
+	private boolean fIsRepairScheduled= false;
 
 	/**
 	 * Creates a new presentation reconciler. There are no damagers or repairers
@@ -273,6 +339,8 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 		fPartitioning= IDocumentExtension3.DEFAULT_PARTITIONING;
 		fPositionCategory= TRACKED_PARTITION + hashCode();
 		fPositionUpdater= new DefaultPositionUpdater(fPositionCategory);
+		fDeferredDamageCategory= fPositionCategory + ".deferred"; //$NON-NLS-1$
+		fDeferredDamageUpdater= new DefaultPositionUpdater(fDeferredDamageCategory);
 	}
 
 	/**
@@ -295,6 +363,22 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 		return fPartitioning;
 	}
 
+	/**
+	 * Tells this presentation reconciler whether to repair the visible range of a large damage
+	 * first. The rest of the damage is then repaired in short slices in the UI thread, and when it
+	 * is scrolled into view. This keeps changes responsive that affect the presentation of
+	 * large parts of a document, such as opening a multi-line comment.
+	 * <p>
+	 * This must be called before the presentation reconciler is installed.
+	 * </p>
+	 *
+	 * @param repairViewportFirst <code>true</code> to repair the visible range first
+	 * @since 3.12
+	 */
+	public void setRepairViewportFirst(boolean repairViewportFirst) {
+		fRepairViewportFirst= repairViewportFirst;
+	}
+
 	/**
 	 * Registers the given presentation damager for a particular content type.
 	 * If there is already a damager registered for this type, the old damager
@@ -343,6 +427,8 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 
 		fViewer= viewer;
 		fViewer.addTextInputListener(fInternalListener);
+		if (fRepairViewportFirst)
+			fViewer.addViewportListener(fInternalListener);
 
 		IDocument document= viewer.getDocument();
 		if (document != null)
@@ -352,6 +438,8 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 	@Override
 	public void uninstall() {
 		fViewer.removeTextInputListener(fInternalListener);
+		if (fRepairViewportFirst)
+			fViewer.removeViewportListener(fInternalListener);
 
 		// Ensure we uninstall all listeners
 		fInternalListener.inputDocumentAboutToBeChanged(fViewer.getDocument(), null);
@@ -543,12 +631,252 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 	 */
 	private void processDamage(IRegion damage, IDocument document) {
 		if (damage != null && damage.getLength() > 0) {
+			if (fRepairViewportFirst && damage.getLength() >= MIN_DEFERRED_DAMAGE && deferDamage(damage, document))
+				return;
 			TextPresentation p= createPresentation(damage, document);
 			if (p != null)
 				applyTextRegionCollection(p);
 		}
 	}
 
+	/**
+	 * Repairs the part of the given damage that is visible in the viewer, and defers the rest.
+	 *
+	 * @param damage the damage to be repaired
+	 * @param document the document whose presentation must be repaired
+	 * @return <code>false</code> if the visible range is unknown and nothing has been done
+	 * @since 3.12
+	 */
+	private boolean deferDamage(IRegion damage, IDocument document) {
+		IRegion viewport= getViewport(document);
+		if (viewport == null)
+			return false;
+
+		int start= damage.getOffset();
+		int end= start + damage.getLength();
+		int visibleStart= Math.max(start, viewport.getOffset());
+		int visibleEnd= Math.min(end, viewport.getOffset() + viewport.getLength());
+		if (visibleStart < visibleEnd) {
+			TextPresentation p= createPresentation(new Region(visibleStart, visibleEnd - visibleStart), document);
+			if (p != null)
+				applyTextRegionCollection(p);
+		} else {
+			// the damage is either before or after the viewport
+			visibleStart= visibleEnd= Math.min(visibleStart, end);
+		}
+
+		addDeferredDamage(start, visibleStart, document);
+		addDeferredDamage(visibleEnd, end, document);
+		scheduleRepair();
+		return true;
+	}
+
+	/**
+	 * Returns the range of the lines that are visible in the viewer.
+	 *
+	 * @param document the viewer's document
+	 * @return the visible range or <code>null</code> if unknown
+	 * @since 3.12
+	 */
+	private IRegion getViewport(IDocument document) {
+		StyledText textWidget= fViewer.getTextWidget();
+		if (textWidget == null || textWidget.isDisposed())
+			return null;
+
+		try {
+			int top= fViewer.getTopIndexStartOffset();
+			int bottom= fViewer.getBottomIndexEndOffset();
+			if (top < 0 || bottom < top || bottom > document.getLength())
+				return null;
+			int start= document.getLineOffset(document.getLineOfOffset(top));
+			int end= getNextLineOffset(document, bottom);
+			return new Region(start, end - start);
+		} catch (BadLocationException x) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the offset of the line after the line at the given offset, or the document length
+	 * for the last line.
+	 *
+	 * @param document the document
+	 * @param offset the offset
+	 * @return the offset of the next line
+	 * @throws BadLocationException if the offset is invalid in the given document
+	 * @since 3.12
+	 */
+	private static int getNextLineOffset(IDocument document, int offset) throws BadLocationException {
+		int line= document.getLineOfOffset(offset) + 1;
+		return line < document.getNumberOfLines() ? document.getLineOffset(line) : document.getLength();
+	}
+
+	/**
+	 * Adds the given range to the deferred damage, merging it with overlapping deferred damage.
+	 *
+	 * @param start the start offset of the range
+	 * @param end the end offset of the range, exclusive
+	 * @param document the document whose presentation must be repaired
+	 * @since 3.12
+	 */
+	private void addDeferredDamage(int start, int end, IDocument document) {
+		if (start >= end)
+			return;
+
+		for (Iterator<Position> e= fDeferredDamage.iterator(); e.hasNext();) {
+			Position p= e.next();
+			if (p.isDeleted() || p.getOffset() <= end && start <= p.getOffset() + p.getLength()) {
+				start= Math.min(start, p.getOffset());
+				end= Math.max(end, p.getOffset() + p.getLength());
+				e.remove();
+				removeDeferredDamage(p, document);
+			}
+		}
+
+		Position position= new Position(start, end - start);
+		try {
+			document.addPosition(fDeferredDamageCategory, position);
+			fDeferredDamage.add(position);
+		} catch (BadLocationException x) {
+			// the damage is outside the document
+		} catch (BadPositionCategoryException x) {
+			// should not happen on input documents
+		}
+	}
+
+	/**
+	 * Removes the given deferred damage from the document.
+	 *
+	 * @param position the deferred damage
+	 * @param document the document
+	 * @since 3.12
+	 */
+	private void removeDeferredDamage(Position position, IDocument document) {
+		try {
+			document.removePosition(fDeferredDamageCategory, position);
+		} catch (BadPositionCategoryException x) {
+			// should not happen on input documents
+		}
+	}
+
+	/**
+	 * Schedules repairing a slice of the deferred damage in the UI thread.
+	 *
+	 * @since 3.12
+	 */
+	private void scheduleRepair() {
+		if (fIsRepairScheduled || fDeferredDamage.isEmpty())
+			return;
+
+		StyledText textWidget= fViewer.getTextWidget();
+		if (textWidget == null || textWidget.isDisposed())
+			return;
+
+		fIsRepairScheduled= true;
+		textWidget.getDisplay().asyncExec(() -> {
+			fIsRepairScheduled= false;
+			StyledText widget= fViewer.getTextWidget();
+			if (widget != null && !widget.isDisposed())
+				repairDeferredDamage();
+		});
+	}
+
+	/**
+	 * Repairs slices of the deferred damage for at most {@link #SLICE_BUDGET} milliseconds,
+	 * starting with the damage closest to the viewport, and schedules repairing the rest.
+	 *
+	 * @since 3.12
+	 */
+	private void repairDeferredDamage() {
+		IDocument document= fViewer.getDocument();
+		if (document == null || !fInternalListener.fCachedRedrawState) {
+			// the whole document is damaged when redraw is turned on again
+			return;
+		}
+
+		long end= System.currentTimeMillis() + SLICE_BUDGET;
+		int top= Math.max(fViewer.getTopIndexStartOffset(), 0);
+		do {
+			Position next= null;
+			int distance= Integer.MAX_VALUE;
+			for (Iterator<Position> e= fDeferredDamage.iterator(); e.hasNext();) {
+				Position p= e.next();
+				if (p.isDeleted() || p.getLength() == 0) {
+					e.remove();
+					removeDeferredDamage(p, document);
+					continue;
+				}
+				int d= p.getOffset() + p.getLength() <= top ? top - p.getOffset() - p.getLength() : Math.max(p.getOffset() - top, 0);
+				if (d < distance) {
+					next= p;
+					distance= d;
+				}
+			}
+			if (next == null)
+				break;
+
+			int start= Math.min(next.getOffset(), document.getLength());
+			int damageEnd= Math.min(next.getOffset() + next.getLength(), document.getLength());
+			int sliceEnd= damageEnd;
+			try {
+				if (sliceEnd - start > SLICE_LENGTH)
+					sliceEnd= Math.min(getNextLineOffset(document, start + SLICE_LENGTH), damageEnd);
+			} catch (BadLocationException x) {
+				// cannot happen, the offset is inside the document
+			}
+
+			if (start < sliceEnd) {
+				TextPresentation p= createPresentation(new Region(start, sliceEnd - start), document);
+				if (p != null)
+					applyTextRegionCollection(p);
+			}
+
+			if (sliceEnd < damageEnd) {
+				next.setOffset(sliceEnd);
+				next.setLength(damageEnd - sliceEnd);
+			} else {
+				fDeferredDamage.remove(next);
+				removeDeferredDamage(next, document);
+			}
+		} while (System.currentTimeMillis() < end);
+
+		scheduleRepair();
+	}
+
+	/**
+	 * Repairs the deferred damage that is visible in the viewer.
+	 *
+	 * @since 3.12
+	 */
+	private void repairVisibleDeferredDamage() {
+		IDocument document= fViewer.getDocument();
+		if (document == null || fDeferredDamage.isEmpty())
+			return;
+
+		IRegion viewport= getViewport(document);
+		if (viewport == null)
+			return;
+
+		int visibleStart= viewport.getOffset();
+		int visibleEnd= visibleStart + viewport.getLength();
+		for (Position p : new ArrayList<>(fDeferredDamage)) {
+			int start= p.getOffset();
+			int end= start + p.getLength();
+			if (p.isDeleted() || end <= visibleStart || visibleEnd <= start)
+				continue;
+
+			fDeferredDamage.remove(p);
+			removeDeferredDamage(p, document);
+			int repairStart= Math.max(start, visibleStart);
+			int repairEnd= Math.min(end, visibleEnd);
+			TextPresentation presentation= createPresentation(new Region(repairStart, repairEnd - repairStart), document);
+			if (presentation != null)
+				applyTextRegionCollection(presentation);
+			addDeferredDamage(start, repairStart, document);
+			addDeferredDamage(repairEnd, end, document);
+		}
+	}
+
 	/**
 	 * Applies the given text presentation to the text viewer the presentation
 	 * reconciler is installed on.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,10 @@
  *******************************************************************************/
 package org.eclipse.jface.text.reconciler;
 
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.events.FocusEvent;
+import org.eclipse.swt.events.FocusListener;
+
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -36,6 +40,11 @@ import org.eclipse.jface.text.ITextViewer;
  * It is the clients responsibility to stop a reconciler using its {@link #uninstall()}
  * method. Unstopped reconcilers do not free their resources.
  * <p>
+ * By default, each reconciler runs in its own background thread. Reconcilers can instead use
+ * a bounded number of threads shared with other reconcilers, see
+ * {@link #setUseSharedExecutor(boolean)}.
+ * </p>
+ * <p>
  * It is subclass responsibility to specify how dirty regions are processed.
  * </p>
  *
@@ -47,10 +56,68 @@ import org.eclipse.jface.text.ITextViewer;
 abstract public class AbstractReconciler implements IReconciler {
 
 
+	/**
+	 * The background activity of a reconciler, either a {@link BackgroundThread} or a
+	 * {@link SharedBackgroundActivity}.
+	 *
+	 * @since 3.12
+	 */
+	interface IBackgroundActivity {
+
+		/**
+		 * Returns whether a reconciling strategy is active right now.
+		 *
+		 * @return <code>true</code> if a activity is active
+		 */
+		boolean isActive();
+
+		/**
+		 * Returns whether some changes need to be processed.
+		 *
+		 * @return <code>true</code> if changes wait to be processed
+		 */
+		boolean isDirty();
+
+		/**
+		 * Returns whether the background activity has been started and has not terminated.
+		 *
+		 * @return <code>true</code> if the background activity is alive
+		 */
+		boolean isAlive();
+
+		/**
+		 * Tells whether the code is running in this background activity.
+		 *
+		 * @return <code>true</code> if the current thread runs this background activity
+		 */
+		boolean isCurrentThread();
+
+		/**
+		 * Starts the background activity.
+		 */
+		void start();
+
+		/**
+		 * Cancels the background activity.
+		 */
+		void cancel();
+
+		/**
+		 * Suspends the caller of this method until this background activity has
+		 * emptied the dirty region queue.
+		 */
+		void suspendCallerWhileDirty();
+
+		/**
+		 * Reset the background activity as the text viewer has been changed,
+		 */
+		void reset();
+	}
+
 	/**
 	 * Background thread for the reconciling activity.
 	 */
-	class BackgroundThread extends Thread {
+	class BackgroundThread extends Thread implements IBackgroundActivity {
 
 		/** Has the reconciler been canceled. */
 		private boolean fCanceled= false;
@@ -78,6 +145,7 @@ abstract public class AbstractReconciler implements IReconciler {
 		 *
 		 * @return <code>true</code> if a activity is active
 		 */
+		@Override
 		public boolean isActive() {
 			return fIsActive;
 		}
@@ -88,13 +156,20 @@ abstract public class AbstractReconciler implements IReconciler {
 		 * @return <code>true</code> if changes wait to be processed
 		 * @since 3.0
 		 */
+		@Override
 		public synchronized boolean isDirty() {
 			return fIsDirty;
 		}
 
+		@Override
+		public boolean isCurrentThread() {
+			return Thread.currentThread() == this;
+		}
+
 		/**
 		 * Cancels the background thread.
 		 */
+		@Override
 		public void cancel() {
 			fCanceled= true;
 			IProgressMonitor pm= fProgressMonitor;
@@ -109,24 +184,15 @@ abstract public class AbstractReconciler implements IReconciler {
 		 * Suspends the caller of this method until this background thread has
 		 * emptied the dirty region queue.
 		 */
+		@Override
 		public void suspendCallerWhileDirty() {
-			boolean isDirty;
-			do {
-				synchronized (fDirtyRegionQueue) {
-					isDirty= fDirtyRegionQueue.getSize() > 0;
-					if (isDirty) {
-						try {
-							fDirtyRegionQueue.wait();
-						} catch (InterruptedException x) {
-						}
-					}
-				}
-			} while (isDirty);
+			waitWhileDirty();
 		}
 
 		/**
 		 * Reset the background thread as the text viewer has been changed,
 		 */
+		@Override
 		public void reset() {
 
 			if (fDelay > 0) {
@@ -220,6 +286,174 @@ abstract public class AbstractReconciler implements IReconciler {
 		}
 	}
 
+	/**
+	 * The reconciling activity of a reconciler that uses the shared executor. It runs on the
+	 * threads of the {@link ReconcilerScheduler} and follows the delay semantics of the
+	 * {@link BackgroundThread}: the dirty regions are processed after there have been no further
+	 * changes for the configured delay. The activity of the focused viewer has the highest
+	 * priority, followed by the ones of the most recently focused viewers.
+	 *
+	 * @since 3.12
+	 */
+	class SharedBackgroundActivity extends ReconcilerScheduler.Task implements IBackgroundActivity, FocusListener {
+
+		/** Has the reconciler been canceled. */
+		private volatile boolean fCanceled= false;
+		/** Has the activity been started. */
+		private volatile boolean fStarted= false;
+		/** Some changes need to be processed. */
+		private boolean fIsDirty= false;
+		/** Is a reconciling strategy active. */
+		private volatile boolean fIsActive= false;
+		/** Has {@link AbstractReconciler#initialProcess()} been called. */
+		private boolean fIsInitialized= false;
+		/** The thread that runs this activity right now, or <code>null</code>. */
+		private volatile Thread fRunner;
+		/** Does the text widget have the focus. */
+		private volatile boolean fHasFocus= false;
+		/** The time when the text widget lost the focus. */
+		private volatile long fFocusTime= 0;
+		/** The text widget whose focus is tracked. */
+		private StyledText fTextWidget;
+
+		/**
+		 * Tracks the focus of the given text widget, which determines the priority of this
+		 * activity. Must be called in the UI thread.
+		 *
+		 * @param textWidget the text widget or <code>null</code>
+		 */
+		void connect(StyledText textWidget) {
+			if (textWidget == null || textWidget.isDisposed())
+				return;
+			fTextWidget= textWidget;
+			fTextWidget.addFocusListener(this);
+			fHasFocus= fTextWidget.isFocusControl();
+		}
+
+		/**
+		 * Stops tracking the focus of the text widget.
+		 */
+		void disconnect() {
+			if (fTextWidget != null && !fTextWidget.isDisposed())
+				fTextWidget.removeFocusListener(this);
+			fTextWidget= null;
+		}
+
+		@Override
+		public void focusGained(FocusEvent e) {
+			fHasFocus= true;
+		}
+
+		@Override
+		public void focusLost(FocusEvent e) {
+			fHasFocus= false;
+			fFocusTime= System.currentTimeMillis();
+		}
+
+		@Override
+		long getPriority() {
+			return fHasFocus ? Long.MAX_VALUE : fFocusTime;
+		}
+
+		@Override
+		public boolean isActive() {
+			return fIsActive;
+		}
+
+		@Override
+		public synchronized boolean isDirty() {
+			return fIsDirty;
+		}
+
+		@Override
+		public boolean isAlive() {
+			return fStarted && !fCanceled;
+		}
+
+		@Override
+		public boolean isCurrentThread() {
+			return Thread.currentThread() == fRunner;
+		}
+
+		@Override
+		public void start() {
+			fStarted= true;
+			ReconcilerScheduler.getDefault().schedule(this, fDelay);
+		}
+
+		@Override
+		public void cancel() {
+			fCanceled= true;
+			ReconcilerScheduler.getDefault().cancel(this);
+			IProgressMonitor pm= fProgressMonitor;
+			if (pm != null)
+				pm.setCanceled(true);
+			synchronized (fDirtyRegionQueue) {
+				fDirtyRegionQueue.notifyAll();
+			}
+		}
+
+		@Override
+		public void suspendCallerWhileDirty() {
+			waitWhileDirty();
+		}
+
+		@Override
+		public void reset() {
+			synchronized (this) {
+				fIsDirty= true;
+			}
+
+			if (isAlive())
+				ReconcilerScheduler.getDefault().schedule(this, fDelay);
+
+			reconcilerReset();
+		}
+
+		/**
+		 * Processes the next dirty region, or calls {@link AbstractReconciler#initialProcess()}
+		 * when run for the first time.
+		 */
+		@Override
+		long run() {
+			if (fCanceled)
+				return -1;
+
+			fRunner= Thread.currentThread();
+			try {
+				if (!fIsInitialized) {
+					fIsInitialized= true;
+					initialProcess();
+				} else if (isDirty()) {
+					DirtyRegion r= null;
+					synchronized (fDirtyRegionQueue) {
+						r= fDirtyRegionQueue.removeNextDirtyRegion();
+					}
+
+					fIsActive= true;
+
+					fProgressMonitor.setCanceled(false);
+
+					process(r);
+
+					synchronized (fDirtyRegionQueue) {
+						if (0 == fDirtyRegionQueue.getSize()) {
+							synchronized (this) {
+								fIsDirty= fProgressMonitor.isCanceled();
+							}
+							fDirtyRegionQueue.notifyAll();
+						}
+					}
+				}
+			} finally {
+				fIsActive= false;
+				fRunner= null;
+			}
+
+			return !fCanceled && isDirty() ? fDelay : -1;
+		}
+	}
+
 	/**
 	 * Internal document listener and text input listener.
 	 */
@@ -233,7 +467,7 @@ abstract public class AbstractReconciler implements IReconciler {
 		public void documentChanged(DocumentEvent e) {
 
 			if (fThread.isActive() || !fThread.isDirty() && fThread.isAlive()) {
-				if (!fIsAllowedToModifyDocument && Thread.currentThread() == fThread)
+				if (!fIsAllowedToModifyDocument && fThread.isCurrentThread())
 					throw new UnsupportedOperationException("The reconciler thread is not allowed to modify the document"); //$NON-NLS-1$
 				aboutToBeReconciled();
 			}
@@ -297,8 +531,8 @@ abstract public class AbstractReconciler implements IReconciler {
 
 	/** Queue to manage the changes applied to the text viewer. */
 	private DirtyRegionQueue fDirtyRegionQueue;
-	/** The background thread. */
-	private BackgroundThread fThread;
+	/** The background thread or shared background activity. */
+	private IBackgroundActivity fThread;
 	/** Internal document and text input listener. */
 	private Listener fListener;
 	/** The background thread delay. */
@@ -312,6 +546,11 @@ abstract public class AbstractReconciler implements IReconciler {
 	 * @since 3.2
 	 */
 	private boolean fIsAllowedToModifyDocument= true;
+	/**
+	 * Tells whether this reconciler uses the shared executor instead of its own thread.
+	 * @since 3.12
+	 */
+	private boolean fUseSharedExecutor= false;
 
 
 	/** The text viewer's document. */
@@ -389,6 +628,23 @@ abstract public class AbstractReconciler implements IReconciler {
 		fIsAllowedToModifyDocument= isAllowedToModify;
 	}
 
+	/**
+	 * Tells the reconciler whether to run on the threads of an executor shared with other
+	 * reconcilers instead of its own background thread. The shared executor uses a bounded number
+	 * of threads and gives priority to the reconcilers of the focused and the most recently
+	 * focused text viewers. The delay and the folding of dirty regions are the same.
+	 * <p>
+	 * This must be called before the reconciler is installed. Reconciling strategies that run for
+	 * a long time or block delay other reconcilers using the shared executor.
+	 * </p>
+	 *
+	 * @param useSharedExecutor <code>true</code> to use the shared executor
+	 * @since 3.12
+	 */
+	public void setUseSharedExecutor(boolean useSharedExecutor) {
+		fUseSharedExecutor= useSharedExecutor;
+	}
+
 	/**
 	 * Sets the progress monitor of this reconciler.
 	 *
@@ -447,7 +703,13 @@ abstract public class AbstractReconciler implements IReconciler {
 		synchronized (this) {
 			if (fThread != null)
 				return;
-			fThread= new BackgroundThread(getClass().getName());
+			if (fUseSharedExecutor) {
+				SharedBackgroundActivity activity= new SharedBackgroundActivity();
+				activity.connect(textViewer.getTextWidget());
+				fThread= activity;
+			} else {
+				fThread= new BackgroundThread(getClass().getName());
+			}
 		}
 
 		fDirtyRegionQueue= new DirtyRegionQueue();
@@ -481,13 +743,35 @@ abstract public class AbstractReconciler implements IReconciler {
 
             synchronized (this) {
                 // http://dev.eclipse.org/bugs/show_bug.cgi?id=19135
-    			BackgroundThread bt= fThread;
+    			IBackgroundActivity bt= fThread;
     			fThread= null;
     			bt.cancel();
+    			if (bt instanceof SharedBackgroundActivity)
+    				((SharedBackgroundActivity)bt).disconnect();
             }
 		}
 	}
 
+	/**
+	 * Suspends the caller of this method until the dirty region queue has been emptied.
+	 *
+	 * @since 3.12
+	 */
+	private void waitWhileDirty() {
+		boolean isDirty;
+		do {
+			synchronized (fDirtyRegionQueue) {
+				isDirty= fDirtyRegionQueue.getSize() > 0;
+				if (isDirty) {
+					try {
+						fDirtyRegionQueue.wait();
+					} catch (InterruptedException x) {
+					}
+				}
+			}
+		} while (isDirty);
+	}
+
 	/**
 	 * Creates a dirty region for a document event and adds it to the queue.
 	 *
@@ -589,6 +873,7 @@ abstract public class AbstractReconciler implements IReconciler {
 	 * @since 3.4
 	 */
 	protected boolean isRunningInReconcilerThread() {
-		return Thread.currentThread() == fThread;
+		IBackgroundActivity thread= fThread;
+		return thread != null && thread.isCurrentThread();
 	}
 }
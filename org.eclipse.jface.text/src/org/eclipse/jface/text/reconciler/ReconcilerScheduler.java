@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.reconciler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+
+
+/**
+ * Runs the reconciling activities of all reconcilers that use the shared executor on a bounded
+ * number of worker threads. Each activity is a {@link Task} that is scheduled with a delay; when
+ * several tasks are due, the one with the highest priority runs first. A task never runs on two
+ * workers at the same time.
+ * <p>
+ * The workers run with minimal priority and terminate after they have been idle for a while. The
+ * maximum number of workers can be configured with the
+ * <code>org.eclipse.jface.text.reconciler.maxThreads</code> system property.
+ * </p>
+ *
+ * @see AbstractReconciler#setUseSharedExecutor(boolean)
+ * @since 3.12
+ */
+final class ReconcilerScheduler {
+
+	/**
+	 * A reconciling activity run by the scheduler.
+	 */
+	abstract static class Task {
+
+		/** The time at which the task is due, in nanoseconds. Guarded by the scheduler. */
+		private long fDueTime;
+		/** Whether the task is scheduled. Guarded by the scheduler. */
+		private boolean fScheduled;
+		/** Whether the task is running. Guarded by the scheduler. */
+		private boolean fRunning;
+
+		/**
+		 * Returns the priority of this task. Of the tasks that are due, the one with the highest
+		 * priority is run first.
+		 *
+		 * @return the priority of this task
+		 */
+		abstract long getPriority();
+
+		/**
+		 * Runs one step of this task.
+		 *
+		 * @return the delay in milliseconds after which to run this task again, or
+		 *         <code>-1</code> if it need not be run again until it is scheduled
+		 */
+		abstract long run();
+	}
+
+	private static final String PLUGIN_ID= "org.eclipse.jface.text"; //$NON-NLS-1$
+
+	/** The time in milliseconds after which an idle worker terminates. */
+	private static final long IDLE_TIMEOUT= 30000;
+
+	/** The maximum number of workers. */
+	private static final int MAX_WORKERS= Math.max(1, Integer.getInteger("org.eclipse.jface.text.reconciler.maxThreads", //$NON-NLS-1$
+			Math.min(4, Runtime.getRuntime().availableProcessors() / 2)).intValue());
+
+	private static final ReconcilerScheduler fgDefault= new ReconcilerScheduler();
+
+	/** The scheduled tasks that are not running. */
+	private final List<Task> fTasks= new ArrayList<>();
+	/** The number of workers. */
+	private int fWorkers;
+	/** The number of workers that wait for a task. */
+	private int fWaitingWorkers;
+
+	/**
+	 * Returns the shared scheduler.
+	 *
+	 * @return the shared scheduler
+	 */
+	static ReconcilerScheduler getDefault() {
+		return fgDefault;
+	}
+
+	/**
+	 * Schedules the given task to run after the given delay. If the task is already scheduled,
+	 * its delay starts again. If it is running, it is run again after the delay.
+	 *
+	 * @param task the task
+	 * @param delay the delay in milliseconds
+	 */
+	synchronized void schedule(Task task, long delay) {
+		task.fDueTime= System.nanoTime() + Math.max(delay, 0) * 1000000;
+		if (task.fScheduled)
+			return;
+		task.fScheduled= true;
+		if (!task.fRunning)
+			fTasks.add(task);
+		if (fWaitingWorkers > 0)
+			notifyAll();
+		else if (fWorkers < MAX_WORKERS)
+			startWorker();
+	}
+
+	/**
+	 * Removes the given task from the scheduled tasks. Does not stop the task if it is running.
+	 *
+	 * @param task the task
+	 */
+	synchronized void cancel(Task task) {
+		if (task.fScheduled) {
+			task.fScheduled= false;
+			fTasks.remove(task);
+		}
+	}
+
+	private void startWorker() {
+		Thread worker= new Thread(this::work, "Reconciler Worker " + fWorkers); //$NON-NLS-1$
+		worker.setPriority(Thread.MIN_PRIORITY);
+		worker.setDaemon(true);
+		fWorkers++;
+		worker.start();
+	}
+
+	/**
+	 * Runs the tasks that are due until there has been none for {@link #IDLE_TIMEOUT}.
+	 */
+	private void work() {
+		boolean terminated= false;
+		try {
+			Task task;
+			while ((task= nextTask()) != null) {
+				long delay= -1;
+				try {
+					delay= task.run();
+				} catch (RuntimeException x) {
+					ILog log= Platform.getLog(Platform.getBundle(PLUGIN_ID));
+					log.log(new Status(IStatus.ERROR, PLUGIN_ID, IStatus.OK, "Unexpected runtime error while reconciling", x)); //$NON-NLS-1$
+				} finally {
+					taskDone(task, delay);
+				}
+			}
+			terminated= true;
+		} finally {
+			if (!terminated) {
+				// died with an error, the next scheduled task starts a new worker
+				synchronized (this) {
+					fWorkers--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for the next task that is due and marks it running.
+	 *
+	 * @return the next task or <code>null</code> if the worker has been idle for too long
+	 */
+	private synchronized Task nextTask() {
+		long idleSince= System.nanoTime();
+		while (true) {
+			long now= System.nanoTime();
+			Task next= null;
+			long wait= Long.MAX_VALUE;
+			for (Task task : fTasks) {
+				long due= task.fDueTime - now;
+				if (due <= 0) {
+					if (next == null || task.getPriority() > next.getPriority())
+						next= task;
+				} else {
+					wait= Math.min(wait, due);
+				}
+			}
+
+			if (next != null) {
+				fTasks.remove(next);
+				next.fScheduled= false;
+				next.fRunning= true;
+				return next;
+			}
+
+			if (fTasks.isEmpty()) {
+				wait= IDLE_TIMEOUT * 1000000 - (now - idleSince);
+				if (wait <= 0) {
+					fWorkers--;
+					return null;
+				}
+			}
+
+			fWaitingWorkers++;
+			try {
+				wait(Math.max(1, wait / 1000000));
+			} catch (InterruptedException x) {
+			} finally {
+				fWaitingWorkers--;
+			}
+		}
+	}
+
+	/**
+	 * Marks the given task as no longer running, and schedules it again if requested.
+	 *
+	 * @param task the task
+	 * @param delay the delay after which the task wants to run again, or <code>-1</code>
+	 */
+	private synchronized void taskDone(Task task, long delay) {
+		task.fRunning= false;
+		if (task.fScheduled) {
+			// scheduled while running
+			fTasks.add(task);
+			notifyAll();
+		} else if (delay >= 0) {
+			schedule(task, delay);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,7 +15,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.BadPositionCategoryException;
@@ -23,11 +27,13 @@ import org.eclipse.jface.text.DefaultPositionUpdater;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.DocumentRewriteSession;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IDocumentPartitioner;
 import org.eclipse.jface.text.IDocumentPartitionerExtension;
 import org.eclipse.jface.text.IDocumentPartitionerExtension2;
 import org.eclipse.jface.text.IDocumentPartitionerExtension3;
 import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ISynchronizable;
 import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.Region;
@@ -51,6 +57,10 @@ import org.eclipse.jface.text.TypedRegion;
  * {@link #clearPositionCache()} after modifying the partitioner's positions.
  * The cached positions may be accessed through {@link #getPositions()}.
  * </p>
+ * <p>
+ * For large documents, the partitioner can be configured to partition the document lazily, see
+ * {@link #setLazyInitialization(boolean)}.
+ * </p>
  *
  * @see IPartitionTokenScanner
  * @since 3.1
@@ -94,9 +104,89 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 	 * someone requests partition information.
 	 */
 	private Position[] fCachedPositions= null;
+	/**
+	 * Whether the document is partitioned on demand.
+	 * @since 3.12
+	 */
+	private boolean fIsLazy= false;
+	/**
+	 * In lazy mode, the offset up to which the document has been partitioned, or -1 if the whole
+	 * document has been partitioned. Scanning can be resumed at this offset.
+	 * @since 3.12
+	 */
+	private int fLazyEnd= -1;
+	/**
+	 * In lazy mode, the lock object of the document, or <code>null</code> if the document is not
+	 * partitioned in the background.
+	 * @since 3.12
+	 */
+	private Object fLockObject;
+	/**
+	 * In lazy mode, the job that partitions the rest of the document in the background.
+	 * @since 3.12
+	 */
+	private PartitioningJob fPartitioningJob;
 	/** Debug option for cache consistency checking. */
 	private static final boolean CHECK_CACHE_CONSISTENCY= "true".equalsIgnoreCase(Platform.getDebugOption("org.eclipse.jface.text/debug/FastPartitioner/PositionCache"));  //$NON-NLS-1$//$NON-NLS-2$;
 
+	/**
+	 * The number of characters the background job partitions at once.
+	 * @since 3.12
+	 */
+	private static final int CHUNK_SIZE= 64 * 1024;
+	/**
+	 * The time the background job waits for the document to be idle, in milliseconds.
+	 * @since 3.12
+	 */
+	private static final long IDLE_DELAY= 500;
+
+	/**
+	 * Partitions the rest of a lazily partitioned document in chunks while holding the lock of the
+	 * document. Waits while the document is being modified.
+	 *
+	 * @since 3.12
+	 */
+	private final class PartitioningJob extends Job {
+
+		private final Object fLock;
+		private long fModificationStamp;
+
+		PartitioningJob(Object lock) {
+			super("FastPartitioner Initializer"); //$NON-NLS-1$
+			fLock= lock;
+			fModificationStamp= getModificationStamp();
+			setSystem(true);
+			setPriority(DECORATE);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			synchronized (fLock) {
+				if (fPartitioningJob != this || !fIsInitialized || fLazyEnd == -1 || monitor.isCanceled())
+					return Status.OK_STATUS;
+
+				long stamp= getModificationStamp();
+				if (stamp != fModificationStamp) {
+					// the document is being modified, continue when it is idle
+					fModificationStamp= stamp;
+					schedule(IDLE_DELAY);
+					return Status.OK_STATUS;
+				}
+
+				partitionLazily(Math.min(fLazyEnd + CHUNK_SIZE, fDocument.getLength()), false);
+				if (fLazyEnd != -1)
+					schedule();
+			}
+			return Status.OK_STATUS;
+		}
+
+		private long getModificationStamp() {
+			if (fDocument instanceof IDocumentExtension4)
+				return ((IDocumentExtension4) fDocument).getModificationStamp();
+			return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		}
+	}
+
 	/**
 	 * Creates a new partitioner that uses the given scanner and may return
 	 * partitions of the given legal content types.
@@ -111,6 +201,31 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 		fPositionUpdater= new DefaultPositionUpdater(fPositionCategory);
 	}
 
+	/**
+	 * Sets whether this partitioner partitions its document lazily. In lazy mode, connecting
+	 * the partitioner does not scan the document. The document is partitioned on demand up to
+	 * the highest offset that has been requested through {@link #getPartition(int)},
+	 * {@link #getContentType(int)} or {@link #computePartitioning(int, int, boolean)}. If the
+	 * document is {@link ISynchronizable} and has a lock object, the rest of the document is
+	 * partitioned by a background job that holds the lock while it scans and that waits while
+	 * the document is being modified. All methods of the partitioner then synchronize on the
+	 * lock object.
+	 * <p>
+	 * In lazy mode, {@link #getPositions()} only returns the partitions that have been computed
+	 * so far, and {@link #documentChanged2(DocumentEvent)} does not report changes behind them.
+	 * </p>
+	 * <p>
+	 * Must be called before the partitioner is connected to a document. The default is
+	 * <code>false</code>.
+	 * </p>
+	 *
+	 * @param lazy <code>true</code> to partition the document lazily
+	 * @since 3.12
+	 */
+	public void setLazyInitialization(boolean lazy) {
+		fIsLazy= lazy;
+	}
+
 	@Override
 	public String[] getManagingPositionCategories() {
 		return new String[] { fPositionCategory };
@@ -134,6 +249,8 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 
 		fDocument= document;
 		fDocument.addPositionCategory(fPositionCategory);
+		if (fIsLazy && document instanceof ISynchronizable)
+			fLockObject= ((ISynchronizable) document).getLockObject();
 
 		fIsInitialized= false;
 		if (!delayInitialization)
@@ -157,6 +274,14 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 	protected void initialize() {
 		fIsInitialized= true;
 		clearPositionCache();
+		if (fIsLazy) {
+			fLazyEnd= 0;
+			if (fLockObject != null) {
+				fPartitioningJob= new PartitioningJob(fLockObject);
+				fPartitioningJob.schedule(IDLE_DELAY);
+			}
+			return;
+		}
 		fScanner.setRange(fDocument, 0, fDocument.getLength());
 
 		try {
@@ -187,9 +312,22 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 	 */
 	@Override
 	public void disconnect() {
+		Object lock= fLockObject;
+		if (lock != null && !Thread.holdsLock(lock)) {
+			synchronized (lock) {
+				disconnect();
+				return;
+			}
+		}
 
 		Assert.isTrue(fDocument.containsPositionCategory(fPositionCategory));
 
+		if (fPartitioningJob != null) {
+			fPartitioningJob.cancel();
+			fPartitioningJob= null;
+		}
+		fLockObject= null;
+
 		try {
 			fDocument.removePositionCategory(fPositionCategory);
 		} catch (BadPositionCategoryException x) {
@@ -290,6 +428,13 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 		if (!fIsInitialized)
 			return null;
 
+		Object lock= fLockObject;
+		if (lock != null && !Thread.holdsLock(lock)) {
+			synchronized (lock) {
+				return documentChanged2(e);
+			}
+		}
+
 		try {
 			Assert.isTrue(e.getDocument() == fDocument);
 
@@ -322,6 +467,21 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 				reparseStart= 0;
 			}
 
+			int lazyEnd= fLazyEnd;
+			if (lazyEnd != -1) {
+				if (reparseStart >= lazyEnd) {
+					// the change is behind the partitioned range, but it may turn the end of
+					// the range into a partition
+					fLazyEnd= partitionStart;
+					return null;
+				}
+				if (e.getOffset() + e.getLength() <= lazyEnd)
+					lazyEnd += newLength - e.getLength();
+				else
+					lazyEnd= e.getOffset() + newLength;
+				fLazyEnd= lazyEnd;
+			}
+
 			fPositionUpdater.update(e);
 			for (int i= first; i < category.length; i++) {
 				Position p= category[i];
@@ -342,14 +502,18 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 
 				contentType= getTokenContentType(token);
 
+				int start= fScanner.getTokenOffset();
+				int length= fScanner.getTokenLength();
+
 				if (!isSupportedContentType(contentType)) {
+					if (lazyEnd != -1 && start + length >= lazyEnd && isLineStart(start + length)) {
+						fLazyEnd= start + length;
+						break;
+					}
 					token= fScanner.nextToken();
 					continue;
 				}
 
-				int start= fScanner.getTokenOffset();
-				int length= fScanner.getTokenLength();
-
 				behindLastScannedPosition= start + length;
 				int lastScannedPosition= behindLastScannedPosition - 1;
 
@@ -385,8 +549,15 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 					}
 				}
 
+				if (lazyEnd != -1 && behindLastScannedPosition >= lazyEnd) {
+					fLazyEnd= behindLastScannedPosition;
+					break;
+				}
+
 				token= fScanner.nextToken();
 			}
+			if (token.isEOF())
+				fLazyEnd= -1;
 
 			first= fDocument.computeIndexInCategory(fPositionCategory, behindLastScannedPosition);
 
@@ -409,6 +580,73 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 		return createRegion();
 	}
 
+	/**
+	 * In lazy mode, partitions the document up to the given offset if that has not been done yet.
+	 *
+	 * @param offset the offset that must be partitioned
+	 * @param untilPartition <code>true</code> to continue until a partition that ends behind the
+	 *            offset has been found, so that the extent of the region at the offset is known
+	 * @since 3.12
+	 */
+	private void partitionLazily(int offset, boolean untilPartition) {
+		if (fLazyEnd == -1)
+			return;
+
+		try {
+			if (fLazyEnd > offset) {
+				if (!untilPartition)
+					return;
+				Position[] category= getPositions();
+				if (category.length > 0 && category[category.length - 1].offset + category[category.length - 1].length > offset)
+					return;
+			}
+
+			clearPositionCache();
+			if (fLazyEnd == 0)
+				fScanner.setRange(fDocument, 0, fDocument.getLength());
+			else
+				fScanner.setPartialRange(fDocument, fLazyEnd, fDocument.getLength() - fLazyEnd, IDocument.DEFAULT_CONTENT_TYPE, fLazyEnd);
+
+			IToken token= fScanner.nextToken();
+			while (!token.isEOF()) {
+				String contentType= getTokenContentType(token);
+				int start= fScanner.getTokenOffset();
+				int end= start + fScanner.getTokenLength();
+
+				boolean isPartition= isSupportedContentType(contentType);
+				if (isPartition)
+					fDocument.addPosition(fPositionCategory, new TypedPosition(start, end - start, contentType));
+
+				// scanning can be resumed behind a partition or at the start of a line
+				if (end > offset && (isPartition || !untilPartition && isLineStart(end))) {
+					fLazyEnd= end;
+					return;
+				}
+
+				token= fScanner.nextToken();
+			}
+			fLazyEnd= -1;
+		} catch (BadLocationException x) {
+			// cannot happen as offsets come from scanner
+		} catch (BadPositionCategoryException x) {
+			// cannot happen if document has been connected before
+		} finally {
+			clearPositionCache();
+		}
+	}
+
+	/**
+	 * Returns whether the given offset is the start of a line.
+	 *
+	 * @param offset the offset
+	 * @return <code>true</code> if the offset is the start of a line
+	 * @throws BadLocationException if the offset is invalid
+	 * @since 3.12
+	 */
+	private boolean isLineStart(int offset) throws BadLocationException {
+		return fDocument.getLineOffset(fDocument.getLineOfOffset(offset)) == offset;
+	}
+
 	/**
 	 * Returns the position in the partitoner's position category which is
 	 * close to the given offset. This is, the position has either an offset which
@@ -457,7 +695,15 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 	 */
 	@Override
 	public String getContentType(int offset) {
+		Object lock= fLockObject;
+		if (lock != null && !Thread.holdsLock(lock)) {
+			synchronized (lock) {
+				return getContentType(offset);
+			}
+		}
+
 		checkInitialization();
+		partitionLazily(offset, false);
 
 		TypedPosition p= findClosestPosition(offset);
 		if (p != null && p.includes(offset))
@@ -474,7 +720,15 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 	 */
 	@Override
 	public ITypedRegion getPartition(int offset) {
+		Object lock= fLockObject;
+		if (lock != null && !Thread.holdsLock(lock)) {
+			synchronized (lock) {
+				return getPartition(offset);
+			}
+		}
+
 		checkInitialization();
+		partitionLazily(offset, true);
 
 		try {
 
@@ -614,7 +868,15 @@ public class FastPartitioner implements IDocumentPartitioner, IDocumentPartition
 	 */
 	@Override
 	public ITypedRegion[] computePartitioning(int offset, int length, boolean includeZeroLengthPartitions) {
+		Object lock= fLockObject;
+		if (lock != null && !Thread.holdsLock(lock)) {
+			synchronized (lock) {
+				return computePartitioning(offset, length, includeZeroLengthPartitions);
+			}
+		}
+
 		checkInitialization();
+		partitionLazily(offset + length, false);
 		List<TypedRegion> list= new ArrayList<>();
 
 		try {
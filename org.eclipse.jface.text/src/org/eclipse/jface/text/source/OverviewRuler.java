@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,9 +14,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StyledText;
@@ -45,7 +48,10 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.ScrollBar;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITextListener;
 import org.eclipse.jface.text.ITextViewer;
@@ -82,6 +88,9 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		 */
 		@Override
 		public void textChanged(TextEvent e) {
+			// document changes are tracked by the index itself
+			if (e.getDocumentEvent() == null)
+				fAnnotationRowIndex.invalidate();
 			if (fTextViewer != null && e.getDocumentEvent() == null && e.getViewerRedrawState()) {
 				// handle only changes of visible document
 				redraw();
@@ -90,6 +99,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 
 		@Override
 		public void modelChanged(IAnnotationModel model) {
+			fAnnotationRowIndex.invalidate();
 			update();
 		}
 
@@ -99,10 +109,13 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 				return;
 
 			if (event.isWorldChange()) {
+				fAnnotationRowIndex.invalidate();
 				update();
 				return;
 			}
 
+			fAnnotationRowIndex.modelChanged(event);
+
 			Annotation[] annotations= event.getAddedAnnotations();
 			int length= annotations.length;
 			for (int i= 0; i < length; i++) {
@@ -380,6 +393,546 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		}
 	}
 
+	/**
+	 * Index of the rectangles that are drawn for the annotations, grouped by the annotation type
+	 * and the style they are drawn with. The annotations are indexed by the lines they span; each
+	 * distinct line span is mapped to a rectangle when the ruler is painted, and each distinct
+	 * rectangle is drawn once.
+	 * <p>
+	 * The index is updated incrementally from the annotation model events and the document
+	 * events, which may be sent from any thread and are applied when the ruler is painted. Text
+	 * changes only recompute the annotations on the changed lines, the line spans behind them are
+	 * moved by the number of added or removed lines. Changes of the ruler geometry only map the
+	 * line spans to rectangles again. The index is rebuilt when the document, the visible document
+	 * or the annotation type configuration changes, and in legacy mode when the number of lines
+	 * changes.
+	 * </p>
+	 *
+	 * @since 3.12
+	 */
+	class AnnotationRowIndex implements IDocumentListener {
+
+		/**
+		 * The maximum number of pending annotation changes. If there are more and the index
+		 * is not much larger, it is rebuilt instead.
+		 */
+		private static final int MAX_CHANGES= 1000;
+
+		/**
+		 * The annotations that are drawn as the same type and with the same style over the same
+		 * lines.
+		 */
+		private class Span {
+			/** The widget line on which the annotations start */
+			int fLine;
+			/** The number of lines over which the annotations are drawn */
+			final int fLines;
+			/** The number of annotations */
+			int fCount;
+
+			Span(int line, int lines) {
+				fLine= line;
+				fLines= lines;
+			}
+
+			Long getKey() {
+				return Long.valueOf((long) fLine << 32 | fLines);
+			}
+		}
+
+		/**
+		 * The line spans of an indexed annotation.
+		 */
+		private class Row {
+			/** The annotation types as which the annotation is drawn */
+			final List<Object> fDrawnTypes;
+			/** Whether the annotation is drawn as temporary annotation */
+			final boolean fTemporary;
+			/** The span of the annotation for each drawn type */
+			final Span[] fSpans;
+
+			Row(List<Object> drawnTypes, boolean temporary) {
+				fDrawnTypes= drawnTypes;
+				fTemporary= temporary;
+				fSpans= new Span[drawnTypes.size()];
+			}
+		}
+
+		/** The spans of the persistent annotations by drawn type, keyed by line and number of lines */
+		private final Map<Object, TreeMap<Long, Span>> fPersistentSpans= new HashMap<>();
+		/** The spans of the temporary annotations by drawn type, keyed by line and number of lines */
+		private final Map<Object, TreeMap<Long, Span>> fTemporarySpans= new HashMap<>();
+		/** The rectangles of the persistent spans by drawn type, computed when painted */
+		private final Map<Object, Set<Long>> fPersistentRectangles= new HashMap<>();
+		/** The rectangles of the temporary spans by drawn type, computed when painted */
+		private final Map<Object, Set<Long>> fTemporaryRectangles= new HashMap<>();
+		/** The rows of the indexed annotations */
+		private final Map<Annotation, Row> fRows= new HashMap<>();
+		/** The annotation types as which the annotations of a given type are drawn */
+		private final Map<Object, List<Object>> fDrawnTypesByType= new HashMap<>();
+
+		/** The annotations that have changed since the index was last updated. Guarded by this index. */
+		private Set<Annotation> fChangedAnnotations= new HashSet<>();
+		/** The start of the document range changed since the index was last updated, or <code>-1</code>. Guarded by this index. */
+		private int fChangedStart= -1;
+		/** The end of the document range changed since the index was last updated. Guarded by this index. */
+		private int fChangedEnd;
+		/** Whether the index has to be rebuilt. Guarded by this index. */
+		private boolean fIsInvalid= true;
+
+		/** The document for which the index has been built, the index listens to its changes. Guarded by this index. */
+		private IDocument fDocument;
+		/** The modification stamp of the last document change the index knows about. Guarded by this index. */
+		private long fModificationStamp;
+		/** The visible region in legacy mode for which the index has been built, or <code>null</code> */
+		private Region fIndexedVisibleRegion;
+		/** The number of lines of the text widget for which the index has been built */
+		private int fLineCount;
+		/** The widget infos for which the rectangles have been computed */
+		private WidgetInfos fInfos;
+		/** The text widget, while the index is updated */
+		private StyledText fTextWidget;
+		/** The visible region in legacy mode, while the index is updated */
+		private IRegion fVisibleRegion;
+
+		/**
+		 * Records the changes reported by the given event.
+		 *
+		 * @param event the annotation model event
+		 */
+		synchronized void modelChanged(AnnotationModelEvent event) {
+			if (fIsInvalid)
+				return;
+
+			addChangedAnnotations(event.getAddedAnnotations());
+			addChangedAnnotations(event.getRemovedAnnotations());
+			addChangedAnnotations(event.getChangedAnnotations());
+			if (fChangedAnnotations.size() > MAX_CHANGES && fChangedAnnotations.size() > fRows.size() / 2)
+				invalidate();
+		}
+
+		private void addChangedAnnotations(Annotation[] annotations) {
+			for (Annotation annotation : annotations)
+				fChangedAnnotations.add(annotation);
+		}
+
+		@Override
+		public void documentAboutToBeChanged(DocumentEvent event) {
+		}
+
+		/**
+		 * Records the document range changed by the given event. The annotation model does not
+		 * report positions that move with the text, so the annotations in that range are
+		 * looked up when the index is updated.
+		 *
+		 * @param event the document event
+		 */
+		@Override
+		public synchronized void documentChanged(DocumentEvent event) {
+			if (fIsInvalid || event.getDocument() != fDocument)
+				return;
+
+			int delta= (event.getText() == null ? 0 : event.getText().length()) - event.getLength();
+			int start= event.getOffset();
+			int end= start + event.getLength() + delta;
+			if (fChangedStart != -1) {
+				// the range recorded so far shifts with this change, or ends inside the new text
+				start= Math.min(start, fChangedStart);
+				int changedEnd= fChangedEnd >= event.getOffset() + event.getLength() ? fChangedEnd + delta : Math.min(fChangedEnd, end);
+				end= Math.max(end, changedEnd);
+			}
+			fChangedStart= start;
+			fChangedEnd= end;
+			fModificationStamp= event.getModificationStamp();
+		}
+
+		/**
+		 * Marks the index for a rebuild.
+		 */
+		synchronized void invalidate() {
+			fIsInvalid= true;
+			fChangedAnnotations= new HashSet<>();
+			fChangedStart= -1;
+		}
+
+		/**
+		 * Discards the index content.
+		 */
+		void clear() {
+			invalidate();
+			fPersistentSpans.clear();
+			fTemporarySpans.clear();
+			fPersistentRectangles.clear();
+			fTemporaryRectangles.clear();
+			fRows.clear();
+			fDrawnTypesByType.clear();
+			setDocument(null);
+			fInfos= null;
+			fIndexedVisibleRegion= null;
+		}
+
+		private synchronized void setDocument(IDocument document) {
+			if (document == fDocument)
+				return;
+			if (fDocument != null)
+				fDocument.removeDocumentListener(this);
+			fDocument= document;
+			if (fDocument != null)
+				fDocument.addDocumentListener(this);
+		}
+
+		/**
+		 * Returns the rectangles of the given annotation type and style.
+		 *
+		 * @param annotationType the annotation type
+		 * @param temporary <code>true</code> for the temporary annotations, <code>false</code> for the persistent ones
+		 * @return the rectangles, or <code>null</code> if there are none
+		 * @see #computeRectangle(Span)
+		 */
+		Set<Long> getRectangles(Object annotationType, boolean temporary) {
+			Map<Object, Set<Long>> rectanglesByType= temporary ? fTemporaryRectangles : fPersistentRectangles;
+			Set<Long> rectangles= rectanglesByType.get(annotationType);
+			if (rectangles == null) {
+				TreeMap<Long, Span> spans= (temporary ? fTemporarySpans : fPersistentSpans).get(annotationType);
+				if (spans == null)
+					return null;
+				// several spans may be drawn as the same rectangle
+				rectangles= new LinkedHashSet<>();
+				for (Span span : spans.values())
+					rectangles.add(computeRectangle(span));
+				rectanglesByType.put(annotationType, rectangles);
+			}
+			return rectangles;
+		}
+
+		/**
+		 * Brings the index up to date. Must be called in the UI thread.
+		 *
+		 * @param document the document of the text viewer
+		 * @param textWidget the text widget
+		 * @param visible the visible region in legacy mode, or <code>null</code>
+		 * @param infos the current widget infos
+		 */
+		void update(IDocument document, StyledText textWidget, IRegion visible, WidgetInfos infos) {
+			long modificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+			if (document instanceof IDocumentExtension4)
+				modificationStamp= ((IDocumentExtension4) document).getModificationStamp();
+
+			Set<Annotation> changedAnnotations;
+			int changedStart, changedEnd;
+			boolean rebuild;
+			synchronized (this) {
+				// a change that the index missed has a different modification stamp
+				rebuild= fIsInvalid || document != fDocument || modificationStamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+						|| modificationStamp != fModificationStamp || !isSameVisibleRegion(visible);
+				fIsInvalid= false;
+				changedAnnotations= fChangedAnnotations;
+				fChangedAnnotations= new HashSet<>();
+				changedStart= fChangedStart;
+				changedEnd= fChangedEnd;
+				fChangedStart= -1;
+				setDocument(document);
+				fModificationStamp= modificationStamp;
+			}
+
+			int lineDelta= infos.maxLines - fLineCount;
+			fLineCount= infos.maxLines;
+			if (!isSameGeometry(infos, fInfos) || rebuild || changedStart != -1 || !changedAnnotations.isEmpty()) {
+				fPersistentRectangles.clear();
+				fTemporaryRectangles.clear();
+			}
+			fInfos= infos;
+			fIndexedVisibleRegion= visible != null ? new Region(visible.getOffset(), visible.getLength()) : null;
+			fTextWidget= textWidget;
+			fVisibleRegion= visible;
+			try {
+				if (!rebuild && fModel != null && document != null && (changedStart != -1 || lineDelta != 0))
+					rebuild= !updateChangedLines(document, changedStart, changedEnd, lineDelta, changedAnnotations);
+
+				if (rebuild) {
+					fPersistentSpans.clear();
+					fTemporarySpans.clear();
+					fRows.clear();
+					fDrawnTypesByType.clear();
+					if (fModel != null && document != null) {
+						Iterator<Annotation> e= fModel.getAnnotationIterator();
+						while (e.hasNext())
+							add(e.next());
+					}
+				} else {
+					for (Annotation annotation : changedAnnotations) {
+						remove(annotation);
+						if (fModel != null && document != null)
+							add(annotation);
+					}
+				}
+			} finally {
+				fTextWidget= null;
+				fVisibleRegion= null;
+			}
+		}
+
+		/**
+		 * Moves the spans behind the changed lines by the number of added or removed lines and
+		 * removes the annotations on the changed lines from the index. These annotations are added
+		 * to the given set, so that they are indexed again.
+		 *
+		 * @param document the document
+		 * @param changedStart the start of the changed range, or <code>-1</code> if unknown
+		 * @param changedEnd the end of the changed range
+		 * @param lineDelta the number of added lines, negative if lines have been removed
+		 * @param annotations the set of changed annotations
+		 * @return <code>false</code> if the index has to be rebuilt instead
+		 */
+		private boolean updateChangedLines(IDocument document, int changedStart, int changedEnd, int lineDelta, Set<Annotation> annotations) {
+			if (changedStart == -1)
+				return false;
+
+			int changedLine= -1;
+			try {
+				// the annotations starting on a changed line may start before or after the change
+				IRegion startLine= document.getLineInformationOfOffset(changedStart);
+				IRegion endLine= document.getLineInformationOfOffset(changedEnd);
+				// the changed range can end inside of a line delimiter
+				addAnnotationsInRange(startLine.getOffset(), Math.max(changedEnd, endLine.getOffset() + endLine.getLength()), annotations);
+				if (lineDelta != 0) {
+					if (fVisibleRegion != null)
+						return false; // legacy mode, the widget lines start at the visible region
+					int widgetOffset= ((ITextViewerExtension5) fTextViewer).modelOffset2WidgetOffset(startLine.getOffset());
+					if (widgetOffset == -1)
+						return false;
+					changedLine= fTextWidget.getLineAtOffset(widgetOffset);
+				}
+			} catch (BadLocationException x) {
+				return false;
+			}
+
+			for (Annotation annotation : annotations)
+				remove(annotation);
+			if (lineDelta != 0) {
+				shift(fPersistentSpans, changedLine, lineDelta);
+				shift(fTemporarySpans, changedLine, lineDelta);
+			}
+			return true;
+		}
+
+		/**
+		 * Moves the spans that start after the given line by the given number of lines.
+		 *
+		 * @param spansByType the spans by drawn type
+		 * @param line the line
+		 * @param delta the number of lines
+		 */
+		private void shift(Map<Object, TreeMap<Long, Span>> spansByType, int line, int delta) {
+			Long firstKey= Long.valueOf((long) (line + 1) << 32);
+			for (TreeMap<Long, Span> spans : spansByType.values()) {
+				SortedMap<Long, Span> tail= spans.tailMap(firstKey);
+				if (tail.isEmpty())
+					continue;
+				// the order of the moved spans does not change, and they stay behind the given line
+				List<Span> moved= new ArrayList<>(tail.values());
+				tail.clear();
+				for (Span span : moved) {
+					span.fLine += delta;
+					spans.put(span.getKey(), span);
+				}
+			}
+		}
+
+		/**
+		 * Adds the annotations that overlap or touch the given document range to the given set.
+		 *
+		 * @param start the start of the range
+		 * @param end the end of the range
+		 * @param annotations the set to add the annotations to
+		 */
+		private void addAnnotationsInRange(int start, int end, Set<Annotation> annotations) {
+			// include the annotations that end at the start or start at the end of the range,
+			// the end is not clipped to the document so that empty positions at its end are found
+			start= Math.max(start - 1, 0);
+			end= end + 1;
+			if (fModel instanceof IAnnotationModelExtension2) {
+				Iterator<Annotation> e= ((IAnnotationModelExtension2) fModel).getAnnotationIterator(start, end - start, true, true);
+				while (e.hasNext())
+					annotations.add(e.next());
+			} else {
+				Iterator<Annotation> e= fModel.getAnnotationIterator();
+				while (e.hasNext()) {
+					Annotation annotation= e.next();
+					Position p= fModel.getPosition(annotation);
+					if (p != null && p.getOffset() <= end && p.getOffset() + p.getLength() >= start)
+						annotations.add(annotation);
+				}
+			}
+		}
+
+		private boolean isSameVisibleRegion(IRegion visible) {
+			if (visible == null || fIndexedVisibleRegion == null)
+				return visible == fIndexedVisibleRegion;
+			return visible.getOffset() == fIndexedVisibleRegion.getOffset() && visible.getLength() == fIndexedVisibleRegion.getLength();
+		}
+
+		private boolean isSameGeometry(WidgetInfos infos, WidgetInfos other) {
+			return other != null && infos.maxLines == other.maxLines && infos.thumbHeight == other.thumbHeight
+					&& infos.visibleLines == other.visibleLines && infos.writable == other.writable
+					&& infos.bounds.y == other.bounds.y && infos.bounds.height == other.bounds.height;
+		}
+
+		private void add(Annotation annotation) {
+			if (annotation.isMarkedDeleted())
+				return;
+
+			Object annotationType= annotation.getType();
+			if (skip(annotationType))
+				return;
+
+			List<Object> drawnTypes= getDrawnTypes(annotationType);
+			if (drawnTypes.isEmpty())
+				return;
+
+			Position p= fModel.getPosition(annotation);
+			if (p == null)
+				return;
+
+			Long key= computeSpan(p);
+			if (key == null)
+				return;
+
+			Row row= new Row(drawnTypes, !annotation.isPersistent());
+			Map<Object, TreeMap<Long, Span>> spansByType= row.fTemporary ? fTemporarySpans : fPersistentSpans;
+			for (int i= 0; i < row.fSpans.length; i++) {
+				Object drawnType= drawnTypes.get(i);
+				TreeMap<Long, Span> spans= spansByType.get(drawnType);
+				if (spans == null) {
+					spans= new TreeMap<>();
+					spansByType.put(drawnType, spans);
+				}
+				Span span= spans.get(key);
+				if (span == null) {
+					long value= key.longValue();
+					span= new Span((int) (value >>> 32), (int) value);
+					spans.put(key, span);
+				}
+				span.fCount++;
+				row.fSpans[i]= span;
+			}
+			fRows.put(annotation, row);
+		}
+
+		private void remove(Annotation annotation) {
+			Row row= fRows.remove(annotation);
+			if (row == null)
+				return;
+
+			Map<Object, TreeMap<Long, Span>> spansByType= row.fTemporary ? fTemporarySpans : fPersistentSpans;
+			for (int i= 0; i < row.fSpans.length; i++) {
+				Span span= row.fSpans[i];
+				if (--span.fCount == 0) {
+					Object drawnType= row.fDrawnTypes.get(i);
+					TreeMap<Long, Span> spans= spansByType.get(drawnType);
+					spans.remove(span.getKey());
+					if (spans.isEmpty())
+						spansByType.remove(drawnType);
+				}
+			}
+		}
+
+		/**
+		 * Returns the annotation types of {@link OverviewRuler#fAnnotationsSortedByLayer} as which
+		 * the annotations of the given type are drawn, in the same way as the {@link FilterIterator}
+		 * matches them.
+		 *
+		 * @param annotationType the annotation type
+		 * @return the drawn annotation types
+		 */
+		private List<Object> getDrawnTypes(Object annotationType) {
+			List<Object> drawnTypes= fDrawnTypesByType.get(annotationType);
+			if (drawnTypes == null) {
+				drawnTypes= new ArrayList<>(1);
+				boolean isConfigured= fConfiguredAnnotationTypes.contains(annotationType);
+				for (Object layerType : fAnnotationsSortedByLayer) {
+					if (skip(layerType))
+						continue;
+					if (layerType.equals(annotationType) || !isConfigured && isSubtype(annotationType, layerType))
+						drawnTypes.add(layerType);
+				}
+				fDrawnTypesByType.put(annotationType, drawnTypes);
+			}
+			return drawnTypes;
+		}
+
+		private boolean isSubtype(Object annotationType, Object potentialSupertype) {
+			if (fAnnotationAccess instanceof IAnnotationAccessExtension) {
+				IAnnotationAccessExtension extension= (IAnnotationAccessExtension) fAnnotationAccess;
+				return extension.isSubtype(annotationType, potentialSupertype);
+			}
+			return potentialSupertype.equals(annotationType);
+		}
+
+		/**
+		 * Computes the lines over which an annotation at the given position is drawn. The span
+		 * is encoded as <code>line &lt;&lt; 32 | lines</code>, so that the spans are sorted from
+		 * top to bottom.
+		 *
+		 * @param p the annotation position
+		 * @return the span, or <code>null</code> if the annotation is not drawn
+		 */
+		private Long computeSpan(Position p) {
+			IRegion visible= fVisibleRegion;
+			if (visible != null && !p.overlapsWith(visible.getOffset(), visible.getLength()))
+				return null;
+
+			int annotationOffset= p.getOffset();
+			int annotationLength= p.getLength();
+			IRegion widgetRegion= null;
+			if (visible != null) {
+				annotationOffset= Math.max(p.getOffset(), visible.getOffset());
+				int annotationEnd= Math.min(p.getOffset() + p.getLength(), visible.getOffset() + visible.getLength());
+				annotationLength= annotationEnd - annotationOffset;
+			} else {
+				widgetRegion= ((ITextViewerExtension5) fTextViewer).modelRange2WidgetRange(new Region(annotationOffset, annotationLength));
+				if (widgetRegion == null)
+					return null;
+			}
+
+			try {
+				int startOffset= visible != null ? annotationOffset - visible.getOffset() : widgetRegion.getOffset();
+				int startLine= fTextWidget.getLineAtOffset(startOffset);
+				int numberOfLines= 1;
+
+				if (ANNOTATION_HEIGHT_SCALABLE) {
+					numberOfLines= fDocument.getNumberOfLines(annotationOffset, annotationLength);
+					// don't count empty trailing line
+					IRegion lastLine= fDocument.getLineInformationOfOffset(annotationOffset + annotationLength);
+					if (lastLine.getOffset() == annotationOffset + annotationLength) {
+						numberOfLines--;
+					}
+					numberOfLines= Math.max(numberOfLines, 1);
+				}
+				return Long.valueOf((long) startLine << 32 | numberOfLines);
+			} catch (BadLocationException x) {
+				return null;
+			}
+		}
+
+		/**
+		 * Computes the rectangle drawn for the given span. The rectangle is encoded as
+		 * <code>y &lt;&lt; 32 | height</code>.
+		 *
+		 * @param span the span
+		 * @return the rectangle
+		 */
+		private Long computeRectangle(Span span) {
+			int yy= computeY(span.fLine, fInfos);
+			int hh= ANNOTATION_HEIGHT;
+			if (span.fLines > 1) {
+				int yy2= computeY(span.fLine + span.fLines - 1, fInfos);
+				hh= Math.max(yy2 - yy, ANNOTATION_HEIGHT);
+			}
+			return Long.valueOf((long) yy << 32 | hh);
+		}
+	}
+
 	private static final boolean DEBUG_DRAW= false;
 	private static final boolean DEBUG_COMPUTE_Y= false;
 	private static final boolean DEBUG_TO_DOCUMENT_LINE_NUMBER= false;
@@ -460,6 +1013,11 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 	 * @since 3.0
 	 */
 	private List<Annotation> fCachedAnnotations= new ArrayList<>();
+	/**
+	 * The index of the drawn annotation rectangles.
+	 * @since 3.12
+	 */
+	private final AnnotationRowIndex fAnnotationRowIndex= new AnnotationRowIndex();
 
 	/**
 	 * Redraw runnable lock
@@ -552,6 +1110,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 				fModel.removeAnnotationModelListener(fInternalListener);
 
 			fModel= model;
+			fAnnotationRowIndex.invalidate();
 
 			if (fModel != null)
 				fModel.addAnnotationModelListener(fInternalListener);
@@ -632,6 +1191,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 					}
 					StyledText textWidget= fTextViewer.getTextWidget();
 					if (textWidget != null && textWidget.getWordWrap()) {
+						fAnnotationRowIndex.invalidate();
 						redraw();
 					}
 				}
@@ -668,6 +1228,8 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		fAnnotationTypes2Colors.clear();
 		fAnnotationsSortedByLayer.clear();
 		fLayersSortedByLayer.clear();
+		fCachedAnnotations.clear();
+		fAnnotationRowIndex.clear();
 	}
 
 	/**
@@ -697,8 +1259,6 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 			gc.setBackground(fCanvas.getBackground());
 			gc.fillRectangle(0, 0, size.x, size.y);
 
-			cacheAnnotations();
-
 			doPaint(gc);
 
 		} finally {
@@ -738,97 +1298,47 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 
 		IDocument document= fTextViewer.getDocument();
 		StyledText textWidget= fTextViewer.getTextWidget();
-		ITextViewerExtension5 extension= null;
 		IRegion visible= null;
-		if (fTextViewer instanceof ITextViewerExtension5)
-			extension= (ITextViewerExtension5) fTextViewer;
-		else
+		if (!(fTextViewer instanceof ITextViewerExtension5))
 			visible= fTextViewer.getVisibleRegion(); // legacy support
 
-		WidgetInfos infos= null;
+		WidgetInfos infos= new WidgetInfos(textWidget, fCanvas);
+		r.x= INSET;
+		r.width= infos.bounds.width - (2 * INSET);
+
+		fAnnotationRowIndex.update(document, textWidget, visible, infos);
 
 		for (Object annotationType : fAnnotationsSortedByLayer) {
 			if (skip(annotationType))
 				continue;
 
-			int[] style= new int[] { FilterIterator.PERSISTENT, FilterIterator.TEMPORARY };
-			for (int element : style) {
-				boolean areColorsComputed= false;
-				Color fill= null;
-				Color stroke= null;
+			boolean[] temporary= new boolean[] { false, true };
+			for (boolean element : temporary) {
+				Set<Long> rectangles= fAnnotationRowIndex.getRectangles(annotationType, element);
+				if (rectangles == null)
+					continue;
 
-				Iterator<Annotation> e= new FilterIterator(annotationType, element, fCachedAnnotations.iterator());
-				while (e.hasNext()) {
-					Annotation a= e.next();
-					Position p= fModel.getPosition(a);
+				Color stroke= getStrokeColor(annotationType, element);
+				Color fill= fUseSaturatedColors ? stroke : getFillColor(annotationType, element);
 
-					if (p == null)
-						continue;
-					if (visible != null && !p.overlapsWith(visible.getOffset(), visible.getLength()))
-						continue;
-
-					int annotationOffset= p.getOffset();
-					int annotationLength= p.getLength();
-					IRegion widgetRegion= null;
-					if (visible != null) {
-						annotationOffset= Math.max(p.getOffset(), visible.getOffset());
-						int annotationEnd= Math.min(p.getOffset() + p.getLength(), visible.getOffset() + visible.getLength());
-						annotationLength= annotationEnd - annotationOffset;
-					} else {
-						widgetRegion= extension.modelRange2WidgetRange(new Region(annotationOffset, annotationLength));
-						if (widgetRegion == null)
-							continue;
-					}
+				for (Long rectangle : rectangles) {
+					yy= (int) (rectangle.longValue() >>> 32);
+					hh= (int) rectangle.longValue();
+					fAnnotationHeight= hh;
 
-					if (infos == null) {
-						infos= new WidgetInfos(textWidget, fCanvas);
-						r.x= INSET;
-						r.width= infos.bounds.width - (2 * INSET);
+					if (fill != null) {
+						gc.setBackground(fill);
+						gc.fillRectangle(INSET, yy, infos.bounds.width-(2*INSET), hh);
 					}
 
-					try {
-						int startOffset= visible != null ? annotationOffset - visible.getOffset() : widgetRegion.getOffset();
-						int startLine= textWidget.getLineAtOffset(startOffset);
-
-						yy= computeY(startLine, infos);
-
-						if (ANNOTATION_HEIGHT_SCALABLE) {
-							int numberOfLines= document.getNumberOfLines(annotationOffset, annotationLength);
-							// don't count empty trailing line
-							IRegion lastLine= document.getLineInformationOfOffset(annotationOffset + annotationLength);
-							if (lastLine.getOffset() == annotationOffset + annotationLength) {
-								numberOfLines--;
-							}
-							if (numberOfLines > 1) {
-								int yy2= computeY(startLine + numberOfLines - 1, infos);
-								hh= Math.max(yy2 - yy, ANNOTATION_HEIGHT);
-							} else {
-								hh= ANNOTATION_HEIGHT;
-							}
-						}
-						fAnnotationHeight= hh;
-
-						if (!areColorsComputed) {
-							stroke= getStrokeColor(annotationType, element == FilterIterator.TEMPORARY);
-							fill= fUseSaturatedColors ? stroke : getFillColor(annotationType, element == FilterIterator.TEMPORARY);
-							areColorsComputed= true;
-						}
-
-						if (fill != null) {
-							gc.setBackground(fill);
-							gc.fillRectangle(INSET, yy, infos.bounds.width-(2*INSET), hh);
-						}
-
-						if (stroke != null) {
-							gc.setForeground(stroke);
-							r.y= yy;
-							if (yy + hh == infos.bounds.height)
-								r.y--;
-							r.height= hh;
-							gc.setLineWidth(0); // NOTE: 0 means width is 1 but with optimized performance
-							gc.drawRectangle(r);
-						}
-					} catch (BadLocationException x) {
+					if (stroke != null) {
+						gc.setForeground(stroke);
+						r.y= yy;
+						if (yy + hh == infos.bounds.height)
+							r.y--;
+						r.height= hh;
+						gc.setLineWidth(0); // NOTE: 0 means width is 1 but with optimized performance
+						gc.drawRectangle(r);
 					}
 				}
 			}
@@ -836,8 +1346,6 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 
 		if (DEBUG_DRAW) {
 			// draw debugging guides (boundaries):
-			if (infos == null)
-				infos= new WidgetInfos(textWidget, fCanvas);
 			gc.setForeground(gc.getDevice().getSystemColor(SWT.COLOR_DARK_MAGENTA));
 			yy= infos.thumbHeight / 2;
 			gc.drawLine(0, yy, infos.bounds.x/2, yy);
@@ -1171,6 +1679,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 			fConfiguredAnnotationTypes.add(annotationType);
 			fAllowedAnnotationTypes.clear();
 		}
+		fAnnotationRowIndex.invalidate();
 	}
 
 	@Override
@@ -1179,6 +1688,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 			fConfiguredAnnotationTypes.remove(annotationType);
 			fAllowedAnnotationTypes.clear();
 		}
+		fAnnotationRowIndex.invalidate();
 	}
 
 	@Override
@@ -1198,6 +1708,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 			fLayersSortedByLayer.add(i, layerObj);
 			fAnnotationsSortedByLayer.add(i, annotationType);
 		}
+		fAnnotationRowIndex.invalidate();
 	}
 
 	@Override
@@ -1458,6 +1969,8 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 
 		fHeader.setToolTipText(null);
 
+		cacheAnnotations();
+
 		Object colorType= null;
 		outer: for (int i= fAnnotationsSortedByLayer.size() -1; i >= 0; i--) {
 			Object annotationType= fAnnotationsSortedByLayer.get(i);
@@ -1502,6 +2015,8 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		if (fHeader.getToolTipText() != null)
 			return;
 
+		cacheAnnotations();
+
 		StringBuffer overview = new StringBuffer();
 
 		for (int i= fAnnotationsSortedByLayer.size() -1; i >= 0; i--) {
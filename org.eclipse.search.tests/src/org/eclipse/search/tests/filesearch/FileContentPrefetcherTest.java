@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.search.tests.filesearch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+
+import org.eclipse.search.internal.core.text.BinaryFileCache;
+import org.eclipse.search.internal.core.text.FileCharSequenceProvider;
+import org.eclipse.search.internal.core.text.FileContentPrefetcher;
+import org.eclipse.search.internal.core.text.FileContentPrefetcher.Entry;
+import org.eclipse.search.internal.core.text.LiteralPattern;
+import org.eclipse.search.tests.ResourceHelper;
+
+public class FileContentPrefetcherTest {
+
+	private static final FileContentPrefetcher.IFileFilter NO_FILTER= new FileContentPrefetcher.IFileFilter() {
+		@Override
+		public boolean skip(IFile file) {
+			return false;
+		}
+	};
+
+	/**
+	 * What the matcher saw of an entry. The entries are released when they are taken, since the
+	 * readers block once the buffer pool is exhausted.
+	 */
+	private static final class Result {
+		final IFile[] fFiles;
+		final String fContent;
+		final boolean fMayMatch;
+		final boolean fBinary;
+
+		Result(Entry entry) throws Exception {
+			fFiles= entry.getFiles();
+			CharSequence content= entry.getContent();
+			fContent= content != null ? content.toString() : null;
+			fMayMatch= entry.mayMatch();
+			fBinary= entry.isBinary();
+		}
+	}
+
+	private IProject fProject;
+	private IFolder fFolder;
+
+	@Before
+	public void setUp() throws Exception {
+		fProject= ResourceHelper.createProject("my-project"); //$NON-NLS-1$
+		fFolder= ResourceHelper.createFolder(fProject.getFolder("folder1")); //$NON-NLS-1$
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ResourceHelper.deleteProject("my-project"); //$NON-NLS-1$
+		BinaryFileCache.getDefault().clear();
+	}
+
+	@Test
+	public void testOrderAndContent() throws Exception {
+		IFile[] files= new IFile[10];
+		for (int i= 0; i < files.length; i++)
+			files[i]= ResourceHelper.createFile(fFolder, "file" + i, "content " + i); //$NON-NLS-1$ //$NON-NLS-2$
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(files, NO_FILTER, null, 1, 1);
+		List<Result> results= takeAll(prefetcher);
+		prefetcher.stop();
+
+		assertEquals(files.length, results.size());
+		for (int i= 0; i < files.length; i++) {
+			Result result= results.get(i);
+			assertArrayEquals(new IFile[] { files[i] }, result.fFiles);
+			assertTrue(result.fMayMatch);
+			assertFalse(result.fBinary);
+			assertEquals("content " + i, result.fContent); //$NON-NLS-1$
+		}
+		assertTrue(prefetcher.getBytesRead() > 0);
+	}
+
+	@Test
+	public void testSameLocationIsReadOnce() throws Exception {
+		IFile file1= ResourceHelper.createFile(fFolder, "file1", "first"); //$NON-NLS-1$ //$NON-NLS-2$
+		IFile file2= ResourceHelper.createFile(fFolder, "file2", "second"); //$NON-NLS-1$ //$NON-NLS-2$
+		IFile[] files= new IFile[] { file1, file1, file2 };
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(files, NO_FILTER, null, 1, 1);
+		List<Result> results= takeAll(prefetcher);
+		prefetcher.stop();
+
+		assertEquals(2, results.size());
+		assertArrayEquals(new IFile[] { file1, file1 }, results.get(0).fFiles);
+		assertEquals("first", results.get(0).fContent); //$NON-NLS-1$
+		assertArrayEquals(new IFile[] { file2 }, results.get(1).fFiles);
+		assertEquals("first".length() + "second".length(), prefetcher.getBytesRead()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testSeveralReaders() throws Exception {
+		IFile[] files= new IFile[20];
+		for (int i= 0; i < files.length; i++)
+			files[i]= ResourceHelper.createFile(fFolder, "file" + i, "content " + i); //$NON-NLS-1$ //$NON-NLS-2$
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(files, NO_FILTER, null, 4, 1);
+		List<Result> results= takeAll(prefetcher);
+		prefetcher.stop();
+
+		// the entries may arrive out of order, but every file is passed on exactly once
+		assertEquals(files.length, results.size());
+		boolean[] seen= new boolean[files.length];
+		for (Result result : results) {
+			int index= Integer.parseInt(result.fFiles[0].getName().substring("file".length())); //$NON-NLS-1$
+			assertFalse(seen[index]);
+			seen[index]= true;
+			assertEquals("content " + index, result.fContent); //$NON-NLS-1$
+		}
+	}
+
+	@Test
+	public void testFilteredFile() throws Exception {
+		final IFile file1= ResourceHelper.createFile(fFolder, "file1", "first"); //$NON-NLS-1$ //$NON-NLS-2$
+		IFile file2= ResourceHelper.createFile(fFolder, "file2", "second"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		FileContentPrefetcher.IFileFilter filter= new FileContentPrefetcher.IFileFilter() {
+			@Override
+			public boolean skip(IFile file) {
+				return file.equals(file1);
+			}
+		};
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(new IFile[] { file1, file2 }, filter, null, 1, 1);
+		List<Result> results= takeAll(prefetcher);
+		prefetcher.stop();
+
+		assertEquals(2, results.size());
+		assertNull(results.get(0).fContent);
+		assertTrue(results.get(0).fMayMatch);
+		assertEquals("second", results.get(1).fContent); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testLiteralNotFound() throws Exception {
+		IFile file1= ResourceHelper.createFile(fFolder, "file1", "nothing to see"); //$NON-NLS-1$ //$NON-NLS-2$
+		IFile file2= ResourceHelper.createFile(fFolder, "file2", "the needle is here"); //$NON-NLS-1$ //$NON-NLS-2$
+		LiteralPattern literal= LiteralPattern.create(Pattern.compile("needle")); //$NON-NLS-1$
+		assertNotNull(literal);
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(new IFile[] { file1, file2 }, NO_FILTER, literal, 1, 1);
+		List<Result> results= takeAll(prefetcher);
+		prefetcher.stop();
+
+		assertEquals(2, results.size());
+		assertFalse(results.get(0).fMayMatch);
+		assertNull(results.get(0).fContent);
+		assertTrue(results.get(1).fMayMatch);
+		assertEquals("the needle is here", results.get(1).fContent); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testLargeFile() throws Exception {
+		String content= createLargeContent(null);
+		IFile file= ResourceHelper.createFile(fFolder, "large", content); //$NON-NLS-1$
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(new IFile[] { file }, NO_FILTER, null, 1, 1);
+		List<Result> results= takeAll(prefetcher);
+		prefetcher.stop();
+
+		// the matcher reads the file itself, so the reader must not read it
+		assertEquals(1, results.size());
+		assertNull(results.get(0).fContent);
+		assertTrue(results.get(0).fMayMatch);
+		assertFalse(results.get(0).fBinary);
+		// only the beginning is checked for binary content
+		assertTrue(prefetcher.getBytesRead() < FileCharSequenceProvider.BUFFER_SIZE);
+	}
+
+	@Test
+	public void testLargeBinaryFile() throws Exception {
+		String content= "\0" + createLargeContent(null); //$NON-NLS-1$
+		IFile file= ResourceHelper.createFile(fFolder, "large", content); //$NON-NLS-1$
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(new IFile[] { file }, NO_FILTER, null, 1, 1);
+		List<Result> results= takeAll(prefetcher);
+		prefetcher.stop();
+
+		assertEquals(1, results.size());
+		assertTrue(results.get(0).fBinary);
+		assertNull(results.get(0).fContent);
+		assertTrue(BinaryFileCache.getDefault().isBinary(file, file.getCharset()));
+		assertTrue(prefetcher.getBytesRead() < FileCharSequenceProvider.BUFFER_SIZE);
+	}
+
+	@Test
+	public void testLargeFileWithLiteral() throws Exception {
+		IFile file1= ResourceHelper.createFile(fFolder, "file1", createLargeContent(null)); //$NON-NLS-1$
+		IFile file2= ResourceHelper.createFile(fFolder, "file2", createLargeContent("needle")); //$NON-NLS-1$ //$NON-NLS-2$
+		LiteralPattern literal= LiteralPattern.create(Pattern.compile("needle")); //$NON-NLS-1$
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(new IFile[] { file1, file2 }, NO_FILTER, literal, 1, 1);
+		List<Result> results= takeAll(prefetcher);
+		prefetcher.stop();
+
+		assertEquals(2, results.size());
+		assertFalse(results.get(0).fMayMatch);
+		assertNull(results.get(0).fContent);
+		// the string is found beyond the first buffer, the matcher has to read the file
+		assertTrue(results.get(1).fMayMatch);
+		assertNull(results.get(1).fContent);
+	}
+
+	@Test
+	public void testTakeCanceled() throws Exception {
+		IFile file= ResourceHelper.createFile(fFolder, "file1", "content"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(new IFile[] { file }, NO_FILTER, null, 1, 1);
+		prefetcher.start();
+		IProgressMonitor monitor= new NullProgressMonitor();
+		monitor.setCanceled(true);
+		assertNull(prefetcher.take(monitor));
+		prefetcher.stop();
+	}
+
+	@Test
+	public void testStopWithFullQueue() throws Exception {
+		IFile[] files= new IFile[50];
+		for (int i= 0; i < files.length; i++)
+			files[i]= ResourceHelper.createFile(fFolder, "file" + i, "content " + i); //$NON-NLS-1$ //$NON-NLS-2$
+
+		FileContentPrefetcher prefetcher= new FileContentPrefetcher(files, NO_FILTER, null, 2, 1);
+		prefetcher.start();
+		Entry first= prefetcher.take(new NullProgressMonitor());
+		assertNotNull(first);
+		// the readers are blocked on the full queue or on the exhausted buffer pool
+		Thread.sleep(500);
+		prefetcher.stop();
+		assertTrue(prefetcher.getBytesRead() < files.length * "content 00".length()); //$NON-NLS-1$
+	}
+
+	private static List<Result> takeAll(FileContentPrefetcher prefetcher) throws Exception {
+		prefetcher.start();
+		List<Result> results= new ArrayList<>();
+		Entry entry;
+		while ((entry= prefetcher.take(new NullProgressMonitor())) != null) {
+			results.add(new Result(entry));
+			prefetcher.release(entry);
+			assertNull(entry.getContent());
+		}
+		return results;
+	}
+
+	private static String createLargeContent(String suffix) {
+		StringBuilder buf= new StringBuilder();
+		while (buf.length() <= FileCharSequenceProvider.BUFFER_SIZE)
+			buf.append("abcdefghijklmnopqrstuvwxyz\n"); //$NON-NLS-1$
+		if (suffix != null)
+			buf.append(suffix);
+		return buf.toString();
+	}
+}
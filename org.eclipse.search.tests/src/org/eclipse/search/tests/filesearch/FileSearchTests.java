@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,7 +14,9 @@ package org.eclipse.search.tests.filesearch;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -500,6 +502,68 @@ public class FileSearchTests {
 		assertEquals("Number of total results", 1, results.length);
 	}
 	
+	@Test
+	public void testEncodingsSerial() throws Exception {
+		testEncodings(new SerialTestResultCollector());
+	}
+
+	@Test
+	public void testEncodingsParallel() throws Exception {
+		testEncodings(new ParallelTestResultCollector());
+	}
+
+	private void testEncodings(TestResultCollector collector) throws Exception {
+		String content= "gr\u00FC\u00DFe hello\n\u4E16\u754C hello \u212Aelvin\n";
+		IFolder folder= ResourceHelper.createFolder(fProject.getFolder("folder1"));
+		IFile utf8= ResourceHelper.createFile(folder, "utf8", content, "UTF-8");
+		IFile utf16= ResourceHelper.createFile(folder, "utf16", content, "UTF-16");
+		IFile latin1= ResourceHelper.createFile(folder, "latin1", "gr\u00FC\u00DFe hello\n", "ISO-8859-1");
+		ResourceHelper.createFile(folder, "other", "gr\u00FC\u00DFe\n", "UTF-8");
+
+		TestResult[] results= performSearch(collector, null, PatternConstructor.createPattern("hello", true, false));
+		assertEquals("Number of total results", 5, results.length);
+		assertMatches(results, 2, utf8, content, "hello");
+		assertMatches(results, 2, utf16, content, "hello");
+		assertMatches(results, 1, latin1, "gr\u00FC\u00DFe hello\n", "hello");
+
+		// the Kelvin sign matches 'k' if case is ignored
+		results= performSearch(collector, null, PatternConstructor.createPattern("kelvin", false, false));
+		assertEquals("Number of total results", 2, results.length);
+		assertMatches(results, 1, utf8, content, "\u212Aelvin");
+		assertMatches(results, 1, utf16, content, "\u212Aelvin");
+	}
+
+	@Test
+	public void testBinaryFiles() throws Exception {
+		IFolder folder= ResourceHelper.createFolder(fProject.getFolder("folder1"));
+		IFile binary= ResourceHelper.createFile(folder, "binary", "hello\u0000world\n");
+		IFile text= ResourceHelper.createFile(folder, "text", "hello world\n");
+		final List<IFile> binaryFiles= new ArrayList<>();
+		TestResultCollector collector= new SerialTestResultCollector() {
+			@Override
+			public boolean reportBinaryFile(IFile file) {
+				binaryFiles.add(file);
+				return false;
+			}
+		};
+		Pattern searchPattern= PatternConstructor.createPattern("hello", true, false);
+
+		// the second search uses the cached result
+		for (int i= 0; i < 2; i++) {
+			binaryFiles.clear();
+			TestResult[] results= performSearch(collector, null, searchPattern);
+			assertEquals("Number of total results", 1, results.length);
+			assertMatches(results, 1, text, "hello world\n", "hello");
+			assertEquals(Collections.singletonList(binary), binaryFiles);
+		}
+
+		binary.setContents(new ByteArrayInputStream("hello\n".getBytes("ISO-8859-1")), true, false, null);
+		binaryFiles.clear();
+		TestResult[] results= performSearch(collector, null, searchPattern);
+		assertEquals("Number of total results", 2, results.length);
+		assertEquals(0, binaryFiles.size());
+	}
+
 	private TestResult[] performSearch(TestResultCollector collector, String[] fileNamePatterns, Pattern searchPattern) {
 		collector.reset();
 		FileTextSearchScope scope= FileTextSearchScope.newSearchScope(new IResource[] {fProject}, fileNamePatterns, false);
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.search.tests.filesearch;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+
+import org.eclipse.search.internal.core.text.PatternConstructor;
+import org.eclipse.search.internal.core.text.TextSearchIndex;
+import org.eclipse.search.tests.ResourceHelper;
+import org.eclipse.search.tests.SearchTestPlugin;
+
+public class TextSearchIndexTest {
+
+	private IProject fProject;
+	private File fIndexFile;
+	private TextSearchIndex fIndex;
+
+	@Before
+	public void setUp() throws Exception {
+		fProject= ResourceHelper.createProject("index-project"); //$NON-NLS-1$
+		fIndexFile= SearchTestPlugin.getDefault().getStateLocation().append("textSearchIndexTest.dat").toFile(); //$NON-NLS-1$
+		fIndexFile.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (fIndex != null)
+			fIndex.shutdown();
+		fIndexFile.delete();
+		ResourceHelper.deleteProject("index-project"); //$NON-NLS-1$
+	}
+
+	private TextSearchIndex startIndex() throws Exception {
+		if (fIndex != null)
+			fIndex.shutdown();
+		fIndex= new TextSearchIndex(fIndexFile);
+		fIndex.startup();
+		fIndex.join();
+		return fIndex;
+	}
+
+	private static Pattern createPattern(String pattern) {
+		return PatternConstructor.createPattern(pattern, false, true);
+	}
+
+	@Test
+	public void testQueryPatterns() throws Exception {
+		TextSearchIndex index= startIndex();
+		assertNotNull(index.createQuery(createPattern("hello"))); //$NON-NLS-1$
+		assertNotNull(index.createQuery(createPattern("hel*world"))); //$NON-NLS-1$
+		assertNotNull(index.createQuery(PatternConstructor.createPattern("hel+lo", true, true))); //$NON-NLS-1$
+		assertNull(index.createQuery(createPattern("he"))); //$NON-NLS-1$
+		assertNull(index.createQuery(createPattern("he*lo"))); //$NON-NLS-1$
+		assertNull(index.createQuery(PatternConstructor.createPattern("hello|world", true, true))); //$NON-NLS-1$
+		assertNull(index.createQuery(PatternConstructor.createPattern("hel(lo)?", true, true))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testFilter() throws Exception {
+		IFolder folder= ResourceHelper.createFolder(fProject.getFolder("folder")); //$NON-NLS-1$
+		IFile hello= ResourceHelper.createFile(folder, "hello.txt", "Hello World\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		IFile other= ResourceHelper.createFile(folder, "other.txt", "something else\n"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		TextSearchIndex index= startIndex();
+		TextSearchIndex.Query query= index.createQuery(createPattern("hello")); //$NON-NLS-1$
+		assertTrue(query.mayMatch(hello));
+		assertFalse(query.mayMatch(other));
+
+		other.setContents(new ByteArrayInputStream("say hello\n".getBytes("UTF-8")), true, false, null); //$NON-NLS-1$ //$NON-NLS-2$
+		// modified files are candidates until they are indexed again
+		assertTrue(query.mayMatch(other));
+		index.join();
+		query= index.createQuery(createPattern("something")); //$NON-NLS-1$
+		assertFalse(query.mayMatch(other));
+		assertFalse(query.mayMatch(hello));
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		IFolder folder= ResourceHelper.createFolder(fProject.getFolder("folder")); //$NON-NLS-1$
+		IFile file= ResourceHelper.createFile(folder, "file.txt", "first line\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		startIndex();
+
+		TextSearchIndex index= startIndex();
+		assertTrue(fIndexFile.exists());
+		assertFalse(index.createQuery(createPattern("second")).mayMatch(file)); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testCorruptIndex() throws Exception {
+		IFolder folder= ResourceHelper.createFolder(fProject.getFolder("folder")); //$NON-NLS-1$
+		IFile file= ResourceHelper.createFile(folder, "file.txt", "first line\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		startIndex().shutdown();
+		fIndex= null;
+
+		try (FileOutputStream out= new FileOutputStream(fIndexFile)) {
+			out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		}
+		TextSearchIndex index= startIndex();
+		assertFalse(index.createQuery(createPattern("second")).mayMatch(file)); //$NON-NLS-1$
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -45,8 +45,9 @@ public abstract class TextSearchEngine {
 	}
 
 	/**
-	 * Creates the default, built-in, text search engine that implements a brute-force search, not using
-	 * any search index.
+	 * Creates the default, built-in, text search engine that implements a brute-force search. If the
+	 * optional workspace text search index is enabled, it is used to skip files that cannot contain a
+	 * match before the remaining files are searched.
 	 * Note that clients should always use the search engine provided by {@link #create()}.
 	 * @return an instance of the default text search engine {@link TextSearchEngine}.
 	 */
@@ -54,12 +55,12 @@ public abstract class TextSearchEngine {
 		return new TextSearchEngine() {
 			@Override
 			public IStatus search(TextSearchScope scope, TextSearchRequestor requestor, Pattern searchPattern, IProgressMonitor monitor) {
-				return new TextSearchVisitor(requestor, searchPattern).search(scope, monitor);
+				return new TextSearchVisitor(requestor, searchPattern, SearchPlugin.getDefault().getTextSearchIndex()).search(scope, monitor);
 			}
 
 			@Override
 			public IStatus search(IFile[] scope, TextSearchRequestor requestor, Pattern searchPattern, IProgressMonitor monitor) {
-				 return new TextSearchVisitor(requestor, searchPattern).search(scope, monitor);
+				return new TextSearchVisitor(requestor, searchPattern, SearchPlugin.getDefault().getTextSearchIndex()).search(scope, monitor);
 			}
 		};
 	}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.search.internal.core.text;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.content.IContentDescription;
+import org.eclipse.core.runtime.content.IContentType;
+import org.eclipse.core.runtime.content.IContentTypeManager;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+
+/**
+ * Remembers the files that the text search found to be binary, so that repeated searches skip
+ * them without reading them. An entry is valid as long as the modification stamp, the local time
+ * stamp and the charset of the file are unchanged. The least recently used entries are evicted
+ * if the cache is full.
+ * <p>
+ * This class also detects binary files from their undecoded content.
+ * </p>
+ */
+public final class BinaryFileCache {
+
+	/** The maximal number of remembered files. */
+	private static final int MAX_SIZE= 10000;
+
+	private static final BinaryFileCache fgDefault= new BinaryFileCache();
+
+	private static final class Stamp {
+		private final long fStamp;
+		private final long fTimeStamp;
+		private final String fCharset;
+
+		private Stamp(IFile file, String charset) {
+			fStamp= file.getModificationStamp();
+			fTimeStamp= file.getLocalTimeStamp();
+			fCharset= charset;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Stamp))
+				return false;
+			Stamp other= (Stamp) obj;
+			return fStamp == other.fStamp && fTimeStamp == other.fTimeStamp && fCharset.equals(other.fCharset);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (fStamp ^ fTimeStamp) ^ fCharset.hashCode();
+		}
+	}
+
+	/** The binary files in least recently used order. Protected by <code>this</code>. */
+	private final Map<IFile, Stamp> fFiles= new LinkedHashMap<IFile, Stamp>(16, 0.75f, true) {
+		private static final long serialVersionUID= 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<IFile, Stamp> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	/**
+	 * Returns the cache that is shared by all text searches.
+	 *
+	 * @return the shared cache
+	 */
+	public static BinaryFileCache getDefault() {
+		return fgDefault;
+	}
+
+	/**
+	 * Returns whether the given file has been found to be binary and has not changed since.
+	 *
+	 * @param file the file
+	 * @param charset the name of the current charset of the file
+	 * @return <code>true</code> if the file is known to be binary
+	 */
+	public synchronized boolean isBinary(IFile file, String charset) {
+		Stamp stamp= fFiles.get(file);
+		if (stamp == null)
+			return false;
+		if (stamp.equals(new Stamp(file, charset)))
+			return true;
+		fFiles.remove(file);
+		return false;
+	}
+
+	/**
+	 * Remembers that the given file is binary.
+	 *
+	 * @param file the file
+	 * @param charset the name of the current charset of the file
+	 */
+	public synchronized void setBinary(IFile file, String charset) {
+		Stamp stamp= new Stamp(file, charset);
+		if (stamp.fStamp != IResource.NULL_STAMP)
+			fFiles.put(file, stamp);
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		fFiles.clear();
+	}
+
+	/**
+	 * Returns whether the given file has a text content type. Such files are never binary.
+	 *
+	 * @param file the file
+	 * @return <code>true</code> if the content type of the file is a kind of text
+	 * @throws CoreException if the content description of the file cannot be read
+	 */
+	public static boolean isTextFile(IFile file) throws CoreException {
+		IContentDescription desc= file.getContentDescription();
+		if (desc != null) {
+			IContentType contentType= desc.getContentType();
+			if (contentType != null && contentType.isKindOf(Platform.getContentTypeManager().getContentType(IContentTypeManager.CT_TEXT))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the given undecoded content contains a NUL character. Only the content of
+	 * files with an ASCII compatible charset can be checked, other charsets encode characters
+	 * with NUL bytes.
+	 *
+	 * @param bytes the beginning of the content
+	 * @param length the number of bytes to check
+	 * @param charset the charset of the content
+	 * @return <code>true</code> if the content has been found to be binary
+	 */
+	public static boolean containsNul(byte[] bytes, int length, Charset charset) {
+		if (!LiteralPattern.isAsciiCompatible(charset))
+			return false;
+		for (int i= 0; i < length; i++) {
+			if (bytes[i] == 0)
+				return true;
+		}
+		return false;
+	}
+}
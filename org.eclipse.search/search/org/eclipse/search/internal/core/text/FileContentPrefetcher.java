@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.search.internal.core.text;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobGroup;
+
+import org.eclipse.core.resources.IFile;
+
+/**
+ * The I/O stage of the text search. A bounded number of reader jobs read and decode the files to
+ * search into pooled character buffers ahead of the matcher jobs, which take the decoded files
+ * from a bounded queue. Readers block when all buffers are in use, so the memory used for
+ * prefetching is limited to the pool.
+ * <p>
+ * Files that do not fit into a buffer, files that are open in an editor and files that cannot be
+ * read are passed on without content; the matcher then falls back to reading them itself. Files
+ * whose size shows that they do not fit into a buffer are not read by the readers at all, so that
+ * their content is read only once.
+ * Consecutive files with the same location are passed on as one {@link Entry} so that their
+ * content is read only once.
+ * </p>
+ * <p>
+ * If the search pattern is a literal string that can be found in the undecoded bytes of a file,
+ * see {@link LiteralPattern#canSearchBytes(Charset)}, the readers search the bytes first. Files
+ * that do not contain the string are passed on as not matching without being decoded, even if
+ * they do not fit into a buffer. A large file is streamed through the byte search only until the
+ * first occurrence of the string; only then the matcher reads it once more.
+ * </p>
+ * <p>
+ * Files that are known to be binary, see {@link BinaryFileCache}, are passed on as binary without
+ * being read. Files of an ASCII compatible charset that contain a NUL byte are passed on as binary
+ * without being decoded. Of files too large to be prefetched, only the beginning is checked.
+ * </p>
+ */
+public class FileContentPrefetcher {
+
+	/** The number of characters of a pooled buffer. Larger files are not prefetched. */
+	static final int BUFFER_SIZE= FileCharSequenceProvider.BUFFER_SIZE;
+
+	/** The number of bytes at the beginning of a file too large to be prefetched that are checked for NUL bytes. */
+	private static final int BINARY_CHECK_SIZE= 8 * 1024;
+
+	/** The name of the reader jobs. */
+	private static final String READER_JOB_NAME= "Text Search I/O"; //$NON-NLS-1$
+
+	/** The interval in which blocked readers and matchers check for cancellation, in ms. */
+	private static final long POLL_INTERVAL= 100;
+
+	/**
+	 * Files that are passed from the readers to the matchers.
+	 */
+	public static final class Entry {
+		private final IFile[] fFiles;
+		private CharBuffer fContent;
+		private Exception fException;
+		private boolean fMayMatch= true;
+		private boolean fBinary;
+
+		private Entry(IFile[] files) {
+			fFiles= files;
+		}
+
+		/**
+		 * Returns the files of this entry. All of them have the same location.
+		 *
+		 * @return the files
+		 */
+		public IFile[] getFiles() {
+			return fFiles;
+		}
+
+		/**
+		 * Returns the decoded content of the files.
+		 *
+		 * @return the content, or <code>null</code> if the files have not been prefetched
+		 * @throws CoreException if reading the files failed
+		 * @throws IOException if reading the files failed
+		 */
+		public CharSequence getContent() throws CoreException, IOException {
+			if (fException instanceof CoreException)
+				throw (CoreException) fException;
+			if (fException instanceof IOException)
+				throw (IOException) fException;
+			if (fException instanceof RuntimeException)
+				throw (RuntimeException) fException;
+			return fContent;
+		}
+
+		/**
+		 * Returns whether the files of this entry may contain a match of the search pattern.
+		 *
+		 * @return <code>false</code> if the readers found that the files contain no match
+		 */
+		public boolean mayMatch() {
+			return fMayMatch;
+		}
+
+		/**
+		 * Returns whether the readers found that the files of this entry are binary. The content
+		 * of binary files is not prefetched.
+		 *
+		 * @return <code>true</code> if the files are binary
+		 */
+		public boolean isBinary() {
+			return fBinary;
+		}
+	}
+
+	/**
+	 * Decides which files are not prefetched.
+	 */
+	public interface IFileFilter {
+		/**
+		 * Returns whether the given file should be read by the matcher instead of being
+		 * prefetched.
+		 *
+		 * @param file the file
+		 * @return <code>true</code> to skip prefetching the file
+		 */
+		boolean skip(IFile file);
+	}
+
+	/** The marker entry that tells the matchers that all files have been read. */
+	private static final Entry END= new Entry(new IFile[0]);
+
+	private final IFile[] fFiles;
+	private final IFileFilter fFilter;
+	private final LiteralPattern fLiteralPattern;
+	private final int fNumberOfReaders;
+	private final int fNumberOfMatchers;
+	private final BlockingQueue<Entry> fQueue;
+	private final BlockingQueue<CharBuffer> fBuffers;
+	private final JobGroup fReaders;
+
+	/** The index of the next file to read. Protected by <code>this</code>. */
+	private int fNextFile= 0;
+	private final AtomicInteger fActiveReaders;
+	private final AtomicLong fBytesRead= new AtomicLong();
+	private volatile boolean fStopped= false;
+
+	/**
+	 * Creates a new prefetcher for the given files.
+	 *
+	 * @param files the files to read, sorted such that files with the same location are adjacent
+	 * @param filter decides which files are not prefetched
+	 * @param literalPattern the search pattern if it is a literal string, or <code>null</code>
+	 * @param numberOfReaders the number of reader jobs
+	 * @param numberOfMatchers the number of matcher jobs that take entries
+	 */
+	public FileContentPrefetcher(IFile[] files, IFileFilter filter, LiteralPattern literalPattern, int numberOfReaders, int numberOfMatchers) {
+		fFiles= files;
+		fFilter= filter;
+		fLiteralPattern= literalPattern;
+		fNumberOfReaders= numberOfReaders;
+		fNumberOfMatchers= numberOfMatchers;
+		int numberOfBuffers= 2 * numberOfMatchers + numberOfReaders;
+		fQueue= new ArrayBlockingQueue<>(numberOfBuffers + numberOfMatchers);
+		fBuffers= new ArrayBlockingQueue<>(numberOfBuffers);
+		fReaders= new JobGroup(READER_JOB_NAME, numberOfReaders, numberOfReaders);
+		fActiveReaders= new AtomicInteger(numberOfReaders);
+		for (int i= 0; i < numberOfBuffers; i++)
+			fBuffers.add(CharBuffer.allocate(BUFFER_SIZE));
+	}
+
+	/**
+	 * Starts the reader jobs.
+	 */
+	public void start() {
+		for (int i= 0; i < fNumberOfReaders; i++) {
+			Job job= new Job(READER_JOB_NAME) {
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					try {
+						read(monitor);
+					} finally {
+						if (fActiveReaders.decrementAndGet() == 0)
+							close();
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			job.setSystem(true);
+			job.setJobGroup(fReaders);
+			job.schedule();
+		}
+	}
+
+	/**
+	 * Stops the reader jobs and waits for them to finish.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void stop() throws InterruptedException {
+		fStopped= true;
+		fReaders.join(0, null);
+	}
+
+	/**
+	 * Takes the next entry from the queue, blocking until one is available.
+	 *
+	 * @param monitor the monitor of the matcher
+	 * @return the next entry, or <code>null</code> if all files have been read or the matcher has
+	 *         been canceled
+	 */
+	public Entry take(IProgressMonitor monitor) {
+		try {
+			while (!monitor.isCanceled()) {
+				Entry entry= fQueue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (entry == END)
+					return null;
+				if (entry != null)
+					return entry;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the buffer of the given entry to the pool. The content of the entry must no longer
+	 * be used afterwards.
+	 *
+	 * @param entry the entry that has been processed
+	 */
+	public void release(Entry entry) {
+		CharBuffer buffer= entry.fContent;
+		entry.fContent= null;
+		if (buffer != null) {
+			buffer.clear();
+			fBuffers.offer(buffer);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes that have been read so far.
+	 *
+	 * @return the number of bytes read
+	 */
+	public long getBytesRead() {
+		return fBytesRead.get();
+	}
+
+	private void read(IProgressMonitor monitor) {
+		byte[] bytes= new byte[BUFFER_SIZE + 1];
+		Entry entry;
+		while ((entry= nextEntry()) != null) {
+			if (fStopped || monitor.isCanceled())
+				break;
+
+			IFile file= entry.fFiles[0];
+			if (!fFilter.skip(file)) {
+				try {
+					readContent(file, bytes, entry);
+				} catch (CoreException | IOException | UnsupportedCharsetException | IllegalCharsetNameException e) {
+					entry.fException= e;
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+			if (!put(entry)) {
+				release(entry);
+				break;
+			}
+		}
+	}
+
+	private synchronized Entry nextEntry() {
+		int begin= fNextFile;
+		if (begin >= fFiles.length)
+			return null;
+
+		IPath location= fFiles[begin].getLocation();
+		int end= begin + 1;
+		while (location != null && end < fFiles.length && location.equals(fFiles[end].getLocation()))
+			end++;
+		fNextFile= end;
+
+		IFile[] files= new IFile[end - begin];
+		System.arraycopy(fFiles, begin, files, 0, files.length);
+		return new Entry(files);
+	}
+
+	private void readContent(IFile file, byte[] bytes, Entry entry) throws CoreException, IOException, InterruptedException {
+		String charsetName= file.getCharset();
+		Charset charset= Charset.forName(charsetName);
+		if (BinaryFileCache.getDefault().isBinary(file, charsetName)) {
+			entry.fBinary= true;
+			return;
+		}
+
+		boolean searchBytes= fLiteralPattern != null && fLiteralPattern.canSearchBytes(charset);
+		if (!searchBytes && getSize(file) > BUFFER_SIZE) {
+			// too large, the matcher reads the file itself unless its beginning is binary
+			if (LiteralPattern.isAsciiCompatible(charset)) {
+				try (InputStream stream= file.getContents()) {
+					int length= read(stream, bytes, 0, BINARY_CHECK_SIZE);
+					fBytesRead.addAndGet(length);
+					if (BinaryFileCache.containsNul(bytes, length, charset) && !BinaryFileCache.isTextFile(file)) {
+						BinaryFileCache.getDefault().setBinary(file, charsetName);
+						entry.fBinary= true;
+					}
+				}
+			}
+			return;
+		}
+
+		int length;
+		try (InputStream stream= file.getContents()) {
+			length= read(stream, bytes, 0);
+			fBytesRead.addAndGet(length);
+			if (BinaryFileCache.containsNul(bytes, Math.min(length, BUFFER_SIZE), charset) && !BinaryFileCache.isTextFile(file)) {
+				BinaryFileCache.getDefault().setBinary(file, charsetName);
+				entry.fBinary= true;
+				return;
+			}
+			if (searchBytes && fLiteralPattern.indexOf(bytes, 0, length) == -1) {
+				if (length <= BUFFER_SIZE || !findInRemainingBytes(stream, bytes)) {
+					entry.fMayMatch= false;
+					return;
+				}
+			}
+		}
+		if (length > BUFFER_SIZE)
+			return; // too large, the matcher reads the file itself
+
+		CharBuffer buffer= null;
+		while (buffer == null) {
+			if (fStopped)
+				throw new InterruptedException();
+			buffer= fBuffers.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+
+		int start= 0;
+		if (StandardCharsets.UTF_8.equals(charset) && length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF)
+			start= 3;
+
+		CharsetDecoder decoder= charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer in= ByteBuffer.wrap(bytes, start, length - start);
+		CoderResult result= decoder.decode(in, buffer, true);
+		if (result.isUnderflow())
+			result= decoder.flush(buffer);
+		if (!result.isUnderflow()) {
+			// does not fit into the buffer, the matcher reads the file itself
+			buffer.clear();
+			fBuffers.offer(buffer);
+			return;
+		}
+		buffer.flip();
+		entry.fContent= buffer;
+	}
+
+	/**
+	 * Searches the remaining content of a file whose beginning has been read into the given
+	 * buffer. The buffer is reused to read the content.
+	 *
+	 * @param stream the stream to read the remaining content from
+	 * @param bytes the full buffer
+	 * @return <code>true</code> if the literal pattern may occur in the content
+	 * @throws IOException if reading the file failed
+	 * @throws InterruptedException if the prefetcher has been stopped
+	 */
+	private boolean findInRemainingBytes(InputStream stream, byte[] bytes) throws IOException, InterruptedException {
+		// keep the bytes that may be the beginning of a match
+		int overlap= fLiteralPattern.length() - 1;
+		if (overlap >= bytes.length / 2)
+			return true;
+		int length= bytes.length;
+		while (length == bytes.length) {
+			if (fStopped)
+				throw new InterruptedException();
+			System.arraycopy(bytes, length - overlap, bytes, 0, overlap);
+			length= read(stream, bytes, overlap);
+			fBytesRead.addAndGet(length - overlap);
+			if (fLiteralPattern.indexOf(bytes, 0, length) != -1)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the size of the given file without reading it.
+	 *
+	 * @param file the file
+	 * @return the size of the file in bytes, or <code>-1</code> if it is not known
+	 */
+	private static long getSize(IFile file) {
+		IPath location= file.getLocation();
+		if (location == null)
+			return -1;
+		File localFile= location.toFile();
+		return localFile.isFile() ? localFile.length() : -1;
+	}
+
+	private static int read(InputStream stream, byte[] bytes, int offset) throws IOException {
+		return read(stream, bytes, offset, bytes.length);
+	}
+
+	private static int read(InputStream stream, byte[] bytes, int offset, int end) throws IOException {
+		int length= offset;
+		int read;
+		while (length < end && (read= stream.read(bytes, length, end - length)) != -1)
+			length += read;
+		return length;
+	}
+
+	private boolean put(Entry entry) {
+		try {
+			while (!fStopped) {
+				if (fQueue.offer(entry, POLL_INTERVAL, TimeUnit.MILLISECONDS))
+					return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	private void close() {
+		for (int i= 0; i < fNumberOfMatchers; i++)
+			put(END);
+	}
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.search.internal.core.text;
+
+import java.nio.charset.Charset;
+import java.util.regex.Pattern;
+
+/**
+ * A search pattern that consists of a literal string only, e.g. a pattern created by
+ * {@link PatternConstructor} for a plain string search. Such a pattern is found with the
+ * Boyer-Moore-Horspool algorithm instead of the regular expression engine. The matches are the
+ * same as the matches of the pattern.
+ * <p>
+ * Copied from the literal matcher of {@link org.eclipse.jface.text.FindReplaceDocumentAdapter},
+ * plus detection of literal {@link Pattern}s.
+ * </p>
+ */
+public final class LiteralPattern {
+
+	private static final int CASE_SENSITIVE= 0;
+	private static final int ASCII_CASE_INSENSITIVE= 1;
+	private static final int UNICODE_CASE_INSENSITIVE= 2;
+
+	/** The size of the skip table. Characters are mapped to their low byte. */
+	private static final int TABLE_SIZE= 256;
+
+	/** The folded characters of the literal. */
+	private final char[] fLiteral;
+	private final int fCaseMode;
+	/** The shift for each character of the text, by low byte. */
+	private final int[] fShifts= new int[TABLE_SIZE];
+	/** Whether the literal matches ASCII characters only, see {@link #canSearchBytes(Charset)}. */
+	private final boolean fMatchesAsciiOnly;
+
+	private LiteralPattern(String literal, int caseMode) {
+		fCaseMode= caseMode;
+		int length= literal.length();
+		fLiteral= new char[length];
+		boolean asciiOnly= true;
+		for (int i= 0; i < length; i++) {
+			char c= fold(literal.charAt(i));
+			fLiteral[i]= c;
+			// the Kelvin sign, the long s and the dotted and dotless i match ASCII letters
+			if (c >= 128 || caseMode == UNICODE_CASE_INSENSITIVE && (c == 'k' || c == 's' || c == 'i'))
+				asciiOnly= false;
+		}
+		fMatchesAsciiOnly= asciiOnly;
+
+		for (int i= 0; i < TABLE_SIZE; i++)
+			fShifts[i]= length;
+		for (int i= 0; i < length - 1; i++)
+			fShifts[fLiteral[i] & 0xFF]= length - 1 - i;
+	}
+
+	/**
+	 * Creates a literal pattern that finds the same matches as the given pattern.
+	 *
+	 * @param pattern the pattern
+	 * @return the literal pattern, or <code>null</code> if the pattern is not a literal string
+	 *         or cannot be found without the regular expression engine
+	 */
+	public static LiteralPattern create(Pattern pattern) {
+		int flags= pattern.flags();
+		if ((flags & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0)
+			return null;
+
+		String literal= (flags & Pattern.LITERAL) != 0 ? pattern.pattern() : getLiteral(pattern.pattern());
+		// single characters are case folded slightly differently by the regular expression engine
+		if (literal == null || literal.length() < 2)
+			return null;
+		for (int i= 0; i < literal.length(); i++) {
+			if (Character.isSurrogate(literal.charAt(i)))
+				return null; // matched by code point
+		}
+
+		int caseMode= CASE_SENSITIVE;
+		if ((flags & Pattern.CASE_INSENSITIVE) != 0)
+			caseMode= (flags & (Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS)) != 0 ? UNICODE_CASE_INSENSITIVE : ASCII_CASE_INSENSITIVE;
+		return new LiteralPattern(literal, caseMode);
+	}
+
+	/**
+	 * Returns the string the given regular expression matches literally.
+	 *
+	 * @param regex the regular expression
+	 * @return the literal string, or <code>null</code> if the expression contains anything but
+	 *         characters, escaped characters and quotes
+	 */
+	private static String getLiteral(String regex) {
+		StringBuilder literal= new StringBuilder(regex.length());
+		int length= regex.length();
+		int i= 0;
+		while (i < length) {
+			char c= regex.charAt(i++);
+			switch (c) {
+				case '\\':
+					if (i == length)
+						return null;
+					char escaped= regex.charAt(i++);
+					switch (escaped) {
+						case 'Q':
+							int end= regex.indexOf("\\E", i); //$NON-NLS-1$
+							if (end == -1)
+								end= length;
+							literal.append(regex, i, end);
+							i= Math.min(length, end + 2);
+							break;
+						case 't':
+							literal.append('\t');
+							break;
+						case 'n':
+							literal.append('\n');
+							break;
+						case 'r':
+							literal.append('\r');
+							break;
+						case 'f':
+							literal.append('\f');
+							break;
+						case 'a':
+							literal.append('\u0007');
+							break;
+						case 'e':
+							literal.append('\u001B');
+							break;
+						default:
+							if (Character.isLetterOrDigit(escaped))
+								return null;
+							literal.append(escaped);
+							break;
+					}
+					break;
+				case '.': case '^': case '$': case '*': case '+': case '?':
+				case '{': case '}': case '[': case ']': case '(': case ')': case '|':
+					return null;
+				default:
+					literal.append(c);
+					break;
+			}
+		}
+		return literal.toString();
+	}
+
+	/**
+	 * Returns the length of the matches.
+	 *
+	 * @return the length of the literal
+	 */
+	public int length() {
+		return fLiteral.length;
+	}
+
+	/**
+	 * Finds the first match at or after the given index.
+	 *
+	 * @param text the text to search
+	 * @param from the index to start at
+	 * @return the index of the match, or -1 if there is none
+	 */
+	public int indexOf(CharSequence text, int from) {
+		int last= fLiteral.length - 1;
+		char lastChar= fLiteral[last];
+		int to= text.length();
+		int i= from;
+		while (i + last < to) {
+			char c= text.charAt(i + last);
+			char folded= fold(c);
+			if (c == lastChar || folded == lastChar) {
+				int j= last - 1;
+				while (j >= 0 && matches(text.charAt(i + j), fLiteral[j]))
+					j--;
+				if (j < 0)
+					return i;
+			}
+			i += Math.min(fShifts[c & 0xFF], fShifts[folded & 0xFF]);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns whether this pattern can be found in the undecoded content of a file with the given
+	 * charset using {@link #indexOf(byte[], int, int)}. This is the case if the pattern matches
+	 * ASCII characters only and the charset is {@link #isAsciiCompatible(Charset) ASCII
+	 * compatible}.
+	 *
+	 * @param charset the charset of the content
+	 * @return <code>true</code> if the bytes can be searched
+	 */
+	public boolean canSearchBytes(Charset charset) {
+		if (!fMatchesAsciiOnly)
+			return false;
+		return isAsciiCompatible(charset);
+	}
+
+	/**
+	 * Returns whether the given charset encodes each ASCII character as the same single byte,
+	 * which is never part of the encoding of another character.
+	 *
+	 * @param charset the charset
+	 * @return <code>true</code> for UTF-8 and the ASCII based single byte charsets
+	 */
+	static boolean isAsciiCompatible(Charset charset) {
+		String name= charset.name();
+		return "UTF-8".equals(name) || "US-ASCII".equals(name) || name.startsWith("ISO-8859-") || name.startsWith("windows-125"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	/**
+	 * Finds the first match in the given range of bytes. The pattern must support the charset
+	 * of the bytes, see {@link #canSearchBytes(Charset)}.
+	 *
+	 * @param bytes the encoded text to search
+	 * @param from the index to start at
+	 * @param to the end of the range, exclusive
+	 * @return the index of the first byte of the match, or -1 if there is none
+	 */
+	public int indexOf(byte[] bytes, int from, int to) {
+		int last= fLiteral.length - 1;
+		char lastChar= fLiteral[last];
+		int i= from;
+		while (i + last < to) {
+			char c= (char) (bytes[i + last] & 0xFF);
+			char folded= foldAscii(c);
+			if (folded == lastChar) {
+				int j= last - 1;
+				while (j >= 0 && foldAscii((char) (bytes[i + j] & 0xFF)) == fLiteral[j])
+					j--;
+				if (j < 0)
+					return i;
+			}
+			i += fShifts[folded];
+		}
+		return -1;
+	}
+
+	private char foldAscii(char c) {
+		if (fCaseMode != CASE_SENSITIVE && c >= 'A' && c <= 'Z')
+			return (char) (c + ('a' - 'A'));
+		return c;
+	}
+
+	private boolean matches(char c, char literal) {
+		return c == literal || fold(c) == literal;
+	}
+
+	private char fold(char c) {
+		switch (fCaseMode) {
+			case CASE_SENSITIVE:
+				return c;
+			case ASCII_CASE_INSENSITIVE:
+				return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+			default:
+				if (c < 128)
+					return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+				return Character.toLowerCase(Character.toUpperCase(c));
+		}
+	}
+}
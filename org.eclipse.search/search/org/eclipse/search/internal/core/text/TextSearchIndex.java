@@ -0,0 +1,900 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.search.internal.core.text;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.search.internal.ui.SearchPlugin;
+
+/**
+ * An optional, persistent trigram index of the content of the workspace files. The index is
+ * used to skip files that cannot contain a match of a search pattern before they are read.
+ * <p>
+ * For every file, the index records the case folded trigrams, i.e. sequences of three
+ * characters, of its content, hashed into a fixed number of buckets. A pattern can only match
+ * in a file if the file contains all trigrams of the literal strings every match of the pattern
+ * must contain. Files that have been modified since they have been indexed, files that have not
+ * been indexed yet and files that are not indexed because they are too large or binary are
+ * always candidates, so the index never hides a match.
+ * </p>
+ * <p>
+ * The index is updated in a background job from resource deltas and stored in the state
+ * location of the search plug-in on shutdown. A stored index that cannot be read, e.g. because
+ * it is corrupt, is discarded and rebuilt in the background. The index is only enabled if the
+ * system property <code>org.eclipse.search.textSearchIndex</code> is <code>true</code>.
+ * </p>
+ */
+public class TextSearchIndex {
+
+	/** Whether the index is enabled. */
+	public static final boolean ENABLED= Boolean.getBoolean("org.eclipse.search.textSearchIndex"); //$NON-NLS-1$
+
+	/** The number of bits of a trigram bucket. */
+	private static final int BUCKET_BITS= 18;
+	/** The number of trigram buckets. */
+	private static final int NUMBER_OF_BUCKETS= 1 << BUCKET_BITS;
+	/** Files with more characters are not indexed. */
+	private static final int MAX_FILE_LENGTH= 16 * 1024 * 1024;
+	/** The number of indexed files after which the index is stored while being updated. */
+	private static final int SAVE_THRESHOLD= 10000;
+	/** The delay of the update job after a resource change, in ms. */
+	private static final long UPDATE_DELAY= 500;
+
+	private static final int MAGIC= 0x54534958; // "TSIX"
+	private static final int VERSION= 1;
+
+	/**
+	 * An indexed file. Documents are never modified; when a file changes, its document is
+	 * removed and a new document with a new id is added.
+	 */
+	private static final class Document {
+		final String fPath;
+		final long fStamp;
+		final long fTimeStamp;
+		/** <code>false</code> if the content of the file is not indexed. */
+		final boolean fIndexed;
+
+		Document(String path, long stamp, long timeStamp, boolean indexed) {
+			fPath= path;
+			fStamp= stamp;
+			fTimeStamp= timeStamp;
+			fIndexed= indexed;
+		}
+	}
+
+	/**
+	 * Decides which files may contain a match of a pattern.
+	 */
+	public final class Query {
+		private final BitSet fCandidates;
+		private final int fNumberOfDocuments;
+		private final int fGeneration;
+
+		private Query(BitSet candidates, int numberOfDocuments, int generation) {
+			fCandidates= candidates;
+			fNumberOfDocuments= numberOfDocuments;
+			fGeneration= generation;
+		}
+
+		/**
+		 * Returns whether the content of the given file on disk may contain a match of the
+		 * pattern of this query.
+		 *
+		 * @param file the file
+		 * @return <code>false</code> if the file does not contain a match
+		 */
+		public boolean mayMatch(IFile file) {
+			synchronized (TextSearchIndex.this) {
+				if (fGeneration != TextSearchIndex.this.fGeneration)
+					return true;
+
+				Integer id= fIds.get(file.getFullPath().toString());
+				if (id == null || id.intValue() >= fNumberOfDocuments)
+					return true;
+
+				Document document= fDocuments.get(id.intValue());
+				if (!document.fIndexed || document.fStamp != file.getModificationStamp() || document.fTimeStamp != file.getLocalTimeStamp())
+					return true;
+				return fCandidates.get(id.intValue());
+			}
+		}
+	}
+
+	/**
+	 * Updates the index in the background.
+	 */
+	private final class UpdateJob extends Job {
+
+		UpdateJob() {
+			super("Text Search Index Update"); //$NON-NLS-1$
+			setSystem(true);
+			setPriority(Job.DECORATE);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			IWorkspaceRoot root= ResourcesPlugin.getWorkspace().getRoot();
+			IndexingBuffer buffer= new IndexingBuffer();
+			IPath path;
+			while ((path= nextPending()) != null) {
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
+
+				IResource resource= path.segmentCount() == 0 ? root : root.findMember(path);
+				if (resource instanceof IFile) {
+					update((IFile) resource, buffer);
+				} else if (resource instanceof IContainer) {
+					reconcile((IContainer) resource);
+				} else if (path.segmentCount() > 0) {
+					remove(path, false);
+				}
+				if (path.segmentCount() == 0)
+					removeMissing(root);
+			}
+			synchronized (TextSearchIndex.this) {
+				if (fChangesSinceSave >= SAVE_THRESHOLD)
+					save();
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * The per job state for computing the trigrams of a file.
+	 */
+	private static final class IndexingBuffer {
+		final char[] fChars= new char[8 * 1024];
+		/** The generation in which each bucket has last been seen. */
+		final int[] fMarks= new int[NUMBER_OF_BUCKETS];
+		int fGeneration;
+		int[] fBuckets= new int[1024];
+		int fCount;
+
+		void reset() {
+			if (++fGeneration == 0) {
+				Arrays.fill(fMarks, 0);
+				fGeneration= 1;
+			}
+			fCount= 0;
+		}
+
+		void add(int bucket) {
+			if (fMarks[bucket] == fGeneration)
+				return;
+			fMarks[bucket]= fGeneration;
+			if (fCount == fBuckets.length)
+				fBuckets= Arrays.copyOf(fBuckets, fCount * 2);
+			fBuckets[fCount++]= bucket;
+		}
+	}
+
+	private final File fFile;
+	private final UpdateJob fUpdateJob= new UpdateJob();
+	private final IResourceChangeListener fListener= new IResourceChangeListener() {
+		@Override
+		public void resourceChanged(IResourceChangeEvent event) {
+			IResourceDelta delta= event.getDelta();
+			if (delta != null)
+				processDelta(delta);
+		}
+	};
+
+	/** The paths of the files and containers that need to be updated. Protected by <code>this</code>. */
+	private final Set<IPath> fPending= new LinkedHashSet<>();
+
+	// All following fields are protected by this.
+	/** The documents by id, <code>null</code> for removed documents. */
+	private List<Document> fDocuments= new ArrayList<>();
+	/** The current document id of each file, by full path. */
+	private Map<String, Integer> fIds= new HashMap<>();
+	/** The number of removed documents. */
+	private int fRemoved;
+	/** The delta encoded, ascending ids of the documents containing each trigram bucket. */
+	private byte[][] fPostings= new byte[NUMBER_OF_BUCKETS][];
+	/** The number of used bytes of each posting list. */
+	private int[] fPostingLengths= new int[NUMBER_OF_BUCKETS];
+	/** The last id in each posting list, -1 if empty. */
+	private int[] fLastIds= new int[NUMBER_OF_BUCKETS];
+	/** Incremented whenever document ids are reassigned. */
+	private int fGeneration;
+	private int fChangesSinceSave;
+
+	/**
+	 * Creates a new index that is stored in the given file. The index is neither loaded nor
+	 * updated until {@link #startup()} is called.
+	 *
+	 * @param file the file the index is stored in
+	 */
+	public TextSearchIndex(File file) {
+		fFile= file;
+		Arrays.fill(fLastIds, -1);
+	}
+
+	/**
+	 * Loads the stored index and starts to update it in the background.
+	 */
+	public void startup() {
+		synchronized (this) {
+			if (!load())
+				clear();
+		}
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(fListener, IResourceChangeEvent.POST_CHANGE);
+		// find files that have been modified while the index has not been updated
+		schedule(Path.ROOT);
+	}
+
+	/**
+	 * Stops updating the index and stores it.
+	 */
+	public void shutdown() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(fListener);
+		fUpdateJob.cancel();
+		try {
+			fUpdateJob.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			save();
+		}
+	}
+
+	/**
+	 * Waits until all pending updates have been applied to the index.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void join() throws InterruptedException {
+		fUpdateJob.join();
+	}
+
+	/**
+	 * Creates a query for the files that may contain a match of the given pattern.
+	 *
+	 * @param pattern the search pattern
+	 * @return the query, or <code>null</code> if the index cannot exclude any file for the
+	 *         pattern
+	 */
+	public synchronized Query createQuery(Pattern pattern) {
+		int[] buckets= getQueryBuckets(pattern);
+		if (buckets == null)
+			return null;
+
+		int numberOfDocuments= fDocuments.size();
+		BitSet candidates= null;
+		for (int i= 0; i < buckets.length; i++) {
+			BitSet documents= decode(buckets[i], numberOfDocuments);
+			if (candidates == null)
+				candidates= documents;
+			else
+				candidates.and(documents);
+		}
+		return new Query(candidates, numberOfDocuments, fGeneration);
+	}
+
+	/**
+	 * Returns the trigram buckets that every file that contains a match of the given pattern
+	 * contains.
+	 *
+	 * @param pattern the search pattern
+	 * @return the buckets, or <code>null</code> if no such bucket is known
+	 */
+	static int[] getQueryBuckets(Pattern pattern) {
+		List<String> literals= getLiterals(pattern);
+		if (literals == null)
+			return null;
+
+		Set<Integer> buckets= new LinkedHashSet<>();
+		for (Iterator<String> iter= literals.iterator(); iter.hasNext();) {
+			String literal= iter.next();
+			int c0= -1;
+			int c1= -1;
+			for (int i= 0; i < literal.length(); i++) {
+				int c2= fold(literal.charAt(i));
+				if (c0 != -1)
+					buckets.add(Integer.valueOf(bucket(c0, c1, c2)));
+				c0= c1;
+				c1= c2;
+			}
+		}
+		if (buckets.isEmpty())
+			return null;
+		int[] result= new int[buckets.size()];
+		int i= 0;
+		for (Iterator<Integer> iter= buckets.iterator(); iter.hasNext();)
+			result[i++]= iter.next().intValue();
+		return result;
+	}
+
+	/**
+	 * Returns literal strings every match of the given pattern contains. Only a simple subset of
+	 * the regular expression syntax is understood, in particular the patterns created by
+	 * {@link PatternConstructor} for non-regular expression searches.
+	 *
+	 * @param pattern the search pattern
+	 * @return the literals, or <code>null</code> if the pattern is not understood
+	 */
+	private static List<String> getLiterals(Pattern pattern) {
+		String regex= pattern.pattern();
+		int flags= pattern.flags();
+		List<String> literals= new ArrayList<>();
+		if ((flags & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0)
+			return null;
+		if ((flags & Pattern.LITERAL) != 0) {
+			literals.add(regex);
+			return literals;
+		}
+
+		StringBuilder literal= new StringBuilder();
+		int length= regex.length();
+		int i= 0;
+		while (i < length) {
+			char c= regex.charAt(i++);
+			switch (c) {
+				case '\\':
+					if (i == length)
+						return null;
+					char escaped= regex.charAt(i++);
+					switch (escaped) {
+						case 'Q':
+							int end= regex.indexOf("\\E", i); //$NON-NLS-1$
+							if (end == -1)
+								end= length;
+							literal.append(regex, i, end);
+							i= Math.min(length, end + 2);
+							break;
+						case 'b': case 'B': case 'A': case 'G': case 'z': case 'Z':
+							break; // zero width
+						case 't':
+							literal.append('\t');
+							break;
+						case 'n':
+							literal.append('\n');
+							break;
+						case 'r':
+							literal.append('\r');
+							break;
+						case 'f':
+							literal.append('\f');
+							break;
+						case 'a':
+							literal.append('\u0007');
+							break;
+						case 'e':
+							literal.append('\u001B');
+							break;
+						case 'd': case 'D': case 'w': case 'W': case 's': case 'S': case 'h': case 'H': case 'v': case 'V':
+							addLiteral(literals, literal);
+							break;
+						default:
+							if (Character.isLetterOrDigit(escaped))
+								return null;
+							literal.append(escaped);
+							break;
+					}
+					break;
+				case '.':
+				case '^':
+				case '$':
+					addLiteral(literals, literal);
+					break;
+				case '{':
+					i= regex.indexOf('}', i);
+					if (i == -1)
+						return null;
+					i++;
+					//$FALL-THROUGH$
+				case '*':
+				case '?':
+					// the preceding character is optional
+					if (literal.length() > 0)
+						literal.setLength(literal.length() - 1);
+					addLiteral(literals, literal);
+					i= skipQuantifierModifier(regex, i);
+					break;
+				case '+':
+					addLiteral(literals, literal);
+					i= skipQuantifierModifier(regex, i);
+					break;
+				case '|':
+				case '(':
+				case ')':
+				case '[':
+				case ']':
+				case '}':
+					return null;
+				default:
+					literal.append(c);
+					break;
+			}
+		}
+		addLiteral(literals, literal);
+		return literals;
+	}
+
+	private static int skipQuantifierModifier(String regex, int i) {
+		if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+'))
+			return i + 1;
+		return i;
+	}
+
+	private static void addLiteral(List<String> literals, StringBuilder literal) {
+		if (literal.length() >= 3)
+			literals.add(literal.toString());
+		literal.setLength(0);
+	}
+
+	/**
+	 * Folds the case of the given character such that all characters that match each other in a
+	 * case insensitive search are folded to the same character. Surrogates are folded to a single
+	 * character since the case of supplementary characters is not folded character by character.
+	 *
+	 * @param c the character
+	 * @return the folded character
+	 */
+	private static int fold(char c) {
+		if (Character.isSurrogate(c))
+			return Character.MIN_SURROGATE;
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	private static int bucket(int c0, int c1, int c2) {
+		long trigram= ((long) c0 << 32) | (c1 << 16) | c2;
+		return (int) ((trigram * 0x9E3779B97F4A7C15L) >>> (64 - BUCKET_BITS));
+	}
+
+	private void processDelta(IResourceDelta delta) {
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				@Override
+				public boolean visit(IResourceDelta child) {
+					IResource resource= child.getResource();
+					switch (child.getKind()) {
+						case IResourceDelta.ADDED:
+							schedule(resource.getFullPath());
+							return false;
+						case IResourceDelta.REMOVED:
+							remove(resource.getFullPath(), resource.getType() != IResource.FILE);
+							return false;
+						case IResourceDelta.CHANGED:
+							int flags= child.getFlags();
+							if (resource.getType() == IResource.FILE) {
+								if ((flags & (IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING)) != 0) {
+									// the stamps do not change with the encoding
+									remove(resource.getFullPath(), false);
+									schedule(resource.getFullPath());
+								}
+								return false;
+							}
+							if ((flags & IResourceDelta.ENCODING) != 0) {
+								remove(resource.getFullPath(), true);
+								schedule(resource.getFullPath());
+								return false;
+							}
+							if ((flags & IResourceDelta.OPEN) != 0) {
+								schedule(resource.getFullPath());
+								return false;
+							}
+							return true;
+						default:
+							return true;
+					}
+				}
+			});
+		} catch (CoreException e) {
+			SearchPlugin.log(e);
+		}
+	}
+
+	private void schedule(IPath path) {
+		synchronized (fPending) {
+			fPending.add(path);
+		}
+		fUpdateJob.schedule(UPDATE_DELAY);
+	}
+
+	private IPath nextPending() {
+		synchronized (fPending) {
+			Iterator<IPath> iter= fPending.iterator();
+			if (!iter.hasNext())
+				return null;
+			IPath path= iter.next();
+			iter.remove();
+			return path;
+		}
+	}
+
+	/**
+	 * Schedules all files in the given container whose content has not been indexed.
+	 *
+	 * @param container the container
+	 */
+	private void reconcile(IContainer container) {
+		if (!container.isAccessible())
+			return;
+		try {
+			container.accept(new IResourceProxyVisitor() {
+				@Override
+				public boolean visit(IResourceProxy proxy) {
+					if (proxy.getType() == IResource.FILE && !isUpToDate((IFile) proxy.requestResource())) {
+						synchronized (fPending) {
+							fPending.add(proxy.requestFullPath());
+						}
+					}
+					return true;
+				}
+			}, IResource.NONE);
+		} catch (CoreException e) {
+			SearchPlugin.log(e);
+		}
+	}
+
+	/**
+	 * Removes the documents of files that no longer exist, e.g. because they have been deleted
+	 * while the index has not been updated.
+	 *
+	 * @param root the workspace root
+	 */
+	private void removeMissing(IWorkspaceRoot root) {
+		List<String> paths;
+		synchronized (this) {
+			paths= new ArrayList<>(fIds.keySet());
+		}
+		for (Iterator<String> iter= paths.iterator(); iter.hasNext();) {
+			IPath path= new Path(iter.next());
+			if (root.findMember(path) == null)
+				remove(path, false);
+		}
+	}
+
+	private synchronized boolean isUpToDate(IFile file) {
+		Integer id= fIds.get(file.getFullPath().toString());
+		if (id == null)
+			return false;
+		Document document= fDocuments.get(id.intValue());
+		return document.fStamp == file.getModificationStamp() && document.fTimeStamp == file.getLocalTimeStamp();
+	}
+
+	private void update(IFile file, IndexingBuffer buffer) {
+		if (isUpToDate(file))
+			return;
+
+		long stamp= file.getModificationStamp();
+		long timeStamp= file.getLocalTimeStamp();
+		boolean indexed;
+		try {
+			indexed= computeBuckets(file, buffer);
+		} catch (CoreException | IOException | RuntimeException e) {
+			// not accessible, out of sync or unsupported charset: the file stays a candidate
+			remove(file.getFullPath(), false);
+			return;
+		}
+
+		synchronized (this) {
+			String path= file.getFullPath().toString();
+			removeDocument(path);
+			int id= fDocuments.size();
+			fDocuments.add(new Document(path, stamp, timeStamp, indexed));
+			fIds.put(path, Integer.valueOf(id));
+			if (indexed) {
+				for (int i= 0; i < buffer.fCount; i++)
+					append(buffer.fBuckets[i], id);
+			}
+			fChangesSinceSave++;
+			if (fRemoved > SAVE_THRESHOLD && fRemoved > fDocuments.size() / 2)
+				compact();
+		}
+	}
+
+	/**
+	 * Collects the trigram buckets of the content of the given file.
+	 *
+	 * @param file the file
+	 * @param buffer the buffer that receives the buckets
+	 * @return <code>false</code> if the file is too large or binary
+	 * @throws CoreException if the file cannot be read
+	 * @throws IOException if the file cannot be read
+	 */
+	private static boolean computeBuckets(IFile file, IndexingBuffer buffer) throws CoreException, IOException {
+		buffer.reset();
+		CharsetDecoder decoder= Charset.forName(file.getCharset()).newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		try (Reader reader= new InputStreamReader(file.getContents(), decoder)) {
+			char[] chars= buffer.fChars;
+			int c0= -1;
+			int c1= -1;
+			int total= 0;
+			int read;
+			while ((read= reader.read(chars)) != -1) {
+				total += read;
+				if (total > MAX_FILE_LENGTH)
+					return false;
+				for (int i= 0; i < read; i++) {
+					char c= chars[i];
+					if (c == '\0')
+						return false;
+					int c2= fold(c);
+					if (c0 != -1)
+						buffer.add(bucket(c0, c1, c2));
+					c0= c1;
+					c1= c2;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the documents of the given path.
+	 *
+	 * @param path the full path of a file or container
+	 * @param descendants <code>true</code> to also remove all documents below the path
+	 */
+	private synchronized void remove(IPath path, boolean descendants) {
+		removeDocument(path.toString());
+		if (descendants) {
+			String prefix= path.addTrailingSeparator().toString();
+			for (Iterator<String> iter= new ArrayList<>(fIds.keySet()).iterator(); iter.hasNext();) {
+				String child= iter.next();
+				if (child.startsWith(prefix))
+					removeDocument(child);
+			}
+		}
+	}
+
+	private void removeDocument(String path) {
+		Integer id= fIds.remove(path);
+		if (id != null) {
+			fDocuments.set(id.intValue(), null);
+			fRemoved++;
+			fChangesSinceSave++;
+		}
+	}
+
+	private void append(int bucket, int id) {
+		int delta= id - fLastIds[bucket];
+		fLastIds[bucket]= id;
+		byte[] posting= fPostings[bucket];
+		int length= fPostingLengths[bucket];
+		if (posting == null) {
+			posting= new byte[8];
+		} else if (length + 5 > posting.length) {
+			posting= Arrays.copyOf(posting, Math.max(length + 5, posting.length * 2));
+		}
+		while ((delta & ~0x7F) != 0) {
+			posting[length++]= (byte) ((delta & 0x7F) | 0x80);
+			delta>>>= 7;
+		}
+		posting[length++]= (byte) delta;
+		fPostings[bucket]= posting;
+		fPostingLengths[bucket]= length;
+	}
+
+	private BitSet decode(int bucket, int numberOfDocuments) {
+		BitSet documents= new BitSet(numberOfDocuments);
+		byte[] posting= fPostings[bucket];
+		int length= fPostingLengths[bucket];
+		int id= -1;
+		int i= 0;
+		while (i < length) {
+			int delta= 0;
+			int shift= 0;
+			byte b;
+			do {
+				b= posting[i++];
+				delta|= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			id += delta;
+			documents.set(id);
+		}
+		return documents;
+	}
+
+	/**
+	 * Drops removed documents and assigns new ids to the remaining documents.
+	 */
+	private void compact() {
+		int[] newIds= new int[fDocuments.size()];
+		List<Document> documents= new ArrayList<>(fDocuments.size() - fRemoved);
+		for (int id= 0; id < newIds.length; id++) {
+			Document document= fDocuments.get(id);
+			if (document == null) {
+				newIds[id]= -1;
+			} else {
+				newIds[id]= documents.size();
+				fIds.put(document.fPath, Integer.valueOf(documents.size()));
+				documents.add(document);
+			}
+		}
+
+		int numberOfDocuments= fDocuments.size();
+		fDocuments= documents;
+		fRemoved= 0;
+		fGeneration++;
+		for (int bucket= 0; bucket < NUMBER_OF_BUCKETS; bucket++) {
+			if (fPostings[bucket] == null)
+				continue;
+			BitSet ids= decode(bucket, numberOfDocuments);
+			fPostings[bucket]= null;
+			fPostingLengths[bucket]= 0;
+			fLastIds[bucket]= -1;
+			for (int id= ids.nextSetBit(0); id >= 0; id= ids.nextSetBit(id + 1)) {
+				if (newIds[id] != -1)
+					append(bucket, newIds[id]);
+			}
+		}
+	}
+
+	private void clear() {
+		fDocuments= new ArrayList<>();
+		fIds= new HashMap<>();
+		fRemoved= 0;
+		fPostings= new byte[NUMBER_OF_BUCKETS][];
+		fPostingLengths= new int[NUMBER_OF_BUCKETS];
+		fLastIds= new int[NUMBER_OF_BUCKETS];
+		Arrays.fill(fLastIds, -1);
+		fGeneration++;
+	}
+
+	/**
+	 * Stores the index. The index is written to a temporary file that replaces the index file
+	 * once it is complete, so that a crash while saving does not leave a partial index behind.
+	 */
+	private void save() {
+		if (fChangesSinceSave == 0 && fFile.exists())
+			return;
+		if (fRemoved > 0)
+			compact();
+
+		File temporary= new File(fFile.getPath() + ".tmp"); //$NON-NLS-1$
+		CRC32 checksum= new CRC32();
+		try {
+			try (DataOutputStream out= new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)), checksum))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(BUCKET_BITS);
+				out.writeInt(fDocuments.size());
+				for (int id= 0; id < fDocuments.size(); id++) {
+					Document document= fDocuments.get(id);
+					out.writeUTF(document.fPath);
+					out.writeLong(document.fStamp);
+					out.writeLong(document.fTimeStamp);
+					out.writeBoolean(document.fIndexed);
+				}
+				for (int bucket= 0; bucket < NUMBER_OF_BUCKETS; bucket++) {
+					int length= fPostingLengths[bucket];
+					out.writeInt(length);
+					if (length > 0) {
+						out.writeInt(fLastIds[bucket]);
+						out.write(fPostings[bucket], 0, length);
+					}
+				}
+				out.writeLong(checksum.getValue());
+			}
+			Files.move(temporary.toPath(), fFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			fChangesSinceSave= 0;
+		} catch (IOException e) {
+			SearchPlugin.log(e);
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * Loads the stored index. A corrupt index is deleted.
+	 *
+	 * @return <code>true</code> if the index has been loaded
+	 */
+	private boolean load() {
+		if (!fFile.exists())
+			return false;
+
+		CRC32 checksum= new CRC32();
+		try (InputStream stream= new BufferedInputStream(new FileInputStream(fFile))) {
+			DataInputStream in= new DataInputStream(new CheckedInputStream(stream, checksum));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != BUCKET_BITS)
+				throw new IOException("Unsupported text search index: " + fFile); //$NON-NLS-1$
+
+			int numberOfDocuments= in.readInt();
+			if (numberOfDocuments < 0)
+				throw new IOException("Corrupt text search index: " + fFile); //$NON-NLS-1$
+			List<Document> documents= new ArrayList<>();
+			Map<String, Integer> ids= new HashMap<>();
+			for (int id= 0; id < numberOfDocuments; id++) {
+				Document document= new Document(in.readUTF(), in.readLong(), in.readLong(), in.readBoolean());
+				documents.add(document);
+				ids.put(document.fPath, Integer.valueOf(id));
+			}
+
+			byte[][] postings= new byte[NUMBER_OF_BUCKETS][];
+			int[] postingLengths= new int[NUMBER_OF_BUCKETS];
+			int[] lastIds= new int[NUMBER_OF_BUCKETS];
+			Arrays.fill(lastIds, -1);
+			for (int bucket= 0; bucket < NUMBER_OF_BUCKETS; bucket++) {
+				int length= in.readInt();
+				if (length < 0 || length > 5 * numberOfDocuments)
+					throw new IOException("Corrupt text search index: " + fFile); //$NON-NLS-1$
+				if (length > 0) {
+					lastIds[bucket]= in.readInt();
+					if (lastIds[bucket] < 0 || lastIds[bucket] >= numberOfDocuments)
+						throw new IOException("Corrupt text search index: " + fFile); //$NON-NLS-1$
+					postings[bucket]= new byte[length];
+					in.readFully(postings[bucket]);
+					postingLengths[bucket]= length;
+				}
+			}
+			long expected= checksum.getValue();
+			if (in.readLong() != expected || in.read() != -1)
+				throw new IOException("Corrupt text search index: " + fFile); //$NON-NLS-1$
+
+			fDocuments= documents;
+			fIds= ids;
+			fRemoved= 0;
+			fPostings= postings;
+			fPostingLengths= postingLengths;
+			fLastIds= lastIds;
+			fGeneration++;
+			fChangesSinceSave= 0;
+			return true;
+		} catch (IOException | RuntimeException e) {
+			SearchPlugin.log(new Status(IStatus.WARNING, SearchPlugin.getID(), "Discarding text search index: " + fFile, e)); //$NON-NLS-1$
+		}
+		fFile.delete();
+		return false;
+	}
+}
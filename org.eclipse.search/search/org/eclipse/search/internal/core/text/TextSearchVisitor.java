@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -36,9 +36,6 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
-import org.eclipse.core.runtime.content.IContentDescription;
-import org.eclipse.core.runtime.content.IContentType;
-import org.eclipse.core.runtime.content.IContentTypeManager;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.jobs.JobGroup;
 
@@ -80,7 +77,7 @@ public class TextSearchVisitor {
 
 	public static final boolean TRACING= "true".equalsIgnoreCase(Platform.getDebugOption("org.eclipse.search/perf")); //$NON-NLS-1$ //$NON-NLS-2$
 	private static final int NUMBER_OF_LOGICAL_THREADS= Runtime.getRuntime().availableProcessors();
-	private static final int FILES_PER_JOB= 50;
+	private static final int MAX_NUMBER_OF_READERS= 4;
 
 	public static class ReusableMatchAccess extends TextSearchMatchAccess {
 
@@ -143,12 +140,10 @@ public class TextSearchVisitor {
 	}
 
 	/**
-	 * A job to find matches in a set of files.
+	 * A job to find matches in the files provided by a {@link FileContentPrefetcher}.
 	 */
 	private class TextSearchJob extends Job {
-		private final IFile[] fFiles;
-		private final int fBegin;
-		private final int fEnd;
+		private final FileContentPrefetcher fPrefetcher;
 		private final Map<IFile, IDocument> fDocumentsInEditors;
 		private FileCharSequenceProvider fileCharSequenceProvider;
 
@@ -159,19 +154,15 @@ public class TextSearchVisitor {
 
 
 		/**
-		 * Searches for matches in a set of files.
+		 * Searches for matches in the files provided by the given prefetcher.
 		 *
-		 * @param files an array of IFiles, a portion of which is to be processed
-		 * @param begin the first element in the file array to process
-		 * @param end one past the last element in the array to process
+		 * @param prefetcher the prefetcher that reads the files to process
 		 * @param documentsInEditors a map from IFile to IDocument for all open, dirty editors
 		 */
-		public TextSearchJob(IFile[] files, int begin, int end, Map<IFile, IDocument> documentsInEditors) {
-			super(files[begin].getName());
+		public TextSearchJob(FileContentPrefetcher prefetcher, Map<IFile, IDocument> documentsInEditors) {
+			super("Text Search"); //$NON-NLS-1$
 			setSystem(true);
-			fFiles = files;
-			fBegin = begin;
-			fEnd = end;
+			fPrefetcher= prefetcher;
 			fDocumentsInEditors = documentsInEditors;
 		}
 
@@ -179,16 +170,30 @@ public class TextSearchVisitor {
 		protected IStatus run(IProgressMonitor inner) {
 			MultiStatus multiStatus=
 					new MultiStatus(NewSearchUI.PLUGIN_ID, IStatus.OK, SearchMessages.TextSearchEngine_statusMessage, null);
-			SubMonitor subMonitor = SubMonitor.convert(inner, fEnd - fBegin);
+			SubMonitor subMonitor = SubMonitor.convert(inner, fNumberOfFilesToScan);
 			this.fileCharSequenceProvider = new FileCharSequenceProvider();
-			for (int i = fBegin; i < fEnd && !fFatalError; i++) {
-				IStatus status= processFile(fFiles[i], subMonitor.split(1));
-				// Only accumulate interesting status
-				if (!status.isOK())
-					multiStatus.add(status);
-				// Group cancellation is propagated to this job's monitor.
-				// Stop processing and return the status for the completed jobs.
+			FileContentPrefetcher.Entry entry;
+			while (!fFatalError && (entry= fPrefetcher.take(inner)) != null) {
+				try {
+					IFile[] files= entry.getFiles();
+					for (int i = 0; i < files.length && !fFatalError; i++) {
+						subMonitor.subTask(files[i].getFullPath().makeRelative().toString());
+						IStatus status= processFile(files[i], entry, subMonitor.split(1));
+						// Only accumulate interesting status
+						if (!status.isOK())
+							multiStatus.add(status);
+					}
+				} finally {
+					// Group cancellation is propagated to this job's monitor.
+					// The prefetched content is reused for other files after the release.
+					releasePreviousLocation();
+					fPrefetcher.release(entry);
+				}
 			}
+			return inner.isCanceled() ? Status.CANCEL_STATUS : multiStatus;
+		}
+
+		private void releasePreviousLocation() {
 			if (charsequenceForPreviousLocation != null) {
 				try {
 					fileCharSequenceProvider.releaseCharSequence(charsequenceForPreviousLocation);
@@ -196,10 +201,12 @@ public class TextSearchVisitor {
 					SearchPlugin.log(e);
 				}
 			}
-			return multiStatus;
+			charsequenceForPreviousLocation= null;
+			previousLocationFromFile= null;
+			occurencesForPreviousLocation= null;
 		}
 
-		public IStatus processFile(IFile file, IProgressMonitor monitor) {
+		public IStatus processFile(IFile file, FileContentPrefetcher.Entry entry, IProgressMonitor monitor) {
 			// A natural cleanup after the change to use JobGroups is accepted would be to move these
 			// methods to the TextSearchJob class.
 			Matcher matcher= fSearchPattern.pattern().length() == 0 ? null : fSearchPattern.matcher(""); //$NON-NLS-1$
@@ -233,11 +240,20 @@ public class TextSearchVisitor {
 							SearchPlugin.log(e);
 						}
 					}
+					if (!entry.mayMatch() || entry.isBinary() && !fCollector.reportBinaryFile(file)) {
+						// the prefetcher found no match or a binary file in the undecoded content
+						occurencesForPreviousLocation= Collections.emptyList();
+						return Status.OK_STATUS;
+					}
 					try {
-						charsequenceForPreviousLocation= fileCharSequenceProvider.newCharSequence(file);
-						if (hasBinaryContent(charsequenceForPreviousLocation, file) && !fCollector.reportBinaryFile(file)) {
-							occurencesForPreviousLocation = Collections.emptyList();
-							return Status.OK_STATUS;
+						CharSequence content= entry.getContent();
+						charsequenceForPreviousLocation= content != null ? content : fileCharSequenceProvider.newCharSequence(file);
+						if (!entry.isBinary() && hasBinaryContent(charsequenceForPreviousLocation, file)) {
+							BinaryFileCache.getDefault().setBinary(file, file.getCharset());
+							if (!fCollector.reportBinaryFile(file)) {
+								occurencesForPreviousLocation = Collections.emptyList();
+								return Status.OK_STATUS;
+							}
 						}
 						occurencesForPreviousLocation = locateMatches(file, charsequenceForPreviousLocation, matcher, monitor);
 						previousLocationFromFile = file.getLocation();
@@ -286,6 +302,9 @@ public class TextSearchVisitor {
 
 	private final TextSearchRequestor fCollector;
 	private final Pattern fSearchPattern;
+	private final TextSearchIndex fIndex;
+	/** The search pattern if it is a literal string, <code>null</code> otherwise. */
+	private final LiteralPattern fLiteralPattern;
 
 	private IProgressMonitor fProgressMonitor;
 
@@ -300,10 +319,24 @@ public class TextSearchVisitor {
 	private boolean fIsLightweightAutoRefresh;
 
 	public TextSearchVisitor(TextSearchRequestor collector, Pattern searchPattern) {
+		this(collector, searchPattern, null);
+	}
+
+	/**
+	 * Creates a visitor that skips the files that cannot contain a match according to the given
+	 * index. {@link TextSearchRequestor#acceptFile(IFile)} is not called for skipped files.
+	 *
+	 * @param collector the requestor that gets the search results
+	 * @param searchPattern the search pattern
+	 * @param index the index, or <code>null</code> to search all files
+	 */
+	public TextSearchVisitor(TextSearchRequestor collector, Pattern searchPattern, TextSearchIndex index) {
 		fCollector= collector;
+		fIndex= index;
 		fStatus= new MultiStatus(NewSearchUI.PLUGIN_ID, IStatus.OK, SearchMessages.TextSearchEngine_statusMessage, null);
 
 		fSearchPattern= searchPattern;
+		fLiteralPattern= LiteralPattern.create(searchPattern);
 
 		fIsLightweightAutoRefresh= Platform.getPreferencesService().getBoolean(ResourcesPlugin.PI_RESOURCES, ResourcesPlugin.PREF_LIGHTWEIGHT_AUTO_REFRESH, false, null);
 	}
@@ -317,12 +350,11 @@ public class TextSearchVisitor {
 		fNumberOfFilesToScan= files.length;
 		fCurrentFile= null;
 		int maxThreads= fCollector.canRunInParallel() ? NUMBER_OF_LOGICAL_THREADS : 1;
-		int jobCount= 1;
-		if (maxThreads > 1) {
-			jobCount= (files.length + FILES_PER_JOB - 1) / FILES_PER_JOB;
-		}
+		int jobCount= maxThreads;
+		int readerCount= Math.min(MAX_NUMBER_OF_READERS, NUMBER_OF_LOGICAL_THREADS);
 		final JobGroup jobGroup= new TextSearchJobGroup("Text Search", maxThreads, jobCount); //$NON-NLS-1$
 		long startTime= TRACING ? System.currentTimeMillis() : 0;
+		FileContentPrefetcher prefetcher= null;
 
 		Job monitorUpdateJob= new Job(SearchMessages.TextSearchVisitor_progress_updating_job) {
 			private int fLastNumberOfScannedFiles= 0;
@@ -370,9 +402,7 @@ public class TextSearchVisitor {
 			try {
 				fCollector.beginReporting();
 				Map<IFile, IDocument> documentsInEditors= PlatformUI.isWorkbenchRunning() ? evalNonFileBufferDocuments() : Collections.emptyMap();
-				int filesPerJob = (files.length + jobCount - 1) / jobCount;
-				IFile[] filesByLocation = new IFile[files.length];
-				System.arraycopy(files, 0, filesByLocation, 0, files.length);
+				IFile[] filesByLocation= filterByIndex(files, documentsInEditors);
 				// Sorting files to search by location allows to more easily reuse
 				// search results from one file to the other when they have same location
 				Arrays.sort(filesByLocation, new Comparator<IFile>() {
@@ -393,9 +423,17 @@ public class TextSearchVisitor {
 						return o1.getLocation().toString().compareTo(o2.getLocation().toString());
 					}
 				});
-				for (int first= 0; first < filesByLocation.length; first += filesPerJob) {
-					int end= Math.min(filesByLocation.length, first + filesPerJob);
-					Job job= new TextSearchJob(filesByLocation, first, end, documentsInEditors);
+				final boolean readFiles= fSearchPattern.pattern().length() != 0;
+				prefetcher= new FileContentPrefetcher(filesByLocation, new FileContentPrefetcher.IFileFilter() {
+					@Override
+					public boolean skip(IFile file) {
+						// open documents are searched instead of the file
+						return !readFiles || getOpenDocument(file, documentsInEditors) != null;
+					}
+				}, fLiteralPattern, readerCount, jobCount);
+				prefetcher.start();
+				for (int i= 0; i < jobCount; i++) {
+					Job job= new TextSearchJob(prefetcher, documentsInEditors);
 					job.setJobGroup(jobGroup);
 					job.schedule();
 				}
@@ -412,18 +450,62 @@ public class TextSearchVisitor {
 				throw new OperationCanceledException(SearchMessages.TextSearchVisitor_canceled);
 			} finally {
 				monitorUpdateJob.cancel();
+				if (prefetcher != null) {
+					try {
+						prefetcher.stop();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
 			}
 		} finally {
 			fProgressMonitor.done();
 			fCollector.endReporting();
 			if (TRACING) {
-				Object[] args= { Integer.valueOf(fNumberOfScannedFiles), Integer.valueOf(jobCount), Integer.valueOf(NUMBER_OF_LOGICAL_THREADS), new Long(System.currentTimeMillis() - startTime) };
+				long duration= System.currentTimeMillis() - startTime;
+				Object[] args= { Integer.valueOf(fNumberOfScannedFiles), Integer.valueOf(jobCount), Integer.valueOf(NUMBER_OF_LOGICAL_THREADS), new Long(duration) };
 				System.out.println(Messages.format(
 						"[TextSearch] Search duration for {0} files in {1} jobs using {2} threads: {3}ms", args)); //$NON-NLS-1$
+				if (prefetcher != null) {
+					double megabytes= prefetcher.getBytesRead() / (1024.0 * 1024.0);
+					Object[] ioArgs= { String.format("%.1f", Double.valueOf(megabytes)), Integer.valueOf(readerCount), String.format("%.1f", Double.valueOf(megabytes * 1000 / Math.max(1, duration))) }; //$NON-NLS-1$ //$NON-NLS-2$
+					System.out.println(Messages.format(
+							"[TextSearch] Read {0} MB using {1} reader threads: {2} MB/s", ioArgs)); //$NON-NLS-1$
+				}
 			}
 	   }
 	}
 
+	/**
+	 * Returns a copy of the given files without the files that cannot contain a match according
+	 * to the index. The skipped files are counted as scanned.
+	 *
+	 * @param files the files to search
+	 * @param documentsInEditors a map from IFile to IDocument for all open, dirty editors
+	 * @return the files that may contain a match
+	 */
+	private IFile[] filterByIndex(IFile[] files, Map<IFile, IDocument> documentsInEditors) {
+		TextSearchIndex.Query query= fIndex != null && fSearchPattern.pattern().length() != 0 ? fIndex.createQuery(fSearchPattern) : null;
+		if (query == null)
+			return files.clone();
+
+		List<IFile> candidates= new ArrayList<>(files.length);
+		for (int i= 0; i < files.length; i++) {
+			IFile file= files[i];
+			// the index knows the content on disk only
+			if (getOpenDocument(file, documentsInEditors) != null || query.mayMatch(file))
+				candidates.add(file);
+		}
+		synchronized (fLock) {
+			fNumberOfScannedFiles= files.length - candidates.size();
+		}
+		if (TRACING) {
+			Object[] args= { Integer.valueOf(candidates.size()), Integer.valueOf(files.length) };
+			System.out.println(Messages.format("[TextSearch] Index selected {0} of {1} files", args)); //$NON-NLS-1$
+		}
+		return candidates.toArray(new IFile[candidates.size()]);
+	}
+
 	public IStatus search(TextSearchScope scope, IProgressMonitor monitor) {
 		return search(scope.evaluateFilesInScope(fStatus), monitor);
 	}
@@ -475,12 +557,8 @@ public class TextSearchVisitor {
 	}
 
 	private boolean hasBinaryContent(CharSequence seq, IFile file) throws CoreException {
-		IContentDescription desc= file.getContentDescription();
-		if (desc != null) {
-			IContentType contentType= desc.getContentType();
-			if (contentType != null && contentType.isKindOf(Platform.getContentTypeManager().getContentType(IContentTypeManager.CT_TEXT))) {
-				return false;
-			}
+		if (BinaryFileCache.isTextFile(file)) {
+			return false;
 		}
 
 		// avoid calling seq.length() at it runs through the complete file,
@@ -503,14 +581,27 @@ public class TextSearchVisitor {
 
 	private List<TextSearchMatchAccess> locateMatches(IFile file, CharSequence searchInput, Matcher matcher, IProgressMonitor monitor) throws CoreException {
 		List<TextSearchMatchAccess> occurences = null;
-		matcher.reset(searchInput);
+		if (fLiteralPattern == null)
+			matcher.reset(searchInput);
 		int k= 0;
-		while (matcher.find()) {
+		int end= 0;
+		while (true) {
+			int start;
+			if (fLiteralPattern != null) {
+				// plain strings are found without the regular expression engine
+				start= fLiteralPattern.indexOf(searchInput, end);
+				if (start == -1)
+					break;
+				end= start + fLiteralPattern.length();
+			} else {
+				if (!matcher.find())
+					break;
+				start= matcher.start();
+				end= matcher.end();
+			}
 			if (occurences == null) {
 				occurences = new ArrayList<>();
 			}
-			int start= matcher.start();
-			int end= matcher.end();
 			if (end != start) { // don't report 0-length matches
 				ReusableMatchAccess access = new ReusableMatchAccess();
 				access.initialize(file, start, end - start, searchInput);
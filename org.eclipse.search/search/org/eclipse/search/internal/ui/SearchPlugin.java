@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -42,6 +42,7 @@ import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 
 import org.eclipse.search.internal.core.text.TextSearchEngineRegistry;
+import org.eclipse.search.internal.core.text.TextSearchIndex;
 import org.eclipse.search.internal.ui.util.ExceptionHandler;
 import org.eclipse.search.ui.IContextMenuConstants;
 import org.eclipse.search.ui.NewSearchUI;
@@ -89,6 +90,7 @@ public class SearchPlugin extends AbstractUIPlugin {
 	private List<SorterDescriptor> fSorterDescriptors;
 	private TextSearchEngineRegistry fTextSearchEngineRegistry;
 	private TextSearchQueryProviderRegistry fTextSearchQueryProviderRegistry;
+	private TextSearchIndex fTextSearchIndex;
 
 	public SearchPlugin() {
 		super();
@@ -204,10 +206,18 @@ public class SearchPlugin extends AbstractUIPlugin {
 	@Override
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
+		if (TextSearchIndex.ENABLED) {
+			fTextSearchIndex= new TextSearchIndex(getStateLocation().append("textSearchIndex.dat").toFile()); //$NON-NLS-1$
+			fTextSearchIndex.startup();
+		}
 	}
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		if (fTextSearchIndex != null) {
+			fTextSearchIndex.shutdown();
+			fTextSearchIndex= null;
+		}
 		InternalSearchUI.shutdown();
 		disposeOldSearchManager();
 		super.stop(context);
@@ -312,6 +322,15 @@ public class SearchPlugin extends AbstractUIPlugin {
         return fTextSearchEngineRegistry;
     }
 
+	/**
+	 * Returns the text search index.
+	 *
+	 * @return the index, or <code>null</code> if the index is not enabled
+	 */
+	public TextSearchIndex getTextSearchIndex() {
+		return fTextSearchIndex;
+	}
+
     public TextSearchQueryProviderRegistry getTextSearchQueryProviderRegistry() {
         if (fTextSearchQueryProviderRegistry == null) {
         	fTextSearchQueryProviderRegistry= new TextSearchQueryProviderRegistry();
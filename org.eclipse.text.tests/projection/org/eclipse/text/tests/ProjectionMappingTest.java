@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -1015,4 +1015,21 @@ public class ProjectionMappingTest {
 		createLineWrappingProjection();
 		assertEquals(fSlaveDocument.getLength(), fProjectionMapping.getImageLength());
 	}
+
+	@Test
+	public void test13e() throws BadLocationException {
+		// test getImageLength and offset mapping
+		// projection changed after the mapping has been used
+		fMasterDocument.set(getOriginalMasterContent());
+		fSlaveDocument.set(getOriginalSlaveContent());
+		addProjection(20, 0, 20);
+		assertEquals(20, fProjectionMapping.getImageLength());
+		assertEquals(-1, fProjectionMapping.toImageOffset(70));
+
+		addProjection(60, 20, 20);
+		fProjectionMapping.projectionChanged();
+		assertEquals(fSlaveDocument.getLength(), fProjectionMapping.getImageLength());
+		assertEquals(30, fProjectionMapping.toImageOffset(70));
+		assertEquals(70, fProjectionMapping.toOriginOffset(30));
+	}
 }
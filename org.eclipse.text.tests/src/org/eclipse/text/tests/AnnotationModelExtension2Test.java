@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2015 IBM Corporation and others.
+ * Copyright (c) 2007, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.text.tests;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -17,13 +18,18 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.source.Annotation;
 import org.eclipse.jface.text.source.AnnotationModel;
@@ -274,4 +280,168 @@ public class AnnotationModelExtension2Test {
 		assertPermutations(true, true, expected);
 	}
 
+	private static boolean isInside(Position position, int offset, int length, boolean canStartBefore, boolean canEndAfter) {
+		int start= position.getOffset();
+		int last= start + position.getLength() - (position.getLength() > 0 ? 1 : 0);
+		Position region= new Position(offset, length);
+		if (canStartBefore && canEndAfter)
+			return region.overlapsWith(start, position.getLength());
+		if (canStartBefore)
+			return region.includes(last);
+		if (canEndAfter)
+			return region.includes(start);
+		return region.includes(start) && region.includes(last);
+	}
+
+	@Test
+	public void testRandomRegions() throws BadLocationException {
+		Random random= new Random(4711);
+		StringBuilder text= new StringBuilder();
+		for (int i= 0; i < 2000; i++)
+			text.append((char) ('a' + random.nextInt(26)));
+		Document document= new Document(text.toString());
+		AnnotationModel model= new AnnotationModel();
+		model.connect(document);
+
+		List<Annotation> annotations= new ArrayList<>();
+		for (int step= 0; step < 500; step++) {
+			int length= document.getLength();
+			switch (random.nextInt(5)) {
+				case 0:
+				case 1:
+					Annotation annotation= new Annotation(false);
+					int offset= random.nextInt(length + 1);
+					model.addAnnotation(annotation, new Position(offset, random.nextInt(Math.min(100, length - offset) + 1)));
+					annotations.add(annotation);
+					break;
+				case 2:
+					if (!annotations.isEmpty())
+						model.removeAnnotation(annotations.remove(random.nextInt(annotations.size())));
+					break;
+				case 3:
+					if (!annotations.isEmpty()) {
+						int newOffset= random.nextInt(length + 1);
+						model.modifyAnnotationPosition(annotations.get(random.nextInt(annotations.size())), new Position(newOffset, random.nextInt(Math.min(50, length - newOffset) + 1)));
+					}
+					break;
+				default:
+					int replaceOffset= random.nextInt(length + 1);
+					document.replace(replaceOffset, random.nextInt(Math.min(30, length - replaceOffset) + 1), text.substring(0, random.nextInt(50)));
+					break;
+			}
+
+			int offset= random.nextInt(document.getLength() + 1);
+			int length2= random.nextBoolean() ? 0 : random.nextInt(Math.min(200, document.getLength() - offset) + 1);
+			assertRegion(model, offset, length2);
+		}
+		model.disconnect(document);
+	}
+
+	@Test
+	public void testRandomChangesBetweenQueries() throws BadLocationException {
+		Random random= new Random(4712);
+		StringBuilder text= new StringBuilder();
+		for (int i= 0; i < 5000; i++)
+			text.append((char) ('a' + random.nextInt(26)));
+		Document document= new Document(text.toString());
+		AnnotationModel model= new AnnotationModel();
+		model.connect(document);
+		for (int i= 0; i < 300; i++) {
+			int offset= random.nextInt(document.getLength() + 1);
+			model.addAnnotation(new Annotation(false), new Position(offset, random.nextInt(Math.min(100, document.getLength() - offset) + 1)));
+		}
+
+		for (int step= 0; step < 300; step++) {
+			// the changes are applied to the tree together with the next query
+			int changes= 1 + random.nextInt(5);
+			for (int i= 0; i < changes; i++) {
+				int length= document.getLength();
+				int replaceOffset= random.nextInt(length + 1);
+				int replaceLength= random.nextInt(10) == 0 ? random.nextInt(Math.min(500, length - replaceOffset) + 1) : random.nextInt(Math.min(5, length - replaceOffset) + 1);
+				document.replace(replaceOffset, replaceLength, text.substring(0, random.nextInt(10)));
+			}
+
+			int offset= random.nextInt(document.getLength() + 1);
+			assertRegion(model, offset, random.nextInt(Math.min(300, document.getLength() - offset) + 1));
+		}
+		model.disconnect(document);
+	}
+
+	private static void assertRegion(AnnotationModel model, int offset, int length) {
+		for (int flags= 0; flags < 4; flags++) {
+			boolean canStartBefore= (flags & 1) != 0;
+			boolean canEndAfter= (flags & 2) != 0;
+			HashSet<Annotation> expected= new HashSet<>();
+			Iterator<Annotation> e= model.getAnnotationIterator();
+			while (e.hasNext()) {
+				Annotation annotation= e.next();
+				if (isInside(model.getPosition(annotation), offset, length, canStartBefore, canEndAfter))
+					expected.add(annotation);
+			}
+			HashSet<Annotation> actual= new HashSet<>();
+			e= model.getAnnotationIterator(offset, length, canStartBefore, canEndAfter);
+			while (e.hasNext())
+				assertTrue(actual.add(e.next()));
+			assertTrue("region " + offset + ", " + length, expected.equals(actual));
+		}
+	}
+
+	private static final class DirectAccessAnnotationModel extends AnnotationModel {
+		void putPosition(Annotation annotation, Position position) {
+			getAnnotationMap().put(annotation, position);
+		}
+	}
+
+	private static List<Annotation> collect(Iterator<Annotation> iterator) {
+		List<Annotation> result= new ArrayList<>();
+		while (iterator.hasNext())
+			result.add(iterator.next());
+		return result;
+	}
+
+	@Test
+	public void testDirectlyReplacedPosition() throws BadLocationException {
+		Document document= new Document("0123456789012345678901234567890123456789"); //$NON-NLS-1$
+		DirectAccessAnnotationModel model= new DirectAccessAnnotationModel();
+		model.connect(document);
+		Annotation annotation= new Annotation(false);
+		model.addAnnotation(annotation, new Position(0, 5));
+		assertTrue(collect(model.getAnnotationIterator(0, 5, false, false)).contains(annotation));
+
+		// the size of the map does not change
+		model.putPosition(annotation, new Position(30, 5));
+		assertTrue(collect(model.getAnnotationIterator(0, 5, true, true)).isEmpty());
+		assertTrue(collect(model.getAnnotationIterator(30, 5, false, false)).contains(annotation));
+		model.disconnect(document);
+	}
+
+	@Test
+	public void testQueryWhileDocumentChanges() throws BadLocationException {
+		StringBuilder text= new StringBuilder();
+		for (int i= 0; i < 200; i++)
+			text.append('x');
+		Document document= new Document(text.toString());
+		final AnnotationModel model= new AnnotationModel();
+		final Annotation growing= new Annotation(false);
+		final boolean[] found= new boolean[1];
+		// notified before the listener of the model, but after the positions are updated
+		document.addDocumentListener(new IDocumentListener() {
+			@Override
+			public void documentAboutToBeChanged(DocumentEvent event) {
+			}
+
+			@Override
+			public void documentChanged(DocumentEvent event) {
+				found[0]= collect(model.getAnnotationIterator(50, 10, true, true)).contains(growing);
+			}
+		});
+		model.connect(document);
+		model.addAnnotation(growing, new Position(10, 5));
+		model.addAnnotation(new Annotation(false), new Position(20, 5));
+		assertFalse(collect(model.getAnnotationIterator(50, 10, true, true)).contains(growing));
+
+		document.replace(12, 0, text.substring(0, 100));
+		assertTrue(found[0]);
+		model.disconnect(document);
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,8 +11,13 @@
 package org.eclipse.text.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -468,4 +473,57 @@ public class DocumentTest {
 
 		checkPositions(positions);
 	}
+
+	@Test
+	public void testManyPositions() throws Exception {
+		String category= "many";
+		fDocument.addPositionCategory(category);
+
+		Random random= new Random(42);
+		int length= fDocument.getLength();
+		List<Position> expected= new ArrayList<>();
+		for (int i= 0; i < 5000; i++) {
+			Position position= new Position(random.nextInt(length - 10), 1 + random.nextInt(10));
+			int index= 0;
+			while (index < expected.size() && expected.get(index).offset < position.offset)
+				index++;
+			assertEquals(index, fDocument.computeIndexInCategory(category, position.offset));
+			expected.add(index, position);
+			fDocument.addPosition(category, position);
+		}
+		checkIdentical(expected, fDocument.getPositions(category));
+
+		for (int i= 0; i < 2500; i++) {
+			Position position= expected.remove(random.nextInt(expected.size()));
+			fDocument.removePosition(category, position);
+		}
+		checkIdentical(expected, fDocument.getPositions(category));
+
+		for (Position position : expected)
+			assertTrue(fDocument.containsPosition(category, position.offset, position.length));
+		assertFalse(fDocument.containsPosition(category, 0, length + 1));
+
+		for (int offset= 0; offset < length; offset+= 10) {
+			Position region= new Position(offset, 10);
+			List<Position> overlapping= new ArrayList<>();
+			for (Position position : expected) {
+				if (region.overlapsWith(position.offset, position.length))
+					overlapping.add(position);
+			}
+			Position[] actual= fDocument.getPositions(category, offset, 10, true, true);
+			assertEquals(overlapping.size(), actual.length);
+			for (Position position : actual)
+				assertTrue(overlapping.contains(position));
+		}
+
+		fDocument.replace(0, 0, "\n");
+		for (Position position : expected)
+			assertTrue(fDocument.containsPosition(category, position.offset, position.length));
+	}
+
+	private static void checkIdentical(List<Position> expected, Position[] actual) {
+		assertEquals(expected.size(), actual.length);
+		for (int i= 0; i < actual.length; i++)
+			assertTrue("Position " + i + " wrong", expected.get(i) == actual[i]);
+	}
 }
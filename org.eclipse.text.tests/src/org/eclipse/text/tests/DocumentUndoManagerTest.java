@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 IBM Corporation and others.
+ * Copyright (c) 2009, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -400,6 +400,73 @@ public class DocumentUndoManagerTest extends TestCase {
 
 	}
 
+	public void testCompressedUndo() throws BadLocationException, ExecutionException {
+		final Document document= new Document(INITIAL_DOCUMENT_CONTENT);
+		createUndoManager(document);
+
+		final int count= 10;
+		String[] contents= new String[count + 1];
+		contents[0]= document.get();
+		for (int i= 1; i <= count; i++) {
+			StringBuffer text= new StringBuffer();
+			for (int j= 0; j < 2000; j++)
+				text.append("line ").append(i * j).append('\n');
+			// an unpaired surrogate must survive the compression
+			text.append('\ud800');
+			document.replace(0, document.getLength(), text.toString());
+			contents[i]= document.get();
+		}
+		fUndoManager.commit();
+
+		long memory= ((DocumentUndoManager) fUndoManager).getUndoMemory();
+		assertTrue(memory > 0);
+		long uncompressed= 0;
+		for (int i= 1; i <= count; i++)
+			uncompressed+= 2 * contents[i].length();
+		assertTrue(memory < uncompressed / 2);
+
+		for (int i= count - 1; i >= 0; i--) {
+			fUndoManager.undo();
+			assertEquals(contents[i], document.get());
+		}
+		assertFalse(fUndoManager.undoable());
+		for (int i= 1; i <= count; i++) {
+			fUndoManager.redo();
+			assertEquals(contents[i], document.get());
+		}
+	}
+
+	public void testUndoMemoryLimit() throws BadLocationException, ExecutionException {
+		final Document document= new Document(INITIAL_DOCUMENT_CONTENT);
+		createUndoManager(document);
+		DocumentUndoManager undoManager= (DocumentUndoManager) fUndoManager;
+		undoManager.setMaximalUndoMemory(100000);
+
+		final int count= 10;
+		String[] contents= new String[count + 1];
+		contents[0]= document.get();
+		for (int i= 1; i <= count; i++) {
+			document.replace(0, document.getLength(), createRandomString(10000));
+			contents[i]= document.get();
+		}
+		fUndoManager.commit();
+		assertTrue(undoManager.getUndoMemory() <= 100000);
+
+		int undone= 0;
+		while (fUndoManager.undoable()) {
+			fUndoManager.undo();
+			undone++;
+		}
+		assertTrue(undone > 0);
+		assertTrue(undone < count);
+		assertEquals(contents[count - undone], document.get());
+
+		undoManager.setMaximalUndoMemory(0);
+		assertTrue(fUndoManager.redoable());
+		fUndoManager.redo();
+		assertEquals(contents[count - undone + 1], document.get());
+	}
+
 	private static String createRandomString(int length) {
 		final StringBuffer buffer= new StringBuffer();
 
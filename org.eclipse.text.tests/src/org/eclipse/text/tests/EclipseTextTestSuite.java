@@ -33,9 +33,12 @@ import org.eclipse.text.tests.templates.TemplatesTestSuite;
 		FindReplaceDocumentAdapterTest.class,
 		PositionUpdatingCornerCasesTest.class,
 		ExclusivePositionUpdaterTest.class,
+		RelativePositionTest.class,
 		TextEditTests.class,
 		GapTextTest.class,
 		GapTextStoreTest.class,
+		PieceTableTextStoreTest.class,
+		MappedFileTextStoreTest.class,
 		ChildDocumentTest.class,
 		ProjectionTestSuite.class,
 		LinkTestSuite.class,
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import static org.junit.Assert.*;
 
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.Random;
 import java.util.regex.PatternSyntaxException;
 
 import org.junit.After;
@@ -500,4 +501,62 @@ public class FindReplaceDocumentAdapterTest {
 		}
 		fail();
 	}
+
+	@Test
+	public void testFindLiteralSameAsRegex() throws Exception {
+		Random random= new Random(11);
+		String alphabet= "abkKsS\u212A\u017F\u0130iI\u0131\u00DF\n."; //$NON-NLS-1$
+		Document literalDocument= new Document();
+		Document regexDocument= new Document();
+		FindReplaceDocumentAdapter literalAdapter= new FindReplaceDocumentAdapter(literalDocument);
+		FindReplaceDocumentAdapter regexAdapter= new FindReplaceDocumentAdapter(regexDocument);
+		for (int i= 0; i < 300; i++) {
+			String text= createText(random, alphabet, 200);
+			literalDocument.set(text);
+			regexDocument.set(text);
+			String findString= createText(random, alphabet, 1 + random.nextInt(3));
+			String regex= FindReplaceDocumentAdapter.escapeForRegExPattern(findString);
+			boolean caseSensitive= random.nextBoolean();
+			boolean forward= random.nextBoolean();
+			int offset= forward ? random.nextInt(text.length() + 1) : random.nextInt(text.length());
+
+			IRegion expected= regexAdapter.find(offset, regex, forward, caseSensitive, false, true);
+			IRegion actual= literalAdapter.find(offset, findString, forward, caseSensitive, false, false);
+			assertEquals(findString + " at " + offset, expected, actual);
+			for (int j= 0; j < 5 && expected != null; j++) {
+				String replaceText= createText(random, alphabet, random.nextInt(3));
+				expected= regexAdapter.replace(replaceText, false);
+				actual= literalAdapter.replace(replaceText, false);
+				assertEquals(expected, actual);
+				assertEquals(regexDocument.get(), literalDocument.get());
+				expected= regexAdapter.find(0, regex, true, caseSensitive, false, true);
+				actual= literalAdapter.find(0, findString, true, caseSensitive, false, false);
+				assertEquals(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testRegexReplaceAfterLiteralFind() throws Exception {
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+		fDocument.set("foo bar FOO bar"); //$NON-NLS-1$
+
+		IRegion r= findReplaceDocumentAdapter.find(0, "foo", true, false, false, false); //$NON-NLS-1$
+		assertEquals(new Region(0, 3), r);
+		r= findReplaceDocumentAdapter.replace("$0\\t", true); //$NON-NLS-1$
+		assertEquals(new Region(0, 4), r);
+		assertEquals("foo\t bar FOO bar", fDocument.get()); //$NON-NLS-1$
+
+		r= findReplaceDocumentAdapter.find(r.getOffset() + r.getLength(), "foo", true, false, false, false); //$NON-NLS-1$
+		assertEquals(new Region(9, 3), r);
+		r= findReplaceDocumentAdapter.replace("x$0", true); //$NON-NLS-1$
+		assertEquals("foo\t bar xFOO bar", fDocument.get()); //$NON-NLS-1$
+	}
+
+	private static String createText(Random random, String alphabet, int length) {
+		StringBuilder buffer= new StringBuilder(length);
+		for (int i= 0; i < length; i++)
+			buffer.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		return buffer.toString();
+	}
 }
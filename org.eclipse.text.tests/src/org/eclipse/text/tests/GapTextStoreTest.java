@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2008 IBM Corporation and others.
+ * Copyright (c) 2006, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,19 @@
  *******************************************************************************/
 package org.eclipse.text.tests;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.GapTextStore;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.ITextStore;
 
 public class GapTextStoreTest extends TextStoreTest {
@@ -20,4 +32,82 @@ public class GapTextStoreTest extends TextStoreTest {
 		return new GapTextStore(256, 4096, 0.1f);
 	}
 
+	private static String createContent(int length) {
+		StringBuilder content= new StringBuilder(length);
+		while (content.length() < length) {
+			content.append("line ").append(content.length()); //$NON-NLS-1$
+			content.append(content.length() % 3 == 0 ? "\r\n" : "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		content.setLength(length);
+		return content.toString();
+	}
+
+	@Test
+	public void testSetFromReader() throws IOException {
+		String content= createContent(10000);
+		int[] lengthHints= { 0, 1, 5000, 9999, 10000, 10001, 20000, 1000000 };
+		for (int lengthHint : lengthHints) {
+			GapTextStore store= new GapTextStore(256, 4096, 0.1f);
+			store.set(new StringReader(content), lengthHint);
+			assertEquals(content.length(), store.getLength());
+			assertEquals(content, store.get(0, store.getLength()));
+
+			store.replace(5, 10, "xyz"); //$NON-NLS-1$
+			store.replace(store.getLength(), 0, content);
+			String expected= content.substring(0, 5) + "xyz" + content.substring(15) + content; //$NON-NLS-1$
+			assertEquals(expected, store.get(0, store.getLength()));
+		}
+
+		GapTextStore store= new GapTextStore(0, 0, 0f);
+		store.set(new StringReader(content), content.length());
+		assertEquals(content, store.get(0, store.getLength()));
+		store.set(new StringReader(""), 0); //$NON-NLS-1$
+		assertEquals(0, store.getLength());
+	}
+
+	@Test
+	public void testDocumentSetContentFromReader() throws IOException, BadLocationException {
+		String content= createContent(200000);
+		Document document= new Document("initial"); //$NON-NLS-1$
+		document.setContent(new StringReader(content), content.length(), 42);
+
+		Document expected= new Document(content);
+		assertEquals(content, document.get());
+		assertEquals(42, document.getModificationStamp());
+		assertEquals(expected.getNumberOfLines(), document.getNumberOfLines());
+		for (int line= 0; line < expected.getNumberOfLines(); line += 101) {
+			assertEquals(expected.getLineInformation(line).getOffset(), document.getLineInformation(line).getOffset());
+			assertEquals(expected.getLineDelimiter(line), document.getLineDelimiter(line));
+		}
+
+		document.replace(5, 0, "x"); //$NON-NLS-1$
+		assertEquals(content.substring(0, 5) + "x" + content.substring(5), document.get()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testObservedDocumentSetContentFromReader() throws IOException {
+		String content= createContent(20000);
+		Document document= new Document("initial"); //$NON-NLS-1$
+		final DocumentEvent[] events= new DocumentEvent[2];
+		document.addDocumentListener(new IDocumentListener() {
+			@Override
+			public void documentAboutToBeChanged(DocumentEvent event) {
+				events[0]= event;
+			}
+
+			@Override
+			public void documentChanged(DocumentEvent event) {
+				events[1]= event;
+			}
+		});
+		document.setContent(new StringReader(content), content.length(), 42);
+
+		assertSame(events[0], events[1]);
+		assertEquals(0, events[1].getOffset());
+		assertEquals("initial".length(), events[1].getLength()); //$NON-NLS-1$
+		assertEquals(content, events[1].fText);
+		assertEquals(42, events[1].getModificationStamp());
+		assertEquals(content, document.get());
+		assertEquals(new Document(content).getNumberOfLines(), document.getNumberOfLines());
+	}
 }
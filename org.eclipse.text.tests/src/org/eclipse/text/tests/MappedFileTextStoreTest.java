@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.text.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.ITextStore;
+import org.eclipse.jface.text.MappedFileTextStore;
+
+public class MappedFileTextStoreTest extends TextStoreTest {
+
+	@Override
+	protected ITextStore createTextStore() {
+		try {
+			return createStore(new byte[0], StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MappedFileTextStore createStore(byte[] content, Charset charset) throws IOException {
+		return new MappedFileTextStore(createFile(content), charset);
+	}
+
+	private static Path createFile(byte[] content) throws IOException {
+		Path file= Files.createTempFile("MappedFileTextStoreTest", ".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+		file.toFile().deleteOnExit();
+		Files.write(file, content);
+		return file;
+	}
+
+	private static String createContent() {
+		StringBuilder buffer= new StringBuilder();
+		for (int i= 0; i < 20000; i++) {
+			buffer.append("line ").append(i).append(" \u00e4\u00f6\u00fc \u20ac \ud83d\ude00"); //$NON-NLS-1$ //$NON-NLS-2$
+			buffer.append(i % 3 == 0 ? "\r\n" : "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return buffer.toString();
+	}
+
+	private static void assertContent(String expected, ITextStore store) {
+		assertEquals(expected.length(), store.getLength());
+		assertEquals(expected, store.get(0, store.getLength()));
+		for (int i= 0; i < expected.length(); i += 97)
+			assertEquals(expected.charAt(i), store.get(i));
+		assertEquals(expected.substring(8000, 9000), store.get(8000, 1000));
+	}
+
+	@Test
+	public void testDecodeUTF8() throws Exception {
+		String content= createContent();
+		assertContent(content, createStore(content.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testDecodeUTF8WithBOM() throws Exception {
+		String content= createContent();
+		byte[] bytes= content.getBytes(StandardCharsets.UTF_8);
+		byte[] withBOM= new byte[bytes.length + 3];
+		withBOM[0]= (byte) 0xEF;
+		withBOM[1]= (byte) 0xBB;
+		withBOM[2]= (byte) 0xBF;
+		System.arraycopy(bytes, 0, withBOM, 3, bytes.length);
+		assertContent(content, createStore(withBOM, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testDecodeUTF16() throws Exception {
+		String content= createContent();
+		assertContent(content, createStore(content.getBytes(StandardCharsets.UTF_16), StandardCharsets.UTF_16));
+		assertContent(content, createStore(content.getBytes(StandardCharsets.UTF_16LE), StandardCharsets.UTF_16LE));
+	}
+
+	@Test
+	public void testModifyAndDetach() throws Exception {
+		String content= createContent();
+		MappedFileTextStore store= createStore(content.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1);
+		String expected= new String(content.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1);
+
+		store.replace(10, 5, "replaced"); //$NON-NLS-1$
+		expected= expected.substring(0, 10) + "replaced" + expected.substring(15); //$NON-NLS-1$
+		assertContent(expected, store);
+
+		store.detach();
+		store.replace(20000, 0, "inserted"); //$NON-NLS-1$
+		expected= expected.substring(0, 20000) + "inserted" + expected.substring(20000); //$NON-NLS-1$
+		assertContent(expected, store);
+	}
+
+	@Test
+	public void testDocumentSetContent() throws Exception {
+		String content= createContent();
+		Document document= new Document("initial"); //$NON-NLS-1$
+		document.setContent(createStore(content.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+
+		Document expected= new Document(content);
+		assertEquals(content, document.get());
+		assertEquals(expected.getNumberOfLines(), document.getNumberOfLines());
+		for (int line= 0; line < expected.getNumberOfLines(); line += 101) {
+			assertEquals(expected.getLineInformation(line).getOffset(), document.getLineInformation(line).getOffset());
+			assertEquals(expected.getLineDelimiter(line), document.getLineDelimiter(line));
+		}
+
+		document.replace(5, 0, "x"); //$NON-NLS-1$
+		assertEquals(content.substring(0, 5) + "x" + content.substring(5), document.get()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testDocumentSetContentWithListener() throws Exception {
+		String content= createContent();
+		Document document= new Document("initial"); //$NON-NLS-1$
+		DocumentEvent[] events= new DocumentEvent[2];
+		document.addDocumentListener(new IDocumentListener() {
+			@Override
+			public void documentAboutToBeChanged(DocumentEvent event) {
+				assertNull(events[0]);
+				events[0]= event;
+			}
+
+			@Override
+			public void documentChanged(DocumentEvent event) {
+				assertNull(events[1]);
+				events[1]= event;
+			}
+		});
+		document.setContent(createStore(content.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), 42);
+
+		assertSame(events[0], events[1]);
+		assertEquals(0, events[1].fOffset);
+		assertEquals(7, events[1].fLength);
+		assertEquals(content, events[1].fText);
+		assertEquals(42, events[1].getModificationStamp());
+		assertEquals(content, document.get());
+	}
+
+	@Test
+	public void testTruncatedFile() throws Exception {
+		String content= createContent();
+		Path file= createFile(content.getBytes(StandardCharsets.UTF_8));
+		MappedFileTextStore store= new MappedFileTextStore(file, StandardCharsets.UTF_8);
+		assertEquals(content.charAt(10), store.get(10));
+
+		try (FileChannel channel= FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(100);
+		}
+
+		// the first page has been decoded before the file was truncated
+		assertEquals(content.charAt(20), store.get(20));
+		// the last page is no longer backed by the file
+		assertEquals('\uFFFD', store.get(content.length() - 1));
+		assertEquals(content.length(), store.getLength());
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.text.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import org.eclipse.jface.text.ITextStore;
+import org.eclipse.jface.text.PieceTableTextStore;
+
+public class PieceTableTextStoreTest extends TextStoreTest {
+
+	@Override
+	protected ITextStore createTextStore() {
+		return new PieceTableTextStore();
+	}
+
+	@Test
+	public void testRandomEdits() {
+		Random random= new Random(4711);
+		ITextStore store= createTextStore();
+		StringBuilder expected= new StringBuilder("0123456789abcdefghijklmnopqrstuvwxyz");
+		store.set(expected.toString());
+
+		for (int i= 0; i < 5000; i++) {
+			int offset= random.nextInt(expected.length() + 1);
+			int length= random.nextInt(Math.min(20, expected.length() - offset) + 1);
+			int textLength= random.nextInt(10) == 0 ? 300 + random.nextInt(300) : random.nextInt(5);
+			StringBuilder text= new StringBuilder(textLength);
+			for (int j= 0; j < textLength; j++)
+				text.append((char) ('a' + random.nextInt(26)));
+
+			store.replace(offset, length, text.toString());
+			expected.replace(offset, offset + length, text.toString());
+
+			assertEquals(expected.length(), store.getLength());
+			int from= random.nextInt(expected.length() + 1);
+			int to= from + random.nextInt(expected.length() - from + 1);
+			assertEquals(expected.substring(from, to), store.get(from, to - from));
+			if (from < expected.length())
+				assertEquals(expected.charAt(from), store.get(from));
+		}
+		assertEquals(expected.toString(), store.get(0, store.getLength()));
+	}
+
+	@Test
+	public void testHeapOrderAfterRandomEdits() {
+		Random random= new Random(4711);
+		ITextStore store= createTextStore();
+		store.set("0123456789abcdefghijklmnopqrstuvwxyz");
+
+		for (int i= 0; i < 5000; i++) {
+			int offset= random.nextInt(store.getLength() + 1);
+			int length= random.nextInt(Math.min(20, store.getLength() - offset) + 1);
+			store.replace(offset, length, random.nextInt(3) == 0 ? null : "xyz".substring(random.nextInt(3)));
+			if (i % 100 == 0)
+				assertHeapOrdered(new Accessor(store, PieceTableTextStore.class).get("fRoot"), Integer.MAX_VALUE);
+		}
+		assertHeapOrdered(new Accessor(store, PieceTableTextStore.class).get("fRoot"), Integer.MAX_VALUE);
+	}
+
+	private static void assertHeapOrdered(Object node, int maxPriority) {
+		if (node == null)
+			return;
+		Accessor piece= new Accessor(node, node.getClass());
+		int priority= piece.getInt("fPriority");
+		assertTrue(priority <= maxPriority);
+		assertHeapOrdered(piece.get("fLeft"), priority);
+		assertHeapOrdered(piece.get("fRight"), priority);
+	}
+
+	@Test
+	public void testTyping() {
+		ITextStore store= createTextStore();
+		store.set("begin  end");
+		String typed= "the quick brown fox";
+		for (int i= 0; i < typed.length(); i++)
+			store.replace(6 + i, 0, typed.substring(i, i + 1));
+		assertEquals("begin the quick brown fox end", store.get(0, store.getLength()));
+
+		for (int i= typed.length(); i > 0; i--)
+			store.replace(5 + i, 1, null);
+		assertEquals("begin  end", store.get(0, store.getLength()));
+	}
+
+	@Test
+	public void testConcurrentReads() throws InterruptedException {
+		ITextStore store= createTextStore();
+		StringBuilder expected= new StringBuilder();
+		for (int i= 0; i < 1000; i++)
+			expected.append((char) ('a' + i % 26));
+		store.set(expected.toString());
+		for (int i= 0; i < 200; i++) {
+			String text= String.valueOf((char) ('A' + i % 26));
+			store.replace(i * 5, 1, text);
+			expected.replace(i * 5, i * 5 + 1, text);
+		}
+
+		String content= expected.toString();
+		AtomicReference<String> failure= new AtomicReference<>();
+		Thread[] readers= new Thread[4];
+		for (int t= 0; t < readers.length; t++) {
+			long seed= t;
+			readers[t]= new Thread(() -> {
+				Random random= new Random(seed);
+				for (int i= 0; i < 100000 && failure.get() == null; i++) {
+					int offset= random.nextInt(content.length());
+					if (store.get(offset) != content.charAt(offset))
+						failure.set("wrong character at " + offset);
+					int length= random.nextInt(Math.min(4, content.length() - offset) + 1);
+					if (!content.substring(offset, offset + length).equals(store.get(offset, length)))
+						failure.set("wrong text at " + offset);
+				}
+			});
+			readers[t].start();
+		}
+		for (Thread reader : readers)
+			reader.join();
+		assertNull(failure.get());
+	}
+}
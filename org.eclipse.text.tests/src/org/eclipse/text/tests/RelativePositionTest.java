@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.text.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.eclipse.jface.text.DefaultPositionUpdater;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.RelativePosition;
+
+
+public class RelativePositionTest {
+
+	private static String createText(Random random, int length) {
+		StringBuilder buffer= new StringBuilder(length);
+		for (int i= 0; i < length; i++)
+			buffer.append((char) ('a' + random.nextInt(26)));
+		return buffer.toString();
+	}
+
+	private static void checkSame(List<Position> expected, List<Position> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i= 0; i < expected.size(); i++) {
+			assertEquals("Position " + i + " wrong", expected.get(i).getOffset(), actual.get(i).getOffset());
+			assertEquals("Position " + i + " wrong", expected.get(i).getLength(), actual.get(i).getLength());
+			assertEquals("Position " + i + " wrong", expected.get(i).isDeleted(), actual.get(i).isDeleted());
+		}
+	}
+
+	private static void checkSorted(Document document) throws Exception {
+		Position[] positions= document.getPositions(IDocument.DEFAULT_CATEGORY);
+		for (int i= 1; i < positions.length; i++)
+			assertTrue("Position " + i + " not sorted", positions[i - 1].getOffset() <= positions[i].getOffset());
+	}
+
+	@Test
+	public void testShift() throws Exception {
+		Document document= new Document("0123456789");
+		Position position= new RelativePosition(5, 2);
+		document.addPosition(position);
+
+		document.replace(0, 0, "abc");
+		assertEquals(8, position.getOffset());
+		assertEquals(2, position.getLength());
+		assertTrue(position.includes(9));
+		assertTrue(position.overlapsWith(9, 5));
+		assertEquals(new Position(8, 2), position);
+		assertTrue(document.containsPosition(IDocument.DEFAULT_CATEGORY, 8, 2));
+
+		document.replace(0, 3, "");
+		assertEquals(5, position.getOffset());
+
+		document.removePosition(position);
+		assertEquals(5, position.offset);
+		assertFalse(document.containsPosition(IDocument.DEFAULT_CATEGORY, 5, 2));
+	}
+
+	@Test
+	public void testSetOffset() throws Exception {
+		Document document= new Document("0123456789");
+		Position first= new RelativePosition(2, 1);
+		Position second= new RelativePosition(6, 1);
+		document.addPosition(first);
+		document.addPosition(second);
+
+		document.replace(0, 0, "ab");
+		second.setOffset(9);
+		second.setLength(2);
+		assertEquals(9, second.getOffset());
+		assertEquals(4, first.getOffset());
+
+		document.replace(0, 1, "");
+		assertEquals(8, second.getOffset());
+		assertEquals(2, second.getLength());
+	}
+
+	@Test
+	public void testMixedPositions() throws Exception {
+		Document document= new Document("0123456789");
+		Position relative= new RelativePosition(5, 2);
+		Position plain= new Position(7, 1);
+		document.addPosition(relative);
+		document.replace(0, 0, "ab");
+		document.addPosition(plain);
+		document.replace(0, 0, "cd");
+		assertEquals(9, relative.getOffset());
+		assertEquals(9, plain.getOffset());
+
+		document.removePosition(plain);
+		document.replace(0, 2, "");
+		assertEquals(7, relative.getOffset());
+	}
+
+	@Test
+	public void testEquals() throws Exception {
+		Document document= new Document("0123456789");
+		Position relative= new RelativePosition(5, 2);
+		document.addPosition(relative);
+		document.replace(0, 0, "abc");
+
+		Position plain= new Position(8, 2);
+		assertEquals(plain, relative);
+		assertEquals(relative, plain);
+		assertEquals(plain.hashCode(), relative.hashCode());
+		assertFalse(new Position(5, 2).equals(relative));
+		assertFalse(relative.equals(new Position(5, 2)));
+	}
+
+	@Test
+	public void testAddToSecondCategory() throws Exception {
+		Document document= new Document("0123456789");
+		document.addPositionCategory("second");
+		Position position= new RelativePosition(5, 2);
+		document.addPosition(position);
+		try {
+			document.addPosition("second", position);
+			fail();
+		} catch (IllegalArgumentException x) {
+			// expected
+		}
+		assertEquals(0, document.getPositions("second").length);
+
+		document.removePosition(position);
+		document.addPosition("second", position);
+		document.addPositionUpdater(new DefaultPositionUpdater("second"));
+		document.replace(0, 0, "abc");
+		assertEquals(8, position.getOffset());
+	}
+
+	@Test
+	public void testRemovePositionCategory() throws Exception {
+		Document document= new Document("0123456789");
+		document.addPositionCategory("first");
+		document.addPositionUpdater(new DefaultPositionUpdater("first"));
+		Position position= new RelativePosition(5, 2);
+		document.addPosition("first", position);
+		document.replace(0, 0, "abc");
+
+		document.removePositionCategory("first");
+		assertEquals(8, position.getOffset());
+		assertEquals(8, position.offset);
+		document.addPosition(position);
+		document.replace(0, 3, "");
+		assertEquals(5, position.getOffset());
+	}
+
+	@Test
+	public void testRandomEdits() throws Exception {
+		Random random= new Random(7);
+		String text= createText(random, 2000);
+		Document expectedDocument= new Document(text);
+		Document actualDocument= new Document(text);
+		List<Position> expected= new ArrayList<>();
+		List<Position> actual= new ArrayList<>();
+		for (int i= 0; i < 500; i++) {
+			int offset= random.nextInt(text.length() - 20);
+			int length= random.nextInt(20);
+			expected.add(new Position(offset, length));
+			actual.add(new RelativePosition(offset, length));
+			expectedDocument.addPosition(expected.get(i));
+			actualDocument.addPosition(actual.get(i));
+		}
+		checkSame(expected, actual);
+
+		for (int i= 0; i < 2000; i++) {
+			int documentLength= expectedDocument.getLength();
+			int offset= random.nextInt(documentLength + 1);
+			int length= random.nextInt(Math.min(30, documentLength - offset) + 1);
+			String replacement= createText(random, random.nextInt(30));
+			expectedDocument.replace(offset, length, replacement);
+			actualDocument.replace(offset, length, replacement);
+
+			if (i % 10 == 0) {
+				offset= random.nextInt(expectedDocument.getLength() + 1);
+				length= random.nextInt(expectedDocument.getLength() - offset + 1);
+				expected.add(new Position(offset, length));
+				actual.add(new RelativePosition(offset, length));
+				expectedDocument.addPosition(expected.get(expected.size() - 1));
+				actualDocument.addPosition(actual.get(actual.size() - 1));
+			}
+			if (i % 100 == 0) {
+				checkSame(expected, actual);
+				checkSorted(actualDocument);
+			}
+		}
+		checkSame(expected, actual);
+		checkSorted(actualDocument);
+		assertEquals(expectedDocument.getPositions(IDocument.DEFAULT_CATEGORY).length, actualDocument.getPositions(IDocument.DEFAULT_CATEGORY).length);
+	}
+}
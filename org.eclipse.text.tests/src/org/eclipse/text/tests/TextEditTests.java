@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -39,7 +40,9 @@ import org.eclipse.text.edits.TextEditCopier;
 import org.eclipse.text.edits.UndoEdit;
 
 import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IRegion;
 
 public class TextEditTests {
@@ -1390,6 +1393,108 @@ public class TextEditTests {
 		assertEquals(result, 2, 1);
 	}
 
+	@Test
+	public void testCoalescedChanges() throws Exception {
+		TextEdit e1= new InsertEdit(1, "xx");
+		TextEdit e2= new ReplaceEdit(3, 2, "y");
+		RangeMarker e3= new RangeMarker(3, 1);
+		e2.addChild(e3);
+		MultiTextEdit e4= new MultiTextEdit();
+		TextEdit e5= new DeleteEdit(6, 1);
+		RangeMarker e6= new RangeMarker(8, 2);
+		e4.addChild(e5);
+		e4.addChild(e6);
+		fRoot.addChild(e1);
+		fRoot.addChild(e2);
+		fRoot.addChild(e4);
+
+		int[] events= new int[1];
+		fDocument.addDocumentListener(new IDocumentListener() {
+			@Override
+			public void documentAboutToBeChanged(DocumentEvent event) {
+			}
+
+			@Override
+			public void documentChanged(DocumentEvent event) {
+				events[0]++;
+			}
+		});
+		UndoEdit undo= fRoot.apply(fDocument, TextEdit.CREATE_UNDO | TextEdit.UPDATE_REGIONS | TextEdit.COALESCE_CHANGES);
+		Assert.assertEquals("Buffer content", "0xx12y5789", fDocument.get());
+		Assert.assertEquals("Document events", 1, events[0]);
+		assertEquals(fRoot, 1, 9);
+		assertEquals(e1, 1, 2);
+		assertEquals(e2, 5, 1);
+		assertTrue(e3.isDeleted());
+		assertEquals(e4, 7, 3);
+		assertEquals(e5, 7, 0);
+		assertEquals(e6, 8, 2);
+		doUndoRedo(undo, "0xx12y5789");
+	}
+
+	@Test
+	public void testCoalescedRandomChanges() throws Exception {
+		Random random= new Random(1);
+		for (int i= 0; i < 500; i++) {
+			StringBuffer text= new StringBuffer();
+			int length= random.nextInt(50);
+			for (int j= 0; j < length; j++)
+				text.append((char) ('a' + random.nextInt(26)));
+			long seed= random.nextLong();
+			MultiTextEdit root= new MultiTextEdit();
+			addRandomEdits(new Random(seed), root, 0, length, 2);
+			MultiTextEdit expectedRoot= new MultiTextEdit();
+			addRandomEdits(new Random(seed), expectedRoot, 0, length, 2);
+
+			IDocument expected= new Document(text.toString());
+			UndoEdit expectedUndo= expectedRoot.apply(expected, TextEdit.CREATE_UNDO | TextEdit.UPDATE_REGIONS);
+
+			IDocument actual= new Document(text.toString());
+			UndoEdit undo= root.apply(actual, TextEdit.CREATE_UNDO | TextEdit.UPDATE_REGIONS | TextEdit.COALESCE_CHANGES);
+			Assert.assertEquals("Buffer content", expected.get(), actual.get());
+			assertEquals(undo, expectedUndo.getOffset(), expectedUndo.getLength());
+			List<TextEdit> edits= flatten(root);
+			List<TextEdit> expectedEdits= flatten(expectedRoot);
+			for (int j= 0; j < edits.size(); j++) {
+				TextEdit edit= edits.get(j);
+				TextEdit expectedEdit= expectedEdits.get(j);
+				Assert.assertEquals(expectedEdit.isDeleted(), edit.isDeleted());
+				assertEquals(edit, expectedEdit.getOffset(), expectedEdit.getLength());
+			}
+
+			undo.apply(actual);
+			Assert.assertEquals("Buffer content restored", text.toString(), actual.get());
+		}
+	}
+
+	private static void addRandomEdits(Random random, TextEdit parent, int offset, int end, int depth) {
+		while (offset <= end) {
+			int length= random.nextInt(Math.min(end - offset, 8) + 1);
+			TextEdit edit;
+			switch (random.nextInt(5)) {
+				case 0:
+					edit= new InsertEdit(offset, "i" + random.nextInt(100));
+					length= 0;
+					break;
+				case 1:
+					edit= new DeleteEdit(offset, length);
+					break;
+				case 2:
+					edit= new ReplaceEdit(offset, length, "r" + random.nextInt(1000));
+					break;
+				case 3:
+					edit= new RangeMarker(offset, length);
+					break;
+				default:
+					edit= new MultiTextEdit(offset, length);
+			}
+			parent.addChild(edit);
+			if (depth > 0 && length > 0 && !(edit instanceof InsertEdit))
+				addRandomEdits(random, edit, offset, offset + length - 1, depth - 1);
+			offset+= length + 1 + random.nextInt(3);
+		}
+	}
+
 	private void doUndoRedo(UndoEdit undo, String redoResult) throws Exception {
 		UndoEdit redo= undo.apply(fDocument);
 		assertBufferContent();
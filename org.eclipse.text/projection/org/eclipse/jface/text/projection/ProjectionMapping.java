@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,6 +28,13 @@ import org.eclipse.jface.text.Region;
  * <p>
  * Implementation of {@link org.eclipse.jface.text.IDocumentInformationMapping}
  * for the projection mapping between a master and a slave document.
+ * <p>
+ * The fragments and segments are cached until the next {@link #projectionChanged()}. The offsets
+ * of the segments are the prefix sums of the fragment lengths, hence the fragment or segment of
+ * an offset is found by a binary search over the cached positions, and the image length is the
+ * cached sum of all segment lengths. This makes the offset mappings perform in <i>O(log n)</i>
+ * for <i>n</i> fragments without allocating any intermediate arrays.
+ * </p>
  *
  * @since 3.0
  * @noinstantiate This class is not intended to be instantiated by clients.
@@ -51,6 +58,12 @@ public class ProjectionMapping implements IDocumentInformationMapping , IDocumen
 	private Position[] fCachedSegments;
 	/** Cached fragments */
 	private Position[] fCachedFragments;
+	/**
+	 * Cached image length, i.e. the sum of the segment lengths, or <code>-1</code> if not yet
+	 * computed
+	 * @since 3.7
+	 */
+	private int fCachedImageLength= -1;
 
 	/**
 	 * Creates a new mapping between the given parent document and the given projection document.
@@ -73,6 +86,7 @@ public class ProjectionMapping implements IDocumentInformationMapping , IDocumen
 	public void projectionChanged() {
 		fCachedSegments= null;
 		fCachedFragments= null;
+		fCachedImageLength= -1;
 	}
 
 	private Position[] getSegments() {
@@ -97,6 +111,30 @@ public class ProjectionMapping implements IDocumentInformationMapping , IDocumen
 		return fCachedFragments;
 	}
 
+	/**
+	 * Computes the index at which a position with the given offset would be inserted into the
+	 * given sorted positions. The position to insert is supposed to become the first of all
+	 * positions with the same offset. This is the same as
+	 * {@link IDocument#computeIndexInCategory(String, int)} but works on the cached positions.
+	 *
+	 * @param positions the positions, sorted by offset
+	 * @param offset the offset
+	 * @return the index at which a position with the given offset would be inserted
+	 * @since 3.7
+	 */
+	private static int computeIndex(Position[] positions, int offset) {
+		int left= 0;
+		int right= positions.length;
+		while (left < right) {
+			int mid= (left + right) >>> 1;
+			if (positions[mid].offset < offset)
+				left= mid + 1;
+			else
+				right= mid;
+		}
+		return left;
+	}
+
 	private int findSegmentIndex(int offset) throws BadLocationException {
 		Position[] segments= getSegments();
 		if (segments.length == 0) {
@@ -105,22 +143,20 @@ public class ProjectionMapping implements IDocumentInformationMapping , IDocumen
 			return -1;
 		}
 
-		try {
-			int index= fSlaveDocument.computeIndexInCategory(fSegmentsCategory, offset);
-			if (index == segments.length && offset > exclusiveEnd(segments[index-1]))
-				throw new BadLocationException();
-
-			if (index < segments.length && offset == segments[index].offset)
-				return index;
+		if (offset < 0 || offset > fSlaveDocument.getLength())
+			throw new BadLocationException();
 
-			if (index > 0)
-				index--;
+		int index= computeIndex(segments, offset);
+		if (index == segments.length && offset > exclusiveEnd(segments[index-1]))
+			throw new BadLocationException();
 
+		if (index < segments.length && offset == segments[index].offset)
 			return index;
 
-		} catch (BadPositionCategoryException e) {
-			throw new IllegalStateException();
-		}
+		if (index > 0)
+			index--;
+
+		return index;
 	}
 
 	private Segment findSegment(int offset) throws BadLocationException {
@@ -165,33 +201,28 @@ public class ProjectionMapping implements IDocumentInformationMapping , IDocumen
 	 *         document
 	 */
 	private int findFragmentIndex(int offset, int extensionDirection) throws BadLocationException {
-		try {
+		Position[] fragments= getFragments();
+		if (fragments.length == 0)
+			return -1;
 
-			Position[] fragments= getFragments();
-			if (fragments.length == 0)
-				return -1;
+		checkOriginOffset(offset);
+		int index= computeIndex(fragments, offset);
 
-			int index= fMasterDocument.computeIndexInCategory(fFragmentsCategory, offset);
+		if (index < fragments.length && offset == fragments[index].offset)
+			return index;
 
-			if (index < fragments.length && offset == fragments[index].offset)
-				return index;
+		if (0 < index && index <= fragments.length && fragments[index - 1].includes(offset))
+			return index - 1;
 
-			if (0 < index && index <= fragments.length && fragments[index - 1].includes(offset))
+		switch (extensionDirection) {
+			case LEFT:
 				return index - 1;
-
-			switch (extensionDirection) {
-				case LEFT:
-					return index - 1;
-				case RIGHT:
-					if (index < fragments.length)
-						return index;
-			}
-
-			return -1;
-
-		} catch (BadPositionCategoryException e) {
-			throw new IllegalStateException();
+			case RIGHT:
+				if (index < fragments.length)
+					return index;
 		}
+
+		return -1;
 	}
 
 	private Fragment findFragment(int offset) throws BadLocationException {
@@ -463,44 +494,37 @@ public class ProjectionMapping implements IDocumentInformationMapping , IDocumen
 
 	@Override
 	public int toClosestImageLine(int originLine) throws BadLocationException {
-		try {
-
-			int imageLine= toImageLine(originLine);
-			if (imageLine > -1)
-				return imageLine;
-
-			Position[] fragments= getFragments();
-			if (fragments.length == 0)
-				return -1;
+		int imageLine= toImageLine(originLine);
+		if (imageLine > -1)
+			return imageLine;
 
-			IRegion originLineRegion= fMasterDocument.getLineInformation(originLine);
-			int index= fMasterDocument.computeIndexInCategory(fFragmentsCategory, originLineRegion.getOffset());
+		Position[] fragments= getFragments();
+		if (fragments.length == 0)
+			return -1;
 
-			if (0 < index && index < fragments.length) {
-				Fragment left= (Fragment) fragments[index - 1];
-				int leftDistance= originLineRegion.getOffset() - (exclusiveEnd(left));
-				Fragment right= (Fragment) fragments[index];
-				int rightDistance= right.getOffset() - (exclusiveEnd(originLineRegion));
+		IRegion originLineRegion= fMasterDocument.getLineInformation(originLine);
+		int index= computeIndex(fragments, originLineRegion.getOffset());
 
-				if (leftDistance <= rightDistance)
-					originLine= fMasterDocument.getLineOfOffset(left.getOffset() + Math.max(left.getLength() - 1, 0));
-				else
-					originLine= fMasterDocument.getLineOfOffset(right.getOffset());
+		if (0 < index && index < fragments.length) {
+			Fragment left= (Fragment) fragments[index - 1];
+			int leftDistance= originLineRegion.getOffset() - (exclusiveEnd(left));
+			Fragment right= (Fragment) fragments[index];
+			int rightDistance= right.getOffset() - (exclusiveEnd(originLineRegion));
 
-			} else if (index == 0) {
-				Fragment right= (Fragment) fragments[index];
+			if (leftDistance <= rightDistance)
+				originLine= fMasterDocument.getLineOfOffset(left.getOffset() + Math.max(left.getLength() - 1, 0));
+			else
 				originLine= fMasterDocument.getLineOfOffset(right.getOffset());
-			} else if (index == fragments.length) {
-				Fragment left= (Fragment) fragments[index - 1];
-				originLine= fMasterDocument.getLineOfOffset(exclusiveEnd(left));
-			}
-
-			return toImageLine(originLine);
 
-		} catch (BadPositionCategoryException x) {
+		} else if (index == 0) {
+			Fragment right= (Fragment) fragments[index];
+			originLine= fMasterDocument.getLineOfOffset(right.getOffset());
+		} else if (index == fragments.length) {
+			Fragment left= (Fragment) fragments[index - 1];
+			originLine= fMasterDocument.getLineOfOffset(exclusiveEnd(left));
 		}
 
-		return -1;
+		return toImageLine(originLine);
 	}
 
 	@Override
@@ -543,11 +567,16 @@ public class ProjectionMapping implements IDocumentInformationMapping , IDocumen
 
 	@Override
 	public int getImageLength() {
-		Position[] segments= getSegments();
-		int length= 0;
-		for (int i= 0; i < segments.length; i++)
-			length += segments[i].length;
-		return length;
+		if (fCachedImageLength == -1) {
+			Position[] segments= getSegments();
+			int length= 0;
+			for (int i= 0; i < segments.length; i++)
+				length += segments[i].length;
+			if (segments != fCachedSegments)
+				return length;
+			fCachedImageLength= length;
+		}
+		return fCachedImageLength;
 	}
 
 	@Override
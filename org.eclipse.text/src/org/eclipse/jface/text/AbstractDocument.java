@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,8 @@
 package org.eclipse.jface.text;
 
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -63,6 +65,13 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 	 */
 	private static final boolean DEBUG= false;
 
+	/**
+	 * The number of characters passed to the line tracker at once by
+	 * {@link #setContent(ITextStore, long)}.
+	 * @since 3.7
+	 */
+	private static final int CONTENT_CHUNK_SIZE= 64 * 1024;
+
 
 	/**
 	 * Inner class to bundle a registered post notification replace operation together with its
@@ -342,7 +351,9 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 	@Override
 	public void addPosition(String category, Position position) throws BadLocationException, BadPositionCategoryException  {
 
-		if ((0 > position.offset) || (0 > position.length) || (position.offset + position.length > getLength()))
+		int offset= position.getOffset();
+		int length= position.getLength();
+		if ((0 > offset) || (0 > length) || (offset + length > getLength()))
 			throw new BadLocationException();
 
 		if (category == null)
@@ -351,12 +362,15 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 		List<Position> list= fPositions.get(category);
 		if (list == null)
 			throw new BadPositionCategoryException();
-		list.add(computeIndexInPositionList(list, position.offset), position);
+		// the offset of a linked relative position is only valid in the category it is linked to
+		if (position instanceof RelativePosition && ((RelativePosition) position).fNode != null)
+			throw new IllegalArgumentException("relative position is already managed by a position category"); //$NON-NLS-1$
+		list.add(computeIndexInPositionList(list, offset), position);
 
 		List<Position> endPositions= fEndPositions.get(category);
 		if (endPositions == null)
 			throw new BadPositionCategoryException();
-		endPositions.add(computeIndexInPositionList(endPositions, position.offset + position.length - 1, false), position);
+		endPositions.add(computeIndexInPositionList(endPositions, offset + length - 1, false), position);
 	}
 
 	@Override
@@ -374,8 +388,8 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 			return;
 
 		if (!containsPositionCategory(category)) {
-			fPositions.put(category, new ArrayList<>());
-			fEndPositions.put(category, new ArrayList<>());
+			fPositions.put(category, new PositionList());
+			fEndPositions.put(category, new PositionList());
 		}
 	}
 
@@ -401,8 +415,8 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 		int index= computeIndexInPositionList(list, offset);
 		if (index < size) {
 			Position p= list.get(index);
-			while (p != null && p.offset == offset) {
-				if (p.length == length)
+			while (p != null && p.getOffset() == offset) {
+				if (p.getLength() == length)
 					return true;
 				++ index;
 				p= (index < size) ? list.get(index) : null;
@@ -449,6 +463,9 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 	 * @since 3.4
 	 */
 	protected int computeIndexInPositionList(List<? extends Position> positions, int offset, boolean orderedByOffset) {
+		if (positions instanceof PositionList)
+			return ((PositionList) positions).computeIndex(offset, orderedByOffset);
+
 		if (positions.size() == 0)
 			return 0;
 
@@ -524,6 +541,22 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 		return computeIndexInPositionList(c, offset);
 	}
 
+	/**
+	 * Returns the list of positions of the given category if all of them are
+	 * {@link RelativePosition}s linked to it and can thus be shifted lazily.
+	 *
+	 * @param category the position category
+	 * @return the list of positions, or <code>null</code> if the category is undefined, empty
+	 *         or contains other positions
+	 * @since 3.7
+	 */
+	PositionList getRelativePositions(String category) {
+		List<Position> positions= fPositions.get(category);
+		if (positions instanceof PositionList && !positions.isEmpty() && ((PositionList) positions).isLinked())
+			return (PositionList) positions;
+		return null;
+	}
+
 	/**
 	 * Fires the document partitioning changed notification to all registered
 	 * document partitioning listeners. Uses a robust iterator.
@@ -1012,7 +1045,8 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 		int size= positions.size();
 
 		//Assume position is somewhere near it was before
-		int index= computeIndexInPositionList(positions, orderedByOffset ? position.offset : position.offset + position.length - 1, orderedByOffset);
+		int offset= position.getOffset();
+		int index= computeIndexInPositionList(positions, orderedByOffset ? offset : offset + position.getLength() - 1, orderedByOffset);
 		if (index < size && positions.get(index) == position) {
 			positions.remove(index);
 			return;
@@ -1056,7 +1090,8 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 		if ( !containsPositionCategory(category))
 			throw new BadPositionCategoryException();
 
-		fPositions.remove(category);
+		// unlinks the relative positions so that they can be added to another category
+		fPositions.remove(category).clear();
 		fEndPositions.remove(category);
 	}
 
@@ -1142,6 +1177,124 @@ public abstract class AbstractDocument implements IDocument, IDocumentExtension,
 		fireDocumentChanged(e);
 	}
 
+	/**
+	 * Replaces the document's text store with the given store, which already holds the new
+	 * content of the document. Equivalent to
+	 * <code>setContent(store, getNextModificationStamp())</code>.
+	 *
+	 * @param store the new text store of this document
+	 * @see #setContent(ITextStore, long)
+	 * @since 3.7
+	 */
+	public void setContent(ITextStore store) {
+		setContent(store, getNextModificationStamp());
+	}
+
+	/**
+	 * Replaces the document's text store with the given store, which already holds the new
+	 * content of the document. This allows to use text stores that do not keep their content in
+	 * memory, such as {@link MappedFileTextStore}.
+	 * <p>
+	 * A document event must carry the complete new text. If nobody observes this document, i.e.
+	 * it has neither document listeners nor document partitioners nor positions, no document
+	 * event is sent and the line information is computed from the store in chunks, so the
+	 * content is never copied into one string. Otherwise, this behaves like
+	 * {@link #set(String, long)} with the content of the store.
+	 * </p>
+	 *
+	 * @param store the new text store of this document
+	 * @param modificationStamp the new modification stamp
+	 * @since 3.7
+	 */
+	public void setContent(ITextStore store, long modificationStamp) {
+		Assert.isNotNull(store);
+		if (isObserved()) {
+			String text= store.get(0, store.getLength());
+			DocumentEvent e= new DocumentEvent(this, 0, getStore().getLength(), text);
+			fireDocumentAboutToBeChanged(e);
+
+			fStore= store;
+			getTracker().set(text);
+
+			fModificationStamp= modificationStamp;
+			fNextModificationStamp= Math.max(fModificationStamp, fNextModificationStamp);
+			e.fModificationStamp= fModificationStamp;
+
+			fireDocumentChanged(e);
+			return;
+		}
+
+		fStore= store;
+		ILineTracker tracker= getTracker();
+		tracker.set(""); //$NON-NLS-1$
+		int storeLength= store.getLength();
+		int offset= 0;
+		try {
+			while (offset < storeLength) {
+				int chunkLength= Math.min(CONTENT_CHUNK_SIZE, storeLength - offset);
+				// never split a \r\n delimiter
+				if (offset + chunkLength < storeLength && store.get(offset + chunkLength - 1) == '\r')
+					chunkLength++;
+				tracker.replace(offset, 0, store.get(offset, chunkLength));
+				offset += chunkLength;
+			}
+		} catch (BadLocationException x) {
+			// cannot happen: chunks are always appended at the end
+			Assert.isTrue(false);
+		}
+
+		fModificationStamp= modificationStamp;
+		fNextModificationStamp= Math.max(fModificationStamp, fNextModificationStamp);
+	}
+
+	/**
+	 * Returns whether a change of this document is observed by document listeners, document
+	 * partitioners or position updaters.
+	 *
+	 * @return <code>true</code> if a document event must be sent for a change
+	 * @since 3.7
+	 */
+	private boolean isObserved() {
+		if (!fDocumentListeners.isEmpty() || !fPrenotifiedDocumentListeners.isEmpty())
+			return true;
+		if (fDocumentPartitioners != null && !fDocumentPartitioners.isEmpty())
+			return true;
+		for (List<Position> positions : fPositions.values()) {
+			if (!positions.isEmpty())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces the content of this document with the characters read from the given reader. The
+	 * characters are read directly into a new {@link GapTextStore}, see
+	 * {@link GapTextStore#set(Reader, int)}, which then replaces the text store of this document
+	 * like in {@link #setContent(ITextStore, long)}. Unlike {@link #set(String, long)}, this does
+	 * not read the content into an intermediate buffer.
+	 * <p>
+	 * If this document is observed, e.g. because document setup participants connected a
+	 * partitioner, the document event carries the complete content. That string is created once
+	 * from the filled store and shared by the event and the line tracker.
+	 * </p>
+	 * <p>
+	 * The reader is read to its end, but it is not closed. If reading fails, this document is not
+	 * changed and no document event is sent.
+	 * </p>
+	 *
+	 * @param reader the reader to read the new content from
+	 * @param lengthHint the expected number of characters, used to size the text store
+	 *            (&gt;=&nbsp;0)
+	 * @param modificationStamp the new modification stamp
+	 * @throws IOException if reading fails
+	 * @since 3.7
+	 */
+	public void setContent(Reader reader, int lengthHint, long modificationStamp) throws IOException {
+		GapTextStore store= new GapTextStore();
+		store.set(reader, lengthHint);
+		setContent(store, modificationStamp);
+	}
+
 	/**
 	 * Updates all positions of all categories to the change described by the
 	 * document event. All registered document updaters are called in the
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.jface.text;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * Default implementation of {@link org.eclipse.jface.text.IPositionUpdater}.
@@ -206,12 +209,23 @@ public class DefaultPositionUpdater implements IPositionUpdater {
 		try {
 
 
+			fDocument= event.getDocument();
+			if (fDocument instanceof AbstractDocument) {
+				PositionList positions= ((AbstractDocument) fDocument).getRelativePositions(fCategory);
+				if (positions != null) {
+					update(event, positions);
+					return;
+				}
+			}
+
+			Position[] category= fDocument.getPositions(fCategory);
+			if (category.length == 0)
+				return;
+
 			fOffset= event.getOffset();
 			fLength= event.getLength();
 			fReplaceLength= (event.getText() == null ? 0 : event.getText().length());
-			fDocument= event.getDocument();
 
-			Position[] category= fDocument.getPositions(fCategory);
 			for (Position element : category) {
 
 				fPosition= element;
@@ -228,4 +242,40 @@ public class DefaultPositionUpdater implements IPositionUpdater {
 			fDocument= null;
 		}
 	}
+
+	/**
+	 * Updates a category that consists of {@link RelativePosition}s. The positions that start
+	 * at or after the end of the replaced text are shifted lazily, only the positions that can
+	 * be affected otherwise are adapted one by one. Adapted positions whose offset has changed
+	 * are moved so that the category stays sorted by offset.
+	 *
+	 * @param event the document event
+	 * @param positions the positions of the category
+	 * @since 3.7
+	 */
+	private void update(DocumentEvent event, PositionList positions) {
+		fOffset= event.getOffset();
+		fLength= event.getLength();
+		fReplaceLength= (event.getText() == null ? 0 : event.getText().length());
+
+		int index= positions.computeIndex(fOffset + fLength, true);
+		positions.shift(index, fReplaceLength - fLength);
+
+		List<Position> affected= new ArrayList<>();
+		positions.collectEndingAfter(index, fOffset, affected);
+		for (Position element : affected) {
+
+			fPosition= element;
+			fOriginalPosition.offset= fPosition.offset;
+			fOriginalPosition.length= fPosition.length;
+
+			if (notDeleted()) {
+				adaptToReplace();
+				if (fPosition.offset != fOriginalPosition.offset)
+					positions.reposition((RelativePosition) fPosition);
+				else
+					((RelativePosition) fPosition).positionChanged();
+			}
+		}
+	}
 }
@@ -34,11 +34,13 @@ package org.eclipse.jface.text;
  * </p>
  * <p>
  * See {@link GapTextStore} and <code>TreeLineTracker</code> for algorithmic behavior of the used
- * document structures.
+ * document structures. Subclasses intended for documents of several hundred megabytes can
+ * {@linkplain #setTextStore(ITextStore) install} a {@link PieceTableTextStore} instead.
  * </p>
  * 
  * @see org.eclipse.jface.text.GapTextStore
  * @see org.eclipse.jface.text.CopyOnWriteTextStore
+ * @see org.eclipse.jface.text.PieceTableTextStore
  */
 public class Document extends AbstractDocument {
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -67,6 +67,14 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 	 */
 	private Matcher fFindReplaceMatcher;
 
+	/**
+	 * The matcher used in findReplace for non-regular expression searches, <code>null</code> if
+	 * {@link #fFindReplaceMatcher} is used.
+	 *
+	 * @since 3.7
+	 */
+	private LiteralMatcher fLiteralMatcher;
+
 	/**
 	 * The match offset from the last findReplace call.
 	 */
@@ -166,22 +174,31 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 			if (!caseSensitive)
 				patternFlags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
 
-			if (!regExSearch)
-				findString= asRegPattern(findString);
-
-			if (wholeWord)
-				findString= "\\b" + findString + "\\b"; //$NON-NLS-1$ //$NON-NLS-2$
-
 			fFindReplaceMatchOffset= startOffset;
-			if (fFindReplaceMatcher != null && fFindReplaceMatcher.pattern().pattern().equals(findString) && fFindReplaceMatcher.pattern().flags() == patternFlags) {
-				/*
-				 * Commented out for optimization:
-				 * The call is not needed since FIND_FIRST uses find(int) which resets the matcher
-				 */
-				// fFindReplaceMatcher.reset();
+			if (!regExSearch && !wholeWord && LiteralMatcher.isSupported(findString)) {
+				// plain strings are found without the regular expression engine
+				if (fLiteralMatcher == null || !fLiteralMatcher.getLiteral().equals(findString) || fLiteralMatcher.isCaseSensitive() != caseSensitive)
+					fLiteralMatcher= new LiteralMatcher(findString, caseSensitive, this);
+				fFindReplaceMatcher= null;
 			} else {
-				Pattern pattern= Pattern.compile(findString, patternFlags);
-				fFindReplaceMatcher= pattern.matcher(this);
+				fLiteralMatcher= null;
+
+				if (!regExSearch)
+					findString= asRegPattern(findString);
+
+				if (wholeWord)
+					findString= "\\b" + findString + "\\b"; //$NON-NLS-1$ //$NON-NLS-2$
+
+				if (fFindReplaceMatcher != null && fFindReplaceMatcher.pattern().pattern().equals(findString) && fFindReplaceMatcher.pattern().flags() == patternFlags) {
+					/*
+					 * Commented out for optimization:
+					 * The call is not needed since FIND_FIRST uses find(int) which resets the matcher
+					 */
+					// fFindReplaceMatcher.reset();
+				} else {
+					Pattern pattern= Pattern.compile(findString, patternFlags);
+					fFindReplaceMatcher= pattern.matcher(this);
+				}
 			}
 		}
 
@@ -190,6 +207,13 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 
 		if (operationCode == REPLACE || operationCode == REPLACE_FIND_NEXT) {
 			if (regExSearch) {
+				if (fLiteralMatcher != null) {
+					// a regular expression replace after a plain find, continue with the equivalent pattern
+					int patternFlags= fLiteralMatcher.isCaseSensitive() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+					fFindReplaceMatcher= Pattern.compile(asRegPattern(fLiteralMatcher.getLiteral()), patternFlags).matcher(this);
+					fFindReplaceMatcher.find(fLiteralMatcher.start());
+					fLiteralMatcher= null;
+				}
 				Pattern pattern= fFindReplaceMatcher.pattern();
 				String prevMatch= fFindReplaceMatcher.group();
 				try {
@@ -201,8 +225,8 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 				}
 			}
 
-			int offset= fFindReplaceMatcher.start();
-			int length= fFindReplaceMatcher.group().length();
+			int offset= getMatchStart();
+			int length= getMatchLength();
 
 			if (fDocument instanceof IRepairableDocumentExtension
 					&& ((IRepairableDocumentExtension)fDocument).isLineInformationRepairNeeded(offset, length, replaceText)) {
@@ -223,30 +247,30 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 
 					boolean found= false;
 					if (operationCode == FIND_FIRST)
-						found= fFindReplaceMatcher.find(startOffset);
+						found= findMatch(startOffset);
 					else
-						found= fFindReplaceMatcher.find();
+						found= findNextMatch();
 
 					if (operationCode == REPLACE_FIND_NEXT)
 						fFindReplaceState= FIND_NEXT;
 
-					if (found && fFindReplaceMatcher.group().length() > 0)
-						return new Region(fFindReplaceMatcher.start(), fFindReplaceMatcher.group().length());
+					if (found && getMatchLength() > 0)
+						return new Region(getMatchStart(), getMatchLength());
 					return null;
 				}
 				// backward search
-				boolean found= fFindReplaceMatcher.find(0);
+				boolean found= findMatch(0);
 				int index= -1;
 				int length= -1;
-				while (found && fFindReplaceMatcher.start() + fFindReplaceMatcher.group().length() <= fFindReplaceMatchOffset + 1) {
-					index= fFindReplaceMatcher.start();
-					length= fFindReplaceMatcher.group().length();
-					found= fFindReplaceMatcher.find(index + 1);
+				while (found && getMatchStart() + getMatchLength() <= fFindReplaceMatchOffset + 1) {
+					index= getMatchStart();
+					length= getMatchLength();
+					found= findMatch(index + 1);
 				}
 				fFindReplaceMatchOffset= index;
 				if (index > -1) {
 					// must set matcher to correct position
-					fFindReplaceMatcher.find(index);
+					findMatch(index);
 					return new Region(index, length);
 				}
 				return null;
@@ -259,6 +283,57 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 		return null;
 	}
 
+	/**
+	 * Resets the current matcher and finds the first match at or after the given offset.
+	 *
+	 * @param offset the offset to start at
+	 * @return <code>true</code> if a match has been found
+	 * @since 3.7
+	 */
+	private boolean findMatch(int offset) {
+		if (fLiteralMatcher != null)
+			return fLiteralMatcher.find(offset);
+		return fFindReplaceMatcher.find(offset);
+	}
+
+	/**
+	 * Finds the next match of the current matcher.
+	 *
+	 * @return <code>true</code> if a match has been found
+	 * @since 3.7
+	 */
+	private boolean findNextMatch() {
+		if (fLiteralMatcher != null)
+			return fLiteralMatcher.find();
+		return fFindReplaceMatcher.find();
+	}
+
+	/**
+	 * Returns the offset of the current match.
+	 *
+	 * @return the offset
+	 * @throws IllegalStateException if there is no current match
+	 * @since 3.7
+	 */
+	private int getMatchStart() {
+		if (fLiteralMatcher != null)
+			return fLiteralMatcher.start();
+		return fFindReplaceMatcher.start();
+	}
+
+	/**
+	 * Returns the length of the current match.
+	 *
+	 * @return the length
+	 * @throws IllegalStateException if there is no current match
+	 * @since 3.7
+	 */
+	private int getMatchLength() {
+		if (fLiteralMatcher != null)
+			return fLiteralMatcher.end() - fLiteralMatcher.start();
+		return fFindReplaceMatcher.group().length();
+	}
+
 	/**
 	 * Substitutes \R in a regex find pattern with (?>\r\n?|\n)
 	 *
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.jface.text;
 
+import java.io.IOException;
+import java.io.Reader;
+
 import org.eclipse.core.runtime.Assert;
 
 
@@ -178,6 +181,52 @@ public class GapTextStore implements ITextStore {
 		replace(0, getLength(), text);
 	}
 
+	/**
+	 * Replaces the content of this text store with the characters read from the given reader. The
+	 * characters are read directly into the array of this store, followed by the gap. If
+	 * <code>lengthHint</code> is not less than the number of characters read and not much larger,
+	 * the content is not copied at all.
+	 * <p>
+	 * The reader is read to its end, but it is not closed.
+	 * </p>
+	 *
+	 * @param reader the reader to read the new content from
+	 * @param lengthHint the expected number of characters (&gt;=&nbsp;0)
+	 * @throws IOException if reading fails, the content of this store is not changed in this case
+	 * @since 3.7
+	 */
+	public final void set(Reader reader, int lengthHint) throws IOException {
+		Assert.isLegal(lengthHint >= 0);
+		char[] content= allocate(arraySize(lengthHint, Math.max(computeGapSize(lengthHint), 1)));
+		int length= 0;
+		int n;
+		while ((n= reader.read(content, length, content.length - length)) != -1) {
+			length += n;
+			if (length == content.length) {
+				// the hint was too small, grow by half the length
+				int newSize= arraySize(length, Math.max(length >> 1, computeGapSize(length)));
+				if (newSize == length)
+					throw new OutOfMemoryError();
+				char[] newContent= allocate(newSize);
+				System.arraycopy(content, 0, newContent, 0, length);
+				content= newContent;
+			}
+		}
+
+		int gapSize= computeGapSize(length);
+		fThreshold= gapSize * 2;
+		if (content.length - length > fThreshold) {
+			// the hint was too large, e.g. for multi-byte encodings
+			char[] newContent= allocate(length + gapSize);
+			System.arraycopy(content, 0, newContent, 0, length);
+			content= newContent;
+		}
+
+		fContent= content;
+		fGapStart= length;
+		fGapEnd= content.length;
+	}
+
 	@Override
 	public final void replace(int offset, int length, String text) {
 		if (text == null) {
@@ -263,18 +312,8 @@ public class GapTextStore implements ITextStore {
 	private int reallocate(int offset, int remove, final int oldGapSize, int newGapSize, final int newGapStart) {
 		// the new content length (without any gap)
 		final int newLength= fContent.length - newGapSize;
-		// the new array size based on the gap factor
-		int newArraySize= (int) (newLength * fSizeMultiplier);
-		newGapSize= newArraySize - newLength;
-
-		// bound the gap size within min/max
-		if (newGapSize < fMinGapSize) {
-			newGapSize= fMinGapSize;
-			newArraySize= newLength + newGapSize;
-		} else if (newGapSize > fMaxGapSize) {
-			newGapSize= fMaxGapSize;
-			newArraySize= newLength + newGapSize;
-		}
+		newGapSize= computeGapSize(newLength);
+		final int newArraySize= newLength + newGapSize;
 
 		// the upper threshold is always twice the gapsize
 		fThreshold= newGapSize * 2;
@@ -319,6 +358,36 @@ public class GapTextStore implements ITextStore {
 		return newGapEnd;
 	}
 
+	/**
+	 * Computes the size of the gap that is allocated for content of the given length: the size
+	 * based on the gap factor, bounded by the minimum and maximum gap size.
+	 *
+	 * @param length the content length (without any gap)
+	 * @return the gap size to allocate
+	 * @since 3.7
+	 */
+	private int computeGapSize(int length) {
+		int gapSize= (int) (length * fSizeMultiplier) - length;
+		if (gapSize < fMinGapSize)
+			return fMinGapSize;
+		if (gapSize > fMaxGapSize)
+			return fMaxGapSize;
+		return gapSize;
+	}
+
+	/**
+	 * Returns the size of an array for content of the given length followed by a gap, bounded by
+	 * the maximum array size.
+	 *
+	 * @param length the content length
+	 * @param gapSize the desired gap size
+	 * @return the array size
+	 * @since 3.7
+	 */
+	private static int arraySize(int length, int gapSize) {
+		return (int) Math.min((long) length + gapSize, Integer.MAX_VALUE - 8);
+	}
+
 	/**
 	 * Allocates a new <code>char[size]</code>.
 	 *
@@ -17,8 +17,9 @@ package org.eclipse.jface.text;
  * Provides access to the stored text and allows to manipulate it.</p>
  * <p>
  * Clients may
- * implement this interface or use {@link org.eclipse.jface.text.GapTextStore} or
- * {@link org.eclipse.jface.text.CopyOnWriteTextStore}.</p>
+ * implement this interface or use {@link org.eclipse.jface.text.GapTextStore},
+ * {@link org.eclipse.jface.text.CopyOnWriteTextStore} or, for very large documents,
+ * {@link org.eclipse.jface.text.PieceTableTextStore}.</p>
  */
 public interface ITextStore {
 
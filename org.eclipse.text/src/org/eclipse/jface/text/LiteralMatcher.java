@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text;
+
+
+/**
+ * Finds a literal string in a character sequence using the Boyer-Moore-Horspool algorithm.
+ * <p>
+ * Matches are the same as the matches of a {@link java.util.regex.Matcher} for the quoted
+ * string with the corresponding case flags, including the behavior of {@link #find()} after
+ * the sequence has been modified: like the matcher, this matcher does not search beyond the end
+ * of the sequence at the time of the last {@link #find(int)}. Strings that contain surrogates
+ * are not supported since they are matched by code point, single characters are not supported
+ * since they are matched with slightly different case folding.
+ * </p>
+ *
+ * @since 3.7
+ */
+final class LiteralMatcher {
+
+	/** The size of the skip table. Characters are mapped to their low byte. */
+	private static final int TABLE_SIZE= 256;
+
+	private final String fString;
+	/** The folded characters of the literal. */
+	private final char[] fLiteral;
+	private final boolean fCaseSensitive;
+	/** The shift for each character of the text, by low byte. */
+	private final int[] fShifts= new int[TABLE_SIZE];
+	private final CharSequence fText;
+
+	/** The end of the searched region. */
+	private int fTo;
+	/** The start of the current match, -1 if there is none. */
+	private int fStart= -1;
+	/** The end of the last match. */
+	private int fEnd;
+
+	/**
+	 * Creates a matcher for the given literal.
+	 *
+	 * @param literal the string to find, see {@link #isSupported(String)}
+	 * @param caseSensitive <code>false</code> to match like a pattern with the
+	 *            {@link java.util.regex.Pattern#CASE_INSENSITIVE} and
+	 *            {@link java.util.regex.Pattern#UNICODE_CASE} flags
+	 * @param text the text to search
+	 */
+	LiteralMatcher(String literal, boolean caseSensitive, CharSequence text) {
+		fString= literal;
+		fCaseSensitive= caseSensitive;
+		fText= text;
+		int length= literal.length();
+		fLiteral= new char[length];
+		for (int i= 0; i < length; i++)
+			fLiteral[i]= fold(literal.charAt(i));
+
+		for (int i= 0; i < TABLE_SIZE; i++)
+			fShifts[i]= length;
+		for (int i= 0; i < length - 1; i++)
+			fShifts[fLiteral[i] & 0xFF]= length - 1 - i;
+	}
+
+	/**
+	 * Returns whether the given string can be matched by this class.
+	 *
+	 * @param literal the string
+	 * @return <code>true</code> if the string is supported
+	 */
+	static boolean isSupported(String literal) {
+		if (literal.length() < 2)
+			return false;
+		for (int i= 0; i < literal.length(); i++) {
+			if (Character.isSurrogate(literal.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the string this matcher finds.
+	 *
+	 * @return the literal
+	 */
+	String getLiteral() {
+		return fString;
+	}
+
+	/**
+	 * Returns whether this matcher distinguishes lower and upper case.
+	 *
+	 * @return <code>true</code> if case sensitive
+	 */
+	boolean isCaseSensitive() {
+		return fCaseSensitive;
+	}
+
+	/**
+	 * Resets this matcher and finds the first match at or after the given index.
+	 *
+	 * @param from the index to start at
+	 * @return <code>true</code> if a match has been found
+	 */
+	boolean find(int from) {
+		fTo= fText.length();
+		if (from < 0 || from > fTo)
+			throw new IndexOutOfBoundsException();
+		fStart= -1;
+		fEnd= 0;
+		return search(from);
+	}
+
+	/**
+	 * Finds the next match after the last match.
+	 *
+	 * @return <code>true</code> if a match has been found
+	 */
+	boolean find() {
+		if (fEnd > fTo) {
+			fStart= -1;
+			return false;
+		}
+		return search(fEnd);
+	}
+
+	/**
+	 * Returns the start of the current match.
+	 *
+	 * @return the start offset
+	 * @throws IllegalStateException if there is no current match
+	 */
+	int start() {
+		if (fStart == -1)
+			throw new IllegalStateException("No match available"); //$NON-NLS-1$
+		return fStart;
+	}
+
+	/**
+	 * Returns the end of the current match.
+	 *
+	 * @return the end offset, exclusive
+	 * @throws IllegalStateException if there is no current match
+	 */
+	int end() {
+		if (fStart == -1)
+			throw new IllegalStateException("No match available"); //$NON-NLS-1$
+		return fEnd;
+	}
+
+	private boolean search(int from) {
+		int last= fLiteral.length - 1;
+		int to= Math.min(fTo, fText.length());
+		int i= from;
+		while (i + last < to) {
+			char c= fText.charAt(i + last);
+			char folded= fold(c);
+			if (c == fLiteral[last] || folded == fLiteral[last]) {
+				int j= last - 1;
+				while (j >= 0 && matches(fText.charAt(i + j), fLiteral[j]))
+					j--;
+				if (j < 0) {
+					fStart= i;
+					fEnd= i + fLiteral.length;
+					return true;
+				}
+			}
+			i += Math.min(fShifts[c & 0xFF], fShifts[folded & 0xFF]);
+		}
+		fStart= -1;
+		return false;
+	}
+
+	private boolean matches(char c, char literal) {
+		return c == literal || fold(c) == literal;
+	}
+
+	private char fold(char c) {
+		if (fCaseSensitive)
+			return c;
+		if (c < 128)
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A text store whose initial content is decoded on demand from a memory-mapped file. Only a
+ * sparse index from character offsets to byte offsets and a few recently decoded pages are kept
+ * in memory; the file content itself is never held on the heap as a whole. Modifications are
+ * recorded in a {@link PieceTableTextStore} so that only the edited text is copied into memory.
+ * <p>
+ * The file is decoded once on creation to build the index. Decoding must be possible without
+ * state carried over from earlier bytes, which is the case for all common charsets including
+ * UTF-8, UTF-16 and the ISO-8859 family, but not for charsets like ISO-2022. Malformed input and
+ * unmappable characters are replaced like {@link java.io.InputStreamReader} does. A UTF-8 byte
+ * order mark is skipped, a UTF-16 byte order mark selects the byte order.
+ * </p>
+ * <p>
+ * The mapped file must not be truncated or overwritten while this store references it. Call
+ * {@link #detach()} before writing to the file. Accessing a mapped region that has been cut off
+ * from the file fails with a bus error, so before a page is decoded, the store checks whether the
+ * file has been truncated from outside. The characters of a truncated file read as
+ * <code>U+FFFD</code> replacement characters from then on.
+ * </p>
+ * <p>
+ * This class is not intended to be subclassed.
+ * </p>
+ *
+ * @since 3.7
+ * @noextend This class is not intended to be subclassed by clients.
+ */
+public class MappedFileTextStore implements ITextStore {
+
+	/**
+	 * The lazily decoded content of a memory-mapped file.
+	 */
+	private static final class MappedContent implements CharSequence {
+
+		/** The number of characters decoded into one page. */
+		private static final int PAGE_SIZE= 8 * 1024;
+		/** The maximum number of decoded pages kept in memory. */
+		private static final int CACHED_PAGES= 16;
+
+		/** The replacement for characters that are no longer backed by the file. */
+		private static final char REPLACEMENT_CHARACTER= '\uFFFD';
+
+		/** The mapped file. */
+		private final Path fPath;
+		/** The key that identifies the mapped file, <code>null</code> if not available. */
+		private final Object fFileKey;
+		/** The size of the mapped file in bytes. */
+		private final long fSize;
+		/** Whether the mapped file has been truncated. */
+		private boolean fTruncated;
+		/** The charset used to decode the file. */
+		private final Charset fCharset;
+		/** The mapped file content, <code>null</code> once detached. */
+		private ByteBuffer fBuffer;
+		/** The fully decoded content, <code>null</code> unless detached. */
+		private char[] fDetached;
+		/** The character offset at which each page starts. */
+		private final int[] fPageOffsets;
+		/** The byte offset at which each page starts, followed by the end of the input. */
+		private final int[] fPageByteOffsets;
+		/** The number of characters. */
+		private final int fLength;
+		/** The recently decoded pages in least recently used order. */
+		private final Map<Integer, char[]> fPages= new LinkedHashMap<Integer, char[]>(CACHED_PAGES, 0.75f, true) {
+			private static final long serialVersionUID= 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+				return size() > CACHED_PAGES;
+			}
+		};
+		/** The index of the last accessed page. */
+		private int fLastPage= -1;
+		/** The last accessed page. */
+		private char[] fLastPageContent;
+
+		MappedContent(Path path, Charset charset) throws IOException {
+			ByteBuffer buffer;
+			try (FileChannel channel= FileChannel.open(path, StandardOpenOption.READ)) {
+				long size= channel.size();
+				if (size > Integer.MAX_VALUE)
+					throw new IOException("File too large to be mapped: " + path); //$NON-NLS-1$
+				buffer= channel.map(MapMode.READ_ONLY, 0, size);
+				fSize= size;
+			}
+			fPath= path;
+			fFileKey= Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+
+			int start= 0;
+			if (StandardCharsets.UTF_8.equals(charset) && startsWith(buffer, 0xEF, 0xBB, 0xBF)) {
+				start= 3;
+			} else if (StandardCharsets.UTF_16.equals(charset)) {
+				if (startsWith(buffer, 0xFE, 0xFF)) {
+					charset= StandardCharsets.UTF_16BE;
+					start= 2;
+				} else if (startsWith(buffer, 0xFF, 0xFE)) {
+					charset= StandardCharsets.UTF_16LE;
+					start= 2;
+				}
+			}
+			fCharset= charset;
+			buffer.position(start);
+			fBuffer= buffer.slice();
+
+			int pages= Math.max(1, (int) Math.min(Integer.MAX_VALUE - 1, fBuffer.limit() / PAGE_SIZE + 1));
+			int[] pageOffsets= new int[pages];
+			int[] pageByteOffsets= new int[pages + 1];
+			int count= 0;
+			int length= 0;
+
+			CharsetDecoder decoder= newDecoder();
+			ByteBuffer in= fBuffer.duplicate();
+			CharBuffer out= CharBuffer.allocate(PAGE_SIZE);
+			boolean done= false;
+			while (!done) {
+				if (count == pageOffsets.length) {
+					pageOffsets= Arrays.copyOf(pageOffsets, count * 2);
+					pageByteOffsets= Arrays.copyOf(pageByteOffsets, count * 2 + 1);
+				}
+				pageOffsets[count]= length;
+				pageByteOffsets[count]= in.position();
+
+				out.clear();
+				CoderResult result;
+				try {
+					result= decoder.decode(in, out, true);
+				} catch (InternalError ex) {
+					// the file has been truncated while it was decoded
+					throw new IOException("File truncated while being mapped: " + path, ex); //$NON-NLS-1$
+				}
+				if (result.isUnderflow()) {
+					result= decoder.flush(out);
+					done= result.isUnderflow();
+				}
+				if (result.isError())
+					result.throwException();
+
+				length += out.position();
+				count++;
+				decoder.reset();
+			}
+			pageByteOffsets[count]= in.position();
+
+			fPageOffsets= Arrays.copyOf(pageOffsets, count);
+			fPageByteOffsets= Arrays.copyOf(pageByteOffsets, count + 1);
+			fLength= length;
+		}
+
+		private static boolean startsWith(ByteBuffer buffer, int... bytes) {
+			if (buffer.limit() < bytes.length)
+				return false;
+			for (int i= 0; i < bytes.length; i++) {
+				if ((buffer.get(i) & 0xFF) != bytes[i])
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Returns whether the mapped file has been truncated, in which case the mapped content
+		 * must no longer be accessed. A file that has been replaced or deleted does not affect
+		 * the mapping.
+		 *
+		 * @return <code>true</code> if the mapped file has been truncated
+		 */
+		private boolean isTruncated() {
+			if (!fTruncated) {
+				try {
+					BasicFileAttributes attributes= Files.readAttributes(fPath, BasicFileAttributes.class);
+					fTruncated= (fFileKey == null || fFileKey.equals(attributes.fileKey())) && attributes.size() < fSize;
+				} catch (IOException ex) {
+					// the file has been deleted or moved, which does not invalidate the mapping
+				}
+			}
+			return fTruncated;
+		}
+
+		private CharsetDecoder newDecoder() {
+			return fCharset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		@Override
+		public int length() {
+			return fLength;
+		}
+
+		@Override
+		public synchronized char charAt(int index) {
+			if (index < 0 || index >= fLength)
+				throw new IndexOutOfBoundsException();
+			if (fDetached != null)
+				return fDetached[index];
+
+			int page= findPage(index);
+			return getPage(page)[index - fPageOffsets[page]];
+		}
+
+		@Override
+		public synchronized CharSequence subSequence(int start, int end) {
+			if (start < 0 || start > end || end > fLength)
+				throw new IndexOutOfBoundsException();
+			if (fDetached != null)
+				return new String(fDetached, start, end - start);
+
+			StringBuilder buffer= new StringBuilder(end - start);
+			int page= findPage(start);
+			int offset= start;
+			while (offset < end) {
+				char[] content= getPage(page);
+				int from= offset - fPageOffsets[page];
+				int length= Math.min(content.length - from, end - offset);
+				buffer.append(content, from, length);
+				offset += length;
+				page++;
+			}
+			return buffer.toString();
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, fLength).toString();
+		}
+
+		/**
+		 * Decodes the complete content into memory and releases the mapped file.
+		 */
+		synchronized void detach() {
+			if (fDetached != null)
+				return;
+
+			char[] content= new char[fLength];
+			for (int page= 0; page < fPageOffsets.length; page++) {
+				char[] pageContent= getPage(page);
+				System.arraycopy(pageContent, 0, content, fPageOffsets[page], pageContent.length);
+			}
+			fDetached= content;
+			fBuffer= null;
+			fPages.clear();
+			fLastPage= -1;
+			fLastPageContent= null;
+		}
+
+		private int findPage(int index) {
+			int page= fLastPage;
+			if (page != -1 && fPageOffsets[page] <= index && index - fPageOffsets[page] < fLastPageContent.length)
+				return page;
+
+			page= Arrays.binarySearch(fPageOffsets, index);
+			if (page < 0)
+				page= -page - 2;
+			// skip empty pages
+			while (page + 1 < fPageOffsets.length && fPageOffsets[page + 1] <= index)
+				page++;
+			return page;
+		}
+
+		private char[] getPage(int page) {
+			if (page == fLastPage)
+				return fLastPageContent;
+
+			char[] content= fPages.get(Integer.valueOf(page));
+			if (content == null) {
+				int length= (page + 1 < fPageOffsets.length ? fPageOffsets[page + 1] : fLength) - fPageOffsets[page];
+				content= new char[length];
+				if (!isTruncated()) {
+					ByteBuffer in= fBuffer.duplicate();
+					in.limit(fPageByteOffsets[page + 1]);
+					in.position(fPageByteOffsets[page]);
+					CharBuffer out= CharBuffer.wrap(content);
+					CharsetDecoder decoder= newDecoder();
+					try {
+						decoder.decode(in, out, true);
+						decoder.flush(out);
+					} catch (InternalError ex) {
+						// the file has been truncated after the check
+						fTruncated= true;
+					}
+				}
+				if (fTruncated)
+					Arrays.fill(content, REPLACEMENT_CHARACTER);
+				fPages.put(Integer.valueOf(page), content);
+			}
+			fLastPage= page;
+			fLastPageContent= content;
+			return content;
+		}
+	}
+
+	/** The store that records the modifications. */
+	private final PieceTableTextStore fStore= new PieceTableTextStore();
+	/** The content of the mapped file, <code>null</code> after {@link #set(String)}. */
+	private MappedContent fContent;
+
+	/**
+	 * Creates a new text store with the content of the given file.
+	 *
+	 * @param path the file to map
+	 * @param charset the charset of the file
+	 * @throws IOException if the file cannot be mapped or decoded, or if it is larger than 2 GB
+	 */
+	public MappedFileTextStore(Path path, Charset charset) throws IOException {
+		try {
+			fContent= new MappedContent(path, charset);
+		} catch (CharacterCodingException ex) {
+			throw new IOException(ex);
+		}
+		fStore.setContent(fContent);
+	}
+
+	/**
+	 * Copies the content that is still backed by the mapped file into memory. Afterwards, the
+	 * file can be modified or deleted without affecting this store.
+	 */
+	public void detach() {
+		if (fContent != null)
+			fContent.detach();
+	}
+
+	@Override
+	public char get(int offset) {
+		return fStore.get(offset);
+	}
+
+	@Override
+	public String get(int offset, int length) {
+		return fStore.get(offset, length);
+	}
+
+	@Override
+	public int getLength() {
+		return fStore.getLength();
+	}
+
+	@Override
+	public void replace(int offset, int length, String text) {
+		fStore.replace(offset, length, text);
+	}
+
+	@Override
+	public void set(String text) {
+		fContent= null;
+		fStore.set(text);
+	}
+}
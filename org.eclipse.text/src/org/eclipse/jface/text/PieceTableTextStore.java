@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text;
+
+import java.util.Random;
+
+
+/**
+ * A text store for very large documents. The content is described by a sequence of
+ * <em>pieces</em>, each of which references a range of an immutable backing character sequence:
+ * either the initial content, a large replacement text, or one of the
+ * fixed-size chunks into which small inserted texts are appended. The pieces are kept in a
+ * balanced binary tree (a treap ordered by document offset) whose nodes know the length of their
+ * subtree.
+ * <p>
+ * Unlike {@link GapTextStore}, the content is never copied as a whole: {@link #set(String)} keeps
+ * a reference to the given text, and modifications neither move a gap nor re-allocate an array
+ * of the size of the document.
+ * </p>
+ * <p>
+ * <strong>Performance:</strong> Let <var>p</var> be the number of pieces, which grows by at most
+ * two with every change. {@link #replace(int, int, String)} and {@link #get(int)} perform in
+ * <i>O(log p)</i>, {@linkplain #get(int, int) get(int, <var>length</var>)} in
+ * <i>O(log p + length)</i> and {@link #set(String)} in <i>O(1)</i>. Sequential calls to
+ * {@link #get(int)} between two modifications are answered in <i>O(1)</i>. Consecutive
+ * insertions at the end of the previous insertion (typing) extend the previous piece instead of
+ * adding new ones.
+ * </p>
+ * <p>
+ * This class is not intended to be subclassed.
+ * </p>
+ *
+ * @see GapTextStore
+ * @since 3.7
+ * @noextend This class is not intended to be subclassed by clients.
+ */
+public class PieceTableTextStore implements ITextStore {
+
+	/**
+	 * A node in the piece tree. Each node describes one piece and the subtree rooted at it.
+	 */
+	private static final class Piece {
+		/** The backing text of this piece. */
+		final CharSequence fText;
+		/** The start offset of this piece in its backing text. */
+		final int fStart;
+		/** The length of this piece. */
+		int fLength;
+		/** The heap priority of this node. */
+		final int fPriority;
+		/** The left child. */
+		Piece fLeft;
+		/** The right child. */
+		Piece fRight;
+		/** The combined length of all pieces in the subtree rooted at this node. */
+		int fTreeLength;
+
+		Piece(CharSequence text, int start, int length, int priority) {
+			fText= text;
+			fStart= start;
+			fLength= length;
+			fPriority= priority;
+			fTreeLength= length;
+		}
+
+		void update() {
+			fTreeLength= treeLength(fLeft) + fLength + treeLength(fRight);
+		}
+	}
+
+	/**
+	 * A piece together with its document offset. Instances are immutable so that concurrent
+	 * readers never combine a piece with the offset of another one.
+	 */
+	private static final class Location {
+		/** The piece. */
+		final Piece fPiece;
+		/** The document offset of the piece. */
+		final int fOffset;
+
+		Location(Piece piece, int offset) {
+			fPiece= piece;
+			fOffset= offset;
+		}
+	}
+
+	/**
+	 * A fixed-size, append-only chunk of characters that backs inserted texts.
+	 */
+	private static final class Chunk implements CharSequence {
+		final char[] fChars;
+		int fUsed= 0;
+
+		Chunk(int size) {
+			fChars= new char[size];
+		}
+
+		@Override
+		public int length() {
+			return fUsed;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return fChars[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(fChars, start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(fChars, 0, fUsed);
+		}
+	}
+
+	/** The size of the chunks that back small inserted texts. */
+	private static final int CHUNK_SIZE= 16 * 1024;
+	/**
+	 * Inserted texts longer than this are referenced directly instead of being copied into a
+	 * chunk.
+	 */
+	private static final int MAX_COPY_LENGTH= 256;
+
+	/** The random number generator for the node priorities. */
+	private final Random fRandom= new Random(0x5eed);
+	/** The root of the piece tree, <code>null</code> if the store is empty. */
+	private Piece fRoot;
+	/** The chunk that receives the next inserted text. */
+	private Chunk fChunk;
+	/** The location that was last returned by {@link #findPiece(int)}, or <code>null</code>. */
+	private Location fCachedLocation;
+
+	/**
+	 * Creates a new empty text store.
+	 */
+	public PieceTableTextStore() {
+	}
+
+	@Override
+	public char get(int offset) {
+		Location location= findPiece(offset);
+		Piece piece= location.fPiece;
+		return piece.fText.charAt(piece.fStart + offset - location.fOffset);
+	}
+
+	@Override
+	public String get(int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > getLength())
+			throw new IndexOutOfBoundsException();
+		if (length == 0)
+			return ""; //$NON-NLS-1$
+
+		Location location= findPiece(offset);
+		Piece piece= location.fPiece;
+		int start= offset - location.fOffset;
+		if (start + length <= piece.fLength)
+			return piece.fText.subSequence(piece.fStart + start, piece.fStart + start + length).toString();
+
+		StringBuilder buffer= new StringBuilder(length);
+		appendRange(fRoot, offset, offset + length, buffer);
+		return buffer.toString();
+	}
+
+	@Override
+	public int getLength() {
+		return treeLength(fRoot);
+	}
+
+	@Override
+	public void set(String text) {
+		setContent(text);
+	}
+
+	/**
+	 * Replaces the content of this text store with the given character sequence. The sequence
+	 * is referenced, not copied, and must not change afterwards.
+	 *
+	 * @param content the new content, may be <code>null</code>
+	 */
+	void setContent(CharSequence content) {
+		fChunk= null;
+		fCachedLocation= null;
+		fRoot= null;
+		if (content != null && content.length() > 0)
+			fRoot= new Piece(content, 0, content.length(), fRandom.nextInt());
+	}
+
+	@Override
+	public void replace(int offset, int length, String text) {
+		if (offset < 0 || length < 0 || offset + length > getLength())
+			throw new IndexOutOfBoundsException();
+
+		fCachedLocation= null;
+		int textLength= text == null ? 0 : text.length();
+		if (length == 0 && textLength == 0)
+			return;
+
+		Piece[] split= split(fRoot, offset);
+		Piece before= split[0];
+		Piece after= split(split[1], length)[1];
+
+		if (textLength > 0 && !appendToLastPiece(before, text))
+			before= merge(before, createPieces(text));
+
+		fRoot= merge(before, after);
+	}
+
+	/**
+	 * Returns the piece that contains the given offset along with its offset and caches the
+	 * result in {@link #fCachedLocation}.
+	 *
+	 * @param offset the document offset
+	 * @return the location of the piece containing <code>offset</code>
+	 * @throws IndexOutOfBoundsException if <code>offset</code> is not a valid offset
+	 */
+	private Location findPiece(int offset) {
+		Location cached= fCachedLocation;
+		if (cached != null && cached.fOffset <= offset && offset < cached.fOffset + cached.fPiece.fLength)
+			return cached;
+
+		if (offset < 0 || offset >= getLength())
+			throw new IndexOutOfBoundsException();
+
+		Piece node= fRoot;
+		int nodeOffset= 0;
+		while (true) {
+			int leftLength= treeLength(node.fLeft);
+			int start= nodeOffset + leftLength;
+			if (offset < start) {
+				node= node.fLeft;
+			} else if (offset < start + node.fLength) {
+				Location location= new Location(node, start);
+				fCachedLocation= location;
+				return location;
+			} else {
+				nodeOffset= start + node.fLength;
+				node= node.fRight;
+			}
+		}
+	}
+
+	/**
+	 * Appends the text between <code>start</code> and <code>end</code> of the subtree rooted at
+	 * <code>node</code> to <code>buffer</code>. Offsets are relative to the start of the subtree.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 * @param start the start offset, inclusive
+	 * @param end the end offset, exclusive
+	 * @param buffer the buffer to append to
+	 */
+	private static void appendRange(Piece node, int start, int end, StringBuilder buffer) {
+		if (node == null || start >= end)
+			return;
+
+		int leftLength= treeLength(node.fLeft);
+		if (start < leftLength)
+			appendRange(node.fLeft, start, Math.min(end, leftLength), buffer);
+
+		int pieceEnd= leftLength + node.fLength;
+		int from= Math.max(start, leftLength);
+		int to= Math.min(end, pieceEnd);
+		if (from < to) {
+			int textStart= node.fStart + from - leftLength;
+			int textEnd= textStart + to - from;
+			if (node.fText instanceof Chunk)
+				buffer.append(((Chunk) node.fText).fChars, textStart, textEnd - textStart);
+			else if (node.fText instanceof String)
+				buffer.append(node.fText, textStart, textEnd);
+			else
+				buffer.append(node.fText.subSequence(textStart, textEnd));
+		}
+
+		if (end > pieceEnd)
+			appendRange(node.fRight, Math.max(0, start - pieceEnd), end - pieceEnd, buffer);
+	}
+
+	/**
+	 * Tries to append <code>text</code> to the last piece of the given tree. This succeeds if
+	 * the last piece ends where the current chunk ends, which is the case when typing.
+	 *
+	 * @param tree the tree, may be <code>null</code>
+	 * @param text the text to append
+	 * @return <code>true</code> if the text has been appended
+	 */
+	private boolean appendToLastPiece(Piece tree, String text) {
+		Chunk chunk= fChunk;
+		int textLength= text.length();
+		if (tree == null || chunk == null || textLength > MAX_COPY_LENGTH || chunk.fUsed + textLength > chunk.fChars.length)
+			return false;
+
+		Piece last= tree;
+		while (last.fRight != null)
+			last= last.fRight;
+		if (last.fText != chunk || last.fStart + last.fLength != chunk.fUsed)
+			return false;
+
+		text.getChars(0, textLength, chunk.fChars, chunk.fUsed);
+		chunk.fUsed += textLength;
+		last.fLength += textLength;
+		for (Piece node= tree; node != null; node= node.fRight)
+			node.fTreeLength += textLength;
+		return true;
+	}
+
+	/**
+	 * Creates the piece for an inserted text. Short texts are copied into the current chunk,
+	 * longer ones are referenced directly.
+	 *
+	 * @param text the non-empty inserted text
+	 * @return the new piece
+	 */
+	private Piece createPieces(String text) {
+		int textLength= text.length();
+		if (textLength > MAX_COPY_LENGTH)
+			return new Piece(text, 0, textLength, fRandom.nextInt());
+
+		if (fChunk == null || fChunk.fUsed + textLength > fChunk.fChars.length)
+			fChunk= new Chunk(CHUNK_SIZE);
+
+		Chunk chunk= fChunk;
+		int start= chunk.fUsed;
+		text.getChars(0, textLength, chunk.fChars, start);
+		chunk.fUsed += textLength;
+		return new Piece(chunk, start, textLength, fRandom.nextInt());
+	}
+
+	/**
+	 * Splits the given tree into two trees, the first of which contains the first
+	 * <code>offset</code> characters. A piece spanning <code>offset</code> is split in two.
+	 *
+	 * @param node the tree to split, may be <code>null</code>
+	 * @param offset the split offset relative to the start of the tree
+	 * @return the two resulting trees, each of which may be <code>null</code>
+	 */
+	private static Piece[] split(Piece node, int offset) {
+		if (node == null)
+			return new Piece[2];
+
+		int leftLength= treeLength(node.fLeft);
+		if (offset <= leftLength) {
+			if (offset == leftLength && node.fLeft == null)
+				return new Piece[] { null, node };
+			Piece[] result= split(node.fLeft, offset);
+			node.fLeft= result[1];
+			node.update();
+			result[1]= node;
+			return result;
+		}
+
+		int pieceEnd= leftLength + node.fLength;
+		if (offset < pieceEnd) {
+			int head= offset - leftLength;
+			// the tail takes the place of the node in the tree, so it must not have a higher priority
+			Piece tail= new Piece(node.fText, node.fStart + head, node.fLength - head, node.fPriority);
+			Piece right= node.fRight;
+			node.fLength= head;
+			node.fRight= null;
+			node.update();
+			return new Piece[] { node, merge(tail, right) };
+		}
+
+		Piece[] result= split(node.fRight, offset - pieceEnd);
+		node.fRight= result[0];
+		node.update();
+		result[0]= node;
+		return result;
+	}
+
+	/**
+	 * Concatenates two trees.
+	 *
+	 * @param left the tree containing the leading text, may be <code>null</code>
+	 * @param right the tree containing the trailing text, may be <code>null</code>
+	 * @return the combined tree
+	 */
+	private static Piece merge(Piece left, Piece right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+
+		if (left.fPriority > right.fPriority) {
+			left.fRight= merge(left.fRight, right);
+			left.update();
+			return left;
+		}
+		right.fLeft= merge(left, right.fLeft);
+		right.update();
+		return right;
+	}
+
+	private static int treeLength(Piece node) {
+		return node == null ? 0 : node.fTreeLength;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -74,7 +74,7 @@ public class Position {
 	@Override
 	public int hashCode() {
 	 	int deleted= isDeleted ? 0 : 1;
-	 	return (offset << 24) | (length << 16) | deleted;
+	 	return (getOffset() << 24) | (getLength() << 16) | deleted;
 	 }
 
 	/**
@@ -97,7 +97,8 @@ public class Position {
 	public boolean equals(Object other) {
 		if (other instanceof Position) {
 			Position rp= (Position) other;
-			return (rp.offset == offset) && (rp.length == length);
+			// the accessors, as subclasses may resolve the offset lazily
+			return (rp.getOffset() == getOffset()) && (rp.getLength() == getLength());
 		}
 		return super.equals(other);
 	}
@@ -0,0 +1,505 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * A list of positions that is backed by a balanced binary tree (a treap whose nodes know the
+ * size of their subtree). It is used by {@link AbstractDocument} to store the positions of a
+ * position category.
+ * <p>
+ * The tree is ordered by list index only, not by the offsets of the positions, so position
+ * updaters can modify the positions in place without corrupting it. As long as the positions
+ * are sorted, {@link #computeIndex(int, boolean)} finds the insertion index of an offset by
+ * descending the tree.
+ * </p>
+ * <p>
+ * A {@link RelativePosition} is linked to the node of the first list it is added to. The offset
+ * of a linked position is stored relative to the pending offset deltas of the node's ancestors,
+ * which allows {@link #shift(int, int)} to move all positions behind an index by adding a delta
+ * to a few subtree roots. Shifting is only done lazily if all positions of the list are linked
+ * to it. In addition, every node knows the maximal end offset of its subtree, which is used by
+ * {@link #collectEndingAfter(int, int, List)}.
+ * </p>
+ * <p>
+ * <strong>Performance:</strong> {@link #get(int)}, {@link #set(int, Position)},
+ * {@link #add(int, Position)}, {@link #remove(int)} and {@link #computeIndex(int, boolean)}
+ * perform in <i>O(log n)</i>, {@link #toArray()} in <i>O(n)</i>. If all positions are linked
+ * to this list, {@link #shift(int, int)} performs in <i>O(log n)</i>, otherwise in
+ * <i>O(n)</i>.
+ * </p>
+ *
+ * @since 3.7
+ */
+final class PositionList extends AbstractList<Position> {
+
+	/**
+	 * A node of the tree.
+	 */
+	static final class Node {
+		/** The position of this node. */
+		Position fPosition;
+		/** Whether the position of this node is a relative position linked to this node. */
+		boolean fLinked;
+		/** The heap priority of this node. */
+		final int fPriority;
+		/** The parent node, <code>null</code> for the root. */
+		Node fParent;
+		/** The left child. */
+		Node fLeft;
+		/** The right child. */
+		Node fRight;
+		/** The number of nodes in the subtree rooted at this node. */
+		int fSize= 1;
+		/** The offset delta that is still to be applied to all positions of the child subtrees. */
+		int fDelta;
+		/**
+		 * The maximal end offset of all positions in the subtree rooted at this node, without the
+		 * pending deltas of the ancestors.
+		 */
+		int fMaxEnd;
+
+		Node(Position position, int priority) {
+			fPosition= position;
+			fPriority= priority;
+			fMaxEnd= position.offset + position.length;
+		}
+
+		void update() {
+			fSize= 1;
+			fMaxEnd= fPosition.offset + fPosition.length;
+			if (fLeft != null) {
+				fLeft.fParent= this;
+				fSize += fLeft.fSize;
+				fMaxEnd= Math.max(fMaxEnd, fLeft.fMaxEnd + fDelta);
+			}
+			if (fRight != null) {
+				fRight.fParent= this;
+				fSize += fRight.fSize;
+				fMaxEnd= Math.max(fMaxEnd, fRight.fMaxEnd + fDelta);
+			}
+		}
+
+		/**
+		 * Returns the sum of the pending deltas of the ancestors of this node.
+		 *
+		 * @return the pending offset delta of this node's position
+		 */
+		int getPendingDelta() {
+			int delta= 0;
+			for (Node node= fParent; node != null; node= node.fParent)
+				delta += node.fDelta;
+			return delta;
+		}
+
+		/**
+		 * Recomputes the augmented data of this node and its ancestors after the position of this
+		 * node has changed.
+		 */
+		void positionChanged() {
+			for (Node node= this; node != null; node= node.fParent)
+				node.update();
+		}
+	}
+
+	/** The random number generator for the node priorities. */
+	private final Random fRandom= new Random(0x5eed);
+	/** The root of the tree, <code>null</code> if the list is empty. */
+	private Node fRoot;
+	/** The number of positions that are not linked to this list. */
+	private int fUnlinkedCount= 0;
+	/** Whether the tree may contain pending deltas. */
+	private boolean fShifted= false;
+
+	/**
+	 * Creates a new empty list.
+	 */
+	PositionList() {
+	}
+
+	@Override
+	public Position get(int index) {
+		return getNode(index).fPosition;
+	}
+
+	@Override
+	public Position set(int index, Position position) {
+		Position previous= remove(index);
+		add(index, position);
+		return previous;
+	}
+
+	@Override
+	public void add(int index, Position position) {
+		if (index < 0 || index > size())
+			throw new IndexOutOfBoundsException();
+
+		Node node= new Node(position, fRandom.nextInt());
+		if (position instanceof RelativePosition && ((RelativePosition) position).fNode == null) {
+			((RelativePosition) position).fNode= node;
+			node.fLinked= true;
+		} else {
+			if (fShifted) {
+				flush(fRoot);
+				fShifted= false;
+			}
+			fUnlinkedCount++;
+		}
+
+		Node[] split= split(fRoot, index);
+		setRoot(merge(merge(split[0], node), split[1]));
+		modCount++;
+	}
+
+	@Override
+	public Position remove(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException();
+
+		Node[] split= split(fRoot, index);
+		Node[] tail= split(split[1], 1);
+		setRoot(merge(split[0], tail[1]));
+		modCount++;
+
+		Node node= tail[0];
+		if (node.fLinked) {
+			// all ancestors have been pushed down, the offset is absolute
+			((RelativePosition) node.fPosition).fNode= null;
+		} else if (--fUnlinkedCount == 0 && fRoot != null) {
+			// positions may have been modified without notifying the tree
+			updateAll(fRoot);
+		}
+		return node.fPosition;
+	}
+
+	@Override
+	public int size() {
+		return fRoot == null ? 0 : fRoot.fSize;
+	}
+
+	@Override
+	public void clear() {
+		if (fRoot != null) {
+			flush(fRoot);
+			unlink(fRoot);
+		}
+		fRoot= null;
+		fUnlinkedCount= 0;
+		fShifted= false;
+		modCount++;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return toArray(new Object[size()]);
+	}
+
+	@Override
+	public <T> T[] toArray(T[] array) {
+		int size= size();
+		if (array.length < size)
+			array= Arrays.copyOf(array, size);
+		collect(fRoot, array, 0);
+		if (array.length > size)
+			array[size]= null;
+		return array;
+	}
+
+	/**
+	 * Computes the index at which a position with the given offset would be inserted. The
+	 * position is supposed to become the first of all positions with the same offset. The result
+	 * is the same as the one of {@link AbstractDocument#computeIndexInPositionList(java.util.List,
+	 * int, boolean)} if the positions are sorted.
+	 *
+	 * @param offset the offset for which the index is computed
+	 * @param orderedByOffset <code>true</code> if the list is ordered by offset,
+	 *            <code>false</code> if ordered by end position
+	 * @return the computed index
+	 */
+	int computeIndex(int offset, boolean orderedByOffset) {
+		int index= size();
+		int nodeIndex= 0;
+		int pending= 0;
+		Node node= fRoot;
+		while (node != null) {
+			int leftSize= node.fLeft == null ? 0 : node.fLeft.fSize;
+			Position position= node.fPosition;
+			int start= node.fLinked ? position.offset + pending : position.getOffset();
+			if (!orderedByOffset && position.getLength() > 0)
+				start += position.getLength() - 1;
+
+			pending += node.fDelta;
+			if (offset <= start) {
+				index= nodeIndex + leftSize;
+				node= node.fLeft;
+			} else {
+				nodeIndex += leftSize + 1;
+				node= node.fRight;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns whether all positions of this list are linked to it, i.e. whether
+	 * {@link #shift(int, int)} is performed lazily and
+	 * {@link #collectEndingAfter(int, int, List)} can be used.
+	 *
+	 * @return <code>true</code> if all positions are linked to this list
+	 */
+	boolean isLinked() {
+		return fUnlinkedCount == 0;
+	}
+
+	/**
+	 * Adds <code>delta</code> to the offsets of all positions at or after <code>index</code>.
+	 *
+	 * @param index the index of the first position to shift
+	 * @param delta the offset delta
+	 */
+	void shift(int index, int delta) {
+		if (delta == 0 || index >= size())
+			return;
+
+		if (fUnlinkedCount > 0) {
+			for (int i= index, size= size(); i < size; i++) {
+				Position position= get(i);
+				position.setOffset(position.getOffset() + delta);
+			}
+			return;
+		}
+
+		Node[] split= split(fRoot, index);
+		shift(split[1], delta);
+		setRoot(merge(split[0], split[1]));
+		fShifted= true;
+	}
+
+	/**
+	 * Adds the positions before <code>index</code> whose end offset is not smaller than
+	 * <code>offset</code> to <code>result</code>. The offset field of the collected positions is
+	 * absolute until the next call to {@link #shift(int, int)}. Must only be called if
+	 * {@link #isLinked()} is <code>true</code>. A position updater that directly modifies the
+	 * fields of a collected position must call {@link RelativePosition#positionChanged()}
+	 * afterwards.
+	 *
+	 * @param index the index up to which positions are collected, exclusive
+	 * @param offset the minimal end offset of the collected positions
+	 * @param result the list to add the positions to
+	 */
+	void collectEndingAfter(int index, int offset, List<Position> result) {
+		collectEndingAfter(fRoot, 0, index, offset, result);
+	}
+
+	private static void collectEndingAfter(Node node, int nodeIndex, int index, int offset, List<Position> result) {
+		while (node != null && nodeIndex < index && node.fMaxEnd >= offset) {
+			pushDown(node);
+			int leftSize= node.fLeft == null ? 0 : node.fLeft.fSize;
+			collectEndingAfter(node.fLeft, nodeIndex, index, offset, result);
+
+			nodeIndex += leftSize;
+			if (nodeIndex >= index)
+				return;
+
+			Position position= node.fPosition;
+			if (position.offset + position.length >= offset)
+				result.add(position);
+
+			nodeIndex++;
+			node= node.fRight;
+		}
+	}
+
+	/**
+	 * Moves the given linked position to the index that corresponds to its current offset.
+	 * Must only be called if {@link #isLinked()} is <code>true</code>.
+	 *
+	 * @param position a position linked to this list
+	 */
+	void reposition(RelativePosition position) {
+		Node node= position.fNode;
+		int index= node.fLeft == null ? 0 : node.fLeft.fSize;
+		for (Node child= node, parent= node.fParent; parent != null; child= parent, parent= parent.fParent) {
+			if (parent.fRight == child)
+				index += (parent.fLeft == null ? 0 : parent.fLeft.fSize) + 1;
+		}
+		remove(index);
+		add(computeIndex(position.offset, true), position);
+	}
+
+	private Node getNode(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException();
+
+		Node node= fRoot;
+		while (true) {
+			int leftSize= node.fLeft == null ? 0 : node.fLeft.fSize;
+			if (index < leftSize) {
+				node= node.fLeft;
+			} else if (index == leftSize) {
+				return node;
+			} else {
+				index -= leftSize + 1;
+				node= node.fRight;
+			}
+		}
+	}
+
+	private void setRoot(Node root) {
+		if (root != null)
+			root.fParent= null;
+		fRoot= root;
+	}
+
+	/**
+	 * Adds <code>delta</code> to the offsets of all positions in the given subtree.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 * @param delta the offset delta
+	 */
+	private static void shift(Node node, int delta) {
+		if (node == null)
+			return;
+		node.fPosition.offset += delta;
+		node.fDelta += delta;
+		node.fMaxEnd += delta;
+	}
+
+	/**
+	 * Applies the pending delta of the given node to its children.
+	 *
+	 * @param node the node
+	 */
+	private static void pushDown(Node node) {
+		if (node.fDelta != 0) {
+			shift(node.fLeft, node.fDelta);
+			shift(node.fRight, node.fDelta);
+			node.fDelta= 0;
+		}
+	}
+
+	/**
+	 * Applies all pending deltas in the given subtree.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 */
+	private static void flush(Node node) {
+		while (node != null) {
+			pushDown(node);
+			flush(node.fLeft);
+			node= node.fRight;
+		}
+	}
+
+	/**
+	 * Unlinks all linked positions of the given subtree. Must only be called if no deltas are
+	 * pending.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 */
+	private static void unlink(Node node) {
+		while (node != null) {
+			if (node.fLinked)
+				((RelativePosition) node.fPosition).fNode= null;
+			unlink(node.fLeft);
+			node= node.fRight;
+		}
+	}
+
+	/**
+	 * Recomputes the augmented data of the given subtree.
+	 *
+	 * @param node the subtree root
+	 */
+	private static void updateAll(Node node) {
+		if (node.fLeft != null)
+			updateAll(node.fLeft);
+		if (node.fRight != null)
+			updateAll(node.fRight);
+		node.update();
+	}
+
+	/**
+	 * Stores the positions of the given subtree into <code>array</code>.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 * @param array the array to fill
+	 * @param index the index of the first position of the subtree in <code>array</code>
+	 * @return the index after the last position of the subtree
+	 */
+	private static int collect(Node node, Object[] array, int index) {
+		while (node != null) {
+			index= collect(node.fLeft, array, index);
+			array[index++]= node.fPosition;
+			node= node.fRight;
+		}
+		return index;
+	}
+
+	/**
+	 * Splits the given tree into two trees, the first of which contains the first
+	 * <code>count</code> nodes.
+	 *
+	 * @param node the tree to split, may be <code>null</code>
+	 * @param count the number of nodes of the first tree
+	 * @return the two resulting trees, each of which may be <code>null</code>
+	 */
+	private static Node[] split(Node node, int count) {
+		if (node == null)
+			return new Node[2];
+
+		pushDown(node);
+		int leftSize= node.fLeft == null ? 0 : node.fLeft.fSize;
+		if (count <= leftSize) {
+			Node[] result= split(node.fLeft, count);
+			node.fLeft= result[1];
+			node.update();
+			result[1]= node;
+			return result;
+		}
+
+		Node[] result= split(node.fRight, count - leftSize - 1);
+		node.fRight= result[0];
+		node.update();
+		result[0]= node;
+		return result;
+	}
+
+	/**
+	 * Concatenates two trees.
+	 *
+	 * @param left the tree containing the leading nodes, may be <code>null</code>
+	 * @param right the tree containing the trailing nodes, may be <code>null</code>
+	 * @return the combined tree
+	 */
+	private static Node merge(Node left, Node right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+
+		if (left.fPriority > right.fPriority) {
+			pushDown(left);
+			left.fRight= merge(left.fRight, right);
+			left.update();
+			return left;
+		}
+		pushDown(right);
+		right.fLeft= merge(left, right.fLeft);
+		right.update();
+		return right;
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text;
+
+import org.eclipse.core.runtime.Assert;
+
+
+/**
+ * A position whose offset is stored relative to the node of the position tree of the category
+ * it has been added to. If all positions of a category of an {@link AbstractDocument} are
+ * relative positions, {@link DefaultPositionUpdater} shifts the positions after a change by
+ * updating a few tree nodes instead of rewriting the offset of every position, i.e. in
+ * <i>O(log n)</i> instead of <i>O(n)</i>. The absolute offset is resolved lazily by
+ * {@link #getOffset()}.
+ * <p>
+ * While a relative position is managed by a document, the public {@link #offset} field does not
+ * contain the absolute offset. Clients must use {@link #getOffset()} and {@link #setOffset(int)}
+ * instead. Position updaters that directly modify the fields of a relative position are not
+ * supported, except for {@link DefaultPositionUpdater} and subclasses that do not change how
+ * positions after the modified text are shifted.
+ * </p>
+ * <p>
+ * A relative position can only be managed by one position category at a time. Adding it to
+ * another category, or a second time to the same category, before it has been removed fails with
+ * an {@link IllegalArgumentException}.
+ * </p>
+ *
+ * @since 3.7
+ */
+public class RelativePosition extends Position {
+
+	/** The tree node this position is linked to, <code>null</code> if not linked. */
+	PositionList.Node fNode;
+
+	/**
+	 * Creates a new relative position with the given offset and length 0.
+	 *
+	 * @param offset the position offset, must be >= 0
+	 */
+	public RelativePosition(int offset) {
+		super(offset);
+	}
+
+	/**
+	 * Creates a new relative position with the given offset and length.
+	 *
+	 * @param offset the position offset, must be >= 0
+	 * @param length the position length, must be >= 0
+	 */
+	public RelativePosition(int offset, int length) {
+		super(offset, length);
+	}
+
+	@Override
+	public int getOffset() {
+		PositionList.Node node= fNode;
+		return node == null ? offset : offset + node.getPendingDelta();
+	}
+
+	@Override
+	public void setOffset(int offset) {
+		Assert.isTrue(offset >= 0);
+		PositionList.Node node= fNode;
+		if (node == null) {
+			this.offset= offset;
+		} else {
+			this.offset= offset - node.getPendingDelta();
+			node.positionChanged();
+		}
+	}
+
+	@Override
+	public void setLength(int length) {
+		super.setLength(length);
+		positionChanged();
+	}
+
+	/**
+	 * Informs the position tree that the fields of this position have been modified directly.
+	 */
+	void positionChanged() {
+		PositionList.Node node= fNode;
+		if (node != null)
+			node.positionChanged();
+	}
+
+	@Override
+	public boolean includes(int index) {
+		if (isDeleted)
+			return false;
+
+		int start= getOffset();
+		return start <= index && index < start + length;
+	}
+
+	@Override
+	public boolean overlapsWith(int rangeOffset, int rangeLength) {
+		if (isDeleted)
+			return false;
+
+		int start= getOffset();
+		int end= rangeOffset + rangeLength;
+		int thisEnd= start + length;
+
+		if (rangeLength > 0) {
+			if (length > 0)
+				return start < end && rangeOffset < thisEnd;
+			return rangeOffset <= start && start < end;
+		}
+
+		if (length > 0)
+			return start <= rangeOffset && rangeOffset < thisEnd;
+		return start == rangeOffset;
+	}
+
+	@Override
+	public String toString() {
+		String position= "offset: " + getOffset() + ", length: " + length; //$NON-NLS-1$//$NON-NLS-2$
+		return isDeleted ? position + " (deleted)" : position; //$NON-NLS-1$
+	}
+}
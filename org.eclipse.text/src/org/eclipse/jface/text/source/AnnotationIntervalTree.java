@@ -0,0 +1,564 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.source;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.Position;
+
+
+/**
+ * An interval tree over the annotations of an {@link AnnotationModel} and their positions. It is a
+ * treap ordered by the offsets of the positions in which every node knows the maximal end offset
+ * of its subtree, so the annotations inside a region are found without looking at the positions
+ * that end before it or start after it.
+ * <p>
+ * The positions are modified in place by the position updaters of the document, so every node
+ * keeps its own copy of the offsets of its position. Like in <code>PositionList</code>, these
+ * offsets are stored relative to the pending offset deltas of the node's ancestors. The model
+ * reports each document change through {@link #documentAboutToBeChanged(DocumentEvent)}, and the
+ * change is applied before the tree is accessed the next time: the nodes behind the changed range
+ * are moved by adding the length delta to a few subtree roots, only the nodes whose positions
+ * start inside or overlap the changed range are read from their positions again. The positions
+ * outside the changed range are expected to be updated like <code>DefaultPositionUpdater</code>
+ * does. If positions may have been modified
+ * otherwise, the tree must be marked {@link #markStale() stale}; it is then rebuilt from the
+ * positions before it is accessed the next time.
+ * </p>
+ * <p>
+ * <strong>Performance:</strong> {@link #add(Annotation, Position)} and
+ * {@link #remove(Annotation, Position)} perform in <i>O(log n)</i>,
+ * {@link #collect(int, int, boolean, boolean, List)} in <i>O(log n + k)</i> for <i>k</i> short
+ * positions found. Applying a document change performs in <i>O((m + 1) log n)</i> for <i>m</i>
+ * positions that overlap the changed range. The first access after the tree became stale
+ * performs in <i>O(n)</i> if the order of the positions has been preserved, otherwise in
+ * <i>O(n log n)</i>.
+ * </p>
+ * <p>
+ * This class is not thread-safe, except for {@link #markStale()},
+ * {@link #documentAboutToBeChanged(DocumentEvent)} and {@link #documentChanged()}.
+ * </p>
+ *
+ * @since 3.7
+ */
+final class AnnotationIntervalTree {
+
+	/**
+	 * A node of the tree.
+	 */
+	private static final class Node {
+		/** The annotation of this node. */
+		final Annotation fAnnotation;
+		/** The position of the annotation. */
+		final Position fPosition;
+		/** The heap priority of this node. */
+		final int fPriority;
+		/** The left child. */
+		Node fLeft;
+		/** The right child. */
+		Node fRight;
+		/** The start offset of the position, without the pending deltas of the ancestors. */
+		int fOffset;
+		/** The end offset of the position, without the pending deltas of the ancestors. */
+		int fEnd;
+		/** The offset delta that is still to be applied to all nodes of the child subtrees. */
+		int fDelta;
+		/**
+		 * The maximal end offset of all positions in the subtree rooted at this node, without the
+		 * pending deltas of the ancestors.
+		 */
+		int fMaxEnd;
+
+		Node(Annotation annotation, Position position, int priority) {
+			fAnnotation= annotation;
+			fPosition= position;
+			fPriority= priority;
+			reset();
+		}
+
+		/**
+		 * Detaches this node and reads the offsets of its position again.
+		 */
+		void reset() {
+			// the document may modify the position concurrently, read each value once
+			fOffset= fPosition.getOffset();
+			fEnd= fOffset + fPosition.getLength();
+			fMaxEnd= fEnd;
+			fDelta= 0;
+			fLeft= null;
+			fRight= null;
+		}
+
+		void update() {
+			fMaxEnd= fEnd;
+			if (fLeft != null)
+				fMaxEnd= Math.max(fMaxEnd, fLeft.fMaxEnd + fDelta);
+			if (fRight != null)
+				fMaxEnd= Math.max(fMaxEnd, fRight.fMaxEnd + fDelta);
+		}
+	}
+
+	/**
+	 * The maximal number of document changes that are recorded. If more changes happen before
+	 * the tree is accessed, it is rebuilt instead.
+	 */
+	private static final int MAX_CHANGES= 1000;
+
+	/** The random number generator for the node priorities. */
+	private final Random fRandom= new Random(0x5eed);
+	/** The root of the tree, <code>null</code> if the tree is empty. */
+	private Node fRoot;
+	/** The number of nodes. */
+	private int fSize;
+	/**
+	 * Whether positions may have been modified without being reported as document change. Set
+	 * without holding the lock of the annotation model by its document listener.
+	 */
+	private volatile boolean fStale;
+	/**
+	 * The document changes that have not been applied yet, each as offset, length and length
+	 * of the new text. Guarded by itself, as it is filled by the document listener of the
+	 * annotation model without holding the lock of the model.
+	 */
+	private final List<int[]> fChanges= new ArrayList<>();
+	/** Whether the document is being changed. Guarded by {@link #fChanges}. */
+	private boolean fDocumentChanging;
+	/**
+	 * Whether a change has been applied while the positions were being updated. Guarded by
+	 * {@link #fChanges}.
+	 */
+	private boolean fAppliedWhileChanging;
+
+	/**
+	 * Returns the number of annotations in this tree.
+	 *
+	 * @return the number of annotations
+	 */
+	int size() {
+		return fSize;
+	}
+
+	/**
+	 * Marks the tree as stale after positions have been modified.
+	 */
+	void markStale() {
+		fStale= true;
+	}
+
+	/**
+	 * Records a document change, which is applied before the tree is accessed the next time.
+	 * Must be called before the position updaters modify the positions.
+	 *
+	 * @param event the document event
+	 */
+	void documentAboutToBeChanged(DocumentEvent event) {
+		String text= event.getText();
+		synchronized (fChanges) {
+			fDocumentChanging= true;
+			if (fChanges.size() < MAX_CHANGES)
+				fChanges.add(new int[] { event.getOffset(), event.getLength(), text == null ? 0 : text.length() });
+			else
+				fStale= true;
+		}
+	}
+
+	/**
+	 * Tells the tree that the positions have been updated after a document change.
+	 */
+	void documentChanged() {
+		synchronized (fChanges) {
+			// positions read while they were updated may be outdated
+			if (fAppliedWhileChanging)
+				fStale= true;
+			fDocumentChanging= false;
+			fAppliedWhileChanging= false;
+		}
+	}
+
+	/**
+	 * Adds the given annotation.
+	 *
+	 * @param annotation the annotation
+	 * @param position the position of the annotation
+	 */
+	void add(Annotation annotation, Position position) {
+		refresh();
+		fRoot= insert(fRoot, new Node(annotation, position, fRandom.nextInt()));
+		fSize++;
+	}
+
+	/**
+	 * Removes the given annotation.
+	 *
+	 * @param annotation the annotation
+	 * @param position the position of the annotation
+	 */
+	void remove(Annotation annotation, Position position) {
+		refresh();
+		int offset= position.getOffset();
+		Node[] head= split(fRoot, offset);
+		Node[] tail= split(head[1], offset == Integer.MAX_VALUE ? offset : offset + 1);
+		int size= fSize;
+		Node middle= remove(tail[0], annotation);
+		fRoot= merge(merge(head[0], middle), tail[1]);
+		if (size == fSize) {
+			// the position has been modified without marking the tree stale
+			fRoot= remove(fRoot, annotation);
+		}
+	}
+
+	/**
+	 * Removes all annotations.
+	 */
+	void clear() {
+		fRoot= null;
+		fSize= 0;
+		fStale= false;
+		synchronized (fChanges) {
+			fChanges.clear();
+		}
+	}
+
+	/**
+	 * Adds the annotations whose positions are inside the given region to <code>result</code>,
+	 * ordered by offset. See {@link IAnnotationModelExtension2} for a definition of inside.
+	 *
+	 * @param offset the start of the region
+	 * @param length the length of the region
+	 * @param canStartBefore include annotations starting before the region
+	 * @param canEndAfter include annotations ending after the region
+	 * @param result the list to add the annotations to
+	 */
+	void collect(int offset, int length, boolean canStartBefore, boolean canEndAfter, List<Annotation> result) {
+		refresh();
+		collect(fRoot, 0, new Position(offset, length), canStartBefore, canEndAfter, result);
+	}
+
+	private static void collect(Node node, int delta, Position region, boolean canStartBefore, boolean canEndAfter, List<Annotation> result) {
+		int regionEnd= region.getOffset() + region.getLength();
+		while (node != null && node.fMaxEnd + delta >= region.getOffset()) {
+			int start= node.fOffset + delta;
+			// without canStartBefore, nothing left of a position starting before the region is inside
+			if (canStartBefore || start >= region.getOffset())
+				collect(node.fLeft, delta + node.fDelta, region, canStartBefore, canEndAfter, result);
+
+			if (start > regionEnd)
+				return;
+
+			if (isWithinRegion(region, start, node.fEnd - node.fOffset, canStartBefore, canEndAfter))
+				result.add(node.fAnnotation);
+
+			delta += node.fDelta;
+			node= node.fRight;
+		}
+	}
+
+	/**
+	 * Returns whether the given range is inside the region. Same as
+	 * <code>AnnotationModel.RegionIterator</code>.
+	 *
+	 * @param region the region
+	 * @param start the start of the range
+	 * @param length the length of the range
+	 * @param canStartBefore whether the range can start before the region
+	 * @param canEndAfter whether the range can end after the region
+	 * @return <code>true</code> if the range is inside the region
+	 */
+	private static boolean isWithinRegion(Position region, int start, int length, boolean canStartBefore, boolean canEndAfter) {
+		if (canStartBefore && canEndAfter)
+			return region.overlapsWith(start, length);
+		else if (canStartBefore)
+			return region.includes(start + length - (length > 0 ? 1 : 0));
+		else if (canEndAfter)
+			return region.includes(start);
+		else
+			return region.includes(start) && region.includes(start + length - (length > 0 ? 1 : 0));
+	}
+
+	/**
+	 * Applies the recorded document changes, or rebuilds the tree if it is stale.
+	 */
+	private void refresh() {
+		int[][] changes;
+		synchronized (fChanges) {
+			if (fChanges.isEmpty() && !fStale)
+				return;
+			changes= fChanges.toArray(new int[fChanges.size()][]);
+			fChanges.clear();
+			if (fDocumentChanging)
+				fAppliedWhileChanging= true;
+		}
+
+		if (fStale) {
+			fStale= false;
+			Node[] nodes= new Node[fSize];
+			collect(fRoot, nodes, 0);
+			build(nodes);
+			return;
+		}
+
+		List<Node> detached= new ArrayList<>();
+		for (int[] change : changes) {
+			int offset= change[0];
+			int end= offset + change[1];
+			// the positions starting inside the changed range are read again, the ones behind it move
+			Node[] head= split(fRoot, offset);
+			Node[] tail= split(head[1], end + 1);
+			collect(tail[0], detached);
+			shift(tail[1], change[2] - change[1]);
+			fRoot= merge(detach(head[0], offset, detached), tail[1]);
+		}
+
+		if (detached.size() > fSize / 2) {
+			// most positions have been changed
+			Node[] nodes= new Node[fSize];
+			int index= collect(fRoot, nodes, 0);
+			for (Node node : detached)
+				nodes[index++]= node;
+			build(nodes);
+		} else {
+			for (Node node : detached) {
+				node.reset();
+				fRoot= insert(fRoot, node);
+			}
+		}
+	}
+
+	/**
+	 * Builds the tree from the given nodes after reading the offsets of their positions again.
+	 *
+	 * @param nodes all nodes of this tree
+	 */
+	private void build(Node[] nodes) {
+		// the document may modify the positions concurrently, so sort a snapshot of the offsets,
+		// each with the index of its node in the lower half
+		long[] keys= new long[nodes.length];
+		boolean sorted= true;
+		for (int i= 0; i < nodes.length; i++) {
+			nodes[i].reset();
+			keys[i]= (long) nodes[i].fOffset << 32 | i;
+			if (i > 0 && keys[i] < keys[i - 1])
+				sorted= false;
+		}
+		if (!sorted) {
+			Arrays.sort(keys);
+			Node[] sortedNodes= new Node[nodes.length];
+			for (int i= 0; i < keys.length; i++)
+				sortedNodes[i]= nodes[(int) keys[i]];
+			nodes= sortedNodes;
+		}
+
+		// build the treap from the sorted nodes and their priorities (Cartesian tree)
+		Node[] stack= new Node[nodes.length];
+		int top= -1;
+		for (Node node : nodes) {
+			Node last= null;
+			while (top >= 0 && stack[top].fPriority < node.fPriority)
+				last= stack[top--];
+			node.fLeft= last;
+			if (top >= 0)
+				stack[top].fRight= node;
+			stack[++top]= node;
+		}
+		fRoot= top >= 0 ? stack[0] : null;
+		if (fRoot != null)
+			updateAll(fRoot);
+	}
+
+	/**
+	 * Inserts the given detached node into the given tree.
+	 *
+	 * @param root the tree, may be <code>null</code>
+	 * @param node the node
+	 * @return the new tree
+	 */
+	private static Node insert(Node root, Node node) {
+		Node[] split= split(root, node.fOffset);
+		return merge(merge(split[0], node), split[1]);
+	}
+
+	/**
+	 * Removes the nodes whose positions end at or after the given offset from the given tree and
+	 * adds them to <code>result</code>.
+	 *
+	 * @param node the tree, may be <code>null</code>
+	 * @param offset the offset
+	 * @param result the list to add the removed nodes to
+	 * @return the new tree
+	 */
+	private static Node detach(Node node, int offset, List<Node> result) {
+		if (node == null || node.fMaxEnd < offset)
+			return node;
+
+		pushDown(node);
+		node.fLeft= detach(node.fLeft, offset, result);
+		node.fRight= detach(node.fRight, offset, result);
+		if (node.fEnd >= offset) {
+			result.add(node);
+			return merge(node.fLeft, node.fRight);
+		}
+		node.update();
+		return node;
+	}
+
+	/**
+	 * Adds the nodes of the given subtree to <code>result</code>.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 * @param result the list to add the nodes to
+	 */
+	private static void collect(Node node, List<Node> result) {
+		while (node != null) {
+			collect(node.fLeft, result);
+			result.add(node);
+			node= node.fRight;
+		}
+	}
+
+	/**
+	 * Moves all positions of the given subtree by the given delta. The children are only moved
+	 * when they are accessed.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 * @param delta the offset delta
+	 */
+	private static void shift(Node node, int delta) {
+		if (node == null || delta == 0)
+			return;
+		node.fOffset += delta;
+		node.fEnd += delta;
+		node.fMaxEnd += delta;
+		node.fDelta += delta;
+	}
+
+	/**
+	 * Applies the pending delta of the given node to its children.
+	 *
+	 * @param node the node
+	 */
+	private static void pushDown(Node node) {
+		if (node.fDelta != 0) {
+			shift(node.fLeft, node.fDelta);
+			shift(node.fRight, node.fDelta);
+			node.fDelta= 0;
+		}
+	}
+
+	/**
+	 * Removes the node of the given annotation from the given subtree, if any.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 * @param annotation the annotation
+	 * @return the new subtree root
+	 */
+	private Node remove(Node node, Annotation annotation) {
+		if (node == null)
+			return null;
+		pushDown(node);
+		if (node.fAnnotation.equals(annotation)) {
+			fSize--;
+			return merge(node.fLeft, node.fRight);
+		}
+		int size= fSize;
+		node.fLeft= remove(node.fLeft, annotation);
+		if (size == fSize)
+			node.fRight= remove(node.fRight, annotation);
+		node.update();
+		return node;
+	}
+
+	/**
+	 * Recomputes the end offsets of the given subtree, which has no pending deltas.
+	 *
+	 * @param node the subtree root
+	 */
+	private static void updateAll(Node node) {
+		if (node.fLeft != null)
+			updateAll(node.fLeft);
+		if (node.fRight != null)
+			updateAll(node.fRight);
+		node.update();
+	}
+
+	/**
+	 * Stores the nodes of the given subtree into <code>array</code> in order.
+	 *
+	 * @param node the subtree root, may be <code>null</code>
+	 * @param array the array to fill
+	 * @param index the index of the first node of the subtree in <code>array</code>
+	 * @return the index after the last node of the subtree
+	 */
+	private static int collect(Node node, Node[] array, int index) {
+		while (node != null) {
+			index= collect(node.fLeft, array, index);
+			array[index++]= node;
+			node= node.fRight;
+		}
+		return index;
+	}
+
+	/**
+	 * Splits the given tree into the nodes whose positions start before the given offset and
+	 * the others.
+	 *
+	 * @param node the tree to split, may be <code>null</code>
+	 * @param offset the offset
+	 * @return the two resulting trees, each of which may be <code>null</code>
+	 */
+	private static Node[] split(Node node, int offset) {
+		if (node == null)
+			return new Node[2];
+
+		pushDown(node);
+		if (offset <= node.fOffset) {
+			Node[] result= split(node.fLeft, offset);
+			node.fLeft= result[1];
+			node.update();
+			result[1]= node;
+			return result;
+		}
+
+		Node[] result= split(node.fRight, offset);
+		node.fRight= result[0];
+		node.update();
+		result[0]= node;
+		return result;
+	}
+
+	/**
+	 * Concatenates two trees.
+	 *
+	 * @param left the tree containing the leading nodes, may be <code>null</code>
+	 * @param right the tree containing the trailing nodes, may be <code>null</code>
+	 * @return the combined tree
+	 */
+	private static Node merge(Node left, Node right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+
+		if (left.fPriority > right.fPriority) {
+			pushDown(left);
+			left.fRight= merge(left.fRight, right);
+			left.update();
+			return left;
+		}
+		pushDown(right);
+		right.fLeft= merge(left, right.fLeft);
+		right.update();
+		return right;
+	}
+}
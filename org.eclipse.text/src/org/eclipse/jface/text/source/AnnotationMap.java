@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -42,6 +42,9 @@ class AnnotationMap implements IAnnotationMap {
     /** The map holding the annotations */
     private Map<Annotation, Position> fInternalMap;
 
+    /** The number of calls that modified this map, guarded by the lock object */
+    private int fModificationCount;
+
     /**
      * Creates a new annotation map with the given capacity.
      *
@@ -87,6 +90,7 @@ class AnnotationMap implements IAnnotationMap {
     @Override
 	public Position put(Annotation annotation, Position position) {
         synchronized (getLockObject()) {
+            fModificationCount++;
             return fInternalMap.put(annotation, position);
         }
     }
@@ -101,6 +105,7 @@ class AnnotationMap implements IAnnotationMap {
     @Override
 	public void clear() {
         synchronized (getLockObject()) {
+            fModificationCount++;
             fInternalMap.clear();
         }
     }
@@ -108,6 +113,7 @@ class AnnotationMap implements IAnnotationMap {
     @Override
 	public Position remove(Object annotation) {
         synchronized (getLockObject()) {
+            fModificationCount++;
             return fInternalMap.remove(annotation);
         }
     }
@@ -136,10 +142,24 @@ class AnnotationMap implements IAnnotationMap {
 	@Override
 	public void putAll(Map<? extends Annotation, ? extends Position> map) {
 		synchronized (getLockObject()) {
+			fModificationCount++;
 			fInternalMap.putAll(map);
 		}
 	}
 
+	/**
+	 * Returns the number of calls that modified this map. Modifications through the collection
+	 * views are not counted.
+	 *
+	 * @return the modification count
+	 * @since 3.7
+	 */
+	int getModificationCount() {
+		synchronized (getLockObject()) {
+			return fModificationCount;
+		}
+	}
+
 	@Override
 	public Set<Entry<Annotation, Position>> entrySet() {
 		synchronized (getLockObject()) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,9 +12,7 @@
 package org.eclipse.jface.text.source;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -23,9 +21,7 @@ import java.util.NoSuchElementException;
 
 import org.eclipse.core.runtime.Assert;
 
-import org.eclipse.jface.text.AbstractDocument;
 import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.BadPositionCategoryException;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentListener;
@@ -129,59 +125,6 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 		}
 	}
 
-	/**
-	 * An iterator iteration over a Positions and mapping positions to
-	 * annotations using a provided map if the provided map contains the element.
-	 *
-	 * @since 3.4
-	 */
-	private static final class AnnotationsInterator implements Iterator<Annotation> {
-
-		private Annotation fNext;
-		private final Position[] fPositions;
-		private int fIndex;
-		private final Map<Position, Annotation> fMap;
-
-		/**
-		 * @param positions positions to iterate over
-		 * @param map a map to map positions to annotations
-		 */
-		public AnnotationsInterator(Position[] positions, Map<Position, Annotation> map) {
-			fPositions= positions;
-			fIndex= 0;
-			fMap= map;
-			fNext= findNext();
-		}
-
-		@Override
-		public boolean hasNext() {
-			return fNext != null;
-		}
-
-		@Override
-		public Annotation next() {
-			Annotation result= fNext;
-			fNext= findNext();
-			return result;
-		}
-
-		@Override
-		public void remove() {
-			throw new UnsupportedOperationException();
-		}
-
-		private Annotation findNext() {
-			while (fIndex < fPositions.length) {
-				Position position= fPositions[fIndex];
-				fIndex++;
-				if (fMap.containsKey(position))
-					return fMap.get(position);
-			}
-
-			return null;
-		}
-	}
-
 	/**
 	 * A single iterator builds its behavior based on a sequence of iterators.
 	 * 
@@ -260,10 +203,23 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 	@Deprecated
 	protected Map<Annotation, Position> fAnnotations;
 	/**
-	 * The map which maps {@link Position} to {@link Annotation}.
-	 * @since 3.4
-	 **/
-	private IdentityHashMap<Position, Annotation> fPositions;
+	 * The interval tree over the annotations and their positions, used for region queries.
+	 * Guarded by the lock object.
+	 * @since 3.7
+	 */
+	private final AnnotationIntervalTree fIntervalTree= new AnnotationIntervalTree();
+	/**
+	 * The annotation map that {@link #fIntervalTree} reflects, or <code>null</code> if the tree
+	 * has to be rebuilt. Guarded by the lock object.
+	 * @since 3.7
+	 */
+	private AnnotationMap fIndexedMap;
+	/**
+	 * The modification count of {@link #fIndexedMap} that {@link #fIntervalTree} reflects.
+	 * Guarded by the lock object.
+	 * @since 3.7
+	 */
+	private int fIndexedModificationCount;
 	/** The list of annotation model listeners */
 	protected ArrayList<IAnnotationModelListener> fAnnotationModelListeners;
 	/** The document connected with this model */
@@ -301,18 +257,20 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 	 */
 	public AnnotationModel() {
 		fAnnotations= new AnnotationMap(10);
-		fPositions= new IdentityHashMap<>(10);
 		fAnnotationModelListeners= new ArrayList<>(2);
 
 		fDocumentListener= new IDocumentListener() {
 
 			@Override
 			public void documentAboutToBeChanged(DocumentEvent event) {
+				// the position updaters modify the positions before documentChanged is sent
+				fIntervalTree.documentAboutToBeChanged(event);
 			}
 
 			@Override
 			public void documentChanged(DocumentEvent event) {
 				fDocumentChanged= true;
+				fIntervalTree.documentChanged();
 			}
 		};
 	}
@@ -420,9 +378,12 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 		if (!fAnnotations.containsKey(annotation)) {
 
 			addPosition(fDocument, position);
-			fAnnotations.put(annotation, position);
-			fPositions.put(position, annotation);
 			synchronized (getLockObject()) {
+				boolean isIndexed= isIntervalTreeValid();
+				fAnnotations.put(annotation, position);
+				fIntervalTree.add(annotation, position);
+				if (isIndexed)
+					validateIntervalTree();
 				getAnnotationModelEvent().annotationAdded(annotation);
 			}
 
@@ -704,18 +665,59 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 	 * @since 3.4
 	 */
 	private Iterator<Annotation> getRegionAnnotationIterator(int offset, int length, boolean canStartBefore, boolean canEndAfter) {
-		if (!(fDocument instanceof AbstractDocument))
-			return new RegionIterator(getAnnotationIterator(true), this, offset, length, canStartBefore, canEndAfter);
-
-		AbstractDocument document= (AbstractDocument) fDocument;
 		cleanup(true);
 
-		try {
-			Position[] positions= document.getPositions(IDocument.DEFAULT_CATEGORY, offset, length, canStartBefore, canEndAfter);
-			return new AnnotationsInterator(positions, fPositions);
-		} catch (BadPositionCategoryException e) {
-			// can happen if e.g. the document doesn't contain such a category, or when removed in a different thread
-			return Collections.<Annotation>emptyList().iterator();
+		if (!(getAnnotationMap() instanceof AnnotationMap)) {
+			// the modifications of a map provided by a subclass cannot be tracked
+			return new RegionIterator(getAnnotationIterator(false, false), this, offset, length, canStartBefore, canEndAfter);
+		}
+
+		List<Annotation> annotations= new ArrayList<>();
+		synchronized (getLockObject()) {
+			IAnnotationMap annotationMap= getAnnotationMap();
+			if (!isIntervalTreeValid() || fIntervalTree.size() != annotationMap.size()) {
+				// the map has been modified directly
+				fIntervalTree.clear();
+				Iterator<Annotation> e= annotationMap.keySetIterator();
+				while (e.hasNext()) {
+					Annotation annotation= e.next();
+					Position position= annotationMap.get(annotation);
+					if (position != null)
+						fIntervalTree.add(annotation, position);
+				}
+				validateIntervalTree();
+			}
+			fIntervalTree.collect(offset, length, canStartBefore, canEndAfter, annotations);
+		}
+		return annotations.iterator();
+	}
+
+	/**
+	 * Returns whether the interval tree reflects the annotation map, i.e. whether the map has
+	 * only been modified through this model since the tree was built. Must be called while
+	 * holding the lock object.
+	 *
+	 * @return <code>true</code> if the interval tree is valid
+	 * @since 3.7
+	 */
+	private boolean isIntervalTreeValid() {
+		IAnnotationMap annotationMap= getAnnotationMap();
+		return fIndexedMap == annotationMap && fIndexedModificationCount == fIndexedMap.getModificationCount();
+	}
+
+	/**
+	 * Records that the interval tree reflects the current content of the annotation map. Must be
+	 * called while holding the lock object.
+	 *
+	 * @since 3.7
+	 */
+	private void validateIntervalTree() {
+		IAnnotationMap annotationMap= getAnnotationMap();
+		if (annotationMap instanceof AnnotationMap) {
+			fIndexedMap= (AnnotationMap) annotationMap;
+			fIndexedModificationCount= fIndexedMap.getModificationCount();
+		} else {
+			fIndexedMap= null;
 		}
 	}
 
@@ -797,8 +799,11 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 			}
 		}
 
-		fAnnotations.clear();
-		fPositions.clear();
+		synchronized (getLockObject()) {
+			fAnnotations.clear();
+			fIntervalTree.clear();
+			validateIntervalTree();
+		}
 
 		if (fireModelChanged)
 			fireModelChanged();
@@ -826,9 +831,12 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 //				p.delete();
 			}
 
-			fAnnotations.remove(annotation);
-			fPositions.remove(p);
 			synchronized (getLockObject()) {
+				boolean isIndexed= isIntervalTreeValid();
+				fAnnotations.remove(annotation);
+				fIntervalTree.remove(annotation, p);
+				if (isIndexed)
+					validateIntervalTree();
 				getAnnotationModelEvent().annotationRemoved(annotation, p);
 			}
 
@@ -867,8 +875,12 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 
 				if (position.getOffset() != p.getOffset() || position.getLength() != p.getLength()) {
 					fDocument.removePosition(p);
-					p.setOffset(position.getOffset());
-					p.setLength(position.getLength());
+					synchronized (getLockObject()) {
+						fIntervalTree.remove(annotation, p);
+						p.setOffset(position.getOffset());
+						p.setLength(position.getLength());
+						fIntervalTree.add(annotation, p);
+					}
 					try {
 						fDocument.addPosition(p);
 					} catch (BadLocationException e) {
@@ -905,6 +917,8 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 	protected void modifyAnnotation(Annotation annotation, boolean fireModelChanged) {
 		if (fAnnotations.containsKey(annotation)) {
 			synchronized (getLockObject()) {
+				// the position may have been modified by the client
+				fIntervalTree.markStale();
 				getAnnotationModelEvent().annotationChanged(annotation);
 			}
 			if (fireModelChanged)
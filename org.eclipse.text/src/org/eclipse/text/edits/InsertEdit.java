@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -86,6 +86,17 @@ public final class InsertEdit extends TextEdit {
 		return fDelta;
 	}
 
+	@Override
+	boolean canCoalesce() {
+		// children of an insert edit are not deleted, so their deltas matter
+		return !hasChildren();
+	}
+
+	@Override
+	String getCoalescedText() {
+		return fText;
+	}
+
 	/*
 	 * @see TextEdit#deleteChildren
 	 */
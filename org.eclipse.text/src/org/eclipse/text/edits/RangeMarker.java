@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -66,6 +66,11 @@ public final class RangeMarker extends TextEdit {
 		return fDelta;
 	}
 
+	@Override
+	boolean canCoalesce() {
+		return true;
+	}
+
 	/*
 	 * @see TextEdit#deleteChildren
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -98,6 +98,24 @@ public abstract class TextEdit {
 	 */
 	public static final int UPDATE_REGIONS= 1 << 1;
 
+	/**
+	 * Flag indicating that the changes of an edit tree are applied to the
+	 * document as a single replace of the range they cover, which sends a
+	 * single document event. Positions in the document between the changed
+	 * ranges are updated as if the whole range had been replaced. The flag
+	 * is ignored for edit trees that contain edits other than
+	 * <code>MultiTextEdit</code>, <code>ReplaceEdit</code>,
+	 * <code>InsertEdit</code>, <code>DeleteEdit</code> and
+	 * <code>RangeMarker</code>, or subclasses of <code>MultiTextEdit</code>.
+	 * <p>
+	 * The undo edit and the updated regions are the same as without
+	 * this flag, except that the undo edit consists of a single replace.
+	 * </p>
+	 *
+	 * @since 3.7
+	 */
+	public static final int COALESCE_CHANGES= 1 << 2;
+
 	private static class InsertionComparator implements Comparator<TextEdit> {
 		@Override
 		public int compare(TextEdit edit1, TextEdit edit2) throws MalformedTreeException {
@@ -688,7 +706,8 @@ public abstract class TextEdit {
 	 *
 	 * @param document the document to be manipulated
 	 * @param style flags controlling the execution of the edit tree. Valid
-	 *  flags are: <code>CREATE_UNDO</code> and </code>UPDATE_REGIONS</code>.
+	 *  flags are: <code>CREATE_UNDO</code>, <code>UPDATE_REGIONS</code> and
+	 *  <code>COALESCE_CHANGES</code>.
 	 * @return a undo edit, if <code>CREATE_UNDO</code> is specified. Otherwise
 	 *  <code>null</code> is returned.
 	 *
@@ -933,6 +952,78 @@ public abstract class TextEdit {
 
 	abstract int performDocumentUpdating(IDocument document) throws BadLocationException;
 
+	/**
+	 * Checks whether the edit tree rooted by this edit can be applied with
+	 * {@link #COALESCE_CHANGES}.
+	 *
+	 * @return <code>true</code> if the changes of the tree can be coalesced
+	 * @since 3.7
+	 */
+	boolean traverseCoalescingCheck() {
+		if (!canCoalesce())
+			return false;
+		if (fChildren != null) {
+			for (TextEdit child : fChildren) {
+				if (!child.traverseCoalescingCheck())
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether this edit can be applied with {@link #COALESCE_CHANGES}.
+	 * Doesn't check any children.
+	 *
+	 * @return <code>true</code> if the changes of this edit can be coalesced
+	 * @since 3.7
+	 */
+	boolean canCoalesce() {
+		return false;
+	}
+
+	/**
+	 * Traverses the edit tree to collect its changes into a single replace.
+	 * The edits are visited from left to right, and their lengths and deltas
+	 * are updated like by {@link #traverseDocumentUpdating(TextEditProcessor, IDocument)}.
+	 *
+	 * @param processor the text edit processor collecting the changes
+	 * @return the delta of the changes inside this edit's region
+	 * @since 3.7
+	 */
+	int traverseCoalescedUpdating(TextEditProcessor processor) {
+		String text= getCoalescedText();
+		if (text != null) {
+			// the text replaces the changes of the children
+			processor.coalesceReplace(getOffset(), getLength(), text);
+			fDelta= text.length() - getLength();
+			adjustLength(fDelta);
+			return fDelta;
+		}
+
+		int delta= 0;
+		if (fChildren != null) {
+			for (TextEdit child : fChildren) {
+				delta+= child.traverseCoalescedUpdating(processor);
+			}
+		}
+		if (delta != 0)
+			adjustLength(delta);
+		return delta;
+	}
+
+	/**
+	 * Returns the text that replaces this edit's region when the edit is
+	 * applied with {@link #COALESCE_CHANGES}.
+	 *
+	 * @return the new text of the region, or <code>null</code> if the edit
+	 *  changes the document only through its children
+	 * @since 3.7
+	 */
+	String getCoalescedText() {
+		return null;
+	}
+
 	int traverseRegionUpdating(TextEditProcessor processor, IDocument document, int accumulatedDelta, boolean delete) {
 		performRegionUpdating(accumulatedDelta, delete);
 		if (fChildren != null) {
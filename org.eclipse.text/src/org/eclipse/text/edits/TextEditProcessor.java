@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -41,6 +41,32 @@ public class TextEditProcessor {
 
 	private List<List<TextEdit>> fSourceEdits;
 
+	/**
+	 * The original text of the root's region while the changes are coalesced.
+	 * @since 3.7
+	 */
+	private String fOriginalText;
+	/**
+	 * The offset of {@link #fOriginalText} in the document.
+	 * @since 3.7
+	 */
+	private int fOriginalOffset;
+	/**
+	 * The new text of the coalesced range while the changes are coalesced.
+	 * @since 3.7
+	 */
+	private StringBuilder fCoalescedText;
+	/**
+	 * The start of the coalesced range, or <code>-1</code> if there is no change yet.
+	 * @since 3.7
+	 */
+	private int fCoalescedStart;
+	/**
+	 * The end of the coalesced range.
+	 * @since 3.7
+	 */
+	private int fCoalescedEnd;
+
 	/**
 	 * Constructs a new edit processor for the given
 	 * document.
@@ -52,7 +78,8 @@ public class TextEditProcessor {
 	 *  text edit processors. Clients must not modify the edit
 	 *  (e.g adding new children) any longer.
 	 *
-	 * @param style {@link TextEdit#NONE}, {@link TextEdit#CREATE_UNDO} or {@link TextEdit#UPDATE_REGIONS})
+	 * @param style {@link TextEdit#NONE}, {@link TextEdit#CREATE_UNDO}, {@link TextEdit#UPDATE_REGIONS}
+	 *  or {@link TextEdit#COALESCE_CHANGES})
 	 */
 	public TextEditProcessor(IDocument document, TextEdit root, int style) {
 		this(document, root, style, false);
@@ -190,7 +217,10 @@ public class TextEditProcessor {
 			if (createUndo())
 				collector.connect(fDocument);
 			computeSources();
-			fRoot.traverseDocumentUpdating(this, fDocument);
+			if (coalesceChanges() && canCoalesceChanges())
+				executeCoalescedDo();
+			else
+				fRoot.traverseDocumentUpdating(this, fDocument);
 			if (updateRegions()) {
 				fRoot.traverseRegionUpdating(this, fDocument, 0, false);
 			}
@@ -200,6 +230,61 @@ public class TextEditProcessor {
 		return collector.undo;
 	}
 
+	/**
+	 * Returns whether the edit tree can be applied with {@link TextEdit#COALESCE_CHANGES}.
+	 *
+	 * @return <code>true</code> if the changes can be coalesced
+	 * @since 3.7
+	 */
+	private boolean canCoalesceChanges() {
+		if (getClass() != TextEditProcessor.class)
+			return false; // considerEdit(TextEdit) may be overridden
+		for (List<TextEdit> list : fSourceEdits) {
+			if (list != null && !list.isEmpty())
+				return false;
+		}
+		return fRoot.traverseCoalescingCheck();
+	}
+
+	/**
+	 * Applies all changes of the edit tree with a single replace of the range they cover.
+	 *
+	 * @throws BadLocationException if the document cannot be changed
+	 * @since 3.7
+	 */
+	private void executeCoalescedDo() throws BadLocationException {
+		fOriginalOffset= fRoot.getOffset();
+		fOriginalText= fDocument.get(fOriginalOffset, fRoot.getLength());
+		fCoalescedText= new StringBuilder();
+		fCoalescedStart= -1;
+		try {
+			fRoot.traverseCoalescedUpdating(this);
+			if (fCoalescedStart != -1)
+				fDocument.replace(fCoalescedStart, fCoalescedEnd - fCoalescedStart, fCoalescedText.toString());
+		} finally {
+			fOriginalText= null;
+			fCoalescedText= null;
+		}
+	}
+
+	/**
+	 * Adds a change to the coalesced replace. The changes are added from left
+	 * to right, with offsets in the original document.
+	 *
+	 * @param offset the offset of the replaced range
+	 * @param length the length of the replaced range
+	 * @param text the new text of the range
+	 * @since 3.7
+	 */
+	void coalesceReplace(int offset, int length, String text) {
+		if (fCoalescedStart == -1)
+			fCoalescedStart= offset;
+		else
+			fCoalescedText.append(fOriginalText, fCoalescedEnd - fOriginalOffset, offset - fOriginalOffset);
+		fCoalescedText.append(text);
+		fCoalescedEnd= offset + length;
+	}
+
 	private void computeSources() {
 		for (List<TextEdit> list : fSourceEdits) {
 			if (list != null) {
@@ -232,4 +317,8 @@ public class TextEditProcessor {
 	private boolean updateRegions() {
 		return (fStyle & TextEdit.UPDATE_REGIONS) != 0;
 	}
+
+	private boolean coalesceChanges() {
+		return (fStyle & TextEdit.COALESCE_CHANGES) != 0;
+	}
 }
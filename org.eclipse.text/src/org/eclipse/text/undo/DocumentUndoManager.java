@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2016 IBM Corporation and others.
+ * Copyright (c) 2006, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,8 +10,16 @@
  *******************************************************************************/
 package org.eclipse.text.undo;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.eclipse.core.commands.ExecutionException;
 import org.eclipse.core.commands.operations.AbstractOperation;
@@ -51,6 +59,11 @@ import org.eclipse.jface.text.TextUtilities;
  * were promoted from inner types to their own classes in order to support
  * reassignment to a different undo manager.<p>
  * <p>
+ * Large texts of committed changes are kept compressed. The memory held by
+ * the undo history of the document is tracked, and the oldest changes are
+ * removed from the history once it exceeds the
+ * {@link #setMaximalUndoMemory(long) undo memory limit}.</p>
+ * <p>
  * This class is not intended to be subclassed.
  * </p>
  *
@@ -63,6 +76,20 @@ import org.eclipse.jface.text.TextUtilities;
  */
 public class DocumentUndoManager implements IDocumentUndoManager {
 
+	/**
+	 * The default limit for the memory held by the undo history of a document, in bytes.
+	 *
+	 * @see #setMaximalUndoMemory(long)
+	 * @since 3.7
+	 */
+	public static final long DEFAULT_UNDO_MEMORY_LIMIT= 64L * 1024 * 1024;
+
+	/** The minimal length of a text that is compressed once its change is committed. */
+	private static final int COMPRESSION_THRESHOLD= 4096;
+
+	/** The estimated memory in bytes held by a change apart from its texts. */
+	private static final long CHANGE_MEMORY= 64;
+
 
 	/**
 	 * Represents an undo-able text change, described as the
@@ -85,6 +112,24 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		/** The replaced text. */
 		protected String fPreservedText;
 
+		/**
+		 * The compressed newly inserted text, or <code>null</code> if the text is not compressed.
+		 * @since 3.7
+		 */
+		protected byte[] fCompressedText;
+
+		/**
+		 * The compressed replaced text, or <code>null</code> if the text is not compressed.
+		 * @since 3.7
+		 */
+		protected byte[] fCompressedPreservedText;
+
+		/**
+		 * The estimated memory in bytes held by the committed texts of this change.
+		 * @since 3.7
+		 */
+		protected long fMemory;
+
 		/** The undo modification stamp. */
 		protected long fUndoModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
 
@@ -111,6 +156,7 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		protected void reinitialize() {
 			fStart= fEnd= -1;
 			fText= fPreservedText= null;
+			fCompressedText= fCompressedPreservedText= null;
 			fUndoModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
 			fRedoModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
 		}
@@ -126,11 +172,64 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 			fEnd= end;
 			fText= null;
 			fPreservedText= null;
+			fCompressedText= null;
+			fCompressedPreservedText= null;
 		}
 
 		@Override
 		public void dispose() {
+			fDocumentUndoManager.removeOperation(this);
 			reinitialize();
+			fMemory= 0;
+		}
+
+		/**
+		 * Returns the newly inserted text, decompressing it if necessary.
+		 *
+		 * @return the inserted text
+		 * @since 3.7
+		 */
+		protected String getText() {
+			if (fText == null && fCompressedText != null)
+				return inflate(fCompressedText);
+			return fText;
+		}
+
+		/**
+		 * Returns the replaced text, decompressing it if necessary.
+		 *
+		 * @return the replaced text
+		 * @since 3.7
+		 */
+		protected String getPreservedText() {
+			if (fPreservedText == null && fCompressedPreservedText != null)
+				return inflate(fCompressedPreservedText);
+			return fPreservedText;
+		}
+
+		/**
+		 * Compresses the texts of this committed change that are large enough to be
+		 * worth it.
+		 *
+		 * @return the estimated memory in bytes held by the texts afterwards
+		 * @since 3.7
+		 */
+		protected long compress() {
+			if (fText != null && fText.length() >= COMPRESSION_THRESHOLD) {
+				byte[] compressed= deflate(fText);
+				if (compressed.length < 2 * fText.length()) {
+					fCompressedText= compressed;
+					fText= null;
+				}
+			}
+			if (fPreservedText != null && fPreservedText.length() >= COMPRESSION_THRESHOLD) {
+				byte[] compressed= deflate(fPreservedText);
+				if (compressed.length < 2 * fPreservedText.length()) {
+					fCompressedPreservedText= compressed;
+					fPreservedText= null;
+				}
+			}
+			return CHANGE_MEMORY + getMemory(fText, fCompressedText) + getMemory(fPreservedText, fCompressedPreservedText);
 		}
 
 		/**
@@ -139,11 +238,11 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		protected void undoTextChange() {
 			try {
 				if (fDocumentUndoManager.fDocument instanceof IDocumentExtension4)
-					((IDocumentExtension4) fDocumentUndoManager.fDocument).replace(fStart, fText
-							.length(), fPreservedText, fUndoModificationStamp);
+					((IDocumentExtension4) fDocumentUndoManager.fDocument).replace(fStart, getText()
+							.length(), getPreservedText(), fUndoModificationStamp);
 				else
-					fDocumentUndoManager.fDocument.replace(fStart, fText.length(),
-							fPreservedText);
+					fDocumentUndoManager.fDocument.replace(fStart, getText().length(),
+							getPreservedText());
 			} catch (BadLocationException x) {
 			}
 		}
@@ -251,10 +350,12 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		@Override
 		public IStatus undo(IProgressMonitor monitor, IAdaptable uiInfo) {
 			if (isValid()) {
-				fDocumentUndoManager.fireDocumentUndo(fStart, fPreservedText, fText, uiInfo, DocumentUndoEvent.ABOUT_TO_UNDO, false);
+				String text= getText();
+				String preservedText= getPreservedText();
+				fDocumentUndoManager.fireDocumentUndo(fStart, preservedText, text, uiInfo, DocumentUndoEvent.ABOUT_TO_UNDO, false);
 				undoTextChange();
 				fDocumentUndoManager.resetProcessChangeState();
-				fDocumentUndoManager.fireDocumentUndo(fStart, fPreservedText, fText, uiInfo, DocumentUndoEvent.UNDONE, false);
+				fDocumentUndoManager.fireDocumentUndo(fStart, preservedText, text, uiInfo, DocumentUndoEvent.UNDONE, false);
 				return Status.OK_STATUS;
 			}
 			return IOperationHistory.OPERATION_INVALID_STATUS;
@@ -266,9 +367,9 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		protected void redoTextChange() {
 			try {
 				if (fDocumentUndoManager.fDocument instanceof IDocumentExtension4)
-					((IDocumentExtension4) fDocumentUndoManager.fDocument).replace(fStart, fEnd - fStart, fText, fRedoModificationStamp);
+					((IDocumentExtension4) fDocumentUndoManager.fDocument).replace(fStart, fEnd - fStart, getText(), fRedoModificationStamp);
 				else
-					fDocumentUndoManager.fDocument.replace(fStart, fEnd - fStart, fText);
+					fDocumentUndoManager.fDocument.replace(fStart, fEnd - fStart, getText());
 			} catch (BadLocationException x) {
 			}
 		}
@@ -284,10 +385,12 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		@Override
 		public IStatus redo(IProgressMonitor monitor, IAdaptable uiInfo) {
 			if (isValid()) {
-				fDocumentUndoManager.fireDocumentUndo(fStart, fText, fPreservedText, uiInfo, DocumentUndoEvent.ABOUT_TO_REDO, false);
+				String text= getText();
+				String preservedText= getPreservedText();
+				fDocumentUndoManager.fireDocumentUndo(fStart, text, preservedText, uiInfo, DocumentUndoEvent.ABOUT_TO_REDO, false);
 				redoTextChange();
 				fDocumentUndoManager.resetProcessChangeState();
-				fDocumentUndoManager.fireDocumentUndo(fStart, fText, fPreservedText, uiInfo, DocumentUndoEvent.REDONE, false);
+				fDocumentUndoManager.fireDocumentUndo(fStart, text, preservedText, uiInfo, DocumentUndoEvent.REDONE, false);
 				return Status.OK_STATUS;
 			}
 			return IOperationHistory.OPERATION_INVALID_STATUS;
@@ -328,6 +431,7 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 				}
 			} else {
 				updateTextChange();
+				fDocumentUndoManager.textChangeCommitted(this, this);
 				fDocumentUndoManager.fCurrent= createCurrent();
 			}
 			fDocumentUndoManager.resetProcessChangeState();
@@ -366,7 +470,7 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		 * @return <code>true</code> if the change is valid for undo or redo
 		 */
 		protected boolean isValid() {
-			return fStart > -1 && fEnd > -1 && fText != null;
+			return fStart > -1 && fEnd > -1 && (fText != null || fCompressedText != null);
 		}
 
 		@Override
@@ -386,11 +490,11 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 			text.append(fEnd);
 			text.append(delimiter);
 			text.append("text: '"); //$NON-NLS-1$
-			text.append(fText);
+			text.append(getText());
 			text.append('\'');
 			text.append(delimiter);
 			text.append("preservedText: '"); //$NON-NLS-1$
-			text.append(fPreservedText);
+			text.append(getPreservedText());
 			text.append('\'');
 			return text.toString();
 		}
@@ -450,14 +554,14 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 				UndoableTextChange c;
 
 				c= fChanges.get(0);
-				fDocumentUndoManager.fireDocumentUndo(c.fStart, c.fPreservedText, c.fText, uiInfo, DocumentUndoEvent.ABOUT_TO_UNDO, true);
+				fDocumentUndoManager.fireDocumentUndo(c.fStart, c.getPreservedText(), c.getText(), uiInfo, DocumentUndoEvent.ABOUT_TO_UNDO, true);
 
 				for (int i= size - 1; i >= 0; --i) {
 					c= fChanges.get(i);
 					c.undoTextChange();
 				}
 				fDocumentUndoManager.resetProcessChangeState();
-				fDocumentUndoManager.fireDocumentUndo(c.fStart, c.fPreservedText, c.fText, uiInfo,
+				fDocumentUndoManager.fireDocumentUndo(c.fStart, c.getPreservedText(), c.getText(), uiInfo,
 						DocumentUndoEvent.UNDONE, true);
 			}
 			return Status.OK_STATUS;
@@ -471,14 +575,14 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 
 				UndoableTextChange c;
 				c= fChanges.get(size - 1);
-				fDocumentUndoManager.fireDocumentUndo(c.fStart, c.fText, c.fPreservedText, uiInfo, DocumentUndoEvent.ABOUT_TO_REDO, true);
+				fDocumentUndoManager.fireDocumentUndo(c.fStart, c.getText(), c.getPreservedText(), uiInfo, DocumentUndoEvent.ABOUT_TO_REDO, true);
 
 				for (int i= 0; i <= size - 1; ++i) {
 					c= fChanges.get(i);
 					c.redoTextChange();
 				}
 				fDocumentUndoManager.resetProcessChangeState();
-				fDocumentUndoManager.fireDocumentUndo(c.fStart, c.fText, c.fPreservedText, uiInfo, DocumentUndoEvent.REDONE, true);
+				fDocumentUndoManager.fireDocumentUndo(c.fStart, c.getText(), c.getPreservedText(), uiInfo, DocumentUndoEvent.REDONE, true);
 			}
 
 			return Status.OK_STATUS;
@@ -516,8 +620,10 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		@Override
 		protected void commit() {
 			// if there is pending data, update the text change
-			if (fStart > -1)
+			if (fStart > -1) {
 				updateTextChange();
+				fDocumentUndoManager.textChangeCommitted(this, fChanges.get(fChanges.size() - 1));
+			}
 			fDocumentUndoManager.fCurrent= createCurrent();
 			fDocumentUndoManager.resetProcessChangeState();
 		}
@@ -740,6 +846,24 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 	/** The list of clients connected. */
 	private List<Object> fConnected;
 
+	/**
+	 * The text changes of this manager in the operation history, oldest first.
+	 * @since 3.7
+	 */
+	private final Set<UndoableTextChange> fOperations= new LinkedHashSet<>();
+
+	/**
+	 * The estimated memory in bytes held by the text changes in {@link #fOperations}.
+	 * @since 3.7
+	 */
+	private long fUndoMemory;
+
+	/**
+	 * The limit for {@link #fUndoMemory}.
+	 * @since 3.7
+	 */
+	private long fUndoMemoryLimit= DEFAULT_UNDO_MEMORY_LIMIT;
+
 	/**
 	 *
 	 * Create a DocumentUndoManager for the given document.
@@ -858,6 +982,32 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		fHistory.setLimit(fUndoContext, undoLimit);
 	}
 
+	/**
+	 * Sets the limit for the memory held by the undo history of the document. Once the
+	 * estimated memory held by the text changes of this manager exceeds the limit, the oldest
+	 * changes are removed from the operation history. The most recent change is always kept.
+	 *
+	 * @param limit the limit in bytes
+	 * @see #DEFAULT_UNDO_MEMORY_LIMIT
+	 * @since 3.7
+	 */
+	public void setMaximalUndoMemory(long limit) {
+		Assert.isLegal(limit >= 0);
+		fUndoMemoryLimit= limit;
+		trimUndoHistory();
+	}
+
+	/**
+	 * Returns the estimated memory held by the undo history of the document. It includes the
+	 * committed text changes of this manager, of which large texts are kept compressed.
+	 *
+	 * @return the estimated memory in bytes
+	 * @since 3.7
+	 */
+	public long getUndoMemory() {
+		return fUndoMemory;
+	}
+
 	/**
 	 * Fires a document undo event to all registered document undo listeners.
 	 * Uses a robust iterator.
@@ -907,9 +1057,161 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 				|| edit instanceof UndoableCompoundTextChange) {
 			fHistory.add(edit);
 			fLastAddedTextEdit= edit;
+			addOperation(edit);
+		}
+	}
+
+	/**
+	 * Starts tracking the memory held by the given text change, which has been added to the
+	 * operation history.
+	 *
+	 * @param operation the text change
+	 * @since 3.7
+	 */
+	private void addOperation(UndoableTextChange operation) {
+		if (fOperations.add(operation)) {
+			fUndoMemory+= operation.fMemory;
+			trimUndoHistory();
 		}
 	}
 
+	/**
+	 * Stops tracking the memory held by the given text change.
+	 *
+	 * @param operation the text change
+	 * @since 3.7
+	 */
+	private void removeOperation(UndoableTextChange operation) {
+		if (fOperations.remove(operation))
+			fUndoMemory-= operation.fMemory;
+	}
+
+	/**
+	 * Compresses the texts of a change that has been committed and accounts for the memory
+	 * held by them.
+	 *
+	 * @param operation the text change in the operation history
+	 * @param change the committed change, either <code>operation</code> or a part of it
+	 * @since 3.7
+	 */
+	private void textChangeCommitted(UndoableTextChange operation, UndoableTextChange change) {
+		long memory= change.compress();
+		operation.fMemory+= memory;
+		if (fOperations.contains(operation)) {
+			fUndoMemory+= memory;
+			trimUndoHistory();
+		}
+	}
+
+	/**
+	 * Removes the oldest text changes from the operation history until the memory held by the
+	 * undo history no longer exceeds the limit.
+	 *
+	 * @since 3.7
+	 */
+	private void trimUndoHistory() {
+		if (fUndoMemory <= fUndoMemoryLimit || fOperations.size() < 2)
+			return;
+
+		List<IUndoableOperation> undoHistory= Arrays.asList(fHistory.getUndoHistory(fUndoContext));
+		Iterator<UndoableTextChange> iterator= fOperations.iterator();
+		while (fUndoMemory > fUndoMemoryLimit && fOperations.size() > 1) {
+			UndoableTextChange oldest= iterator.next();
+			if (oldest == fCurrent)
+				break;
+			iterator.remove();
+			fUndoMemory-= oldest.fMemory;
+			// changes that are no longer directly in the history, e.g. because they have been
+			// wrapped by another operation, are not ours to dispose
+			if (undoHistory.contains(oldest)) {
+				fHistory.replaceOperation(oldest, new IUndoableOperation[0]);
+				oldest.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Compresses the given text.
+	 *
+	 * @param text the text
+	 * @return the compressed UTF-16 encoding of the text
+	 * @since 3.7
+	 */
+	private static byte[] deflate(String text) {
+		// encode the characters one by one, so that unpaired surrogates survive
+		int length= text.length();
+		byte[] bytes= new byte[2 * length];
+		for (int i= 0; i < length; i++) {
+			char c= text.charAt(i);
+			bytes[2 * i]= (byte) (c >> 8);
+			bytes[2 * i + 1]= (byte) c;
+		}
+
+		Deflater deflater= new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			ByteArrayOutputStream out= new ByteArrayOutputStream(bytes.length / 4);
+			byte[] buffer= new byte[8192];
+			while (!deflater.finished()) {
+				int count= deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Decompresses a text compressed by {@link #deflate(String)}.
+	 *
+	 * @param compressed the compressed text
+	 * @return the text
+	 * @since 3.7
+	 */
+	private static String inflate(byte[] compressed) {
+		Inflater inflater= new Inflater();
+		try {
+			inflater.setInput(compressed);
+			ByteArrayOutputStream out= new ByteArrayOutputStream(4 * compressed.length);
+			byte[] buffer= new byte[8192];
+			while (!inflater.finished()) {
+				int count= inflater.inflate(buffer);
+				if (count == 0 && inflater.needsInput())
+					throw new DataFormatException();
+				out.write(buffer, 0, count);
+			}
+
+			byte[] bytes= out.toByteArray();
+			char[] chars= new char[bytes.length / 2];
+			for (int i= 0; i < chars.length; i++)
+				chars[i]= (char) ((bytes[2 * i] & 0xFF) << 8 | bytes[2 * i + 1] & 0xFF);
+			return new String(chars);
+		} catch (DataFormatException x) {
+			throw new IllegalStateException(x);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Returns the estimated memory held by a text that may be compressed.
+	 *
+	 * @param text the text, or <code>null</code>
+	 * @param compressed the compressed text, or <code>null</code>
+	 * @return the estimated memory in bytes
+	 * @since 3.7
+	 */
+	private static long getMemory(String text, byte[] compressed) {
+		long memory= 0;
+		if (text != null)
+			memory+= 40 + 2L * text.length();
+		if (compressed != null)
+			memory+= 16 + compressed.length;
+		return memory;
+	}
+
 	/**
 	 * Disposes the undo history.
 	 */
@@ -1171,6 +1473,8 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 		fPreservedTextBuffer= null;
 
 		disposeUndoHistory();
+		fOperations.clear();
+		fUndoMemory= 0;
 	}
 
 	/**
@@ -1201,7 +1505,10 @@ public class DocumentUndoManager implements IDocumentUndoManager {
 			}
 			// Now update the manager that owns the text edit.
 			if (op instanceof UndoableTextChange) {
-				((UndoableTextChange)op).fDocumentUndoManager= this;
+				UndoableTextChange change= (UndoableTextChange)op;
+				change.fDocumentUndoManager.removeOperation(change);
+				change.fDocumentUndoManager= this;
+				addOperation(change);
 			}
 		}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -182,6 +182,7 @@ public class FileBufferOperationAction extends Action implements IWorkbenchWindo
 
 					if (locations != null && locations.length > 0) {
 						FileBufferOperationRunner runner= new FileBufferOperationRunner(FileBuffers.getTextFileBufferManager(), getShell());
+						runner.setParallel(true);
 						runner.execute(locations, fileBufferOperation, subMonitor.split(ticks));
 					}
 					status= Status.OK_STATUS;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -180,7 +180,8 @@ public class FileBufferOperationHandler extends AbstractHandler {
 	}
 
 	/**
-	 * Runs the given operation.
+	 * Runs the given operation. The operation is performed for several file buffers at the same
+	 * time and must therefore be thread-safe.
 	 *
 	 * @param files the file on which to run this operation
 	 * @param location the file buffer location
@@ -205,6 +206,7 @@ public class FileBufferOperationHandler extends AbstractHandler {
 
 					if (locations != null && locations.length > 0) {
 						FileBufferOperationRunner runner= new FileBufferOperationRunner(FileBuffers.getTextFileBufferManager(), getShell());
+						runner.setParallel(true);
 						runner.execute(locations, fileBufferOperation, subMonitor.split(ticks));
 					}
 					status= Status.OK_STATUS;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,12 +15,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.SequenceInputStream;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CodingErrorAction;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnmappableCharacterException;
 import java.nio.charset.UnsupportedCharsetException;
@@ -58,6 +54,8 @@ import org.eclipse.core.resources.ResourcesPlugin;
 
 import org.eclipse.core.filebuffers.manipulation.ContainerCreator;
 
+import org.eclipse.core.internal.filebuffers.DocumentInputStream;
+
 import org.eclipse.jface.operation.IRunnableContext;
 
 import org.eclipse.jface.text.IDocument;
@@ -574,27 +572,18 @@ public class FileDocumentProvider extends StorageDocumentProvider {
 				throw new CoreException(s);
 			}
 
-			CharsetEncoder encoder= charset.newEncoder();
-			encoder.onMalformedInput(CodingErrorAction.REPLACE);
-			encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
-
 			InputStream stream;
 
 			try {
-				byte[] bytes;
-				ByteBuffer byteBuffer= encoder.encode(CharBuffer.wrap(document.get()));
-				if (byteBuffer.hasArray())
-					bytes= byteBuffer.array();
-				else {
-					bytes= new byte[byteBuffer.limit()];
-					byteBuffer.get(bytes);
-				}
-				stream= new ByteArrayInputStream(bytes, 0, byteBuffer.limit());
+				stream= DocumentInputStream.open(document, charset);
 			} catch (CharacterCodingException ex) {
 				Assert.isTrue(ex instanceof UnmappableCharacterException);
 				String message= NLSUtility.format(TextEditorMessages.DocumentProvider_error_charset_mapping_failed_message_arg, encoding);
 				IStatus s= new Status(IStatus.ERROR, EditorsUI.PLUGIN_ID, EditorsUI.CHARSET_MAPPING_FAILED, message, null);
 				throw new CoreException(s);
+			} catch (IOException ex) {
+				IStatus s= new Status(IStatus.ERROR, EditorsUI.PLUGIN_ID, IStatus.OK, ex.getLocalizedMessage(), ex);
+				throw new CoreException(s);
 			}
 
 			/*
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -364,6 +364,7 @@ public class TextSourceViewerConfiguration extends SourceViewerConfiguration {
 		IReconcilingStrategy strategy= new SpellingReconcileStrategy(sourceViewer, spellingService);
 		MonoReconciler reconciler= new MonoReconciler(strategy, false);
 		reconciler.setDelay(500);
+		reconciler.setUseSharedExecutor(true);
 		return reconciler;
 	}
 
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.workbench.texteditor.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.DJBHashFunction;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.DocumentEquivalenceClass;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.IHashFunction;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.SystemHashFunction;
+
+public class DocumentEquivalenceClassTest {
+
+	private static String createText(Random random, int lines, String... delimiters) {
+		StringBuilder text= new StringBuilder();
+		for (int line= 0; line < lines; line++) {
+			for (int i= random.nextInt(20); i > 0; i--)
+				text.append((char) ('a' + random.nextInt(3)));
+			text.append(delimiters[random.nextInt(delimiters.length)]);
+		}
+		return text.toString();
+	}
+
+	private static void assertHashes(IDocument document, IHashFunction hashFunction, DocumentEquivalenceClass equivalenceClass) throws BadLocationException {
+		assertEquals(document.getNumberOfLines(), equivalenceClass.getCount());
+		for (int line= 0; line < document.getNumberOfLines(); line++) {
+			IRegion region= document.getLineInformation(line);
+			String contents= document.get(region.getOffset(), region.getLength());
+			assertEquals(hashFunction.computeHash(contents), equivalenceClass.getHash(line));
+			assertEquals(hashFunction.computeHash(contents).hashCode(), equivalenceClass.getHashCode(line));
+		}
+	}
+
+	@Test
+	public void testComputeHashes() throws BadLocationException {
+		Document document= new Document(createText(new Random(4711), 20000, "\n", "\r\n", "\r"));
+		DocumentEquivalenceClass equivalenceClass= new DocumentEquivalenceClass(document);
+		equivalenceClass.computeHashes();
+		assertHashes(document, new DJBHashFunction(), equivalenceClass);
+
+		equivalenceClass= new DocumentEquivalenceClass(document, new SystemHashFunction());
+		equivalenceClass.computeHashes();
+		assertHashes(document, new SystemHashFunction(), equivalenceClass);
+	}
+
+	@Test
+	public void testLazyHashes() throws BadLocationException {
+		Document document= new Document(createText(new Random(42), 100, "\n", "\r\n", "\r"));
+		assertHashes(document, new DJBHashFunction(), new DocumentEquivalenceClass(document));
+		assertHashes(new Document(), new DJBHashFunction(), new DocumentEquivalenceClass(new Document()));
+	}
+
+	@Test
+	public void testUpdate() throws BadLocationException {
+		Random random= new Random(1234);
+		Document document= new Document(createText(random, 50, "\n"));
+		DocumentEquivalenceClass equivalenceClass= new DocumentEquivalenceClass(document);
+		for (int i= 0; i < 2000; i++) {
+			if (random.nextInt(3) == 0)
+				equivalenceClass.computeHashes();
+			int length= document.getLength();
+			int offset= random.nextInt(length + 1);
+			int replaceLength= random.nextInt(Math.min(30, length - offset) + 1);
+			String text= createText(random, random.nextInt(3), "\n") + (random.nextBoolean() ? "x" : "");
+			equivalenceClass.update(new DocumentEvent(document, offset, replaceLength, text));
+			document.replace(offset, replaceLength, text);
+			assertHashes(document, new DJBHashFunction(), equivalenceClass);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.workbench.texteditor.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.source.ILineDiffInfo;
+
+import org.eclipse.ui.internal.texteditor.quickdiff.DocumentLineDiffer;
+import org.eclipse.ui.texteditor.ITextEditor;
+import org.eclipse.ui.texteditor.quickdiff.IQuickDiffReferenceProvider;
+
+/**
+ * Tests the incremental update of {@link DocumentLineDiffer} when the document changes.
+ */
+public class DocumentLineDifferTest {
+
+	private static final long TIMEOUT= 10000;
+	private static final int LINES= 1000;
+
+	/** A differ that counts how often it is initialized. */
+	private static final class CountingLineDiffer extends DocumentLineDiffer {
+		int fInitializations;
+
+		@Override
+		protected synchronized void initialize() {
+			fInitializations++;
+			super.initialize();
+		}
+	}
+
+	private static final class ReferenceProvider implements IQuickDiffReferenceProvider {
+		private final IDocument fReference;
+
+		ReferenceProvider(IDocument reference) {
+			fReference= reference;
+		}
+
+		@Override
+		public IDocument getReference(IProgressMonitor monitor) {
+			return fReference;
+		}
+
+		@Override
+		public void dispose() {
+		}
+
+		@Override
+		public String getId() {
+			return "test"; //$NON-NLS-1$
+		}
+
+		@Override
+		public void setActiveEditor(ITextEditor editor) {
+		}
+
+		@Override
+		public boolean isEnabled() {
+			return true;
+		}
+
+		@Override
+		public void setId(String id) {
+		}
+	}
+
+	private IDocument fDocument;
+	private CountingLineDiffer fDiffer;
+
+	@Before
+	public void setUp() throws Exception {
+		String text= createLines(0, LINES, "line "); //$NON-NLS-1$
+		fDocument= new Document(text);
+		fDiffer= new CountingLineDiffer();
+		fDiffer.setReferenceProvider(new ReferenceProvider(new Document(text)));
+		fDiffer.connect(fDocument);
+		waitForSynchronization();
+	}
+
+	@After
+	public void tearDown() {
+		fDiffer.disconnect(fDocument);
+	}
+
+	@Test
+	public void testLargePaste() throws Exception {
+		int initializations= fDiffer.fInitializations;
+		fDocument.replace(fDocument.getLineOffset(500), 0, createLines(0, 2000, "pasted ")); //$NON-NLS-1$
+
+		assertEquals(initializations, fDiffer.fInitializations);
+		assertLines(0, 500, ILineDiffInfo.UNCHANGED);
+		assertLines(500, 2000, ILineDiffInfo.ADDED);
+		assertLines(2500, fDocument.getNumberOfLines() - 2500, ILineDiffInfo.UNCHANGED);
+	}
+
+	@Test
+	public void testLargeDelete() throws Exception {
+		int initializations= fDiffer.fInitializations;
+		int offset= fDocument.getLineOffset(100);
+		fDocument.replace(offset, fDocument.getLineOffset(900) - offset, ""); //$NON-NLS-1$
+
+		assertEquals(initializations, fDiffer.fInitializations);
+		assertLines(0, fDocument.getNumberOfLines(), ILineDiffInfo.UNCHANGED);
+		assertEquals(800, fDiffer.getLineInfo(99).getRemovedLinesBelow());
+		assertEquals(800, fDiffer.getLineInfo(100).getRemovedLinesAbove());
+	}
+
+	@Test
+	public void testChangeWithSharedPrefixAndSuffix() throws Exception {
+		int initializations= fDiffer.fInitializations;
+		// replace 100 lines of which only the middle 10 are different
+		String replacement= createLines(100, 145, "line ") + createLines(145, 155, "changed ") + createLines(155, 200, "line "); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		int offset= fDocument.getLineOffset(100);
+		fDocument.replace(offset, fDocument.getLineOffset(200) - offset, replacement);
+
+		assertEquals(initializations, fDiffer.fInitializations);
+		assertLines(0, 145, ILineDiffInfo.UNCHANGED);
+		assertLines(145, 10, ILineDiffInfo.CHANGED);
+		assertLines(155, fDocument.getNumberOfLines() - 155, ILineDiffInfo.UNCHANGED);
+	}
+
+	@Test
+	public void testSmallChanges() throws Exception {
+		int initializations= fDiffer.fInitializations;
+		fDocument.replace(fDocument.getLineOffset(10), 0, "x"); //$NON-NLS-1$
+		fDocument.replace(fDocument.getLineOffset(20), 0, "new line\n"); //$NON-NLS-1$
+		int offset= fDocument.getLineOffset(30);
+		fDocument.replace(offset, fDocument.getLineOffset(32) - offset, ""); //$NON-NLS-1$
+
+		assertEquals(initializations, fDiffer.fInitializations);
+		assertLines(0, 10, ILineDiffInfo.UNCHANGED);
+		assertLines(10, 1, ILineDiffInfo.CHANGED);
+		assertLines(11, 9, ILineDiffInfo.UNCHANGED);
+		assertLines(20, 1, ILineDiffInfo.ADDED);
+		assertLines(21, fDocument.getNumberOfLines() - 21, ILineDiffInfo.UNCHANGED);
+		assertEquals(2, fDiffer.getLineInfo(29).getRemovedLinesBelow());
+	}
+
+	@Test
+	public void testChangeBeyondBound() throws Exception {
+		int initializations= fDiffer.fInitializations;
+		// replacing 200 lines by 200 different lines is too expensive to diff in the UI thread
+		int offset= fDocument.getLineOffset(100);
+		fDocument.replace(offset, fDocument.getLineOffset(300) - offset, createLines(0, 200, "changed ")); //$NON-NLS-1$
+
+		assertTrue(fDiffer.fInitializations > initializations);
+		waitForSynchronization();
+		assertLines(0, 100, ILineDiffInfo.UNCHANGED);
+		assertLines(100, 200, ILineDiffInfo.CHANGED);
+		assertLines(300, fDocument.getNumberOfLines() - 300, ILineDiffInfo.UNCHANGED);
+	}
+
+	private void assertLines(int firstLine, int numberOfLines, int changeType) {
+		for (int line= firstLine; line < firstLine + numberOfLines; line++)
+			assertEquals("line " + line, changeType, fDiffer.getLineInfo(line).getChangeType()); //$NON-NLS-1$
+	}
+
+	private void waitForSynchronization() throws InterruptedException {
+		long end= System.currentTimeMillis() + TIMEOUT;
+		while (!fDiffer.isSynchronized()) {
+			assertTrue("differ not synchronized", System.currentTimeMillis() < end); //$NON-NLS-1$
+			Thread.sleep(20);
+		}
+	}
+
+	private static String createLines(int from, int to, String prefix) {
+		StringBuilder text= new StringBuilder();
+		for (int i= from; i < to; i++)
+			text.append(prefix).append(i).append('\n');
+		return text.toString();
+	}
+}
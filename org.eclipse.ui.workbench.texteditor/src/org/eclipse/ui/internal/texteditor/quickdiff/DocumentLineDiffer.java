@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -135,6 +135,15 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 
 	/** The delay after which the initialization job is triggered. */
 	private static final int INITIALIZE_DELAY= 500;
+	/**
+	 * The maximal product of the numbers of changed reference and actual lines that are diffed
+	 * in the UI thread when the document changes. This is the cost of the 50 by 50 lines window
+	 * that has always been diffed synchronously. Larger changes are diffed by the initialization
+	 * job.
+	 *
+	 * @since 3.10
+	 */
+	private static final int MAX_DIFF_SIZE= 50 * 50;
 
 	/** Suspended state */
 	private static final int SUSPENDED= 0;
@@ -620,10 +629,12 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 
 				IHashFunction hash= new DJBHashFunction();
 				DocumentEquivalenceClass leftEquivalent= new DocumentEquivalenceClass(reference, hash);
+				leftEquivalent.computeHashes();
 				fLeftEquivalent= leftEquivalent;
 				IRangeComparator ref= new DocEquivalenceComparator(leftEquivalent, null);
 
 				DocumentEquivalenceClass rightEquivalent= new DocumentEquivalenceClass(actual, hash);
+				rightEquivalent.computeHashes();
 				fRightEquivalent= rightEquivalent;
 				IRangeComparator act= new DocEquivalenceComparator(rightEquivalent, null);
 				ArrayList<QuickDiffRangeDifference> diffs= asQuickDiffRangeDifference(RangeDifferencer.findRanges(fRangeDiffFactory, monitor, ref, act));
@@ -919,12 +930,6 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 		int added= insertion == null ? 1 : modified.computeNumberOfLines(insertion) + 1;
 		// size: the size of the document change in lines
 
-		// put an upper bound to the delay we can afford
-		if (added > 50 || fNLines > 50) {
-			initialize();
-			return;
-		}
-
 		int size= Math.max(fNLines, added) + 1;
 		int lineDelta= added - fNLines;
 		int lastLine= fFirstLine + fNLines - 1;
@@ -984,7 +989,6 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 			leftLine += lineDelta;
 		int leftEndLine= leftLine - shiftAfter;
 		ILineRange leftRange= new LineRange(leftStartLine, leftEndLine - leftStartLine);
-		IRangeComparator reference= new DocEquivalenceComparator(leftEquivalent, leftRange);
 
 		// right (actual) document
 		int rightStartLine= consistentBefore.rightStart() + shiftBefore;
@@ -993,22 +997,17 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 			rightLine += lineDelta;
 		int rightEndLine= rightLine - shiftAfter;
 		ILineRange rightRange= new LineRange(rightStartLine, rightEndLine - rightStartLine);
-		IRangeComparator change= new DocEquivalenceComparator(rightEquivalent, rightRange);
-
-		// put an upper bound to the delay we can afford
-		if (leftLine - shiftAfter - leftStartLine > 50 || rightLine - shiftAfter - rightStartLine > 50) {
-			initialize();
-			return;
-		}
 
 		// debug
 //			System.out.println("compare window: "+size+"\n\n<" + left.get(leftRegion.getOffset(), leftRegion.getLength()) +  //$NON-NLS-1$//$NON-NLS-2$
 //					">\n\n<" + right.get(rightRegion.getOffset(), rightRegion.getLength()) + ">\n"); //$NON-NLS-1$ //$NON-NLS-2$
 
 		// compare
-		List<QuickDiffRangeDifference> diffs= asQuickDiffRangeDifference(RangeDifferencer.findRanges(fRangeDiffFactory, null, reference, change));
-		if (diffs.size() == 0) {
-			diffs.add(new QuickDiffRangeDifference(RangeDifference.CHANGE, 0, 0, 0, 0));
+		List<QuickDiffRangeDifference> diffs= diffRanges(leftEquivalent, leftRange, rightEquivalent, rightRange);
+		// put an upper bound to the delay we can afford
+		if (diffs == null) {
+			initialize();
+			return;
 		}
 
 
@@ -1125,6 +1124,61 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 		fLastDifference= null;
 	}
 
+	/**
+	 * Computes the differences between two ranges of lines. The lines that are equal at the start
+	 * and at the end of both ranges are not passed to the range differencer, so large insertions
+	 * and deletions are diffed in time linear to the size of the ranges.
+	 *
+	 * @param leftEquivalent the equivalence class of the left document
+	 * @param leftRange the lines of the left document
+	 * @param rightEquivalent the equivalence class of the right document
+	 * @param rightRange the lines of the right document
+	 * @return the differences relative to the start of the ranges, or <code>null</code> if too
+	 *         many lines have changed to diff them synchronously
+	 * @since 3.10
+	 */
+	private List<QuickDiffRangeDifference> diffRanges(DocumentEquivalenceClass leftEquivalent, ILineRange leftRange, DocumentEquivalenceClass rightEquivalent, ILineRange rightRange) {
+		int leftStart= leftRange.getStartLine();
+		int leftLength= leftRange.getNumberOfLines();
+		int rightStart= rightRange.getStartLine();
+		int rightLength= rightRange.getNumberOfLines();
+
+		int max= Math.min(leftLength, rightLength);
+		int prefix= 0;
+		while (prefix < max && leftEquivalent.getHashCode(leftStart + prefix) == rightEquivalent.getHashCode(rightStart + prefix))
+			prefix++;
+		max-= prefix;
+		int suffix= 0;
+		while (suffix < max && leftEquivalent.getHashCode(leftStart + leftLength - 1 - suffix) == rightEquivalent.getHashCode(rightStart + rightLength - 1 - suffix))
+			suffix++;
+
+		int leftChanged= leftLength - prefix - suffix;
+		int rightChanged= rightLength - prefix - suffix;
+		if ((long) leftChanged * rightChanged > MAX_DIFF_SIZE)
+			return null;
+
+		List<QuickDiffRangeDifference> diffs= new ArrayList<>();
+		if (prefix > 0)
+			diffs.add(new QuickDiffRangeDifference(RangeDifference.NOCHANGE, 0, prefix, 0, prefix));
+		if (leftChanged > 0 && rightChanged > 0) {
+			IRangeComparator reference= new DocEquivalenceComparator(leftEquivalent, new LineRange(leftStart + prefix, leftChanged));
+			IRangeComparator change= new DocEquivalenceComparator(rightEquivalent, new LineRange(rightStart + prefix, rightChanged));
+			for (QuickDiffRangeDifference d : asQuickDiffRangeDifference(RangeDifferencer.findRanges(fRangeDiffFactory, null, reference, change))) {
+				d.shiftLeft(prefix);
+				d.shiftRight(prefix);
+				diffs.add(d);
+			}
+		} else if (leftChanged > 0 || rightChanged > 0) {
+			diffs.add(new QuickDiffRangeDifference(RangeDifference.CHANGE, prefix, rightChanged, prefix, leftChanged));
+		}
+		if (suffix > 0)
+			diffs.add(new QuickDiffRangeDifference(RangeDifference.NOCHANGE, prefix + rightChanged, suffix, prefix + leftChanged, suffix));
+
+		if (diffs.size() == 0)
+			diffs.add(new QuickDiffRangeDifference(RangeDifference.CHANGE, 0, 0, 0, 0));
+		return diffs;
+	}
+
 	/**
 	 * Converts a {@code RangeDifference[]} into an {@code ArrayList<QuickDiffRangeDifference>}.
 	 * This is unsafe in general, but OK if used carefully.
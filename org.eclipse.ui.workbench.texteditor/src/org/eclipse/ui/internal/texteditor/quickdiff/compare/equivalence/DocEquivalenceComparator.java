@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -74,9 +74,7 @@ public final class DocEquivalenceComparator implements IRangeComparator {
 		if (other instanceof DocEquivalenceComparator) {
 			DocEquivalenceComparator dec= (DocEquivalenceComparator) other;
 			try {
-				Hash ourHash= getHash(thisIndex);
-				Hash otherHash= dec.getHash(otherIndex);
-				return ourHash.equals(otherHash);
+				return getHashCode(thisIndex) == dec.getHashCode(otherIndex);
 			} catch (ConcurrentModificationException e) {
 				fSkip= true;
 			} catch (IndexOutOfBoundsException e) {
@@ -86,8 +84,8 @@ public final class DocEquivalenceComparator implements IRangeComparator {
 		return false;
 	}
 
-	Hash getHash(int index) {
-		return fEquivalenceClass.getHash(fLineOffset + index);
+	int getHashCode(int index) {
+		return fEquivalenceClass.getHashCode(fLineOffset + index);
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2015 IBM Corporation and others.
+ * Copyright (c) 2005, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,10 +10,9 @@
  *******************************************************************************/
 package org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.eclipse.core.runtime.Assert;
 
@@ -23,15 +22,65 @@ import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 
 /**
+ * The line hashes of a document. The hashes are kept in a primitive table: the lower 32 bits of
+ * an entry are the hash code of the {@link Hash} computed by the hash function, the bit
+ * {@link #COMPUTED} tells whether the hash has been computed. Two lines are equivalent if their
+ * hash codes are equal.
+ *
  * @since 3.2
  */
 public final class DocumentEquivalenceClass {
 
 	private static final boolean DEBUG= false;
 
-	private final ArrayList<Hash> fHashes;
+	/** Marks a computed entry of the hash table. */
+	private static final long COMPUTED= 1L << 32;
+
+	/**
+	 * The number of lines that {@link #computeHashes()} hashes in one task, from one copy of the
+	 * text.
+	 */
+	private static final int CHUNK_LINES= 2048;
+
+	/** The hash table, see the class comment. The entries beyond <code>fCount</code> are unused. */
+	private long[] fHashes;
+	/** The number of lines. */
+	private int fCount;
 	private IDocument fDocument;
 	private final IHashFunction fHashFunction;
+	/** Whether the hash function is a {@link DJBHashFunction}, which is computed in place. */
+	private final boolean fIsDJB;
+
+	/**
+	 * Hashes the lines of a range of lines. Large ranges are split and hashed in parallel.
+	 */
+	private final class HashTask extends RecursiveAction {
+		private static final long serialVersionUID= 1L;
+
+		private final IDocument fTaskDocument;
+		private final int fFrom;
+		private final int fTo;
+
+		HashTask(IDocument document, int from, int to) {
+			fTaskDocument= document;
+			fFrom= from;
+			fTo= to;
+		}
+
+		@Override
+		protected void compute() {
+			if (fTo - fFrom > CHUNK_LINES) {
+				int middle= (fFrom + fTo) >>> 1;
+				invokeAll(new HashTask(fTaskDocument, fFrom, middle), new HashTask(fTaskDocument, middle, fTo));
+				return;
+			}
+			try {
+				hashLines(fTaskDocument, fFrom, fTo);
+			} catch (BadLocationException x) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
 
 	public DocumentEquivalenceClass(IDocument document) {
 		this(document, new DJBHashFunction());
@@ -39,12 +88,13 @@ public final class DocumentEquivalenceClass {
 
 	public DocumentEquivalenceClass(IDocument document, IHashFunction hashFunction) {
 		fDocument= document;
-		Hash[] nulls= new Hash[fDocument.getNumberOfLines()];
-		fHashes= new ArrayList<>(Arrays.asList(nulls));
+		fCount= fDocument.getNumberOfLines();
+		fHashes= new long[fCount];
 
 		if (hashFunction == null)
 			throw new NullPointerException("hashFunction"); //$NON-NLS-1$
 		fHashFunction= hashFunction;
+		fIsDJB= hashFunction instanceof DJBHashFunction;
 	}
 
 	/**
@@ -59,26 +109,97 @@ public final class DocumentEquivalenceClass {
 	 *         modified concurrently to this method call
 	 */
 	public Hash getHash(int line) {
+		return new IntHash(getHashCode(line));
+	}
+
+	/**
+	 * Returns the hash code of the equivalence hash for line <code>line</code>. Lines with equal
+	 * hash codes are equivalent.
+	 *
+	 * @param line the line for which to get the hash code
+	 * @return the hash code of the line
+	 * @throws IndexOutOfBoundsException if <code>line</code> is not a
+	 *         legal document line
+	 * @throws ConcurrentModificationException if the document is
+	 *         modified concurrently to this method call
+	 * @since 3.10
+	 */
+	public int getHashCode(int line) {
 		try {
-			return internalGetHash(line);
+			return internalGetHashCode(line);
 		} catch (BadLocationException x) {
 			throw new ConcurrentModificationException();
 		}
 	}
 
-	private Hash internalGetHash(int line) throws BadLocationException {
-		Hash hash= fHashes.get(line);
-		if (hash == null) {
+	private int internalGetHashCode(int line) throws BadLocationException {
+		if (line < 0 || line >= fCount)
+			throw new IndexOutOfBoundsException(Integer.toString(line));
+		long entry= fHashes[line];
+		if (entry == 0) {
 			if (fDocument == null)
 				throw new AssertionError("hash cannot be null after loadAndForget"); //$NON-NLS-1$
 
 			IRegion lineRegion= fDocument.getLineInformation(line);
-			String lineContents= fDocument.get(lineRegion.getOffset(), lineRegion.getLength());
-			hash= fHashFunction.computeHash(lineContents);
-			fHashes.set(line, hash);
+			int hash;
+			if (fIsDJB)
+				hash= DJBHashFunction.hash(fDocument, lineRegion.getOffset(), lineRegion.getLength());
+			else
+				hash= fHashFunction.computeHash(fDocument.get(lineRegion.getOffset(), lineRegion.getLength())).hashCode();
+			entry= COMPUTED | hash & 0xFFFFFFFFL;
+			fHashes[line]= entry;
 		}
 
-		return hash;
+		return (int) entry;
+	}
+
+	/**
+	 * Computes the missing hashes of the given lines from one copy of their text.
+	 *
+	 * @param document the document
+	 * @param from the first line
+	 * @param to the end of the lines, exclusive
+	 * @throws BadLocationException if the document has been modified concurrently
+	 */
+	private void hashLines(IDocument document, int from, int to) throws BadLocationException {
+		int start= document.getLineOffset(from);
+		IRegion last= document.getLineInformation(to - 1);
+		String text= document.get(start, last.getOffset() + last.getLength() - start);
+		for (int line= from; line < to; line++) {
+			if (fHashes[line] != 0)
+				continue;
+			IRegion lineRegion= line == to - 1 ? last : document.getLineInformation(line);
+			int offset= lineRegion.getOffset() - start;
+			int length= lineRegion.getLength();
+			int hash;
+			if (fIsDJB)
+				hash= DJBHashFunction.hash(text, offset, length);
+			else
+				hash= fHashFunction.computeHash(text.subSequence(offset, offset + length)).hashCode();
+			fHashes[line]= COMPUTED | hash & 0xFFFFFFFFL;
+		}
+	}
+
+	/**
+	 * Computes all hashes. Large documents are hashed in parallel, so the document must not be
+	 * modified while this method runs, e.g. because it is a private copy.
+	 *
+	 * @throws ConcurrentModificationException if the document is
+	 *         modified concurrently to this method call
+	 * @since 3.10
+	 */
+	public void computeHashes() {
+		if (fDocument == null || fCount == 0)
+			return;
+		if (fCount <= CHUNK_LINES) {
+			try {
+				hashLines(fDocument, 0, fCount);
+			} catch (BadLocationException x) {
+				throw new ConcurrentModificationException();
+			}
+		} else {
+			ForkJoinPool.commonPool().invoke(new HashTask(fDocument, 0, fCount));
+		}
 	}
 
 	/**
@@ -108,19 +229,29 @@ public final class DocumentEquivalenceClass {
 		int changed= Math.min(linesAfter, linesBefore);
 
 		if (delta > 0) {
-			Hash[] nulls= new Hash[delta];
-			fHashes.addAll(firstLine + changed, Arrays.asList(nulls));
+			if (fCount + delta > fHashes.length) {
+				long[] hashes= new long[Math.max(fCount + delta, fHashes.length + (fHashes.length >> 1))];
+				System.arraycopy(fHashes, 0, hashes, 0, fCount);
+				fHashes= hashes;
+			}
+			int index= firstLine + changed;
+			System.arraycopy(fHashes, index, fHashes, index + delta, fCount - index);
+			fCount+= delta;
 		} else if (delta < 0) {
-			fHashes.subList(firstLine, firstLine - delta).clear();
+			System.arraycopy(fHashes, firstLine - delta, fHashes, firstLine, fCount - firstLine + delta);
+			fCount+= delta;
 		}
-		Collections.fill(fHashes.subList(firstLine, firstLine + changed), null);
+		// cleared lines, and the inserted ones that still hold their old hash
+		int cleared= changed + Math.max(delta, 0);
+		for (int line= firstLine, end= firstLine + cleared; line < end; line++)
+			fHashes[line]= 0;
 	}
 
 	/**
 	 * @return the number of items
 	 */
 	public int getCount() {
-		return fHashes.size();
+		return fCount;
 	}
 
 	public void setDocument(IDocument document) {
@@ -135,10 +266,7 @@ public final class DocumentEquivalenceClass {
 	 * afterwards.
 	 */
 	public void loadAndForget() {
-		int count= getCount();
-		for (int line= 0; line < count; line++)
-			getHash(line);
-
+		computeHashes();
 		fDocument= null;
 	}
 }